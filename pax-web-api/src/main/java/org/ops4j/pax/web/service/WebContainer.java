@@ -297,6 +297,29 @@ public interface WebContainer extends HttpService {
 	 */
 	void unregisterServlets(Class<? extends Servlet> servletClass);
 
+	/**
+	 * Changes the url patterns and init params of a servlet registered with
+	 * url patterns, keeping its name, its context and all other settings.
+	 * The servlet is neither destroyed nor initialized again and the other
+	 * registrations of the context are not touched.
+	 * 
+	 * @param servlet
+	 *            the registered servlet
+	 * @param urlPatterns
+	 *            the url patterns the servlet maps to from now on
+	 * @param initParams
+	 *            the init params from now on, or null if there are none
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the servlet is not registered or was registered with an
+	 *             alias
+	 * @throws ServletException
+	 *             if the url patterns cannot be mapped, the registration is
+	 *             left unchanged then
+	 */
+	void remapServlet(Servlet servlet, String[] urlPatterns,
+			Dictionary<String, ?> initParams) throws ServletException;
+
 	/**
 	 * Registers an event listener. Depending on the listener type, the listener
 	 * will be notified on different life cycle events. The following listeners
@@ -433,6 +456,29 @@ public interface WebContainer extends HttpService {
 	 *             registered or unregistered before) or the filter is null
 	 */
 	void unregisterFilter(String filterName);
+
+	/**
+	 * Changes the mapping and init params of a registered servlet filter,
+	 * keeping its name, its position among the filters of its context and
+	 * its async support. The filter is neither destroyed nor initialized
+	 * again.
+	 * 
+	 * @param filter
+	 *            the registered servlet filter
+	 * @param urlPatterns
+	 *            url patterns the filter maps to from now on
+	 * @param servletNames
+	 *            servlet names the filter maps to from now on
+	 * @param initParams
+	 *            the init params from now on, or null if there are none. The
+	 *            filter name, ranking and dispatcher types must not change.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the filter is not registered or the init params change
+	 *             its name, ranking or dispatcher types
+	 */
+	void remapFilter(Filter filter, String[] urlPatterns,
+			String[] servletNames, Dictionary<String, String> initParams);
 	
 	/**
 	 * Sets context paramaters to be used in the servlet context corresponding
@@ -701,13 +747,19 @@ public interface WebContainer extends HttpService {
 	/**
 	 * Start modifying the http context. If this method is called, all changed
 	 * to the given http context can be bufferered until end() is called.
+	 * <p>
+	 * Servlets, filters, listeners, error pages and welcome files registered
+	 * in between are staged: the context is not (re)started per registration
+	 * and the DEPLOYED servlet events are held back until {@link #end}.
 	 * 
 	 * @param httpContext
 	 */
 	void begin(HttpContext httpContext);
 
 	/**
-	 * Validate changes on the given http context
+	 * Validate changes on the given http context. Starts the context once
+	 * with all registrations staged since {@link #begin} and dispatches their
+	 * servlet events.
 	 * 
 	 * @param httpContext
 	 */
@@ -134,6 +134,11 @@ public interface WebContainerConstants {
 	String PROPERTY_LOG_NCSA_LATENCY = "org.ops4j.pax.web.log.ncsa.latency";
 	String PROPERTY_LOG_NCSA_COOKIES = "org.ops4j.pax.web.log.ncsa.cookies";
 	String PROPERTY_LOG_NCSA_SERVER = "org.ops4j.pax.web.log.ncsa.server";
+	/**
+	 * Number of requests buffered for the request log writer, further
+	 * requests are not logged until the writer caught up.
+	 */
+	String PROPERTY_LOG_NCSA_BUFFER_SIZE = "org.ops4j.pax.web.log.ncsa.buffersize";
 	
 	String PROPERTY_VIRTUAL_HOST_LIST = "org.ops4j.pax.web.default.virtualhosts";
 	String PROPERTY_CONNECTOR_LIST = "org.ops4j.pax.web.default.connectors";
@@ -144,6 +149,90 @@ public interface WebContainerConstants {
 	String PROPERTY_MIN_THREADS = "org.ops4j.pax.web.server.minThreads";
 
 	String PROPERTY_IDLE_TIMEOUT = "org.ops4j.pax.web.server.idleTimeout";
+
+	/**
+	 * Handle requests on virtual threads instead of the pooled server
+	 * threads, if the Java runtime provides them.
+	 */
+	String PROPERTY_VIRTUAL_THREADS = "org.ops4j.pax.web.server.virtualThreads";
+
+	/**
+	 * Number of threads doing non blocking I/O, used by Undertow.
+	 */
+	String PROPERTY_IO_THREADS = "org.ops4j.pax.web.server.ioThreads";
+
+	/**
+	 * Size in bytes of the buffers connections read into and write from,
+	 * used by Undertow.
+	 */
+	String PROPERTY_BUFFER_SIZE = "org.ops4j.pax.web.server.bufferSize";
+
+	/**
+	 * Allocate the connection buffers outside of the heap, used by Undertow.
+	 */
+	String PROPERTY_DIRECT_BUFFERS = "org.ops4j.pax.web.server.directBuffers";
+
+	/**
+	 * Enable HTTP/2, negotiated with ALPN on the secure connector and by
+	 * upgrading cleartext connections (h2c) on the plain one. ALPN needs
+	 * alpn-boot on the boot class path of Java 8. Tomcat supports HTTP/2 since
+	 * 8.5 only, the connectors of the Tomcat 8.0 shipped with Pax Web stay on
+	 * HTTP/1.1 and a warning is logged.
+	 */
+	String PROPERTY_HTTP2_ENABLED = "org.ops4j.pax.web.server.http2.enabled";
+
+	/**
+	 * Maximum number of concurrent streams a client may open on one HTTP/2
+	 * connection.
+	 */
+	String PROPERTY_HTTP2_MAX_CONCURRENT_STREAMS = "org.ops4j.pax.web.server.http2.maxConcurrentStreams";
+
+	/**
+	 * Initial HTTP/2 flow control window size in bytes of each stream.
+	 */
+	String PROPERTY_HTTP2_INITIAL_WINDOW_SIZE = "org.ops4j.pax.web.server.http2.initialWindowSize";
+
+	/**
+	 * Record request counts and latency histograms per context, servlet and
+	 * filter, published as a service and as JMX MBeans.
+	 */
+	String PROPERTY_METRICS_ENABLED = "org.ops4j.pax.web.server.metrics.enabled";
+
+	/**
+	 * Maximum number of request paths for which the server caches the
+	 * context serving them, 0 disables the cache.
+	 */
+	String PROPERTY_ROUTING_CACHE_SIZE = "org.ops4j.pax.web.server.routingCacheSize";
+
+	/**
+	 * Total number of bytes of static resource content the server keeps in
+	 * memory, shared by all resource registrations, 0 or not set disables the
+	 * resource cache.
+	 */
+	String PROPERTY_RESOURCE_CACHE_SIZE = "org.ops4j.pax.web.resources.cache.size";
+
+	/**
+	 * Maximum size in bytes of a single cached static resource.
+	 */
+	String PROPERTY_RESOURCE_CACHE_MAX_ENTRY_SIZE = "org.ops4j.pax.web.resources.cache.maxEntrySize";
+
+	/**
+	 * If cached static resource content is kept in direct buffers instead of
+	 * the heap.
+	 */
+	String PROPERTY_RESOURCE_CACHE_DIRECT = "org.ops4j.pax.web.resources.cache.direct";
+
+	/**
+	 * If static resources are served compressed to clients accepting it,
+	 * either from precompressed siblings (.br, .gz) or gzipped on the fly.
+	 */
+	String PROPERTY_RESOURCE_COMPRESSION = "org.ops4j.pax.web.resources.compression";
+
+	/**
+	 * Total number of bytes of compressed resource variants kept in memory per
+	 * resource registration.
+	 */
+	String PROPERTY_RESOURCE_COMPRESSION_CACHE_SIZE = "org.ops4j.pax.web.resources.compression.cacheSize";
 	
 	/**
 	 * Servlet context attribute containing the bundle context of the bundle
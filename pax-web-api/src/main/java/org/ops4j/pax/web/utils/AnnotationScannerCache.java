@@ -0,0 +1,121 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.utils;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * Servlet and filter annotation metadata per class, so services of the same
+ * class registered over and over are reflected upon only once.
+ * <p>
+ * Classes are weakly referenced and do not keep their bundle class loader
+ * alive. {@link #evict(Bundle)} drops the classes of a bundle as soon as it
+ * is uninstalled. Callers get copies of the cached scanners, which they may
+ * modify without affecting other registrations of the same class.
+ */
+public final class AnnotationScannerCache {
+
+	/**
+	 * Guarded by itself.
+	 */
+	private static final Map<Class<?>, ServletAnnotationScanner> SERVLETS = new WeakHashMap<Class<?>, ServletAnnotationScanner>();
+
+	/**
+	 * Guarded by itself.
+	 */
+	private static final Map<Class<?>, FilterAnnotationScanner> FILTERS = new WeakHashMap<Class<?>, FilterAnnotationScanner>();
+
+	private AnnotationScannerCache() {
+		// utility class
+	}
+
+	/**
+	 * @param clazz
+	 *            servlet class
+	 * @return copy of the servlet annotation metadata of the class
+	 */
+	public static ServletAnnotationScanner getServletScanner(final Class<?> clazz) {
+		synchronized (SERVLETS) {
+			ServletAnnotationScanner scanner = SERVLETS.get(clazz);
+			if (scanner == null) {
+				scanner = new ServletAnnotationScanner(clazz);
+				SERVLETS.put(clazz, scanner);
+			}
+			return new ServletAnnotationScanner(scanner);
+		}
+	}
+
+	/**
+	 * @param clazz
+	 *            filter class
+	 * @return copy of the filter annotation metadata of the class
+	 */
+	public static FilterAnnotationScanner getFilterScanner(final Class<?> clazz) {
+		synchronized (FILTERS) {
+			FilterAnnotationScanner scanner = FILTERS.get(clazz);
+			if (scanner == null) {
+				scanner = new FilterAnnotationScanner(clazz);
+				FILTERS.put(clazz, scanner);
+			}
+			return new FilterAnnotationScanner(scanner);
+		}
+	}
+
+	/**
+	 * @param clazz
+	 *            servlet or filter class
+	 * @return whether the annotation metadata of the class is cached
+	 */
+	public static boolean isCached(final Class<?> clazz) {
+		synchronized (SERVLETS) {
+			if (SERVLETS.containsKey(clazz)) {
+				return true;
+			}
+		}
+		synchronized (FILTERS) {
+			return FILTERS.containsKey(clazz);
+		}
+	}
+
+	/**
+	 * Drops the metadata of all classes loaded by a bundle.
+	 *
+	 * @param bundle
+	 *            uninstalled bundle
+	 */
+	public static void evict(final Bundle bundle) {
+		synchronized (SERVLETS) {
+			evict(SERVLETS, bundle);
+		}
+		synchronized (FILTERS) {
+			evict(FILTERS, bundle);
+		}
+	}
+
+	private static void evict(final Map<Class<?>, ?> scanners, final Bundle bundle) {
+		for (Iterator<Class<?>> classes = scanners.keySet().iterator(); classes.hasNext();) {
+			if (bundle.equals(FrameworkUtil.getBundle(classes.next()))) {
+				classes.remove();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.utils;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.SynchronousBundleListener;
+
+/**
+ * Drops the class spaces and resource indexes cached by
+ * {@link ClassPathUtil} when bundle wirings change. Every bundle using
+ * {@link ClassPathUtil} registers one with {@link #register(BundleContext)},
+ * so the caches are kept current whichever of them is running.
+ */
+public class ClassPathCacheInvalidator implements SynchronousBundleListener,
+		FrameworkListener {
+
+	/**
+	 * Adds this invalidator as bundle and framework listener.
+	 * 
+	 * @param context
+	 *            context of the registering bundle
+	 */
+	public void register(final BundleContext context) {
+		context.addBundleListener(this);
+		context.addFrameworkListener(this);
+	}
+
+	/**
+	 * Removes this invalidator and drops the caches, so no entries outlive
+	 * the registering bundle.
+	 * 
+	 * @param context
+	 *            context of the registering bundle
+	 */
+	public void unregister(final BundleContext context) {
+		context.removeBundleListener(this);
+		context.removeFrameworkListener(this);
+		ClassPathUtil.clearCaches();
+	}
+
+	@Override
+	public void bundleChanged(final BundleEvent event) {
+		switch (event.getType()) {
+			case BundleEvent.UPDATED:
+			case BundleEvent.UNRESOLVED:
+			case BundleEvent.UNINSTALLED:
+				ClassPathUtil.clearCaches();
+				break;
+			default:
+				break;
+		}
+	}
+
+	@Override
+	public void frameworkEvent(final FrameworkEvent event) {
+		if (event.getType() == FrameworkEvent.PACKAGES_REFRESHED) {
+			ClassPathUtil.clearCaches();
+		}
+	}
+
+}
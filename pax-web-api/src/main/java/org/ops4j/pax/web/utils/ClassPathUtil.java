@@ -21,10 +21,13 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -45,10 +48,55 @@ public class ClassPathUtil {
 	private static final Logger LOG = LoggerFactory
 			.getLogger(ClassPathUtil.class);
 
+	/**
+	 * Transitive class space of a bundle, valid as long as the bundle keeps
+	 * its wiring.
+	 */
+	private static final class ClassSpace {
+
+		private final BundleWiring wiring;
+		private final Set<Bundle> bundles;
+
+		private ClassSpace(final BundleWiring wiring, final Set<Bundle> bundles) {
+			this.wiring = wiring;
+			this.bundles = bundles;
+		}
+	}
+
+	/**
+	 * Resources found in a bundle per path, pattern and recursion, valid as
+	 * long as the bundle keeps its wiring.
+	 */
+	private static final class ResourceIndex {
+
+		private final BundleWiring wiring;
+		private final ConcurrentMap<String, List<URL>> resources = new ConcurrentHashMap<String, List<URL>>();
+
+		private ResourceIndex(final BundleWiring wiring) {
+			this.wiring = wiring;
+		}
+	}
+
+	private static final ConcurrentMap<Bundle, ClassSpace> CLASS_SPACES = new ConcurrentHashMap<Bundle, ClassSpace>();
+
+	private static final ConcurrentMap<Bundle, ResourceIndex> RESOURCE_INDEXES = new ConcurrentHashMap<Bundle, ResourceIndex>();
+
 	private ClassPathUtil() {
 		// munch
 	}
 
+	/**
+	 * Drops the cached class spaces and resource indexes of all bundles. To
+	 * be called when wirings change, i.e. after packages were refreshed or
+	 * when a bundle is updated, unresolved or uninstalled, as the
+	 * {@link ClassPathCacheInvalidator} does. Wires added later by dynamic
+	 * imports are not seen before this is called.
+	 */
+	public static void clearCaches() {
+		CLASS_SPACES.clear();
+		RESOURCE_INDEXES.clear();
+	}
+
 	/**
 	 * Returns a list of urls to jars that composes the Bundle-ClassPath.
 	 * 
@@ -130,6 +178,8 @@ public class ClassPathUtil {
 
 	/**
 	 * Gets a list of bundles that are imported or required by this bundle.
+	 * The transitive class space of a bundle is computed once per wiring of
+	 * the bundle and shared until {@link #clearCaches()} is called.
 	 * 
 	 * @param bundle
 	 *            the bundle for which to perform the lookup
@@ -139,8 +189,23 @@ public class ClassPathUtil {
 	 */
 	public static Set<Bundle> getBundlesInClassSpace(Bundle bundle,
 			Set<Bundle> bundleSet) {
-		return getBundlesInClassSpace(bundle.getBundleContext(), bundle,
-				bundleSet);
+		final BundleWiring wiring = bundle == null ? null : bundle.adapt(BundleWiring.class);
+		if (wiring == null || bundle.getBundleContext() == null) {
+			return getBundlesInClassSpace(bundle == null ? null : bundle.getBundleContext(), bundle,
+					bundleSet);
+		}
+		ClassSpace classSpace = CLASS_SPACES.get(bundle);
+		if (classSpace == null || classSpace.wiring != wiring) {
+			classSpace = new ClassSpace(wiring, Collections.unmodifiableSet(
+					getBundlesInClassSpace(bundle.getBundleContext(), bundle, new HashSet<Bundle>())));
+			CLASS_SPACES.put(bundle, classSpace);
+		}
+		for (Bundle classSpaceBundle : classSpace.bundles) {
+			if (classSpaceBundle.getState() != Bundle.UNINSTALLED) {
+				bundleSet.add(classSpaceBundle);
+			}
+		}
+		return bundleSet;
 	}
 
 	private static Set<Bundle> getBundlesInClassSpace(BundleContext context,
@@ -200,24 +265,51 @@ public class ClassPathUtil {
 		return bundleSet;
 	}
 
+	/**
+	 * Finds the resources local to the bundles. The resources of a bundle
+	 * are listed once per path, pattern and wiring of the bundle, so bundles
+	 * shared by many web applications are not scanned for each of them.
+	 */
 	public static List<URL> findResources(Iterable<Bundle> bundles,
 			String path,
 			String pattern, boolean recurse) {
 		List<URL> resources = new ArrayList<URL>();
+		final String key = path + '|' + pattern + '|' + recurse;
 		for (Bundle bundle : bundles) {
-			Collection<String> names = bundle
-					.adapt(BundleWiring.class)
-					.listResources(
-							path,
-							pattern,
-							BundleWiring.LISTRESOURCES_LOCAL
-									| (recurse ? BundleWiring.LISTRESOURCES_RECURSE
-											: 0));
-			for (String name : names) {
-				resources.add(bundle.getResource(name));
+			final BundleWiring wiring = bundle.adapt(BundleWiring.class);
+			if (wiring == null) {
+				LOG.debug("BundleWiring is null for: " + bundle);
+				continue;
+			}
+			ResourceIndex index = RESOURCE_INDEXES.get(bundle);
+			if (index == null || index.wiring != wiring) {
+				index = new ResourceIndex(wiring);
+				RESOURCE_INDEXES.put(bundle, index);
 			}
+			List<URL> urls = index.resources.get(key);
+			if (urls == null) {
+				urls = listResources(bundle, wiring, path, pattern, recurse);
+				index.resources.put(key, urls);
+			}
+			resources.addAll(urls);
 		}
 		return resources;
 	}
 
+	private static List<URL> listResources(Bundle bundle, BundleWiring wiring,
+			String path, String pattern, boolean recurse) {
+		Collection<String> names = wiring
+				.listResources(
+						path,
+						pattern,
+						BundleWiring.LISTRESOURCES_LOCAL
+								| (recurse ? BundleWiring.LISTRESOURCES_RECURSE
+										: 0));
+		List<URL> urls = new ArrayList<URL>(names.size());
+		for (String name : names) {
+			urls.add(bundle.getResource(name));
+		}
+		return Collections.unmodifiableList(urls);
+	}
+
 }
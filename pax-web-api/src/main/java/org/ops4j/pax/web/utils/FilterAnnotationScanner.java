@@ -41,6 +41,25 @@ public class FilterAnnotationScanner {
 
 	public DispatcherType[] dispatcherTypes;
 
+	/**
+	 * Copies the metadata of another scanner, with arrays of its own.
+	 * 
+	 * @param scanner
+	 *            scanner to copy
+	 */
+	FilterAnnotationScanner(FilterAnnotationScanner scanner) {
+		scanned = scanner.scanned;
+		urlPatterns = scanner.urlPatterns == null ? null : scanner.urlPatterns.clone();
+		filterName = scanner.filterName;
+		loadOnStartup = scanner.loadOnStartup;
+		asyncSupported = scanner.asyncSupported;
+		webInitParams = scanner.webInitParams == null ? null : scanner.webInitParams.clone();
+		multiPartConfigAnnotation = scanner.multiPartConfigAnnotation;
+		filterAnnotation = scanner.filterAnnotation;
+		servletNames = scanner.servletNames == null ? null : scanner.servletNames.clone();
+		dispatcherTypes = scanner.dispatcherTypes == null ? null : scanner.dispatcherTypes.clone();
+	}
+
 	public FilterAnnotationScanner(Class<?> clazz) {
 		filterAnnotation = (WebFilter) clazz.getAnnotation(WebFilter.class);
 
@@ -37,6 +37,23 @@ public class ServletAnnotationScanner {
 	public MultipartConfig multiPartConfigAnnotation;
 	public WebServlet annotation;
 
+	/**
+	 * Copies the metadata of another scanner, with arrays of its own.
+	 * 
+	 * @param scanner
+	 *            scanner to copy
+	 */
+	ServletAnnotationScanner(ServletAnnotationScanner scanner) {
+		scanned = scanner.scanned;
+		urlPatterns = scanner.urlPatterns == null ? null : scanner.urlPatterns.clone();
+		servletName = scanner.servletName;
+		loadOnStartup = scanner.loadOnStartup;
+		asyncSupported = scanner.asyncSupported;
+		webInitParams = scanner.webInitParams == null ? null : scanner.webInitParams.clone();
+		multiPartConfigAnnotation = scanner.multiPartConfigAnnotation;
+		annotation = scanner.annotation;
+	}
+
 	public ServletAnnotationScanner(Class<?> clazz) {
 		WebServlet annotation = (WebServlet) clazz.getAnnotation(WebServlet.class);
 
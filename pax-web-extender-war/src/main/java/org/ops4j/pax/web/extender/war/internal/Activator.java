@@ -17,12 +17,15 @@
  */
 package org.ops4j.pax.web.extender.war.internal;
 
+import java.io.File;
 import java.util.Hashtable;
 
 import org.ops4j.pax.web.extender.war.internal.extender.AbstractExtender;
 import org.ops4j.pax.web.extender.war.internal.extender.Extension;
+import org.ops4j.pax.web.extender.war.internal.parser.WebAppMetadataCache;
 import org.ops4j.pax.web.extender.war.internal.parser.WebAppParser;
 import org.ops4j.pax.web.service.spi.WarManager;
+import org.ops4j.pax.web.utils.ClassPathCacheInvalidator;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
@@ -33,10 +36,40 @@ import org.osgi.util.tracker.ServiceTracker;
 @SuppressWarnings("deprecation")
 public class Activator extends AbstractExtender {
 
+    /**
+     * Framework property to disable the cache of parsed web applications.
+     */
+    private static final String PROPERTY_METADATA_CACHE = "org.ops4j.pax.web.extender.war.metadataCache";
+
+    /**
+     * Framework property with the number of threads deploying web
+     * applications, defaults to the number of available processors.
+     */
+    private static final String PROPERTY_THREADS = "org.ops4j.pax.web.extender.war.threads";
+
     private ServiceTracker<PackageAdmin, PackageAdmin> packageAdminTracker;
     private WebObserver webObserver;
     private WebEventDispatcher webEventDispatcher;
+    private WebAppDeployments deployments;
     private ServiceRegistration<WarManager> registration;
+    /**
+     * The WAB and JSP class loaders list resources through the caches of
+     * ClassPathUtil, which are kept current even without the runtime.
+     */
+    private final ClassPathCacheInvalidator classPathCacheInvalidator = new ClassPathCacheInvalidator();
+
+    @Override
+    public void start(BundleContext context) throws Exception {
+        String threads = context.getProperty(PROPERTY_THREADS);
+        if (threads != null) {
+            try {
+                setThreads(Integer.parseInt(threads.trim()));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring invalid " + PROPERTY_THREADS + " " + threads, e);
+            }
+        }
+        super.start(context);
+    }
 
     @Override
     protected void doStart() throws Exception {
@@ -44,7 +77,10 @@ public class Activator extends AbstractExtender {
 
         BundleContext bundleContext = getBundleContext();
 
+        classPathCacheInvalidator.register(bundleContext);
         webEventDispatcher = new WebEventDispatcher(bundleContext);
+        deployments = new WebAppDeployments(this::getQueueDepth);
+        deployments.open(bundleContext);
 
         Filter filterPackage = bundleContext.createFilter("(objectClass=org.osgi.service.packageadmin.PackageAdmin)");
         packageAdminTracker = new ServiceTracker<PackageAdmin, PackageAdmin>(bundleContext, filterPackage, null);
@@ -52,7 +88,7 @@ public class Activator extends AbstractExtender {
 
         DefaultWebAppDependencyManager dependencyManager = new DefaultWebAppDependencyManager();
 
-        webObserver = new WebObserver(new WebAppParser(packageAdminTracker),
+        webObserver = new WebObserver(new WebAppParser(packageAdminTracker, createMetadataCache(bundleContext)),
                 new WebAppPublisher(webEventDispatcher, bundleContext), webEventDispatcher, dependencyManager,
                 bundleContext);
 
@@ -72,11 +108,25 @@ public class Activator extends AbstractExtender {
             registration = null;
         }
         stopTracking();
+        deployments.close();
         webEventDispatcher.destroy();
         packageAdminTracker.close();
+        classPathCacheInvalidator.unregister(getBundleContext());
         logger.debug("Pax Web WAR Extender - Stopped");
     }
 
+    private WebAppMetadataCache createMetadataCache(BundleContext bundleContext) {
+        if ("false".equalsIgnoreCase(bundleContext.getProperty(PROPERTY_METADATA_CACHE))) {
+            return null;
+        }
+        File directory = bundleContext.getDataFile("webapps");
+        if (directory == null) {
+            logger.debug("No file system support, parsed web applications are not cached");
+            return null;
+        }
+        return new WebAppMetadataCache(directory, bundleContext.getBundle().getVersion().toString());
+    }
+
     @Override
     protected Extension doCreateExtension(Bundle bundle) throws Exception {
         return webObserver.createExtension(bundle);
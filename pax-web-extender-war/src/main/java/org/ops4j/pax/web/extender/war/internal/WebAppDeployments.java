@@ -0,0 +1,167 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.extender.war.internal;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.ops4j.pax.web.service.spi.WebEvent;
+import org.ops4j.pax.web.service.spi.WebListener;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the deployments of the extender, registered as a {@link WebListener}
+ * and as the MXBean <code>org.ops4j.pax.web:type=WebAppDeployments</code>.
+ * <p>
+ * A deployment is timed from the first deploying event of a web application,
+ * sent when its bundle is scanned, to its deployed event. It includes the
+ * time queued for a thread of the extender, waiting for dependencies and
+ * for another web application to leave the context, and registering with the
+ * http service.
+ */
+public class WebAppDeployments implements WebListener, WebAppDeploymentsMXBean {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(WebAppDeployments.class);
+
+	static final String OBJECT_NAME = "org.ops4j.pax.web:type=WebAppDeployments";
+
+	private static final class Deployment {
+		private final String contextPath;
+		private final long millis;
+
+		private Deployment(String contextPath, long millis) {
+			this.contextPath = contextPath;
+			this.millis = millis;
+		}
+	}
+
+	private final IntSupplier queueDepth;
+
+	/**
+	 * Timestamp of the deploying event by bundle id.
+	 */
+	private final Map<Long, Long> deploying = new ConcurrentHashMap<Long, Long>();
+
+	/**
+	 * Last deployment of the deployed web applications by bundle id.
+	 */
+	private final Map<Long, Deployment> deployed = new ConcurrentHashMap<Long, Deployment>();
+
+	private final MBeanServer mbeanServer = ManagementFactory
+			.getPlatformMBeanServer();
+
+	private ObjectName name;
+
+	private ServiceRegistration<WebListener> registration;
+
+	/**
+	 * @param queueDepth
+	 *            supplies the number of tasks queued in the extender
+	 */
+	public WebAppDeployments(IntSupplier queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	void open(BundleContext bundleContext) {
+		registration = bundleContext.registerService(WebListener.class, this,
+				null);
+		try {
+			name = new ObjectName(OBJECT_NAME);
+			mbeanServer.registerMBean(this, name);
+		} catch (JMException e) {
+			name = null;
+			LOG.warn("Cannot register MBean " + OBJECT_NAME, e);
+		}
+	}
+
+	void close() {
+		if (name != null) {
+			try {
+				mbeanServer.unregisterMBean(name);
+			} catch (JMException e) {
+				LOG.debug("Cannot unregister MBean " + name, e);
+			}
+			name = null;
+		}
+		if (registration != null) {
+			try {
+				registration.unregister();
+			} catch (IllegalStateException e) {
+				// already unregistered with the bundle
+			}
+			registration = null;
+		}
+	}
+
+	@Override
+	public void webEvent(WebEvent event) {
+		if (event.isReplay()) {
+			return;
+		}
+		final Long bundleId = event.getBundleId();
+		switch (event.getType()) {
+		case WebEvent.DEPLOYING:
+			deploying.putIfAbsent(bundleId, event.getTimestamp());
+			break;
+		case WebEvent.DEPLOYED:
+			final Long started = deploying.remove(bundleId);
+			if (started != null) {
+				final long millis = event.getTimestamp() - started;
+				deployed.put(bundleId, new Deployment(event.getContextPath(), millis));
+				LOG.debug("Deployed web application {} in {} ms", event.getContextPath(), millis);
+			}
+			break;
+		case WebEvent.FAILED:
+		case WebEvent.UNDEPLOYED:
+			deploying.remove(bundleId);
+			deployed.remove(bundleId);
+			break;
+		default:
+			break;
+		}
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return queueDepth.getAsInt();
+	}
+
+	@Override
+	public int getDeployingCount() {
+		return deploying.size();
+	}
+
+	@Override
+	public Map<String, Long> getDeploymentTimes() {
+		final Map<String, Long> times = new TreeMap<String, Long>();
+		for (Deployment deployment : deployed.values()) {
+			times.put(deployment.contextPath, deployment.millis);
+		}
+		return times;
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.extender.war.internal;
+
+import java.util.Map;
+
+/**
+ * Management view of {@link WebAppDeployments}. Times are in milliseconds.
+ */
+public interface WebAppDeploymentsMXBean {
+
+	/**
+	 * @return the number of web applications and other tasks waiting for a
+	 *         thread of the extender
+	 */
+	int getQueueDepth();
+
+	/**
+	 * @return the number of web applications being deployed
+	 */
+	int getDeployingCount();
+
+	/**
+	 * @return the time the deployed web applications took to deploy, by
+	 *         context path
+	 */
+	Map<String, Long> getDeploymentTimes();
+
+}
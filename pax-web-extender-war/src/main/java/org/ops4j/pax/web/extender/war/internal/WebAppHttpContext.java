@@ -18,7 +18,6 @@
 package org.ops4j.pax.web.extender.war.internal;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.util.Collection;
@@ -28,8 +27,6 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -37,6 +34,8 @@ import javax.servlet.http.HttpServletResponse;
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.web.extender.war.internal.model.WebAppMimeMapping;
 import org.ops4j.pax.web.extender.war.internal.util.Path;
+import org.ops4j.pax.web.service.spi.util.CachingHttpContext;
+import org.ops4j.pax.web.service.spi.util.ResourceUrlCache;
 import org.ops4j.pax.web.utils.ClassPathUtil;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.wiring.BundleWiring;
@@ -52,7 +51,7 @@ import org.slf4j.LoggerFactory;
  * @author Alin Dreghiciu
  * @since 0.3.0, December 27, 2007
  */
-class WebAppHttpContext implements HttpContext {
+class WebAppHttpContext implements CachingHttpContext {
 
 	/**
 	 * Logger.
@@ -76,17 +75,17 @@ class WebAppHttpContext implements HttpContext {
 	 */
 	private final Map<String, String> mimeMappings;
 
-	private final ConcurrentMap<String, URL> resourceCache = new ConcurrentHashMap<>();
-
-	static final URL NO_URL;
+	/**
+	 * Resolved resources, bounded and dropped when the bundle is updated.
+	 */
+	private final ResourceUrlCache resourceCache = new ResourceUrlCache();
 
-	static {
-		try {
-			NO_URL = new URL("http:");
-		} catch (MalformedURLException e) {
-			throw new RuntimeException(e);
+	private final ResourceUrlCache.Lookup lookup = new ResourceUrlCache.Lookup() {
+		@Override
+		public URL getResource(final String name) {
+			return findResource(name);
 		}
-	}
+	};
 
 	/**
 	 * Creates a new http context that delegates to the specified http context
@@ -143,41 +142,41 @@ class WebAppHttpContext implements HttpContext {
 				+ " for resource [{}], normalized to [{}]", name,
 				normalizedName);
 
-		URL url = resourceCache.get(normalizedName);
-
-		if (url == null && !normalizedName.isEmpty()) {
-			url = bundle.getEntry(normalizedName);
-			if (url == null) {
-				log.debug("getEntry failed, trying with /META-INF/resources/ in bundle class space");
-				// Search attached bundles for web-fragments
-				Set<Bundle> bundlesInClassSpace = ClassPathUtil.getBundlesInClassSpace(bundle, new HashSet<Bundle>());
-				for (Bundle bundleInClassSpace : bundlesInClassSpace) {
-					url = bundleInClassSpace.getEntry("/META-INF/resources/" + normalizedName);
-					if (url != null) {
-						break;
-					}
-				}
-			}
-			// obviously still not found might be available from a attached bundle resource
-			if (url == null) {
-				log.debug("getEntry failed, fallback to getResource");
-				url = bundle.getResource(normalizedName);
-			}
-			if (url == null) {
-				log.debug("getResource failed, fallback to system bundle getResource");
-				url = bundle.getClass().getClassLoader().getResource(normalizedName);
-			}
-			if (url == null) {
-				url = NO_URL;
-			}
-			resourceCache.putIfAbsent(normalizedName, url);
+		URL url = null;
+		if (!normalizedName.isEmpty()) {
+			url = resourceCache.getResource(normalizedName,
+					bundle.getLastModified(), lookup);
 		}
 
-		if (url != null && url != NO_URL) {
+		if (url != null) {
 			log.debug("Resource found as url [{}]", url);
 		} else {
 			log.debug("Resource not found");
-			url = null;
+		}
+		return url;
+	}
+
+	private URL findResource(final String normalizedName) {
+		URL url = bundle.getEntry(normalizedName);
+		if (url == null) {
+			log.debug("getEntry failed, trying with /META-INF/resources/ in bundle class space");
+			// Search attached bundles for web-fragments
+			Set<Bundle> bundlesInClassSpace = ClassPathUtil.getBundlesInClassSpace(bundle, new HashSet<Bundle>());
+			for (Bundle bundleInClassSpace : bundlesInClassSpace) {
+				url = bundleInClassSpace.getEntry("/META-INF/resources/" + normalizedName);
+				if (url != null) {
+					break;
+				}
+			}
+		}
+		// obviously still not found might be available from a attached bundle resource
+		if (url == null) {
+			log.debug("getEntry failed, fallback to getResource");
+			url = bundle.getResource(normalizedName);
+		}
+		if (url == null) {
+			log.debug("getResource failed, fallback to system bundle getResource");
+			url = bundle.getClass().getClassLoader().getResource(normalizedName);
 		}
 		return url;
 	}
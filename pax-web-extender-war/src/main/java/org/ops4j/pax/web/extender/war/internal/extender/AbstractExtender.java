@@ -19,13 +19,19 @@ package org.ops4j.pax.web.extender.war.internal.extender;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
@@ -33,6 +39,7 @@ import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.Constants;
 import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.framework.startlevel.BundleStartLevel;
 import org.osgi.util.tracker.BundleTracker;
 import org.osgi.util.tracker.BundleTrackerCustomizer;
 import org.slf4j.Logger;
@@ -58,11 +65,14 @@ public abstract class AbstractExtender implements BundleActivator,
 
 	private final ConcurrentMap<Bundle, Extension> extensions = new ConcurrentHashMap<Bundle, Extension>();
 	private final ConcurrentMap<Bundle, FutureTask<Void>> destroying = new ConcurrentHashMap<Bundle, FutureTask<Void>>();
+	private final ConcurrentMap<Bundle, ExtensionStart> queued = new ConcurrentHashMap<Bundle, ExtensionStart>();
+	private final AtomicLong sequence = new AtomicLong();
 	private volatile boolean stopping;
     private volatile boolean stopped;
 
 	private boolean synchronous;
 	private boolean preemptiveShutdown;
+	private int threads = Runtime.getRuntime().availableProcessors();
 	private BundleContext bundleContext;
 	private ExecutorService executors;
 	private BundleTracker<Bundle> tracker;
@@ -90,6 +100,16 @@ public abstract class AbstractExtender implements BundleActivator,
 		return preemptiveShutdown;
 	}
 
+	/**
+	 * Number of threads starting extensions asynchronously, defaults to the
+	 * number of available processors.
+	 * 
+	 * @return the number of threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
 	public BundleContext getBundleContext() {
 		return bundleContext;
 	}
@@ -98,6 +118,21 @@ public abstract class AbstractExtender implements BundleActivator,
 		return executors;
 	}
 
+	/**
+	 * Number of extensions and other tasks waiting for a thread of the
+	 * executor.
+	 * 
+	 * @return the number of queued tasks, 0 if the extender is synchronous
+	 *         or uses a custom executor
+	 */
+	public int getQueueDepth() {
+		ExecutorService executor = executors;
+		if (executor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) executor).getQueue().size();
+		}
+		return 0;
+	}
+
 	public void setSynchronous(boolean synchronous) {
 		this.synchronous = synchronous;
 	}
@@ -106,6 +141,19 @@ public abstract class AbstractExtender implements BundleActivator,
 		this.preemptiveShutdown = preemptiveShutdown;
 	}
 
+	/**
+	 * Must be set before the extender is started.
+	 * 
+	 * @param threads
+	 *            number of threads starting extensions asynchronously
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		this.threads = threads;
+	}
+
 	public void start(BundleContext context) throws Exception {
 		bundleContext = context;
 		bundleContext.addBundleListener(this);
@@ -159,12 +207,43 @@ public abstract class AbstractExtender implements BundleActivator,
 	}
 
 	/**
-	 * Create the executor used to start extensions asynchronously.
+	 * Create the executor used to start extensions asynchronously. The
+	 * default executor runs {@link #getThreads()} threads and, once they are
+	 * all busy, starts the queued extensions of the lowest start level first,
+	 * in the order they were scheduled. Other tasks handed to
+	 * {@link #getExecutors()}, like the clean up of destroyed extensions, run
+	 * before the queued extensions.
 	 * 
-	 * @return an
+	 * @return an executor
 	 */
 	protected ExecutorService createExecutor() {
-		return Executors.newScheduledThreadPool(3);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+				60, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(11,
+						new Comparator<Runnable>() {
+							public int compare(Runnable r1, Runnable r2) {
+								boolean start1 = r1 instanceof ExtensionStart;
+								boolean start2 = r2 instanceof ExtensionStart;
+								if (start1 && start2) {
+									return ((ExtensionStart) r1)
+											.compareTo((ExtensionStart) r2);
+								}
+								return start1 == start2 ? 0 : (start1 ? 1 : -1);
+							}
+						}),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						final Thread t = Executors.defaultThreadFactory()
+								.newThread(r);
+						t.setName("ExtenderExecutor" + ": "
+								+ count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
 	}
 
 	/**
@@ -272,14 +351,12 @@ public abstract class AbstractExtender implements BundleActivator,
 						bundle.getSymbolicName());
 				extension.start();
 			} else {
+				final ExtensionStart start = new ExtensionStart(bundle, extension);
+				queued.put(bundle, start);
+				getExecutors().execute(start);
 				logger.debug(
-						"Scheduling start of extension for bundle {} asynchronously",
-						bundle.getSymbolicName());
-				getExecutors().submit(new Runnable() {
-					public void run() {
-						extension.start();
-					}
-				});
+						"Scheduled start of extension for bundle {} asynchronously, {} extensions queued",
+						bundle.getSymbolicName(), getQueueDepth());
 			}
 		} catch (Throwable t) {
 			logger.warn("Error while creating extension for bundle " + bundle,
@@ -295,6 +372,11 @@ public abstract class AbstractExtender implements BundleActivator,
 			future = destroying.get(bundle);
 			if (future == null) {
 				final Extension extension = extensions.remove(bundle);
+				final ExtensionStart start = queued.remove(bundle);
+				if (start != null && executors instanceof ThreadPoolExecutor) {
+					// do not keep a thread busy with a start that is skipped
+					((ThreadPoolExecutor) executors).remove(start);
+				}
 				if (extension != null) {
 					logger.debug("Scheduling extension destruction for {}.",
 							bundle.getSymbolicName());
@@ -339,6 +421,47 @@ public abstract class AbstractExtender implements BundleActivator,
 	}
 	//CHECKSTYLE:ON
 
+	private static int getStartLevel(Bundle bundle) {
+		BundleStartLevel startLevel = bundle.adapt(BundleStartLevel.class);
+		return startLevel != null ? startLevel.getStartLevel() : 0;
+	}
+
+	/**
+	 * Asynchronous start of an extension. Extensions of bundles with a lower
+	 * start level, whose dependencies are usually started already, come first.
+	 */
+	private final class ExtensionStart implements Runnable,
+			Comparable<ExtensionStart> {
+
+		private final Bundle bundle;
+		private final Extension extension;
+		private final int startLevel;
+		private final long order = sequence.getAndIncrement();
+		private final long scheduled = System.nanoTime();
+
+		private ExtensionStart(Bundle bundle, Extension extension) {
+			this.bundle = bundle;
+			this.extension = extension;
+			this.startLevel = getStartLevel(bundle);
+		}
+
+		public void run() {
+			queued.remove(bundle, this);
+			logger.debug("Starting extension for bundle {} after {} ms queued",
+					bundle.getSymbolicName(),
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scheduled));
+			extension.start();
+		}
+
+		public int compareTo(ExtensionStart other) {
+			if (startLevel != other.startLevel) {
+				return startLevel < other.startLevel ? -1 : 1;
+			}
+			return order < other.order ? -1 : (order == other.order ? 0 : 1);
+		}
+
+	}
+
 	/**
 	 * Create the extension for the given bundle, or null if the bundle is not
 	 * to be extended.
@@ -199,6 +199,10 @@ public class WebApp {
 		this.displayName = displayName;
 	}
 
+	public String getDisplayName() {
+		return displayName;
+	}
+
 	private WebAppInitParam getWebAppInitParam(String name) {
 		for (WebAppInitParam p : contextParams) {
 			if (name.equals(p.getParamName())) {
@@ -839,6 +843,10 @@ public class WebApp {
 		this.sessionCookieConfig = sessionCookieConfig;
 	}
 
+	public WebAppCookieConfig getSessionCookieConfig() {
+		return sessionCookieConfig;
+	}
+
 	public void setJspConfigDescriptor(WebAppJspConfig webAppJspConfig) {
 		jspConfigDescriptor = webAppJspConfig;
 	}
@@ -30,4 +30,8 @@ public class WebAppSecurityRole {
 		roleNames.add(roleName);
 	}
 
+	public List<String> getRoleNames() {
+		return roleNames;
+	}
+
 }
@@ -0,0 +1,288 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.extender.war.internal.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.osgi.framework.Bundle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the classes on the Bundle-ClassPath of a bundle (including
+ * attached fragments) with the annotations and direct supertypes of every
+ * class. It is built in a single pass over the bytecode, class files are read
+ * in parallel, and shared by the annotation scans and the HandlesTypes
+ * resolution of {@link WebAppParser}.
+ */
+class ClassIndex {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ClassIndex.class);
+
+	private static final String CLASS_SUFFIX = ".class";
+
+	private final ConcurrentMap<String, ClassInfo> classes = new ConcurrentHashMap<>();
+
+	/**
+	 * Direct subtypes by type name, derived from the classes on first use.
+	 */
+	private volatile Map<String, List<String>> subtypes;
+
+	/**
+	 * Builds the index of a bundle.
+	 *
+	 * @param bundle
+	 *            bundle to index
+	 * @param pool
+	 *            pool the class files are read in
+	 * @return the index
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the pool
+	 */
+	static ClassIndex build(final Bundle bundle, final ForkJoinPool pool) throws InterruptedException {
+		final ClassIndex index = new ClassIndex();
+		final List<String> directories = new ArrayList<>();
+		final List<URL> jars = new ArrayList<>();
+		String classPath = bundle.getHeaders().get("Bundle-ClassPath");
+		if (classPath == null || classPath.trim().isEmpty()) {
+			classPath = ".";
+		}
+		for (String segment : classPath.split(",")) {
+			String path = segment.split(";")[0].trim();
+			if (path.isEmpty() || ".".equals(path) || "/".equals(path)) {
+				directories.add("");
+			} else if (path.endsWith(".jar")) {
+				final URL jar = bundle.getEntry(path);
+				if (jar != null) {
+					jars.add(jar);
+				}
+			} else {
+				path = path.startsWith("/") ? path.substring(1) : path;
+				directories.add(path.endsWith("/") ? path : path + "/");
+			}
+		}
+
+		final List<URL> classFiles = new ArrayList<>();
+		for (String directory : directories) {
+			final Enumeration<URL> entries = bundle.findEntries(directory.isEmpty() ? "/" : directory,
+					"*" + CLASS_SUFFIX, true);
+			while (entries != null && entries.hasMoreElements()) {
+				final URL entry = entries.nextElement();
+				final String path = entry.getPath().startsWith("/") ? entry.getPath().substring(1) : entry.getPath();
+				if (directory.isEmpty() && isInOtherDirectory(path, directories)) {
+					// indexed with its own class path entry
+					continue;
+				}
+				classFiles.add(entry);
+			}
+		}
+
+		try {
+			pool.submit(() -> {
+				jars.parallelStream().forEach(index::indexJar);
+				classFiles.parallelStream().forEach(index::indexClass);
+			}).get();
+		} catch (ExecutionException e) {
+			LOG.warn("Indexing classes of bundle {} failed", bundle, e.getCause());
+		}
+		LOG.debug("Indexed {} classes of bundle {}", index.classes.size(), bundle);
+		return index;
+	}
+
+	private static boolean isInOtherDirectory(final String path, final List<String> directories) {
+		for (String directory : directories) {
+			if (!directory.isEmpty() && path.startsWith(directory)) {
+				return true;
+			}
+		}
+		return path.startsWith("META-INF/versions/");
+	}
+
+	private void indexClass(final URL url) {
+		try (InputStream in = url.openStream()) {
+			index(read(in));
+		} catch (IOException | RuntimeException e) {
+			LOG.debug("Skipping class {}", url, e);
+		}
+	}
+
+	private void indexJar(final URL jar) {
+		final List<byte[]> entries = new ArrayList<>();
+		try (ZipInputStream in = new ZipInputStream(jar.openStream())) {
+			ZipEntry entry;
+			while ((entry = in.getNextEntry()) != null) {
+				if (!entry.isDirectory() && entry.getName().endsWith(CLASS_SUFFIX)
+						&& !entry.getName().startsWith("META-INF/")) {
+					entries.add(read(in));
+				}
+			}
+		} catch (IOException e) {
+			LOG.warn("Skipping classes of {}", jar, e);
+		}
+		entries.parallelStream().forEach(bytes -> {
+			try {
+				index(bytes);
+			} catch (RuntimeException e) {
+				LOG.debug("Skipping class in {}", jar, e);
+			}
+		});
+	}
+
+	/**
+	 * Adds a class to the index.
+	 *
+	 * @param bytecode
+	 *            content of the class file
+	 */
+	void index(final byte[] bytecode) {
+		final ClassInfo info = new ClassInfo();
+		new ClassReader(bytecode).accept(new ClassVisitor(Opcodes.ASM5) {
+			@Override
+			public void visit(int version, int access, String name, String signature, String superName,
+					String[] interfaces) {
+				info.name = toClassName(name);
+				if (superName != null) {
+					info.supertypes.add(toClassName(superName));
+				}
+				if (interfaces != null) {
+					for (String type : interfaces) {
+						info.supertypes.add(toClassName(type));
+					}
+				}
+			}
+
+			@Override
+			public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+				info.annotations.add(Type.getType(desc).getClassName());
+				return null;
+			}
+		}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		if (info.name != null) {
+			classes.put(info.name, info);
+			subtypes = null;
+		}
+	}
+
+	/**
+	 * Returns the classes annotated with the given annotation.
+	 *
+	 * @param annotation
+	 *            annotation type
+	 * @return names of the annotated classes, sorted
+	 */
+	Set<String> getAnnotatedClasses(final Class<? extends Annotation> annotation) {
+		return getAnnotatedClasses(annotation.getName());
+	}
+
+	Set<String> getAnnotatedClasses(final String annotation) {
+		final Set<String> annotated = new TreeSet<>();
+		for (ClassInfo info : classes.values()) {
+			if (info.annotations.contains(annotation)) {
+				annotated.add(info.name);
+			}
+		}
+		return annotated;
+	}
+
+	/**
+	 * Returns the indexed classes extending or implementing the given type,
+	 * directly or through other indexed classes.
+	 *
+	 * @param type
+	 *            name of a class or interface, need not be indexed itself
+	 * @return names of the subtypes, sorted
+	 */
+	Set<String> getSubtypes(final String type) {
+		final Map<String, List<String>> direct = getDirectSubtypes();
+		final Set<String> found = new TreeSet<>();
+		final Deque<String> pending = new ArrayDeque<>();
+		pending.add(type);
+		while (!pending.isEmpty()) {
+			for (String subtype : direct.getOrDefault(pending.poll(), Collections.<String>emptyList())) {
+				if (found.add(subtype)) {
+					pending.add(subtype);
+				}
+			}
+		}
+		return found;
+	}
+
+	int size() {
+		return classes.size();
+	}
+
+	private Map<String, List<String>> getDirectSubtypes() {
+		Map<String, List<String>> result = subtypes;
+		if (result == null) {
+			result = new HashMap<>();
+			for (ClassInfo info : classes.values()) {
+				for (String supertype : info.supertypes) {
+					result.computeIfAbsent(supertype, key -> new ArrayList<>()).add(info.name);
+				}
+			}
+			subtypes = result;
+		}
+		return result;
+	}
+
+	private static String toClassName(final String internalName) {
+		return internalName.replace('/', '.');
+	}
+
+	private static byte[] read(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private static final class ClassInfo {
+
+		private String name;
+		private final Set<String> supertypes = new LinkedHashSet<>();
+		private final Set<String> annotations = new LinkedHashSet<>();
+	}
+
+}
@@ -0,0 +1,739 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.extender.war.internal.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.MultipartConfigElement;
+
+import org.ops4j.pax.web.extender.war.internal.WebAppVisitor;
+import org.ops4j.pax.web.extender.war.internal.model.WebApp;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppConstraintMapping;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppCookieConfig;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppErrorPage;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppFilter;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppFilterMapping;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppInitParam;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppJspConfig;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppJspPropertyGroup;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppJspServlet;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppListener;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppLoginConfig;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppMimeMapping;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppSecurityConstraint;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppSecurityRole;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppServlet;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppServletContainerInitializer;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppServletMapping;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppTagLib;
+import org.osgi.framework.Bundle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary cache of parsed {@link WebApp} models, kept in the data area of the
+ * extender so that web application bundles which did not change since the
+ * last start are not parsed and scanned again.
+ * <p>
+ * An entry is valid as long as its key matches: the pax web version, location,
+ * id and last modification time of the bundle and of the bundles in its class
+ * space (the TLD and web-fragment scans look into those), and the root entry
+ * url of each of them, as bundle urls and therefore the taglib urls in the
+ * model are only stable as long as the framework hands out the same ones.
+ * <p>
+ * Only what the parser derives from the bundle content is cached, including
+ * the urls of the web fragments found in the class space. The
+ * {@link javax.servlet.ServletContainerInitializer}s are cached by class name
+ * with the names of the classes they handle, a hit instantiates them without
+ * looking them up again.
+ */
+public class WebAppMetadataCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(WebAppMetadataCache.class);
+
+	private static final int MAGIC = 0x50585741;
+	private static final int FORMAT = 2;
+	private static final String CONTEXT_NAME_PARAM = "webapp.context";
+
+	private final File directory;
+	private final String version;
+
+	/**
+	 * @param directory
+	 *            directory the entries are kept in, created if missing
+	 * @param version
+	 *            version of pax web, entries of other versions are ignored
+	 */
+	public WebAppMetadataCache(final File directory, final String version) {
+		this.directory = directory;
+		this.version = version;
+	}
+
+	/**
+	 * Computes the key the model of a bundle is cached with.
+	 *
+	 * @param bundle
+	 *            web application bundle
+	 * @param bundlesInClassSpace
+	 *            bundles the web application can see
+	 * @return the key
+	 */
+	String key(final Bundle bundle, final Collection<Bundle> bundlesInClassSpace) {
+		final StringBuilder key = new StringBuilder(version).append('\n');
+		append(key, bundle);
+		final Map<Long, Bundle> sorted = new TreeMap<>();
+		for (Bundle b : bundlesInClassSpace) {
+			sorted.put(b.getBundleId(), b);
+		}
+		sorted.remove(bundle.getBundleId());
+		for (Bundle b : sorted.values()) {
+			append(key, b);
+		}
+		return key.toString();
+	}
+
+	private static void append(final StringBuilder key, final Bundle bundle) {
+		key.append(bundle.getBundleId()).append(' ').append(bundle.getLastModified()).append(' ')
+				.append(bundle.getLocation()).append(' ').append(bundle.getEntry("/")).append('\n');
+	}
+
+	/**
+	 * Fills a web application with the cached model of a bundle.
+	 *
+	 * @param bundle
+	 *            web application bundle
+	 * @param key
+	 *            current key of the bundle
+	 * @param webApp
+	 *            web application to fill, left untouched on a miss
+	 * @param initializers
+	 *            receives the names of the classes handled by each
+	 *            ServletContainerInitializer, by initializer class name in
+	 *            the order they were found
+	 * @return true on a hit
+	 */
+	boolean load(final Bundle bundle, final String key, final WebApp webApp,
+			final Map<String, List<String>> initializers) {
+		final File file = getFile(bundle);
+		if (!file.isFile()) {
+			return false;
+		}
+		try {
+			final byte[] content = Files.readAllBytes(file.toPath());
+			final DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT || !key.equals(readString(in))) {
+				LOG.debug("Cached metadata of bundle {} is outdated", bundle);
+				return false;
+			}
+			final int offset = content.length - in.available();
+			// read into a scratch model first, a corrupt entry must not leave
+			// the web application half filled
+			read(new DataInputStream(new ByteArrayInputStream(content, offset, content.length - offset)), bundle,
+					new WebApp(), new LinkedHashMap<String, List<String>>());
+			read(new DataInputStream(new ByteArrayInputStream(content, offset, content.length - offset)), bundle,
+					webApp, initializers);
+			LOG.debug("Using cached metadata of bundle {}", bundle);
+			return true;
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("Ignoring unreadable cached metadata of bundle {}", bundle, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Caches the model of a bundle.
+	 *
+	 * @param bundle
+	 *            web application bundle
+	 * @param key
+	 *            current key of the bundle
+	 * @param webApp
+	 *            the parsed web application
+	 */
+	void store(final Bundle bundle, final String key, final WebApp webApp) {
+		final File file = getFile(bundle);
+		try {
+			Files.createDirectories(directory.toPath());
+			final File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+			try {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+					out.writeInt(MAGIC);
+					out.writeInt(FORMAT);
+					writeString(out, key);
+					write(out, webApp);
+				}
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp.toPath());
+			}
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("Could not cache metadata of bundle {}", bundle, e);
+		}
+	}
+
+	private File getFile(final Bundle bundle) {
+		return new File(directory, "webapp-" + bundle.getBundleId() + ".bin");
+	}
+
+	// -- writing
+
+	private static void write(final DataOutputStream out, final WebApp webApp) throws IOException {
+		writeString(out, webApp.getDisplayName());
+		writeString(out, webApp.getSessionTimeout());
+		out.writeBoolean(webApp.getMetaDataComplete());
+		writeString(out, path(webApp.getWebXmlURL()));
+		writeString(out, path(webApp.getJettyWebXmlURL()));
+
+		final List<WebAppInitParam> contextParams = new ArrayList<>();
+		for (WebAppInitParam param : webApp.getContextParams()) {
+			if (!CONTEXT_NAME_PARAM.equals(param.getParamName())) {
+				contextParams.add(param);
+			}
+		}
+		writeInitParams(out, contextParams.toArray(new WebAppInitParam[contextParams.size()]));
+		final WebAppMimeMapping[] mimeMappings = webApp.getMimeMappings();
+		out.writeInt(mimeMappings.length);
+		for (WebAppMimeMapping mimeMapping : mimeMappings) {
+			writeString(out, mimeMapping.getExtension());
+			writeString(out, mimeMapping.getMimeType());
+		}
+		writeStrings(out, toList(webApp.getWelcomeFiles()));
+		writeStrings(out, webApp.getSessionTrackingModes());
+		writeCookieConfig(out, webApp.getSessionCookieConfig());
+		writeJspConfig(out, webApp.getJspConfigDescriptor());
+		final WebAppSecurityRole[] securityRoles = webApp.getSecurityRoles();
+		out.writeInt(securityRoles.length);
+		for (WebAppSecurityRole securityRole : securityRoles) {
+			writeStrings(out, securityRole.getRoleNames());
+		}
+		final WebAppLoginConfig[] loginConfigs = webApp.getLoginConfigs();
+		out.writeInt(loginConfigs.length);
+		for (WebAppLoginConfig loginConfig : loginConfigs) {
+			writeString(out, loginConfig.getAuthMethod());
+			writeString(out, loginConfig.getRealmName());
+			writeString(out, loginConfig.getFormLoginPage());
+			writeString(out, loginConfig.getFormErrorPage());
+		}
+
+		final Elements elements = new Elements();
+		webApp.accept(elements);
+		out.writeInt(elements.listeners.size());
+		for (WebAppListener listener : elements.listeners) {
+			writeString(out, listener.getListenerClass());
+		}
+		out.writeInt(elements.filters.size());
+		for (WebAppFilter filter : elements.filters) {
+			final List<WebAppFilterMapping> mappings = webApp.getFilterMappings(filter.getFilterName());
+			out.writeInt(mappings.size());
+			for (WebAppFilterMapping mapping : mappings) {
+				writeString(out, mapping.getFilterName());
+				writeString(out, mapping.getUrlPattern());
+				writeString(out, mapping.getServletName());
+				writeDispatcherTypes(out, mapping.getDispatcherTypes());
+			}
+			writeString(out, filter.getFilterName());
+			writeString(out, filter.getFilterClass());
+			writeInitParams(out, filter.getInitParams());
+			writeStrings(out, toList(filter.getUrlPatterns()));
+			writeStrings(out, toList(filter.getServletNames()));
+			writeDispatcherTypes(out, filter.getDispatcherTypes());
+			writeBoolean(out, filter.getAsyncSupported());
+		}
+		out.writeInt(elements.servlets.size());
+		for (WebAppServlet servlet : elements.servlets) {
+			final List<WebAppServletMapping> mappings = webApp.getServletMappings(servlet.getServletName());
+			out.writeInt(mappings.size());
+			for (WebAppServletMapping mapping : mappings) {
+				writeString(out, mapping.getServletName());
+				writeString(out, mapping.getUrlPattern());
+			}
+			if (servlet instanceof WebAppJspServlet) {
+				out.writeBoolean(true);
+				writeString(out, ((WebAppJspServlet) servlet).getJspPath());
+			} else {
+				out.writeBoolean(false);
+			}
+			writeString(out, servlet.getServletName());
+			writeString(out, servlet.getServletClassName());
+			writeInitParams(out, servlet.getInitParams());
+			writeStrings(out, toList(servlet.getAliases()));
+			out.writeInt(servlet.getLoadOnStartup());
+			out.writeBoolean(servlet.getAsyncSupported());
+			final MultipartConfigElement multipartConfig = servlet.getMultipartConfig();
+			out.writeBoolean(multipartConfig != null);
+			if (multipartConfig != null) {
+				writeString(out, multipartConfig.getLocation());
+				out.writeLong(multipartConfig.getMaxFileSize());
+				out.writeLong(multipartConfig.getMaxRequestSize());
+				out.writeInt(multipartConfig.getFileSizeThreshold());
+			}
+		}
+		out.writeInt(elements.constraintMappings.size());
+		for (WebAppConstraintMapping constraintMapping : elements.constraintMappings) {
+			writeString(out, constraintMapping.getConstraintName());
+			writeString(out, constraintMapping.getMapping());
+			writeString(out, constraintMapping.getUrl());
+			final WebAppSecurityConstraint constraint = constraintMapping.getSecurityConstraint();
+			out.writeBoolean(constraint != null);
+			if (constraint != null) {
+				out.writeBoolean(constraint.getAuthenticate());
+				writeStrings(out, constraint.getRoles());
+				writeString(out, constraint.getDataConstraint());
+			}
+		}
+		out.writeInt(elements.errorPages.size());
+		for (WebAppErrorPage errorPage : elements.errorPages) {
+			writeString(out, errorPage.getErrorCode());
+			writeString(out, errorPage.getExceptionType());
+			writeString(out, errorPage.getLocation());
+		}
+
+		final List<WebAppServletContainerInitializer> initializers = webApp.getServletContainerInitializers();
+		out.writeInt(initializers.size());
+		for (WebAppServletContainerInitializer initializer : initializers) {
+			writeString(out, initializer.getServletContainerInitializer().getClass().getName());
+			final Class<?>[] classes = initializer.getClasses();
+			out.writeBoolean(classes != null);
+			if (classes != null) {
+				final List<String> classNames = new ArrayList<>(classes.length);
+				for (Class<?> clazz : classes) {
+					classNames.add(clazz.getName());
+				}
+				writeStrings(out, classNames);
+			}
+		}
+
+		final List<URL> webFragments = webApp.getWebFragments();
+		final List<String> fragments = new ArrayList<>();
+		if (webFragments != null) {
+			for (URL webFragment : webFragments) {
+				fragments.add(webFragment.toExternalForm());
+			}
+		}
+		writeStrings(out, fragments);
+	}
+
+	private static void writeCookieConfig(final DataOutputStream out, final WebAppCookieConfig cookieConfig)
+			throws IOException {
+		out.writeBoolean(cookieConfig != null);
+		if (cookieConfig != null) {
+			writeString(out, cookieConfig.getDomain());
+			writeBoolean(out, cookieConfig.getHttpOnly());
+			out.writeBoolean(cookieConfig.getMaxAge() != null);
+			if (cookieConfig.getMaxAge() != null) {
+				out.writeInt(cookieConfig.getMaxAge());
+			}
+			writeString(out, cookieConfig.getName());
+			writeString(out, cookieConfig.getPath());
+			writeBoolean(out, cookieConfig.getSecure());
+		}
+	}
+
+	private static void writeJspConfig(final DataOutputStream out, final WebAppJspConfig jspConfig)
+			throws IOException {
+		out.writeBoolean(jspConfig != null);
+		if (jspConfig != null) {
+			out.writeInt(jspConfig.getTagLibConfigs().size());
+			for (WebAppTagLib tagLib : jspConfig.getTagLibConfigs()) {
+				writeString(out, tagLib.getTagLibLocation());
+				writeString(out, tagLib.getTagLibUri());
+			}
+			out.writeInt(jspConfig.getJspPropertyGroups().size());
+			for (WebAppJspPropertyGroup group : jspConfig.getJspPropertyGroups()) {
+				writeStrings(out, group.getDisplayNames());
+				writeStrings(out, group.getUrlPatterns());
+				writeStrings(out, group.getIncludeCodes());
+				writeStrings(out, group.getIncludePreludes());
+				writeBoolean(out, group.getElIgnored());
+				writeBoolean(out, group.getScriptingInvalid());
+				writeBoolean(out, group.getIsXml());
+			}
+		}
+	}
+
+	private static void writeInitParams(final DataOutputStream out, final WebAppInitParam[] params)
+			throws IOException {
+		out.writeInt(params.length);
+		for (WebAppInitParam param : params) {
+			writeString(out, param.getParamName());
+			writeString(out, param.getParamValue());
+		}
+	}
+
+	private static void writeDispatcherTypes(final DataOutputStream out, final EnumSet<DispatcherType> types)
+			throws IOException {
+		if (types == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(types.size());
+		for (DispatcherType type : types) {
+			writeString(out, type.name());
+		}
+	}
+
+	private static void writeStrings(final DataOutputStream out, final List<String> values) throws IOException {
+		out.writeInt(values == null ? -1 : values.size());
+		if (values != null) {
+			for (String value : values) {
+				writeString(out, value);
+			}
+		}
+	}
+
+	private static void writeBoolean(final DataOutputStream out, final Boolean value) throws IOException {
+		out.writeByte(value == null ? -1 : value ? 1 : 0);
+	}
+
+	private static void writeString(final DataOutputStream out, final String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	// -- reading
+
+	private static void read(final DataInputStream in, final Bundle bundle, final WebApp webApp,
+			final Map<String, List<String>> initializers) throws IOException {
+		webApp.setDisplayName(readString(in));
+		webApp.setSessionTimeout(readString(in));
+		webApp.setMetaDataComplete(in.readBoolean());
+		webApp.setWebXmlURL(entry(bundle, readString(in)));
+		webApp.setJettyWebXmlURL(entry(bundle, readString(in)));
+
+		for (WebAppInitParam param : readInitParams(in)) {
+			webApp.addContextParam(param);
+		}
+		for (int i = in.readInt(); i > 0; i--) {
+			final WebAppMimeMapping mimeMapping = new WebAppMimeMapping();
+			mimeMapping.setExtension(readString(in));
+			mimeMapping.setMimeType(readString(in));
+			webApp.addMimeMapping(mimeMapping);
+		}
+		for (String welcomeFile : readStrings(in)) {
+			webApp.addWelcomeFile(welcomeFile);
+		}
+		for (String mode : readStrings(in)) {
+			webApp.addSessionTrackingMode(mode);
+		}
+		webApp.setSessionCookieConfig(readCookieConfig(in));
+		webApp.setJspConfigDescriptor(readJspConfig(in));
+		for (int i = in.readInt(); i > 0; i--) {
+			final WebAppSecurityRole securityRole = new WebAppSecurityRole();
+			for (String roleName : readStrings(in)) {
+				securityRole.addRoleName(roleName);
+			}
+			webApp.addSecurityRole(securityRole);
+		}
+		for (int i = in.readInt(); i > 0; i--) {
+			final WebAppLoginConfig loginConfig = new WebAppLoginConfig();
+			loginConfig.setAuthMethod(readString(in));
+			loginConfig.setRealmName(readString(in));
+			loginConfig.setFormLoginPage(readString(in));
+			loginConfig.setFormErrorPage(readString(in));
+			webApp.addLoginConfig(loginConfig);
+		}
+
+		for (int i = in.readInt(); i > 0; i--) {
+			final WebAppListener listener = new WebAppListener();
+			listener.setListenerClass(readString(in));
+			webApp.addListener(listener);
+		}
+		for (int i = in.readInt(); i > 0; i--) {
+			// mappings first, as adding them after the filter would change it
+			for (int j = in.readInt(); j > 0; j--) {
+				final WebAppFilterMapping mapping = new WebAppFilterMapping();
+				mapping.setFilterName(readString(in));
+				mapping.setUrlPattern(readString(in));
+				mapping.setServletName(readString(in));
+				mapping.setDispatcherTypes(readDispatcherTypes(in));
+				webApp.addFilterMapping(mapping);
+			}
+			final WebAppFilter filter = new WebAppFilter();
+			filter.setFilterName(readString(in));
+			filter.setFilterClass(readString(in));
+			for (WebAppInitParam param : readInitParams(in)) {
+				filter.addInitParam(param);
+			}
+			for (String urlPattern : readStrings(in)) {
+				filter.addUrlPattern(urlPattern);
+			}
+			for (String servletName : readStrings(in)) {
+				filter.addServletName(servletName);
+			}
+			final EnumSet<DispatcherType> dispatcherTypes = readDispatcherTypes(in);
+			if (dispatcherTypes != null) {
+				for (DispatcherType dispatcherType : dispatcherTypes) {
+					filter.addDispatcherType(dispatcherType);
+				}
+			}
+			filter.setAsyncSupported(readBoolean(in));
+			webApp.addFilter(filter);
+		}
+		for (int i = in.readInt(); i > 0; i--) {
+			for (int j = in.readInt(); j > 0; j--) {
+				final WebAppServletMapping mapping = new WebAppServletMapping();
+				mapping.setServletName(readString(in));
+				mapping.setUrlPattern(readString(in));
+				webApp.addServletMapping(mapping);
+			}
+			final WebAppServlet servlet;
+			if (in.readBoolean()) {
+				final WebAppJspServlet jspServlet = new WebAppJspServlet();
+				jspServlet.setJspPath(readString(in));
+				servlet = jspServlet;
+			} else {
+				servlet = new WebAppServlet();
+			}
+			servlet.setServletName(readString(in));
+			servlet.setServletClassName(readString(in));
+			for (WebAppInitParam param : readInitParams(in)) {
+				servlet.addInitParam(param);
+			}
+			for (String alias : readStrings(in)) {
+				servlet.addUrlPattern(alias);
+			}
+			servlet.setLoadOnStartup(in.readInt());
+			servlet.setAsyncSupported(in.readBoolean());
+			if (in.readBoolean()) {
+				servlet.setMultipartConfig(new MultipartConfigElement(readString(in), in.readLong(), in.readLong(),
+						in.readInt()));
+			}
+			webApp.addServlet(servlet);
+		}
+		for (int i = in.readInt(); i > 0; i--) {
+			final WebAppConstraintMapping constraintMapping = new WebAppConstraintMapping();
+			constraintMapping.setConstraintName(readString(in));
+			constraintMapping.setMapping(readString(in));
+			constraintMapping.setUrl(readString(in));
+			if (in.readBoolean()) {
+				final WebAppSecurityConstraint constraint = new WebAppSecurityConstraint();
+				constraint.setAuthenticate(in.readBoolean());
+				for (String role : readStrings(in)) {
+					constraint.addRole(role);
+				}
+				constraint.setDataConstraint(readString(in));
+				constraintMapping.setSecurityConstraints(constraint);
+			}
+			webApp.addConstraintMapping(constraintMapping);
+		}
+		for (int i = in.readInt(); i > 0; i--) {
+			final WebAppErrorPage errorPage = new WebAppErrorPage();
+			errorPage.setErrorCode(readString(in));
+			errorPage.setExceptionType(readString(in));
+			errorPage.setLocation(readString(in));
+			webApp.addErrorPage(errorPage);
+		}
+
+		for (int i = in.readInt(); i > 0; i--) {
+			final String initializer = readString(in);
+			initializers.put(initializer, in.readBoolean() ? readStrings(in) : null);
+		}
+
+		// the urls are stable as long as the key, holding the root entry url
+		// of each bundle in the class space, matches
+		final List<URL> webFragments = new ArrayList<>();
+		for (String webFragment : readStrings(in)) {
+			webFragments.add(new URL(webFragment));
+		}
+		webApp.setWebFragments(webFragments);
+	}
+
+	private static WebAppCookieConfig readCookieConfig(final DataInputStream in) throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		final WebAppCookieConfig cookieConfig = new WebAppCookieConfig();
+		cookieConfig.setDomain(readString(in));
+		cookieConfig.setHttpOnly(readBoolean(in));
+		cookieConfig.setMaxAge(in.readBoolean() ? in.readInt() : null);
+		cookieConfig.setName(readString(in));
+		cookieConfig.setPath(readString(in));
+		cookieConfig.setSecure(readBoolean(in));
+		return cookieConfig;
+	}
+
+	private static WebAppJspConfig readJspConfig(final DataInputStream in) throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		final WebAppJspConfig jspConfig = new WebAppJspConfig();
+		for (int i = in.readInt(); i > 0; i--) {
+			final WebAppTagLib tagLib = new WebAppTagLib();
+			tagLib.addTagLibLocation(readString(in));
+			tagLib.addTagLibUri(readString(in));
+			jspConfig.addTagLibConfig(tagLib);
+		}
+		for (int i = in.readInt(); i > 0; i--) {
+			final WebAppJspPropertyGroup group = new WebAppJspPropertyGroup();
+			group.setDisplayNames(readStrings(in));
+			group.setUrlPatterns(readStrings(in));
+			group.setIncludeCodes(readStrings(in));
+			group.setIncludePreludes(readStrings(in));
+			group.setElIgnored(readBoolean(in));
+			group.setScriptingInvalid(readBoolean(in));
+			group.setIsXml(readBoolean(in));
+			jspConfig.addJspPropertyGroup(group);
+		}
+		return jspConfig;
+	}
+
+	private static List<WebAppInitParam> readInitParams(final DataInputStream in) throws IOException {
+		final int size = in.readInt();
+		final List<WebAppInitParam> params = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			final WebAppInitParam param = new WebAppInitParam();
+			param.setParamName(readString(in));
+			param.setParamValue(readString(in));
+			params.add(param);
+		}
+		return params;
+	}
+
+	private static EnumSet<DispatcherType> readDispatcherTypes(final DataInputStream in) throws IOException {
+		final int size = in.readInt();
+		if (size < 0) {
+			return null;
+		}
+		final EnumSet<DispatcherType> types = EnumSet.noneOf(DispatcherType.class);
+		for (int i = 0; i < size; i++) {
+			types.add(DispatcherType.valueOf(readString(in)));
+		}
+		return types;
+	}
+
+	private static List<String> readStrings(final DataInputStream in) throws IOException {
+		final int size = in.readInt();
+		if (size < 0) {
+			return Collections.emptyList();
+		}
+		final List<String> values = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			values.add(readString(in));
+		}
+		return values;
+	}
+
+	private static Boolean readBoolean(final DataInputStream in) throws IOException {
+		final byte value = in.readByte();
+		return value < 0 ? null : value == 1;
+	}
+
+	private static String readString(final DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static String path(final URL url) {
+		return url == null ? null : url.getPath();
+	}
+
+	private static URL entry(final Bundle bundle, final String path) {
+		return path == null ? null : bundle.getEntry(path);
+	}
+
+	private static List<String> toList(final String[] values) {
+		final List<String> list = new ArrayList<>(values.length);
+		Collections.addAll(list, values);
+		return list;
+	}
+
+	/**
+	 * Collects the elements of a web application in the order they are
+	 * registered.
+	 */
+	private static final class Elements implements WebAppVisitor {
+
+		private final List<WebAppListener> listeners = new ArrayList<>();
+		private final List<WebAppFilter> filters = new ArrayList<>();
+		private final List<WebAppServlet> servlets = new ArrayList<>();
+		private final List<WebAppConstraintMapping> constraintMappings = new ArrayList<>();
+		private final List<WebAppErrorPage> errorPages = new ArrayList<>();
+
+		@Override
+		public void visit(final WebApp webApp) {
+			// attributes are written separately
+		}
+
+		@Override
+		public void visit(final WebAppServlet webAppServlet) {
+			servlets.add(webAppServlet);
+		}
+
+		@Override
+		public void visit(final WebAppFilter webAppFilter) {
+			// mapped filters which are not declared are visited as null
+			if (webAppFilter != null) {
+				filters.add(webAppFilter);
+			}
+		}
+
+		@Override
+		public void visit(final WebAppListener webAppListener) {
+			listeners.add(webAppListener);
+		}
+
+		@Override
+		public void visit(final WebAppErrorPage webAppErrorPage) {
+			errorPages.add(webAppErrorPage);
+		}
+
+		@Override
+		public void visit(final WebAppLoginConfig loginConfig) {
+			// login configs are written separately
+		}
+
+		@Override
+		public void visit(final WebAppConstraintMapping constraintMapping) {
+			constraintMappings.add(constraintMapping);
+		}
+
+		@Override
+		public void end() {
+			// nothing to do
+		}
+	}
+
+}
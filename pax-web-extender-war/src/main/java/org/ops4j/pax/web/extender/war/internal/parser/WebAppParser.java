@@ -26,13 +26,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.servlet.DispatcherType;
 import javax.servlet.MultipartConfigElement;
@@ -48,7 +52,6 @@ import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.transform.sax.SAXSource;
 
-import org.apache.xbean.finder.BundleAnnotationFinder;
 import org.ops4j.pax.web.descriptor.gen.AuthConstraintType;
 import org.ops4j.pax.web.descriptor.gen.CookieConfigType;
 import org.ops4j.pax.web.descriptor.gen.DescriptionType;
@@ -131,8 +134,21 @@ public class WebAppParser {
 
 	private ServiceTracker<PackageAdmin, PackageAdmin> packageAdmin;
 
+	private final WebAppMetadataCache cache;
+
 	public WebAppParser(ServiceTracker<PackageAdmin, PackageAdmin> packageAdmin) {
+		this(packageAdmin, null);
+	}
+
+	/**
+	 * @param packageAdmin
+	 *            package admin tracker
+	 * @param cache
+	 *            cache of parsed web applications, may be null
+	 */
+	public WebAppParser(ServiceTracker<PackageAdmin, PackageAdmin> packageAdmin, WebAppMetadataCache cache) {
 		this.packageAdmin = packageAdmin;
+		this.cache = cache;
 	}
 
 	public void parse(final Bundle bundle, WebApp webApp) throws Exception {
@@ -141,6 +157,20 @@ public class WebAppParser {
 		if (!rootPath.isEmpty()) {
 			rootPath = rootPath + "/";
 		}
+		// Use the model of the last start if neither the bundle nor its class space changed
+		String cacheKey = null;
+		if (cache != null) {
+			Set<Bundle> bundlesInClassSpace = ClassPathUtil.getBundlesInClassSpace(bundle, new HashSet<Bundle>());
+			cacheKey = cache.key(bundle, bundlesInClassSpace);
+			Map<String, List<String>> initializers = new LinkedHashMap<String, List<String>>();
+			if (cache.load(bundle, cacheKey, webApp, initializers)) {
+				servletContainerInitializerLoad(bundle, webApp, initializers);
+				webApp.setVirtualHostList(extractVirtualHostList(bundle));
+				webApp.setConnectorList(extractConnectorList(bundle));
+				webApp.setRootPath(rootPath);
+				return;
+			}
+		}
 		// Web app version
 		Integer majorVersion = 3;
 		// Find web xml
@@ -156,12 +186,17 @@ public class WebAppParser {
 			// web-app elements
 			parseApp(webAppType, webApp);
 		}
+		// Index the classes once for all annotation scans
+		ClassIndex classIndex = null;
+		if (!webApp.getMetaDataComplete() && majorVersion != null && majorVersion >= 3) {
+			classIndex = ClassIndex.build(bundle, ForkJoinPool.commonPool());
+		}
 		// Scan servlet context initializers
-		servletContainerInitializerScan(bundle, webApp, majorVersion);
+		servletContainerInitializerScan(bundle, webApp, classIndex);
 		// Scan annotations
-		if (!webApp.getMetaDataComplete() && majorVersion != null && majorVersion >= 3) {
+		if (classIndex != null) {
 			if (TRUE.equals(canSeeClass(bundle, WebServlet.class))) {
-				servletAnnotationScan(bundle, webApp);
+				servletAnnotationScan(bundle, webApp, classIndex);
 			}
 		}
 		// Scan tlds
@@ -190,6 +225,10 @@ public class WebAppParser {
 		webApp.setConnectorList(extractConnectorList(bundle));
 		webApp.setWebFragments(webFragments);
 		webApp.setRootPath(rootPath);
+
+		if (cache != null) {
+			cache.store(bundle, cacheKey, webApp);
+		}
 	}
 
 	private void parseApp(WebAppType webAppType, WebApp webApp) {
@@ -364,37 +403,37 @@ public class WebAppParser {
 		return webFragments;
 	}
 
-	private void servletAnnotationScan(final Bundle bundle, final WebApp webApp) throws Exception {
+	private void servletAnnotationScan(final Bundle bundle, final WebApp webApp, final ClassIndex classIndex)
+			throws Exception {
 
 		LOG.debug("metadata-complete is either false or not set");
 
 		LOG.debug("scanning for annotated classes");
-		BundleAnnotationFinder baf = new BundleAnnotationFinder(packageAdmin.getService(), bundle);
-		Set<Class<?>> webServletClasses = new LinkedHashSet<Class<?>>(baf.findAnnotatedClasses(WebServlet.class));
-		Set<Class<?>> webFilterClasses = new LinkedHashSet<Class<?>>(baf.findAnnotatedClasses(WebFilter.class));
-		Set<Class<?>> webListenerClasses = new LinkedHashSet<Class<?>>(baf.findAnnotatedClasses(WebListener.class));
+		Set<String> webServletClasses = classIndex.getAnnotatedClasses(WebServlet.class);
+		Set<String> webFilterClasses = classIndex.getAnnotatedClasses(WebFilter.class);
+		Set<String> webListenerClasses = classIndex.getAnnotatedClasses(WebListener.class);
 
-		for (Class<?> webServletClass : webServletClasses) {
+		for (String webServletClass : webServletClasses) {
 			LOG.debug("found WebServlet annotation on class: {}", webServletClass);
 			WebServletAnnotationConfigurer annonScanner = new WebServletAnnotationConfigurer(bundle,
-					webServletClass.getCanonicalName());
+					webServletClass);
 			annonScanner.scan(webApp);
 		}
-		for (Class<?> webFilterClass : webFilterClasses) {
+		for (String webFilterClass : webFilterClasses) {
 			LOG.debug("found WebFilter annotation on class: {}", webFilterClass);
 			WebFilterAnnotationConfigurer filterScanner = new WebFilterAnnotationConfigurer(bundle,
-					webFilterClass.getCanonicalName());
+					webFilterClass);
 			filterScanner.scan(webApp);
 		}
-		for (Class<?> webListenerClass : webListenerClasses) {
+		for (String webListenerClass : webListenerClasses) {
 			LOG.debug("found WebListener annotation on class: {}", webListenerClass);
-			addWebListener(webApp, webListenerClass.getCanonicalName());
+			addWebListener(webApp, webListenerClass);
 		}
 
 		LOG.debug("class scanning done");
 	}
 
-	private void servletContainerInitializerScan(Bundle bundle, WebApp webApp, Integer majorVersion) throws Exception {
+	private void servletContainerInitializerScan(Bundle bundle, WebApp webApp, ClassIndex classIndex) throws Exception {
 		LOG.debug("scanning for ServletContainerInitializers");
 
 		SafeServiceLoader safeServiceLoader = new SafeServiceLoader(bundle.getClass().getClassLoader());
@@ -405,18 +444,17 @@ public class WebAppParser {
 			WebAppServletContainerInitializer webAppServletContainerInitializer = new WebAppServletContainerInitializer();
 			webAppServletContainerInitializer.setServletContainerInitializer(servletContainerInitializer);
 
-			if (!webApp.getMetaDataComplete() && majorVersion != null && majorVersion >= 3) {
+			if (classIndex != null) {
 				@SuppressWarnings("unchecked")
 				Class<HandlesTypes> loadClass = (Class<HandlesTypes>) bundle
 						.loadClass("javax.servlet.annotation.HandlesTypes");
 				HandlesTypes handlesTypes = loadClass.cast(servletContainerInitializer.getClass().getAnnotation(
 						loadClass));
 				LOG.debug("Found HandlesTypes {}", handlesTypes);
-				Class<?>[] classes;
 				if (handlesTypes != null) {
 					// add annotated classes to service
-					classes = handlesTypes.value();
-					webAppServletContainerInitializer.setClasses(classes);
+					webAppServletContainerInitializer.setClasses(resolveHandlesTypes(bundle, classIndex,
+							handlesTypes.value()));
 				}
 			}
 			webApp.addServletContainerInitializer(webAppServletContainerInitializer);
@@ -430,6 +468,63 @@ public class WebAppParser {
 
 	}
 
+	/**
+	 * Instantiates the ServletContainerInitializers of a cached web
+	 * application by their class names, with the classes they handle known
+	 * from the cache. They are not looked up again, they are loaded by the
+	 * same class loader as by {@link #servletContainerInitializerScan}.
+	 */
+	private void servletContainerInitializerLoad(Bundle bundle, WebApp webApp,
+			Map<String, List<String>> initializers) {
+		ClassLoader classLoader = bundle.getClass().getClassLoader();
+		for (Map.Entry<String, List<String>> initializer : initializers.entrySet()) {
+			ServletContainerInitializer servletContainerInitializer;
+			try {
+				servletContainerInitializer = (ServletContainerInitializer) Class.forName(initializer.getKey(),
+						true, classLoader).newInstance();
+			} catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+				LOG.warn("Skipping ServletContainerInitializer {}, it can not be instantiated", initializer.getKey(),
+						e);
+				continue;
+			}
+			WebAppServletContainerInitializer webAppServletContainerInitializer = new WebAppServletContainerInitializer();
+			webAppServletContainerInitializer.setServletContainerInitializer(servletContainerInitializer);
+			if (initializer.getValue() != null) {
+				webAppServletContainerInitializer.setClasses(loadClasses(bundle, initializer.getValue()));
+			}
+			webApp.addServletContainerInitializer(webAppServletContainerInitializer);
+		}
+	}
+
+	/**
+	 * Resolves the classes of a bundle a ServletContainerInitializer is
+	 * interested in: the classes extending, implementing or annotated with
+	 * one of the handled types.
+	 */
+	private static Class<?>[] resolveHandlesTypes(Bundle bundle, ClassIndex classIndex, Class<?>[] handledTypes) {
+		Set<String> classNames = new LinkedHashSet<String>();
+		for (Class<?> handledType : handledTypes) {
+			if (handledType.isAnnotation()) {
+				classNames.addAll(classIndex.getAnnotatedClasses(handledType.getName()));
+			} else {
+				classNames.addAll(classIndex.getSubtypes(handledType.getName()));
+			}
+		}
+		return loadClasses(bundle, classNames);
+	}
+
+	private static Class<?>[] loadClasses(Bundle bundle, Collection<String> classNames) {
+		List<Class<?>> classes = new ArrayList<Class<?>>(classNames.size());
+		for (String className : classNames) {
+			try {
+				classes.add(bundle.loadClass(className));
+			} catch (ClassNotFoundException | NoClassDefFoundError e) {
+				LOG.debug("Skipping class {}, it can not be loaded", className, e);
+			}
+		}
+		return classes.toArray(new Class<?>[classes.size()]);
+	}
+
 	private static void parseSecurityRole(SecurityRoleType securityRoleType, WebApp webApp) {
 		final WebAppSecurityRole webSecurityRole = new WebAppSecurityRole();
 
@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.extender.war.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.ops4j.pax.web.utils.ClassPathCacheInvalidator;
+import org.ops4j.pax.web.utils.ClassPathUtil;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.wiring.BundleWiring;
+
+public class ClassPathCacheInvalidatorTest {
+
+	private static final int LIST_OPTIONS = BundleWiring.LISTRESOURCES_LOCAL | BundleWiring.LISTRESOURCES_RECURSE;
+
+	private static final Collection<String> TLDS = Collections.singletonList("META-INF/c.tld");
+
+	@Test
+	public void resourcesAreListedOncePerWiring() throws Exception {
+		BundleWiring wiring = createMock(BundleWiring.class);
+		expect(wiring.listResources("/META-INF", "*.tld", LIST_OPTIONS)).andReturn(TLDS).once();
+		BundleWiring refreshedWiring = createMock(BundleWiring.class);
+		expect(refreshedWiring.listResources("/META-INF", "*.tld", LIST_OPTIONS)).andReturn(TLDS).once();
+		Bundle bundle = createNiceMock(Bundle.class);
+		expect(bundle.adapt(BundleWiring.class)).andReturn(wiring).times(2).andReturn(refreshedWiring).anyTimes();
+		expect(bundle.getResource("META-INF/c.tld")).andReturn(new URL("file:/c.tld")).anyTimes();
+		replay(wiring, refreshedWiring, bundle);
+
+		assertEquals(1, findTlds(bundle).size());
+		assertEquals(1, findTlds(bundle).size());
+		// a new wiring is listed again without any listener
+		assertEquals(1, findTlds(bundle).size());
+		assertEquals(1, findTlds(bundle).size());
+
+		verify(wiring, refreshedWiring);
+	}
+
+	@Test
+	public void cachesAreDroppedWhenWiringsChange() throws Exception {
+		BundleWiring wiring = createMock(BundleWiring.class);
+		// first listing, then after each of the events dropping the caches
+		expect(wiring.listResources("/META-INF", "*.tld", LIST_OPTIONS)).andReturn(TLDS).times(5);
+		Bundle bundle = createNiceMock(Bundle.class);
+		expect(bundle.adapt(BundleWiring.class)).andReturn(wiring).anyTimes();
+		expect(bundle.getResource("META-INF/c.tld")).andReturn(new URL("file:/c.tld")).anyTimes();
+		Bundle other = createNiceMock(Bundle.class);
+		ClassPathCacheInvalidator invalidator = new ClassPathCacheInvalidator();
+		BundleContext context = createMock(BundleContext.class);
+		context.addBundleListener(invalidator);
+		context.addFrameworkListener(invalidator);
+		context.removeBundleListener(invalidator);
+		context.removeFrameworkListener(invalidator);
+		replay(wiring, bundle, other, context);
+
+		invalidator.register(context);
+		findTlds(bundle);
+
+		invalidator.bundleChanged(new BundleEvent(BundleEvent.STARTED, other));
+		invalidator.frameworkEvent(new FrameworkEvent(FrameworkEvent.STARTED, other, null));
+		findTlds(bundle);
+
+		invalidator.frameworkEvent(new FrameworkEvent(FrameworkEvent.PACKAGES_REFRESHED, other, null));
+		findTlds(bundle);
+		invalidator.bundleChanged(new BundleEvent(BundleEvent.UPDATED, other));
+		findTlds(bundle);
+		invalidator.bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, other));
+		findTlds(bundle);
+
+		invalidator.unregister(context);
+		findTlds(bundle);
+
+		verify(wiring, context);
+	}
+
+	private static List<URL> findTlds(Bundle bundle) {
+		return ClassPathUtil.findResources(Collections.singletonList(bundle), "/META-INF", "*.tld", true);
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.extender.war.internal;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.ops4j.pax.web.service.spi.WebEvent;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+
+public class WebAppDeploymentsTest {
+
+	private final Bundle extender = bundle(1);
+
+	@Test
+	public void timesDeploymentsFromDeployingToDeployed() throws Exception {
+		WebAppDeployments deployments = new WebAppDeployments(() -> 0);
+		Bundle wab = bundle(2);
+
+		deployments.webEvent(event(WebEvent.DEPLOYING, wab));
+		deployments.webEvent(event(WebEvent.WAITING, wab));
+		// a staged web app sends another deploying event
+		deployments.webEvent(event(WebEvent.DEPLOYING, wab));
+		assertEquals(1, deployments.getDeployingCount());
+		assertTrue(deployments.getDeploymentTimes().isEmpty());
+
+		Thread.sleep(20);
+		deployments.webEvent(event(WebEvent.DEPLOYED, wab));
+		assertEquals(0, deployments.getDeployingCount());
+		Map<String, Long> times = deployments.getDeploymentTimes();
+		assertEquals(Collections.singleton("/wab"), times.keySet());
+		assertTrue(times.get("/wab") >= 20);
+
+		deployments.webEvent(event(WebEvent.UNDEPLOYED, wab));
+		assertTrue(deployments.getDeploymentTimes().isEmpty());
+	}
+
+	@Test
+	public void ignoresFailedAndReplayedDeployments() {
+		WebAppDeployments deployments = new WebAppDeployments(() -> 0);
+		Bundle failed = bundle(2);
+		Bundle replayed = bundle(3);
+
+		deployments.webEvent(event(WebEvent.DEPLOYING, failed));
+		deployments.webEvent(event(WebEvent.FAILED, failed));
+		deployments.webEvent(event(WebEvent.DEPLOYED, failed));
+		deployments.webEvent(new WebEvent(event(WebEvent.DEPLOYING, replayed), true));
+		deployments.webEvent(event(WebEvent.DEPLOYED, replayed));
+
+		assertEquals(0, deployments.getDeployingCount());
+		assertTrue(deployments.getDeploymentTimes().isEmpty());
+	}
+
+	@Test
+	public void exportsMXBean() throws Exception {
+		BundleContext bundleContext = createNiceMock(BundleContext.class);
+		replay(bundleContext);
+		WebAppDeployments deployments = new WebAppDeployments(() -> 7);
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(WebAppDeployments.OBJECT_NAME);
+
+		deployments.open(bundleContext);
+		try {
+			assertEquals(7, mbeanServer.getAttribute(name, "QueueDepth"));
+		} finally {
+			deployments.close();
+		}
+		assertFalse(mbeanServer.isRegistered(name));
+	}
+
+	private WebEvent event(int type, Bundle bundle) {
+		return new WebEvent(type, "/wab", bundle, extender);
+	}
+
+	private static Bundle bundle(long id) {
+		Bundle bundle = createNiceMock(Bundle.class);
+		expect(bundle.getBundleId()).andReturn(id).anyTimes();
+		expect(bundle.getHeaders()).andReturn(new Hashtable<String, String>()).anyTimes();
+		replay(bundle);
+		return bundle;
+	}
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.extender.war.internal.extender;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.startlevel.BundleStartLevel;
+
+public class AbstractExtenderTest {
+
+	private final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+	private final List<String> destroyed = Collections.synchronizedList(new ArrayList<String>());
+	private final Map<Bundle, String> names = new HashMap<Bundle, String>();
+	private final CountDownLatch blocking = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+	private CountDownLatch finished = new CountDownLatch(5);
+	private BundleContext bundleContext;
+	private TestExtender extender;
+
+	/**
+	 * Starts one extension per bundle, the one named "blocker" keeps the
+	 * single thread busy until released.
+	 */
+	private final class TestExtender extends AbstractExtender {
+
+		@Override
+		protected void doStart() {
+			// the test adds the bundles itself
+		}
+
+		@Override
+		protected void doStop() {
+		}
+
+		@Override
+		protected Extension doCreateExtension(Bundle bundle) {
+			final String name = names.get(bundle);
+			return new Extension() {
+				@Override
+				public void start() {
+					if ("blocker".equals(name)) {
+						blocking.countDown();
+						await(release);
+					} else {
+						record(name);
+					}
+				}
+
+				@Override
+				public void destroy() {
+					destroyed.add(name);
+				}
+			};
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		bundleContext = createNiceMock(BundleContext.class);
+		replay(bundleContext);
+		extender = new TestExtender();
+		extender.setThreads(1);
+		extender.start(bundleContext);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		release.countDown();
+		extender.stop(bundleContext);
+	}
+
+	@Test
+	public void queuedExtensionsStartByStartLevelAfterOtherTasks() throws Exception {
+		extender.addingBundle(bundle("blocker", 1), null);
+		assertTrue(blocking.await(10, TimeUnit.SECONDS));
+
+		extender.addingBundle(bundle("30", 30), null);
+		extender.addingBundle(bundle("10a", 10), null);
+		extender.getExecutors().execute(new Runnable() {
+			@Override
+			public void run() {
+				record("task");
+			}
+		});
+		extender.addingBundle(bundle("20", 20), null);
+		extender.addingBundle(bundle("10b", 10), null);
+		assertEquals(5, extender.getQueueDepth());
+
+		release.countDown();
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("task", "10a", "10b", "20", "30"), started);
+	}
+
+	/**
+	 * A bundle stopped while its extension waits for a thread is destroyed
+	 * right away and its start leaves the queue.
+	 */
+	@Test
+	public void destroyDropsQueuedStart() throws Exception {
+		finished = new CountDownLatch(1);
+		extender.addingBundle(bundle("blocker", 1), null);
+		assertTrue(blocking.await(10, TimeUnit.SECONDS));
+
+		Bundle stopped = bundle("stopped", 10);
+		extender.addingBundle(stopped, null);
+		extender.addingBundle(bundle("20", 20), null);
+		assertEquals(2, extender.getQueueDepth());
+
+		extender.removedBundle(stopped, null, stopped);
+		assertEquals(Arrays.asList("stopped"), destroyed);
+		assertEquals(1, extender.getQueueDepth());
+
+		release.countDown();
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("20"), started);
+	}
+
+	private void record(String name) {
+		started.add(name);
+		finished.countDown();
+	}
+
+	private Bundle bundle(String name, int level) {
+		BundleStartLevel startLevel = createNiceMock(BundleStartLevel.class);
+		expect(startLevel.getStartLevel()).andReturn(level).anyTimes();
+		Bundle bundle = createNiceMock(Bundle.class);
+		expect(bundle.getBundleId()).andReturn((long) names.size() + 1).anyTimes();
+		expect(bundle.getState()).andReturn(Bundle.ACTIVE).anyTimes();
+		expect(bundle.getBundleContext()).andReturn(bundleContext).anyTimes();
+		expect(bundle.adapt(BundleStartLevel.class)).andReturn(startLevel).anyTimes();
+		expect(bundle.getSymbolicName()).andReturn(name).anyTimes();
+		replay(startLevel, bundle);
+		names.put(bundle, name);
+		return bundle;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
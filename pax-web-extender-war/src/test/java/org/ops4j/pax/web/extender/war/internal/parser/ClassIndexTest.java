@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.extender.war.internal.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+
+import javax.servlet.annotation.WebListener;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClassIndexTest {
+
+	private ClassIndex index;
+
+	@Before
+	public void setUp() throws IOException {
+		index = new ClassIndex();
+		for (Class<?> clazz : Arrays.asList(BaseServlet.class, AnnotatedServlet.class, Listener.class)) {
+			index.index(bytecode(clazz));
+		}
+	}
+
+	@Test
+	public void annotatedClasses() {
+		assertEquals(Collections.singleton(AnnotatedServlet.class.getName()),
+				index.getAnnotatedClasses(WebServlet.class));
+		assertEquals(Collections.singleton(Listener.class.getName()),
+				index.getAnnotatedClasses(WebListener.class));
+	}
+
+	@Test
+	public void subtypesAreTransitive() {
+		assertEquals(new TreeSet<String>(Arrays.asList(BaseServlet.class.getName(), AnnotatedServlet.class.getName())),
+				index.getSubtypes(HttpServlet.class.getName()));
+		assertEquals(Collections.singleton(AnnotatedServlet.class.getName()),
+				index.getSubtypes(BaseServlet.class.getName()));
+		assertEquals(Collections.emptySet(), index.getSubtypes(Runnable.class.getName()));
+	}
+
+	private static byte[] bytecode(Class<?> clazz) throws IOException {
+		final String resource = "/" + clazz.getName().replace('.', '/') + ".class";
+		try (InputStream in = ClassIndexTest.class.getResourceAsStream(resource)) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		}
+	}
+
+	public abstract static class BaseServlet extends HttpServlet {
+		private static final long serialVersionUID = 1L;
+	}
+
+	@WebServlet("/annotated")
+	public static class AnnotatedServlet extends BaseServlet {
+		private static final long serialVersionUID = 1L;
+	}
+
+	@WebListener
+	public static class Listener {
+	}
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.extender.war.internal.parser;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletContainerInitializer;
+import javax.servlet.ServletContext;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ops4j.pax.web.extender.war.internal.model.WebApp;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppErrorPage;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppFilter;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppFilterMapping;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppInitParam;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppListener;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppServlet;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppServletContainerInitializer;
+import org.ops4j.pax.web.extender.war.internal.model.WebAppServletMapping;
+import org.osgi.framework.Bundle;
+
+public class WebAppMetadataCacheTest {
+
+	public static class Initializer implements ServletContainerInitializer {
+		@Override
+		public void onStartup(Set<Class<?>> classes, ServletContext context) {
+		}
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Bundle bundle;
+	private WebAppMetadataCache cache;
+
+	@Before
+	public void setUp() {
+		bundle = createMock(Bundle.class);
+		expect(bundle.getBundleId()).andReturn(42L).anyTimes();
+		expect(bundle.getLastModified()).andReturn(1000L).anyTimes();
+		expect(bundle.getLocation()).andReturn("mvn:org.example/war/1.0/war").anyTimes();
+		expect(bundle.getEntry("/")).andReturn(null).anyTimes();
+		replay(bundle);
+		cache = new WebAppMetadataCache(folder.getRoot(), "4.2.0");
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		final WebApp webApp = new WebApp();
+		webApp.setDisplayName("example");
+		webApp.setSessionTimeout("30");
+
+		final WebAppInitParam param = new WebAppInitParam();
+		param.setParamName("name");
+		param.setParamValue("value");
+		webApp.addContextParam(param);
+
+		final WebAppFilterMapping filterMapping = new WebAppFilterMapping();
+		filterMapping.setFilterName("filter");
+		filterMapping.setUrlPattern("/*");
+		filterMapping.setDispatcherTypes(EnumSet.of(DispatcherType.REQUEST));
+		webApp.addFilterMapping(filterMapping);
+		final WebAppFilter filter = new WebAppFilter();
+		filter.setFilterName("filter");
+		filter.setFilterClass("org.example.Filter");
+		webApp.addFilter(filter);
+
+		final WebAppServlet servlet = new WebAppServlet();
+		servlet.setServletName("servlet");
+		servlet.setServletClassName("org.example.Servlet");
+		servlet.setLoadOnStartup(1);
+		webApp.addServlet(servlet);
+		final WebAppServletMapping servletMapping = new WebAppServletMapping();
+		servletMapping.setServletName("servlet");
+		servletMapping.setUrlPattern("/servlet/*");
+		webApp.addServletMapping(servletMapping);
+
+		final WebAppListener listener = new WebAppListener();
+		listener.setListenerClass("org.example.Listener");
+		webApp.addListener(listener);
+		final WebAppErrorPage errorPage = new WebAppErrorPage();
+		errorPage.setErrorCode("404");
+		errorPage.setLocation("/404.html");
+		webApp.addErrorPage(errorPage);
+
+		final WebAppServletContainerInitializer initializer = new WebAppServletContainerInitializer();
+		initializer.setServletContainerInitializer(new Initializer());
+		initializer.setClasses(new Class<?>[] { String.class });
+		webApp.addServletContainerInitializer(initializer);
+		webApp.setWebFragments(Collections.singletonList(new URL("file:/fragment/META-INF/web-fragment.xml")));
+
+		final String key = cache.key(bundle, Collections.singleton(bundle));
+		cache.store(bundle, key, webApp);
+
+		final WebApp cached = new WebApp();
+		final Map<String, List<String>> initializers = new LinkedHashMap<String, List<String>>();
+		assertTrue(cache.load(bundle, key, cached, initializers));
+		assertEquals("example", cached.getDisplayName());
+		assertEquals("30", cached.getSessionTimeout());
+		assertEquals(1, cached.getContextParams().length);
+		assertEquals("value", cached.getContextParams()[0].getParamValue());
+
+		final WebAppServlet cachedServlet = cached.findServlet("servlet");
+		assertEquals("org.example.Servlet", cachedServlet.getServletClassName());
+		assertEquals(1, cachedServlet.getLoadOnStartup());
+		assertArrayEquals(new String[] { "/servlet/*" }, cachedServlet.getAliases());
+
+		final WebAppFilter cachedFilter = cached.findFilter("filter");
+		assertArrayEquals(new String[] { "/*" }, cachedFilter.getUrlPatterns());
+		// the mapping was added before the filter, so the filter has no dispatcher types
+		assertTrue(cachedFilter.getDispatcherTypes().isEmpty());
+		assertEquals(EnumSet.of(DispatcherType.REQUEST),
+				cached.getFilterMappings("filter").get(0).getDispatcherTypes());
+		assertEquals(Collections.singletonMap(Initializer.class.getName(), Arrays.asList("java.lang.String")),
+				initializers);
+		assertEquals(webApp.getWebFragments(), cached.getWebFragments());
+	}
+
+	@Test
+	public void updatedBundleIsMiss() {
+		final WebApp webApp = new WebApp();
+		webApp.setDisplayName("example");
+		cache.store(bundle, cache.key(bundle, Collections.<Bundle>emptySet()), webApp);
+
+		final Bundle updated = createMock(Bundle.class);
+		expect(updated.getBundleId()).andReturn(42L).anyTimes();
+		expect(updated.getLastModified()).andReturn(2000L).anyTimes();
+		expect(updated.getLocation()).andReturn("mvn:org.example/war/1.0/war").anyTimes();
+		expect(updated.getEntry("/")).andReturn(null).anyTimes();
+		replay(updated);
+		final WebApp cached = new WebApp();
+		assertFalse(cache.load(updated, cache.key(updated, Collections.<Bundle>emptySet()), cached,
+				new HashMap<String, List<String>>()));
+		assertNull(cached.getDisplayName());
+	}
+
+	@Test
+	public void changedKeyIsMiss() {
+		final WebApp webApp = new WebApp();
+		webApp.setDisplayName("example");
+		cache.store(bundle, cache.key(bundle, Collections.<Bundle>emptySet()), webApp);
+
+		final WebAppMetadataCache upgraded = new WebAppMetadataCache(folder.getRoot(), "4.2.1");
+		final WebApp cached = new WebApp();
+		assertFalse(upgraded.load(bundle, upgraded.key(bundle, Collections.<Bundle>emptySet()), cached,
+				new HashMap<String, List<String>>()));
+		assertNull(cached.getDisplayName());
+	}
+
+}
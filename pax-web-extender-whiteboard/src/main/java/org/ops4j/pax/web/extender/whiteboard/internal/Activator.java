@@ -57,8 +57,12 @@ import org.ops4j.pax.web.extender.whiteboard.internal.tracker.WebSocketTracker;
 import org.ops4j.pax.web.extender.whiteboard.internal.tracker.ServletContextHelperTracker;
 import org.ops4j.pax.web.extender.whiteboard.internal.tracker.WelcomeFileMappingTracker;
 import org.ops4j.pax.web.extender.whiteboard.internal.util.WebContainerUtils;
+import org.ops4j.pax.web.utils.AnnotationScannerCache;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.SynchronousBundleListener;
 import org.osgi.service.http.HttpContext;
 import org.osgi.service.http.context.ServletContextHelper;
 import org.osgi.util.tracker.ServiceTracker;
@@ -86,6 +90,17 @@ public class Activator implements BundleActivator {
 	 * List of service trackers.
 	 */
 	private List<ServiceTracker<?, ?>> trackers;
+	/**
+	 * Drops the cached annotation metadata of uninstalled bundles.
+	 */
+	private final BundleListener annotationScannerEviction = new SynchronousBundleListener() {
+		@Override
+		public void bundleChanged(final BundleEvent event) {
+			if (event.getType() == BundleEvent.UNINSTALLED) {
+				AnnotationScannerCache.evict(event.getBundle());
+			}
+		}
+	};
 
 	/**
 	 * @see BundleActivator#start(BundleContext)
@@ -93,6 +108,7 @@ public class Activator implements BundleActivator {
 	public void start(final BundleContext bundleContext) throws Exception {
 		extenderContext = new ExtenderContext();
 		trackers = new ArrayList<ServiceTracker<?, ?>>();
+		bundleContext.addBundleListener(annotationScannerEviction);
 
 		trackHttpContexts(bundleContext);
 		trackServlets(bundleContext);
@@ -127,6 +143,7 @@ public class Activator implements BundleActivator {
 			tracker.close();
 		}
 		this.trackers = null;
+		bundleContext.removeBundleListener(annotationScannerEviction);
 		LOG.debug("Pax Web Extender stopped");
 	}
 
@@ -34,6 +34,8 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.web.extender.whiteboard.ExtenderConstants;
 import org.ops4j.pax.web.extender.whiteboard.HttpContextMapping;
+import org.ops4j.pax.web.extender.whiteboard.internal.element.FilterWebElement;
+import org.ops4j.pax.web.extender.whiteboard.internal.element.ServletWebElement;
 import org.ops4j.pax.web.extender.whiteboard.internal.element.WebElement;
 import org.ops4j.pax.web.extender.whiteboard.internal.util.DictionaryUtils;
 import org.ops4j.pax.web.extender.whiteboard.internal.util.WebContainerUtils;
@@ -155,6 +157,79 @@ public class WebApplication implements ReplaceableServiceListener<HttpService> {
         return empty;
 	}
 
+	/**
+	 * Replaces a web element by one registering the same web component with
+	 * other properties. Servlets and filters differing in their mapping and
+	 * init params only are remapped in place, without being initialized
+	 * again. Other web elements are unregistered and registered again, in
+	 * one batch. The other web elements and the context stay as they are and
+	 * the order of the web elements is kept.
+	 * 
+	 * @param webElement
+	 *            registered web element
+	 * @param replacement
+	 *            web element to register instead
+	 */
+	public void replaceWebElement(final WebElement webElement, final WebElement replacement) {
+		NullArgumentException.validateNotNull(webElement, "Registerer");
+		NullArgumentException.validateNotNull(replacement, "Registerer");
+		httpServiceLock.readLock().lock();
+		try {
+			final int index = webElements.indexOf(webElement);
+			if (index < 0) {
+				webElements.add(replacement);
+			} else {
+				webElements.set(index, replacement);
+			}
+			final boolean batch = httpService != null && httpContext != null
+					&& WebContainerUtils.isWebContainer(httpService);
+			if (batch && index >= 0 && remapWebElement(webElement, replacement)) {
+				return;
+			}
+			if (batch) {
+				((WebContainer) httpService).begin(httpContext);
+			}
+			try {
+				if (index >= 0) {
+					unregisterWebElement(webElement);
+				}
+				registerWebElement(replacement);
+			} finally {
+				if (batch) {
+					((WebContainer) httpService).end(httpContext);
+				}
+			}
+		} finally {
+			httpServiceLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Remaps a registered servlet or filter to the mapping and init params of
+	 * its replacement. A failed remapping leaves the registration as it was.
+	 * 
+	 * @return true if remapped, false if the replacement has to be registered
+	 */
+	private boolean remapWebElement(final WebElement webElement, final WebElement replacement) {
+		//CHECKSTYLE:OFF
+		try {
+			if (webElement instanceof ServletWebElement && replacement instanceof ServletWebElement
+					&& ((ServletWebElement) webElement).canRemap((ServletWebElement) replacement)) {
+				((ServletWebElement) replacement).remap(httpService);
+				return true;
+			}
+			if (webElement instanceof FilterWebElement && replacement instanceof FilterWebElement
+					&& ((FilterWebElement) webElement).canRemap((FilterWebElement) replacement)) {
+				((FilterWebElement) replacement).remap(httpService);
+				return true;
+			}
+		} catch (Exception e) {
+			LOG.warn("Remapping [" + webElement + "] failed, registering [" + replacement + "] again", e);
+		}
+		//CHECKSTYLE:ON
+		return false;
+	}
+
     @Override
     public void serviceChanged(HttpService oldService, HttpService newService) {
         httpServiceLock.writeLock().lock();
@@ -270,8 +345,19 @@ public class WebApplication implements ReplaceableServiceListener<HttpService> {
 		httpServiceLock.readLock().lock();
 		try {
 			if (httpService != null && httpContext != null) {
-				for (WebElement registerer : webElements) {
-					registerWebElement(registerer);
+				// stage all elements, so the context is started only once
+				final boolean batch = WebContainerUtils.isWebContainer(httpService) && webElements.size() > 1;
+				if (batch) {
+					((WebContainer) httpService).begin(httpContext);
+				}
+				try {
+					for (WebElement registerer : webElements) {
+						registerWebElement(registerer);
+					}
+				} finally {
+					if (batch) {
+						((WebContainer) httpService).end(httpContext);
+					}
 				}
 			}
 		} finally {
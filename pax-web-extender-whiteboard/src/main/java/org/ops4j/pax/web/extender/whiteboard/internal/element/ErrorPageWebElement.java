@@ -15,6 +15,8 @@
  */
  package org.ops4j.pax.web.extender.whiteboard.internal.element;
 
+import java.util.Objects;
+
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.web.extender.whiteboard.ErrorPageMapping;
 import org.ops4j.pax.web.extender.whiteboard.internal.util.WebContainerUtils;
@@ -81,6 +83,15 @@ public class ErrorPageWebElement implements WebElement {
 		return errorPageMapping.getHttpContextId();
 	}
 
+	public boolean hasSameMapping(final WebElement other) {
+		if (!(other instanceof ErrorPageWebElement)) {
+			return false;
+		}
+		final ErrorPageMapping mapping = ((ErrorPageWebElement) other).errorPageMapping;
+		return Objects.equals(errorPageMapping.getError(), mapping.getError())
+				&& Objects.equals(errorPageMapping.getLocation(), mapping.getLocation());
+	}
+
 	@Override
 	public String toString() {
 		return new StringBuilder().append(this.getClass().getSimpleName())
@@ -18,6 +18,9 @@
  */
 package org.ops4j.pax.web.extender.whiteboard.internal.element;
 
+import java.util.Arrays;
+import java.util.Objects;
+
 import javax.servlet.Filter;
 
 import org.ops4j.lang.NullArgumentException;
@@ -25,6 +28,7 @@ import org.ops4j.pax.web.extender.whiteboard.FilterMapping;
 import org.ops4j.pax.web.extender.whiteboard.internal.util.DictionaryUtils;
 import org.ops4j.pax.web.extender.whiteboard.internal.util.WebContainerUtils;
 import org.ops4j.pax.web.service.WebContainer;
+import org.ops4j.pax.web.service.WebContainerConstants;
 import org.osgi.service.http.HttpContext;
 import org.osgi.service.http.HttpService;
 
@@ -94,6 +98,68 @@ public class FilterWebElement implements WebElement {
 		return filterMapping.getHttpContextId();
 	}
 
+	/**
+	 * Changes the mapping and init params of the registered filter to the
+	 * ones of this element, see {@link #canRemap(FilterWebElement)}. The
+	 * filter is not initialized again.
+	 */
+	public void remap(final HttpService httpService) {
+		((WebContainer) httpService).remapFilter(
+				filterMapping.getFilter(),
+				filterMapping.getUrlPatterns(),
+				filterMapping.getServletNames(),
+				DictionaryUtils.adapt(filterMapping.getInitParams()));
+	}
+
+	/**
+	 * Checks if another element registers the same filter the same way, so it
+	 * does not have to be registered again. The ranking ordering the filters
+	 * is part of the init params.
+	 * 
+	 * @param other
+	 *            web element to compare with
+	 * @return true if filter, url patterns, servlet names, init params and
+	 *         async support match
+	 */
+	public boolean hasSameMapping(final WebElement other) {
+		if (!(other instanceof FilterWebElement)) {
+			return false;
+		}
+		final FilterMapping mapping = ((FilterWebElement) other).filterMapping;
+		return filterMapping.getFilter() == mapping.getFilter()
+				&& Arrays.equals(filterMapping.getUrlPatterns(), mapping.getUrlPatterns())
+				&& Arrays.equals(filterMapping.getServletNames(), mapping.getServletNames())
+				&& Objects.equals(filterMapping.getInitParams(), mapping.getInitParams())
+				&& Objects.equals(filterMapping.getAsyncSupported(), mapping.getAsyncSupported());
+	}
+
+	/**
+	 * Checks if the registration of this element can be changed in place to
+	 * the one of another element: both register the same filter with the
+	 * same async support, name, ranking and dispatcher types, so the filter
+	 * keeps its position.
+	 * 
+	 * @param other
+	 *            filter web element replacing this one
+	 * @return true if the other element can remap the filter
+	 */
+	public boolean canRemap(final FilterWebElement other) {
+		final FilterMapping mapping = other.filterMapping;
+		return filterMapping.getFilter() == mapping.getFilter()
+				&& Objects.equals(filterMapping.getAsyncSupported(), mapping.getAsyncSupported())
+				&& sameInitParam(mapping, WebContainerConstants.FILTER_NAME)
+				&& sameInitParam(mapping, WebContainerConstants.FILTER_RANKING)
+				&& sameInitParam(mapping, WebContainerConstants.FILTER_MAPPING_DISPATCHER);
+	}
+
+	private boolean sameInitParam(final FilterMapping mapping, final String name) {
+		return Objects.equals(initParam(filterMapping, name), initParam(mapping, name));
+	}
+
+	private static String initParam(final FilterMapping mapping, final String name) {
+		return mapping.getInitParams() == null ? null : mapping.getInitParams().get(name);
+	}
+
 	@Override
 	public String toString() {
 		return new StringBuilder().append(this.getClass().getSimpleName())
@@ -18,6 +18,9 @@
  */
 package org.ops4j.pax.web.extender.whiteboard.internal.element;
 
+import java.util.Arrays;
+import java.util.Objects;
+
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.web.extender.whiteboard.JspMapping;
 import org.ops4j.pax.web.extender.whiteboard.internal.util.DictionaryUtils;
@@ -84,6 +87,15 @@ public class JspWebElement implements WebElement {
 		return jspMapping.getHttpContextId();
 	}
 
+	public boolean hasSameMapping(final WebElement other) {
+		if (!(other instanceof JspWebElement)) {
+			return false;
+		}
+		final JspMapping mapping = ((JspWebElement) other).jspMapping;
+		return Arrays.equals(jspMapping.getUrlPatterns(), mapping.getUrlPatterns())
+				&& Objects.equals(jspMapping.getInitParams(), mapping.getInitParams());
+	}
+
 	@Override
 	public String toString() {
 		return new StringBuilder().append(this.getClass().getSimpleName())
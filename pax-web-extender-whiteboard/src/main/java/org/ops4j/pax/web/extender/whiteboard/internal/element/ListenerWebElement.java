@@ -79,6 +79,11 @@ public class ListenerWebElement implements WebElement {
 		return listenerMapping.getHttpContextId();
 	}
 
+	public boolean hasSameMapping(final WebElement other) {
+		return other instanceof ListenerWebElement
+				&& listenerMapping.getListener() == ((ListenerWebElement) other).listenerMapping.getListener();
+	}
+
 	@Override
 	public String toString() {
 		return new StringBuilder().append(this.getClass().getSimpleName())
@@ -18,6 +18,8 @@
  */
 package org.ops4j.pax.web.extender.whiteboard.internal.element;
 
+import java.util.Objects;
+
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.web.extender.whiteboard.ResourceMapping;
 import org.osgi.service.http.HttpContext;
@@ -69,6 +71,15 @@ public class ResourceWebElement implements WebElement {
 		httpService.unregister(resourceMapping.getAlias());
 	}
 
+	public boolean hasSameMapping(final WebElement other) {
+		if (!(other instanceof ResourceWebElement)) {
+			return false;
+		}
+		final ResourceMapping mapping = ((ResourceWebElement) other).resourceMapping;
+		return Objects.equals(resourceMapping.getAlias(), mapping.getAlias())
+				&& Objects.equals(resourceMapping.getPath(), mapping.getPath());
+	}
+
 	@Override
 	public String toString() {
 		return new StringBuilder().append(this.getClass().getSimpleName())
@@ -18,7 +18,11 @@
  */
 package org.ops4j.pax.web.extender.whiteboard.internal.element;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+
+import javax.servlet.MultipartConfigElement;
 
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.web.extender.whiteboard.ServletMapping;
@@ -26,6 +30,7 @@ import org.ops4j.pax.web.extender.whiteboard.internal.util.DictionaryUtils;
 import org.ops4j.pax.web.extender.whiteboard.internal.util.WebContainerUtils;
 import org.ops4j.pax.web.extender.whiteboard.runtime.DefaultErrorPageMapping;
 import org.ops4j.pax.web.service.WebContainer;
+import org.ops4j.pax.web.service.WebContainerConstants;
 import org.osgi.service.http.HttpContext;
 import org.osgi.service.http.HttpService;
 
@@ -111,6 +116,99 @@ public class ServletWebElement implements WebElement {
 		return servletMapping.getHttpContextId();
 	}
 
+	/**
+	 * Changes the url patterns and init params of the registered servlet to
+	 * the ones of this element, see {@link #canRemap(ServletWebElement)}. The
+	 * servlet is not initialized again.
+	 */
+	public void remap(final HttpService httpService) throws Exception {
+		((WebContainer) httpService).remapServlet(
+				servletMapping.getServlet(),
+				servletMapping.getUrlPatterns(),
+				DictionaryUtils.adapt(servletMapping.getInitParams()));
+	}
+
+	/**
+	 * Checks if another element registers the same servlet the same way, so
+	 * it does not have to be registered again.
+	 * 
+	 * @param other
+	 *            web element to compare with
+	 * @return true if servlet, name, alias, url patterns, init params, load on
+	 *         startup, async support, multipart config and error pages match
+	 */
+	public boolean hasSameMapping(final WebElement other) {
+		if (!(other instanceof ServletWebElement)) {
+			return false;
+		}
+		final ServletMapping mapping = ((ServletWebElement) other).servletMapping;
+		return hasSameServlet((ServletWebElement) other)
+				&& Objects.equals(servletMapping.getAlias(), mapping.getAlias())
+				&& Arrays.equals(servletMapping.getUrlPatterns(), mapping.getUrlPatterns())
+				&& Objects.equals(servletMapping.getInitParams(), mapping.getInitParams());
+	}
+
+	/**
+	 * Checks if the registration of this element can be changed in place to
+	 * the one of another element: both register the same servlet with url
+	 * patterns, not with an alias, and differ in url patterns and init
+	 * params only.
+	 * 
+	 * @param other
+	 *            servlet web element replacing this one
+	 * @return true if the other element can remap the servlet
+	 */
+	public boolean canRemap(final ServletWebElement other) {
+		return servletMapping.getAlias() == null
+				&& other.servletMapping.getAlias() == null
+				&& (servletMapping.getServletName() != null
+						|| Objects.equals(servletName(servletMapping), servletName(other.servletMapping)))
+				&& hasSameServlet(other);
+	}
+
+	private static String servletName(final ServletMapping mapping) {
+		return mapping.getInitParams() == null ? null
+				: mapping.getInitParams().get(WebContainerConstants.SERVLET_NAME);
+	}
+
+	private boolean hasSameServlet(final ServletWebElement other) {
+		final ServletMapping mapping = other.servletMapping;
+		return servletMapping.getServlet() == mapping.getServlet()
+				&& Objects.equals(servletMapping.getServletName(), mapping.getServletName())
+				&& Objects.equals(servletMapping.getLoadOnStartup(), mapping.getLoadOnStartup())
+				&& Objects.equals(servletMapping.getAsyncSupported(), mapping.getAsyncSupported())
+				&& sameMultipartConfig(servletMapping.getMultipartConfig(), mapping.getMultipartConfig())
+				&& sameErrorMappings(errorMappings, other.errorMappings);
+	}
+
+	private static boolean sameMultipartConfig(final MultipartConfigElement config,
+			final MultipartConfigElement other) {
+		if (config == null || other == null) {
+			return config == other;
+		}
+		return Objects.equals(config.getLocation(), other.getLocation())
+				&& config.getMaxFileSize() == other.getMaxFileSize()
+				&& config.getMaxRequestSize() == other.getMaxRequestSize()
+				&& config.getFileSizeThreshold() == other.getFileSizeThreshold();
+	}
+
+	private static boolean sameErrorMappings(final List<DefaultErrorPageMapping> mappings,
+			final List<DefaultErrorPageMapping> others) {
+		if (mappings == null || others == null) {
+			return mappings == others;
+		}
+		if (mappings.size() != others.size()) {
+			return false;
+		}
+		for (int i = 0; i < mappings.size(); i++) {
+			if (!Objects.equals(mappings.get(i).getError(), others.get(i).getError())
+					|| !Objects.equals(mappings.get(i).getLocation(), others.get(i).getLocation())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		return new StringBuilder().append(this.getClass().getSimpleName())
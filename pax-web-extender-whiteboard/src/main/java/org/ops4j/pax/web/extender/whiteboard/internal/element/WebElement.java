@@ -36,4 +36,15 @@ public interface WebElement {
 
 	String getHttpContextId();
 
+	/**
+	 * Checks if another web element, created from the same service with
+	 * modified service properties, registers the same way. Property changes
+	 * that do not matter to the registration leave it alone then.
+	 * 
+	 * @param other
+	 *            web element to compare with
+	 * @return true if the other web element registers the same way
+	 */
+	boolean hasSameMapping(WebElement other);
+
 }
\ No newline at end of file
@@ -53,4 +53,10 @@ public class WebSocketElement implements WebElement {
         return mapping.getHttpContextId();
     }
 
+    @Override
+    public boolean hasSameMapping(WebElement other) {
+        return other instanceof WebSocketElement
+                && mapping.getWebSocket() == ((WebSocketElement) other).mapping.getWebSocket();
+    }
+
 }
@@ -15,6 +15,8 @@
  */
  package org.ops4j.pax.web.extender.whiteboard.internal.element;
 
+import java.util.Arrays;
+
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.web.extender.whiteboard.WelcomeFileMapping;
 import org.ops4j.pax.web.extender.whiteboard.internal.util.WebContainerUtils;
@@ -83,6 +85,15 @@ public class WelcomeFileWebElement implements WebElement {
 		return welcomeFileMapping.getHttpContextId();
 	}
 
+	public boolean hasSameMapping(final WebElement other) {
+		if (!(other instanceof WelcomeFileWebElement)) {
+			return false;
+		}
+		final WelcomeFileMapping mapping = ((WelcomeFileWebElement) other).welcomeFileMapping;
+		return welcomeFileMapping.isRedirect() == mapping.isRedirect()
+				&& Arrays.equals(welcomeFileMapping.getWelcomeFiles(), mapping.getWelcomeFiles());
+	}
+
 	@Override
 	public String toString() {
 		return new StringBuilder().append(this.getClass().getSimpleName())
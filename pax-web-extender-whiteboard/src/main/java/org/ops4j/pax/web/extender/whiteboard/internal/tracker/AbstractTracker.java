@@ -17,6 +17,9 @@
  */
 package org.ops4j.pax.web.extender.whiteboard.internal.tracker;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.web.extender.whiteboard.ExtenderConstants;
 import org.ops4j.pax.web.extender.whiteboard.internal.ExtenderContext;
@@ -24,6 +27,7 @@ import org.ops4j.pax.web.extender.whiteboard.internal.WebApplication;
 import org.ops4j.pax.web.extender.whiteboard.internal.element.WebElement;
 import org.ops4j.pax.web.extender.whiteboard.internal.util.ServicePropertiesUtils;
 import org.ops4j.pax.web.extender.whiteboard.runtime.DefaultHttpContextMapping;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
@@ -58,6 +62,12 @@ abstract class AbstractTracker<T, W extends WebElement> implements
 	 */
 	private final BundleContext bundleContext;
 
+	/**
+	 * Registrations of the tracked web elements. Once the service properties
+	 * were modified the registered web element differs from the tracked one.
+	 */
+	private final ConcurrentMap<W, Registration<W>> registrations = new ConcurrentHashMap<W, Registration<W>>();
+
 	/**
 	 * Constructor.
 	 * 
@@ -154,14 +164,8 @@ abstract class AbstractTracker<T, W extends WebElement> implements
 
 		W webElement = createWebElement(serviceReference, registered);
 		if (webElement != null) {
-			String httpContextId = webElement.getHttpContextId();
-			final WebApplication webApplication = extenderContext
-					.getWebApplication(serviceReference.getBundle(),
-							httpContextId, sharedHttpContext);
-			if ((httpContextId == null && !webApplication.hasHttpContextMapping()) /*|| (httpContextId != null && httpContextId.equalsIgnoreCase(HttpWhiteboardConstants.HTTP_WHITEBOARD_DEFAULT_CONTEXT_NAME))*/) {
-				webApplication.setHttpContextMapping(new DefaultHttpContextMapping());
-			}
-			webApplication.addWebElement(webElement);
+			addWebElement(serviceReference.getBundle(), webElement, sharedHttpContext);
+			registrations.put(webElement, new Registration<W>(webElement, sharedHttpContext));
 			return webElement;
 		} else {
 			// if no element was created release the service
@@ -170,9 +174,58 @@ abstract class AbstractTracker<T, W extends WebElement> implements
 		}
 	}
 
+	/**
+	 * Applies modified service properties to the registered web element only.
+	 * The web element is created again from the modified properties and, if
+	 * it differs from the registered one, replaced within its web application
+	 * without touching the other web elements of the context. A web element
+	 * that moves to another http context is removed from the old and added to
+	 * the new one.
+	 * 
+	 * @see ServiceTracker#modifiedService(ServiceReference, Object)
+	 */
 	@Override
-	public void modifiedService(ServiceReference<T> reference, W service) {
-		// This was never handled - what can be done here?
+	public void modifiedService(final ServiceReference<T> serviceReference,
+			final W webElement) {
+		LOG.debug("Service modified {}", serviceReference);
+		final Registration<W> registration = registrations.get(webElement);
+		if (registration == null) {
+			return;
+		}
+		final W modified;
+		final T registered = bundleContext.getService(serviceReference);
+		try {
+			modified = createWebElement(serviceReference, registered);
+		} finally {
+			bundleContext.ungetService(serviceReference);
+		}
+		if (modified == null) {
+			LOG.warn("Modified service [" + serviceReference
+					+ "] is not valid anymore, keeping ["
+					+ registration.webElement + "]");
+			return;
+		}
+
+		final Boolean sharedHttpContext = ServicePropertiesUtils.extractSharedHttpContext(serviceReference);
+		final Bundle bundle = serviceReference.getBundle();
+		final String httpContextId = modified.getHttpContextId();
+		if (!sharedHttpContext.equals(registration.sharedHttpContext)
+				|| (httpContextId == null ? registration.webElement.getHttpContextId() != null
+						: !httpContextId.equals(registration.webElement.getHttpContextId()))) {
+			removeWebElement(bundle, registration.webElement, registration.sharedHttpContext);
+			addWebElement(bundle, modified, sharedHttpContext);
+		} else if (isModified(registration.webElement, modified)) {
+			final WebApplication webApplication = extenderContext
+					.getExistingWebApplication(bundle, httpContextId, sharedHttpContext);
+			if (webApplication == null) {
+				return;
+			}
+			webApplication.replaceWebElement(registration.webElement, modified);
+		} else {
+			LOG.debug("Modified service {} does not change {}", serviceReference, registration.webElement);
+			return;
+		}
+		registrations.put(webElement, new Registration<W>(modified, sharedHttpContext));
 	}
 
 	/**
@@ -183,16 +236,36 @@ abstract class AbstractTracker<T, W extends WebElement> implements
 			final W webElement) {
 		LOG.debug("Service removed {}", serviceReference);
 
-		Boolean sharedHttpContext = Boolean
-				.parseBoolean((String) serviceReference
-						.getProperty(ExtenderConstants.PROPERTY_HTTP_CONTEXT_SHARED));
+		final Registration<W> registration = registrations.remove(webElement);
+		if (registration != null) {
+			removeWebElement(serviceReference.getBundle(),
+					registration.webElement, registration.sharedHttpContext);
+		} else {
+			removeWebElement(serviceReference.getBundle(), webElement, Boolean
+					.parseBoolean((String) serviceReference
+							.getProperty(ExtenderConstants.PROPERTY_HTTP_CONTEXT_SHARED)));
+		}
+	}
+
+	private void addWebElement(final Bundle bundle, final W webElement,
+			final Boolean sharedHttpContext) {
+		String httpContextId = webElement.getHttpContextId();
+		final WebApplication webApplication = extenderContext
+				.getWebApplication(bundle, httpContextId, sharedHttpContext);
+		if ((httpContextId == null && !webApplication.hasHttpContextMapping()) /*|| (httpContextId != null && httpContextId.equalsIgnoreCase(HttpWhiteboardConstants.HTTP_WHITEBOARD_DEFAULT_CONTEXT_NAME))*/) {
+			webApplication.setHttpContextMapping(new DefaultHttpContextMapping());
+		}
+		webApplication.addWebElement(webElement);
+	}
 
+	private void removeWebElement(final Bundle bundle, final W webElement,
+			final Boolean sharedHttpContext) {
 		final WebApplication webApplication = extenderContext
-				.getExistingWebApplication(serviceReference.getBundle(),
+				.getExistingWebApplication(bundle,
 						webElement.getHttpContextId(), sharedHttpContext);
 		boolean remove = true;
 		
-		if (sharedHttpContext) {
+		if (sharedHttpContext && webApplication != null) {
 			Integer sharedWebApplicationCounter = extenderContext.getSharedWebApplicationCounter(webApplication);
 			if (sharedWebApplicationCounter != null && sharedWebApplicationCounter > 0) {
 				remove = false;
@@ -227,4 +300,36 @@ abstract class AbstractTracker<T, W extends WebElement> implements
 	abstract W createWebElement(final ServiceReference<T> serviceReference,
 			final T published);
 
+	/**
+	 * Compares the registered web element with the one created from modified
+	 * service properties, so property changes that do not matter to the
+	 * registration do not re-register the web element.
+	 * 
+	 * @param registered
+	 *            web element currently registered
+	 * @param modified
+	 *            web element created from the modified service properties
+	 * 
+	 * @return true if the modified web element has to replace the registered
+	 *         one
+	 */
+	boolean isModified(final W registered, final W modified) {
+		return !registered.hasSameMapping(modified);
+	}
+
+	/**
+	 * Web element registered for a tracked one.
+	 */
+	private static final class Registration<W> {
+
+		private final W webElement;
+
+		private final Boolean sharedHttpContext;
+
+		private Registration(final W webElement, final Boolean sharedHttpContext) {
+			this.webElement = webElement;
+			this.sharedHttpContext = sharedHttpContext;
+		}
+	}
+
 }
@@ -35,6 +35,7 @@ import org.ops4j.pax.web.extender.whiteboard.internal.element.FilterWebElement;
 import org.ops4j.pax.web.extender.whiteboard.internal.util.ServicePropertiesUtils;
 import org.ops4j.pax.web.extender.whiteboard.runtime.DefaultFilterMapping;
 import org.ops4j.pax.web.service.WebContainerConstants;
+import org.ops4j.pax.web.utils.AnnotationScannerCache;
 import org.ops4j.pax.web.utils.FilterAnnotationScanner;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -104,7 +105,7 @@ public class FilterTracker extends AbstractTracker<Filter, FilterWebElement> {
 		
 		String[] urlPatterns = null;
 		
-		FilterAnnotationScanner annotationScan = new FilterAnnotationScanner(published.getClass());
+		FilterAnnotationScanner annotationScan = AnnotationScannerCache.getFilterScanner(published.getClass());
 		
 		if (annotationScan.scanned) {
 			if (urlPatternsProp == null) {
@@ -247,4 +248,5 @@ public class FilterTracker extends AbstractTracker<Filter, FilterWebElement> {
 		mapping.setInitParams(initParams);
 		return new FilterWebElement(mapping);
 	}
+
 }
@@ -34,6 +34,7 @@ import org.ops4j.pax.web.extender.whiteboard.internal.util.ServicePropertiesUtil
 import org.ops4j.pax.web.extender.whiteboard.runtime.DefaultErrorPageMapping;
 import org.ops4j.pax.web.extender.whiteboard.runtime.DefaultServletMapping;
 import org.ops4j.pax.web.service.WebContainerConstants;
+import org.ops4j.pax.web.utils.AnnotationScannerCache;
 import org.ops4j.pax.web.utils.ServletAnnotationScanner;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
@@ -111,7 +112,7 @@ public class ServletTracker<T extends Servlet> extends
         }
 		
 		
-		ServletAnnotationScanner annotationScan = new ServletAnnotationScanner(published.getClass());
+		ServletAnnotationScanner annotationScan = AnnotationScannerCache.getServletScanner(published.getClass());
 
 		if (annotationScan.scanned) {
 			if (urlPatternsProp == null) {
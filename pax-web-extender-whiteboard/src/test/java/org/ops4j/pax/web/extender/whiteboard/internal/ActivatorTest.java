@@ -0,0 +1,137 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.extender.whiteboard.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.ops4j.pax.web.utils.AnnotationScannerCache;
+import org.ops4j.pax.web.utils.FilterAnnotationScanner;
+import org.ops4j.pax.web.utils.ServletAnnotationScanner;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.BundleReference;
+import org.osgi.framework.Filter;
+
+public class ActivatorTest {
+
+	@Test
+	public void annotationMetadataIsEvictedWhenBundleIsUninstalled() throws Exception {
+		BundleContext bundleContext = mock(BundleContext.class);
+		when(bundleContext.createFilter(anyString())).thenReturn(mock(Filter.class));
+		Activator activator = new Activator();
+		activator.start(bundleContext);
+		ArgumentCaptor<BundleListener> listener = ArgumentCaptor.forClass(BundleListener.class);
+		verify(bundleContext).addBundleListener(listener.capture());
+
+		Bundle bundle = mock(Bundle.class);
+		Class<?> servletClass = new BundleClassLoader(bundle).loadClass(AnnotatedServlet.class.getName());
+		Class<?> otherClass = AnnotatedServlet.class;
+		assertEquals("/annotated", AnnotationScannerCache.getServletScanner(servletClass).urlPatterns[0]);
+		assertEquals("/annotated/*", AnnotationScannerCache.getFilterScanner(servletClass).urlPatterns[0]);
+		AnnotationScannerCache.getServletScanner(otherClass);
+		assertTrue(AnnotationScannerCache.isCached(servletClass));
+
+		listener.getValue().bundleChanged(new BundleEvent(BundleEvent.STOPPED, bundle));
+		assertTrue(AnnotationScannerCache.isCached(servletClass));
+
+		listener.getValue().bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, bundle));
+		assertFalse(AnnotationScannerCache.isCached(servletClass));
+		// classes of other bundles stay cached
+		assertTrue(AnnotationScannerCache.isCached(otherClass));
+
+		activator.stop(bundleContext);
+		verify(bundleContext).removeBundleListener(listener.getValue());
+	}
+
+	@Test
+	public void everyRegistrationGetsItsOwnMetadata() {
+		ServletAnnotationScanner servletScanner = AnnotationScannerCache.getServletScanner(AnnotatedServlet.class);
+		servletScanner.urlPatterns[0] = "/changed";
+		assertEquals("/annotated", AnnotationScannerCache.getServletScanner(AnnotatedServlet.class).urlPatterns[0]);
+
+		FilterAnnotationScanner filterScanner = AnnotationScannerCache.getFilterScanner(AnnotatedServlet.class);
+		filterScanner.urlPatterns[0] = "/changed/*";
+		filterScanner.dispatcherTypes[0] = DispatcherType.ERROR;
+		FilterAnnotationScanner copy = AnnotationScannerCache.getFilterScanner(AnnotatedServlet.class);
+		assertEquals("/annotated/*", copy.urlPatterns[0]);
+		assertEquals(DispatcherType.REQUEST, copy.dispatcherTypes[0]);
+	}
+
+	@WebServlet("/annotated")
+	@WebFilter("/annotated/*")
+	public static class AnnotatedServlet extends HttpServlet {
+
+		private static final long serialVersionUID = 1L;
+
+	}
+
+	/**
+	 * Defines its own copy of {@link AnnotatedServlet}, as the class loader of
+	 * a bundle would.
+	 */
+	private static class BundleClassLoader extends ClassLoader implements BundleReference {
+
+		private final Bundle bundle;
+
+		BundleClassLoader(Bundle bundle) {
+			super(ActivatorTest.class.getClassLoader());
+			this.bundle = bundle;
+		}
+
+		@Override
+		public Bundle getBundle() {
+			return bundle;
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!AnnotatedServlet.class.getName().equals(name)) {
+				return super.loadClass(name, resolve);
+			}
+			try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[4096];
+				for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+					out.write(buffer, 0, n);
+				}
+				return defineClass(name, out.toByteArray(), 0, out.size());
+			} catch (IOException e) {
+				throw new ClassNotFoundException(name, e);
+			}
+		}
+
+	}
+
+}
@@ -15,16 +15,32 @@
  */
  package org.ops4j.pax.web.extender.whiteboard.internal;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Collections;
+import java.util.Dictionary;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import javax.servlet.Filter;
+import javax.servlet.MultipartConfigElement;
+import javax.servlet.Servlet;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -33,7 +49,12 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.ops4j.pax.web.extender.whiteboard.HttpContextMapping;
+import org.ops4j.pax.web.extender.whiteboard.internal.element.FilterWebElement;
+import org.ops4j.pax.web.extender.whiteboard.internal.element.ServletWebElement;
 import org.ops4j.pax.web.extender.whiteboard.internal.element.WebElement;
+import org.ops4j.pax.web.extender.whiteboard.runtime.DefaultFilterMapping;
+import org.ops4j.pax.web.extender.whiteboard.runtime.DefaultServletMapping;
+import org.ops4j.pax.web.service.WebContainer;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.http.HttpContext;
@@ -149,6 +170,132 @@ public class WebApplicationTest {
 		}
 	}
 
+	@Test
+	public void replaceWebElementKeepsOtherElements() throws Exception {
+		final WebElement other = Mockito.mock(WebElement.class);
+		final WebElement replacement = Mockito.mock(WebElement.class);
+		instanceUnderTest.setHttpContextMapping(httpContextMapping);
+		instanceUnderTest.serviceChanged(null, newService);
+		instanceUnderTest.addWebElement(webElement);
+		instanceUnderTest.addWebElement(other);
+
+		instanceUnderTest.replaceWebElement(webElement, replacement);
+
+		verify(webElement).unregister(newService, httpContext);
+		verify(replacement).register(newService, httpContext);
+		verify(other, never()).unregister(any(HttpService.class), any(HttpContext.class));
+
+		// the replacement is unregistered with the application
+		assertFalse(instanceUnderTest.removeWebElement(replacement));
+		verify(replacement).unregister(newService, httpContext);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void replaceServletElementRemapsServletInPlace() throws Exception {
+		final WebContainer webContainer = mock(WebContainer.class);
+		final Servlet servlet = mock(Servlet.class);
+		instanceUnderTest.setHttpContextMapping(httpContextMapping);
+		instanceUnderTest.serviceChanged(null, webContainer);
+		final ServletWebElement registered = servletElement(servlet, null, "/a");
+		instanceUnderTest.addWebElement(registered);
+
+		instanceUnderTest.replaceWebElement(registered, servletElement(servlet, null, "/b"));
+
+		verify(webContainer).remapServlet(eq(servlet), aryEq(new String[] {"/b"}), any(Dictionary.class));
+		verify(webContainer, never()).unregisterServlet(servlet);
+		verify(webContainer).registerServlet(any(Servlet.class), anyString(), any(String[].class),
+				any(Dictionary.class), anyInt(), anyBoolean(), any(MultipartConfigElement.class),
+				any(HttpContext.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void replaceServletElementRegistersAgainIfRemappingFails() throws Exception {
+		final WebContainer webContainer = mock(WebContainer.class);
+		final Servlet servlet = mock(Servlet.class);
+		instanceUnderTest.setHttpContextMapping(httpContextMapping);
+		instanceUnderTest.serviceChanged(null, webContainer);
+		final ServletWebElement registered = servletElement(servlet, null, "/a");
+		instanceUnderTest.addWebElement(registered);
+		doThrow(new IllegalArgumentException()).when(webContainer).remapServlet(any(Servlet.class),
+				any(String[].class), any(Dictionary.class));
+
+		instanceUnderTest.replaceWebElement(registered, servletElement(servlet, null, "/b"));
+
+		verify(webContainer).unregisterServlet(servlet);
+		verify(webContainer).registerServlet(eq(servlet), anyString(), aryEq(new String[] {"/b"}),
+				any(Dictionary.class), anyInt(), anyBoolean(), any(MultipartConfigElement.class),
+				eq(httpContext));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void replaceServletElementWithAliasRegistersAgain() throws Exception {
+		final WebContainer webContainer = mock(WebContainer.class);
+		final Servlet servlet = mock(Servlet.class);
+		instanceUnderTest.setHttpContextMapping(httpContextMapping);
+		instanceUnderTest.serviceChanged(null, webContainer);
+		final ServletWebElement registered = servletElement(servlet, "/a", null);
+		instanceUnderTest.addWebElement(registered);
+
+		instanceUnderTest.replaceWebElement(registered, servletElement(servlet, "/b", null));
+
+		verify(webContainer, never()).remapServlet(any(Servlet.class), any(String[].class),
+				any(Dictionary.class));
+		verify(webContainer).unregister("/a");
+		verify(webContainer).registerServlet(eq("/b"), eq(servlet), any(Dictionary.class), eq(httpContext));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void replaceFilterElementRemapsFilterInPlace() throws Exception {
+		final WebContainer webContainer = mock(WebContainer.class);
+		final Filter filter = mock(Filter.class);
+		instanceUnderTest.setHttpContextMapping(httpContextMapping);
+		instanceUnderTest.serviceChanged(null, webContainer);
+		final FilterWebElement registered = filterElement(filter, "/a");
+		instanceUnderTest.addWebElement(registered);
+
+		instanceUnderTest.replaceWebElement(registered, filterElement(filter, "/b"));
+
+		verify(webContainer).remapFilter(eq(filter), aryEq(new String[] {"/b"}), any(String[].class),
+				any(Dictionary.class));
+		verify(webContainer, never()).unregisterFilter(filter);
+	}
+
+	@Test
+	public void elementsWithSameMappingNeedNoReplacement() {
+		final Servlet servlet = mock(Servlet.class);
+		final Filter filter = mock(Filter.class);
+		assertTrue(servletElement(servlet, null, "/a").hasSameMapping(servletElement(servlet, null, "/a")));
+		assertFalse(servletElement(servlet, null, "/a").hasSameMapping(servletElement(servlet, null, "/b")));
+		assertFalse(servletElement(servlet, null, "/a").hasSameMapping(
+				servletElement(mock(Servlet.class), null, "/a")));
+		assertTrue(filterElement(filter, "/a").hasSameMapping(filterElement(filter, "/a")));
+		assertFalse(filterElement(filter, "/a").hasSameMapping(filterElement(filter, "/b")));
+		assertFalse(filterElement(filter, "/a").hasSameMapping(servletElement(servlet, null, "/a")));
+	}
+
+	private static ServletWebElement servletElement(Servlet servlet, String alias, String urlPattern) {
+		final DefaultServletMapping mapping = new DefaultServletMapping();
+		mapping.setServlet(servlet);
+		mapping.setServletName("servlet");
+		mapping.setAlias(alias);
+		if (urlPattern != null) {
+			mapping.setUrlPatterns(urlPattern);
+		}
+		mapping.setInitParams(Collections.singletonMap("path", alias == null ? urlPattern : alias));
+		return new ServletWebElement(mapping, null);
+	}
+
+	private static FilterWebElement filterElement(Filter filter, String urlPattern) {
+		final DefaultFilterMapping mapping = new DefaultFilterMapping();
+		mapping.setFilter(filter);
+		mapping.setUrlPatterns(urlPattern);
+		return new FilterWebElement(mapping);
+	}
+
 	@Test
 	// @Ignore
 	public void executeMultiThreadedTestMultipleTimes() throws Throwable {
@@ -27,12 +27,13 @@ public class ConfigureRequestLogParameter {
 	public Boolean logLatency;
 	public Boolean logCookies;
 	public Boolean logServer;
+	public Integer bufferSize;
 	//CHECKSTYLE:ON
 
 	public ConfigureRequestLogParameter(String format, String retainDays,
 			Boolean append, Boolean extend, Boolean dispatch, String timeZone,
 			String dir, Boolean logLatency, Boolean logCookies,
-			Boolean logServer) {
+			Boolean logServer, Integer bufferSize) {
 		this.format = format;
 		this.retainDays = retainDays;
 		this.append = append;
@@ -43,5 +44,6 @@ public class ConfigureRequestLogParameter {
 		this.logLatency = logLatency;
 		this.logCookies = logCookies;
 		this.logServer = logServer;
+		this.bufferSize = bufferSize;
 	}
 }
\ No newline at end of file
@@ -19,7 +19,6 @@ package org.ops4j.pax.web.service.jetty.internal;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.AccessControlContext;
 import java.security.AccessController;
@@ -40,6 +39,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
+import javax.servlet.DispatcherType;
 import javax.servlet.ServletContainerInitializer;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
@@ -68,6 +68,10 @@ import org.eclipse.jetty.websocket.jsr356.server.deploy.WebSocketServerContainer
 import org.ops4j.pax.swissbox.core.ContextClassLoaderUtils;
 import org.ops4j.pax.web.service.WebContainerContext;
 import org.ops4j.pax.web.service.jetty.internal.util.DOMJettyWebXmlParser;
+import org.ops4j.pax.web.service.spi.metrics.RequestMetrics;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
+import org.ops4j.pax.web.service.spi.util.HttpContextResources;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.http.HttpContext;
@@ -91,6 +95,11 @@ class HttpServiceContext extends ServletContextHandler {
 	 */
 	private final AccessControlContext accessControllerContext;
 
+	/**
+	 * Resources of the http context, as seen by the servlet context.
+	 */
+	private final HttpContextResources resources;
+
 	private final Map<ServletContainerInitializer, Set<Class<?>>> servletContainerInitializers;
 
 	private final URL jettyWebXmlURL;
@@ -100,6 +109,15 @@ class HttpServiceContext extends ServletContextHandler {
 	private final AtomicReference<ServiceRegistration<ServletContext>> registration
             = new AtomicReference<ServiceRegistration<ServletContext>>();
 
+	private final String contextName;
+
+	private WebMetricsRegistry metrics;
+
+	/**
+	 * Metrics of this context while it is started, if metrics are enabled.
+	 */
+	private volatile RequestMetrics contextMetrics;
+
 	HttpServiceContext(
 			final HandlerContainer parent,
 			final Map<String, String> initParams,
@@ -107,6 +125,7 @@ class HttpServiceContext extends ServletContextHandler {
 			final String contextName,
 			final HttpContext httpContext,
 			final AccessControlContext accessControllerContext,
+			final Bundle bundle,
 			final Map<ServletContainerInitializer, Set<Class<?>>> containerInitializers,
 			URL jettyWebXmlUrl, List<String> virtualHosts) {
 		super(parent, "/" + contextName, SESSIONS | SECURITY);
@@ -116,6 +135,8 @@ class HttpServiceContext extends ServletContextHandler {
 		this.attributes = attributes;
 		this.httpContext = httpContext;
 		this.accessControllerContext = accessControllerContext;
+		this.resources = new HttpContextResources(httpContext, accessControllerContext, bundle);
+		this.contextName = contextName;
 		setDisplayName(httpContext.toString());
 		this.servletContainerInitializers = containerInitializers != null ? containerInitializers
 				: new HashMap<ServletContainerInitializer, Set<Class<?>>>();
@@ -156,6 +177,9 @@ class HttpServiceContext extends ServletContextHandler {
 
     @Override
 	protected void doStart() throws Exception {
+		if (metrics != null) {
+			contextMetrics = metrics.acquireContextMetrics(contextName);
+		}
     	
     	//need to initialize the logger as super doStart is to late already
     	setLogger(Log.getLogger(getDisplayName() == null?getContextPath():getDisplayName()));
@@ -258,18 +282,42 @@ class HttpServiceContext extends ServletContextHandler {
 
 	@Override
 	protected void doStop() throws Exception {
-		super.doStop();
+		try {
+			super.doStop();
+		} finally {
+			if (metrics != null) {
+				metrics.release(contextMetrics);
+			}
+			contextMetrics = null;
+		}
 		LOG.debug("Stopped servlet context for http context [" + httpContext
 				+ "]");
 	}
 
+	void setMetrics(WebMetricsRegistry metrics) {
+		this.metrics = metrics;
+	}
+
 	@Override
 	public void doHandle(String target, Request baseRequest,
 			HttpServletRequest request, HttpServletResponse response)
 			throws IOException, ServletException {
 		LOG.debug("Handling request for [" + target + "] using http context ["
 				+ httpContext + "]");
-		super.doHandle(target, baseRequest, request, response);
+		final RequestMetrics requestMetrics = baseRequest.getDispatcherType() == DispatcherType.REQUEST
+				? contextMetrics : null;
+		if (requestMetrics == null) {
+			super.doHandle(target, baseRequest, request, response);
+			return;
+		}
+		final long start = requestMetrics.begin();
+		boolean failed = true;
+		try {
+			super.doHandle(target, baseRequest, request, response);
+			failed = response.getStatus() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+		} finally {
+			requestMetrics.end(start, failed);
+		}
 	}
 
 	@Override
@@ -442,48 +490,7 @@ class HttpServiceContext extends ServletContextHandler {
 
 		@Override
 		public URL getResource(final String path) {
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("getting resource: [" + path + "]");
-			}
-			URL resource = null;
-
-			// IMPROVEMENT start PAXWEB-314
-			try {
-				resource = new URL(path);
-				LOG.debug("resource: [" + path
-						+ "] is already a URL, returning");
-				return resource;
-			} catch (MalformedURLException e) {
-				// do nothing, simply log
-				LOG.debug("not a URL or invalid URL: [" + path
-						+ "], treating as a file path");
-			}
-			// IMPROVEMENT end PAXWEB-314
-
-			// FIX start PAXWEB-233
-			final String p;
-			if (path != null && path.endsWith("/") && path.length() > 1) {
-				p = path.substring(0, path.length() - 1);
-			} else {
-				p = path;
-			}
-			// FIX end
-
-			try {
-				resource = AccessController.doPrivileged(
-						new PrivilegedExceptionAction<URL>() {
-							@Override
-							public URL run() throws Exception {
-								return httpContext.getResource(p);
-							}
-						}, accessControllerContext);
-				if (LOG.isDebugEnabled()) {
-					LOG.debug("found resource: " + resource);
-				}
-			} catch (PrivilegedActionException e) {
-				LOG.warn("Unauthorized access: " + e.getMessage());
-			}
-			return resource;
+			return resources.getResource(path);
 		}
 
 		@Override
@@ -19,6 +19,7 @@ package org.ops4j.pax.web.service.jetty.internal;
 
 import java.io.IOException;
 
+import javax.servlet.DispatcherType;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -26,6 +27,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.servlet.ServletHandler;
 import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.web.service.spi.metrics.RequestMetrics;
 import org.osgi.service.http.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +48,27 @@ class HttpServiceServletHandler extends ServletHandler {
 	public void doHandle(final String target, final Request baseRequest,
 			final HttpServletRequest request, final HttpServletResponse response)
 			throws IOException, ServletException {
+		final Object scope = baseRequest.getUserIdentityScope();
+		final RequestMetrics metrics = scope instanceof MeteredServletHolder
+				&& baseRequest.getDispatcherType() == DispatcherType.REQUEST
+				? ((MeteredServletHolder) scope).getMetrics() : null;
+		if (metrics == null) {
+			handleSecured(target, baseRequest, request, response);
+			return;
+		}
+		final long start = metrics.begin();
+		boolean failed = true;
+		try {
+			handleSecured(target, baseRequest, request, response);
+			failed = response.getStatus() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+		} finally {
+			metrics.end(start, failed);
+		}
+	}
+
+	private void handleSecured(final String target, final Request baseRequest,
+			final HttpServletRequest request, final HttpServletResponse response)
+			throws IOException, ServletException {
 		if (request.getMethod().equals(METHOD_TRACE)) {
 			throw new ServletException("HTTP TRACE method is disabled");
 		}
@@ -17,16 +17,34 @@
 package org.ops4j.pax.web.service.jetty.internal;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Server;
 
 public interface JettyFactory {
 
-	JettyServer createServer(Integer maxThreads, Integer minThreads, Integer threadIdleTimeout);
+	/**
+	 * @param requestExecutor
+	 *            executor running the server threads instead of a thread pool
+	 *            sized by the other parameters, may be null
+	 */
+	JettyServer createServer(Integer maxThreads, Integer minThreads, Integer threadIdleTimeout,
+			ExecutorService requestExecutor);
 
+	/**
+	 * Creates a plain connector.
+	 *
+	 * @param http2Enabled
+	 *            whether to accept upgrades to cleartext HTTP/2 (h2c)
+	 * @param http2MaxConcurrentStreams
+	 *            the maximum number of concurrent HTTP/2 streams, may be null
+	 * @param http2InitialWindowSize
+	 *            the initial HTTP/2 stream window size, may be null
+	 */
 	Connector createConnector(Server server, String name, int port, int httpSecurePort, String host, 
-			Boolean checkForwaredHeaders);
+			Boolean checkForwaredHeaders, Boolean http2Enabled, Integer http2MaxConcurrentStreams,
+			Integer http2InitialWindowSize);
 
 	/**
 	 * Creates a secure (SSL) connector.
@@ -57,6 +75,12 @@ public interface JettyFactory {
 	 *            list of SSL/TLS protocols that are not acceptable.
 	 * @param sslRenegotiationAllowed
 	 *            whether TLS renegotiation is allowed.
+	 * @param http2Enabled
+	 *            whether to negotiate HTTP/2 with ALPN
+	 * @param http2MaxConcurrentStreams
+	 *            the maximum number of concurrent HTTP/2 streams, may be null
+	 * @param http2InitialWindowSize
+	 *            the initial HTTP/2 stream window size, may be null
 	 *
 	 * @return a secure connector
 	 * 
@@ -69,6 +93,7 @@ public interface JettyFactory {
 			boolean isClientAuthNeeded, boolean isClientAuthWanted,
 			List<String> cipherSuitesIncluded, List<String> cipherSuitesExcluded,
 			List<String> protocolsIncluded, List<String> protocolsExcluded,
-		 	Boolean sslRenegotiationAllowed);
+		 	Boolean sslRenegotiationAllowed, Boolean http2Enabled, Integer http2MaxConcurrentStreams,
+			Integer http2InitialWindowSize);
 
 }
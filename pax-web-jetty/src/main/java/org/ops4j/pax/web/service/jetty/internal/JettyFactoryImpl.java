@@ -16,11 +16,11 @@
  */
 package org.ops4j.pax.web.service.jetty.internal;
 
-import java.lang.reflect.InvocationTargetException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
@@ -29,7 +29,6 @@ import org.apache.commons.lang3.reflect.ConstructorUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.commons.lang3.reflect.MethodUtils;
 import org.eclipse.jetty.http.HttpScheme;
-import org.eclipse.jetty.server.AbstractConnectionFactory;
 import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.ForwardedRequestCustomizer;
@@ -42,6 +41,7 @@ import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.ThreadPool;
 import org.ops4j.lang.NullArgumentException;
@@ -94,9 +94,12 @@ class JettyFactoryImpl implements JettyFactory {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public JettyServer createServer(Integer maxThreads, Integer minThreads, Integer threadIdleTimeout) {
+	public JettyServer createServer(Integer maxThreads, Integer minThreads, Integer threadIdleTimeout,
+			ExecutorService requestExecutor) {
 		ThreadPool threadPool;
-		if (maxThreads != null && minThreads != null && threadIdleTimeout != null) {
+		if (requestExecutor != null) {
+			threadPool = new ExecutorThreadPool(requestExecutor);
+		} else if (maxThreads != null && minThreads != null && threadIdleTimeout != null) {
 			threadPool = new QueuedThreadPool(maxThreads, minThreads, threadIdleTimeout);
 		} else if (maxThreads != null && minThreads != null) {
 			threadPool = new QueuedThreadPool(maxThreads, minThreads);
@@ -113,7 +116,8 @@ class JettyFactoryImpl implements JettyFactory {
 	 */
 	@Override
 	public ServerConnector createConnector(final Server server, final String name, final int port, int securePort, final String host,
-			final Boolean checkForwaredHeaders) {
+			final Boolean checkForwaredHeaders, final Boolean http2Enabled, final Integer http2MaxConcurrentStreams,
+			final Integer http2InitialWindowSize) {
 
 		// HTTP Configuration
 		HttpConfiguration httpConfig = new HttpConfiguration();
@@ -124,60 +128,22 @@ class JettyFactoryImpl implements JettyFactory {
 			httpConfig.addCustomizer(new ForwardedRequestCustomizer());
 		}
 		
-		ConnectionFactory factory = null;
-		
-		if (alpnCLassesAvailable()) {
-			log.info("HTTP/2 available, adding HTTP/2 to connector");
-			// SPDY connector
-//			ServerConnector spdy;
-			try {
-//				Class<?> loadClass = bundle.loadClass("org.eclipse.jetty.spdy.server.http.HTTPSPDYServerConnector");
-//				Constructor<?>[] constructors = loadClass.getConstructors();
-//
-//				for (Constructor<?> constructor : constructors) {
-//					Class<?>[] parameterTypes = constructor.getParameterTypes();
-//					if (parameterTypes.length == 1 && parameterTypes[0].equals(Server.class)) {
-//						spdy = (ServerConnector) constructor.newInstance(server);
-//
-//						spdy.setPort(port);
-//						spdy.setName(name);
-//						spdy.setHost(host);
-//						spdy.setIdleTimeout(500000);
-//
-//						return spdy;
-//					}
-//				}
-//
-				Class<?> loadClass = bundle.loadClass("org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory");
-				factory = (ConnectionFactory) ConstructorUtils.invokeConstructor(loadClass, httpConfig);
-				
-			} catch (ClassNotFoundException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (InstantiationException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (IllegalArgumentException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (InvocationTargetException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (NoSuchMethodException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-		} else {
-			log.info("HTTP/2 not available, creating standard ServerConnector for Http");
-			factory = new HttpConnectionFactory(httpConfig);
-		}
-
 		// HTTP connector
 		ServerConnector http = new ServerConnector(server);
-		http.addConnectionFactory(factory);
+		http.addConnectionFactory(new HttpConnectionFactory(httpConfig));
+		if (Boolean.TRUE.equals(http2Enabled)) {
+			if (http2ClassesAvailable()) {
+				log.info("HTTP/2 enabled, accepting h2c upgrades on connector {}", name);
+				ConnectionFactory h2c = createHttp2ConnectionFactory(
+						"org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory", httpConfig,
+						http2MaxConcurrentStreams, http2InitialWindowSize);
+				if (h2c != null) {
+					http.addConnectionFactory(h2c);
+				}
+			} else {
+				log.warn("HTTP/2 enabled, but Jetty's http2-server is not available, connector {} uses HTTP/1.1 only", name);
+			}
+		}
 		http.setPort(port);
 		http.setHost(host);
 		http.setName(name);
@@ -197,7 +163,8 @@ class JettyFactoryImpl implements JettyFactory {
 			boolean isClientAuthNeeded, boolean isClientAuthWanted,
 			List<String> cipherSuitesIncluded, List<String> cipherSuitesExcluded,
 			List<String> protocolsIncluded, List<String> protocolsExcluded,
-		 	Boolean sslRenegotiationAllowed) {
+		 	Boolean sslRenegotiationAllowed, Boolean http2Enabled, Integer http2MaxConcurrentStreams,
+			Integer http2InitialWindowSize) {
 
 		// SSL Context Factory for HTTPS and SPDY
 		SslContextFactory sslContextFactory = new SslContextFactory();
@@ -287,105 +254,98 @@ class JettyFactoryImpl implements JettyFactory {
 		HttpConfiguration httpsConfig = new HttpConfiguration(httpConfig);
 		httpsConfig.addCustomizer(new SecureRequestCustomizer());
 
-		
-		List<AbstractConnectionFactory> connectionFactories = new ArrayList<>();
-		
 		HttpConnectionFactory httpConFactory = new HttpConnectionFactory(httpsConfig);
-		
-		SslConnectionFactory sslFactory = null;
-		AbstractConnectionFactory http2Factory = null;
-		
-		NegotiatingServerConnectionFactory alpnFactory = null;
-
-		if (alpnCLassesAvailable()) {
-			log.info("HTTP/2 available, creating HttpSpdyServerConnector for Https");
-			// SPDY connector
-			try {
-				Class<?> comparatorClass = bundle.loadClass("org.eclipse.jetty.http2.HTTP2Cipher");
-				
-				Comparator<String> cipherComparator  = (Comparator<String>) FieldUtils.readDeclaredStaticField(comparatorClass, "COMPARATOR");
-				sslContextFactory.setCipherComparator(cipherComparator);
-				
-				sslFactory = new SslConnectionFactory(sslContextFactory, "h2");
-				connectionFactories.add(sslFactory);
-
-				
-				//org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory
-				Class<?> loadClass = bundle.loadClass("org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory");
-//				
-//				//ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory("spdy/3", "http/1.1");
-//				alpnFactory = (NegotiatingServerConnectionFactory) ConstructorUtils.invokeConstructor(loadClass, (Object) new String[] {"ssl", "http/2", "http/1.1"});
-//				alpnFactory.setDefaultProtocol("http/1.1");
-//				connectionFactories.add(alpnFactory);
-				
-				//HTTPSPDYServerConnectionFactory spdy = new HTTPSPDYServerConnectionFactory(SPDY.V3, httpConfig);
-//				loadClass = bundle.loadClass("org.eclipse.jetty.spdy.server.http.HTTPSPDYServerConnectionFactory");
-//				loadClass = bundle.loadClass("org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory");
-
-				http2Factory = (AbstractConnectionFactory) ConstructorUtils.invokeConstructor(loadClass, httpsConfig);
-				connectionFactories.add(http2Factory);
-				
-			} catch (ClassNotFoundException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (InstantiationException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (IllegalArgumentException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (InvocationTargetException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (NoSuchMethodException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+
+		List<ConnectionFactory> connectionFactories = new ArrayList<>();
+		if (Boolean.TRUE.equals(http2Enabled) && alpnCLassesAvailable()) {
+			ConnectionFactory h2 = createHttp2ConnectionFactory(
+					"org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory", httpsConfig,
+					http2MaxConcurrentStreams, http2InitialWindowSize);
+			ConnectionFactory alpn = createAlpnConnectionFactory(sslContextFactory, h2, httpConFactory);
+			if (h2 != null && alpn != null) {
+				log.info("HTTP/2 enabled, negotiating h2 with ALPN on connector {}", name);
+				connectionFactories.add(new SslConnectionFactory(sslContextFactory, alpn.getProtocol()));
+				connectionFactories.add(alpn);
+				connectionFactories.add(h2);
 			}
-		} else {
-			log.info("SPDY not available, creating standard ServerConnector for Https");
-			sslFactory = new SslConnectionFactory(sslContextFactory, "http/1.1");
+		} else if (Boolean.TRUE.equals(http2Enabled)) {
+			log.warn("HTTP/2 enabled, but ALPN is not available, connector {} uses HTTP/1.1 only", name);
+		}
+		if (connectionFactories.isEmpty()) {
+			connectionFactories.add(new SslConnectionFactory(sslContextFactory, httpConFactory.getProtocol()));
 		}
+		connectionFactories.add(httpConFactory);
 
-//		HttpConnectionFactory httpFactory = new HttpConnectionFactory(httpConfig);
-//		
-//		ServerConnector https = new ServerConnector(server); 
-		
-		 // HTTPS connector
+		// HTTPS connector
 		ServerConnector https = new ServerConnector(server,
-				sslFactory,
-				httpConFactory);
-		for (AbstractConnectionFactory factory : connectionFactories) {
-			https.addConnectionFactory(factory);
-		}
-		
+				connectionFactories.toArray(new ConnectionFactory[connectionFactories.size()]));
 		https.setPort(port);
 		https.setName(name);
 		https.setHost(host);
 		https.setIdleTimeout(500000);
 
-		/*
-		 
-		SslContextFactory sslContextFactory = new SslContextFactory();
-		HttpConfiguration httpConfig = new HttpConfiguration();
-		
-		SslConnectionFactory ssl = new SslConnectionFactory(sslContextFactory, "alpn");
-		ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory("spdy/3", "http/1.1");
-		alpn.setDefaultProtocol("http/1.1");
-		HTTPSPDYServerConnectionFactory spdy = new HTTPSPDYServerConnectionFactory(SPDY.V3, httpConfig);
-		HttpConnectionFactory http = new HttpConnectionFactory(httpConfig);
-		
-		Server server = new Server();
-		ServerConnector connector = new ServerConnector(server, new ConnectionFactory[]{ssl, alpn, spdy, http});
-		 
-		 */
-		
-		
 		return https;
-		
-		
+	}
+
+	/**
+	 * Creates one of the HTTP/2 connection factories of Jetty's optional
+	 * http2-server bundle.
+	 *
+	 * @return the factory or null if it could not be created
+	 */
+	private ConnectionFactory createHttp2ConnectionFactory(String className, HttpConfiguration httpConfig,
+			Integer maxConcurrentStreams, Integer initialWindowSize) {
+		try {
+			Object factory = ConstructorUtils.invokeConstructor(bundle.loadClass(className), httpConfig);
+			if (maxConcurrentStreams != null) {
+				MethodUtils.invokeMethod(factory, "setMaxConcurrentStreams", maxConcurrentStreams);
+			}
+			if (initialWindowSize != null) {
+				MethodUtils.invokeMethod(factory, "setInitialStreamSendWindow", initialWindowSize);
+			}
+			return (ConnectionFactory) factory;
+		} catch (ReflectiveOperationException e) {
+			log.warn("Could not create " + className + ", HTTP/2 is disabled", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the ALPN connection factory offering h2 and falling back to
+	 * HTTP/1.1, and makes the secure connector prefer the cipher suites HTTP/2
+	 * accepts.
+	 *
+	 * @return the factory or null if it could not be created
+	 */
+	private ConnectionFactory createAlpnConnectionFactory(SslContextFactory sslContextFactory,
+			ConnectionFactory h2, ConnectionFactory http) {
+		if (h2 == null) {
+			return null;
+		}
+		try {
+			Class<?> comparatorClass = bundle.loadClass("org.eclipse.jetty.http2.HTTP2Cipher");
+			@SuppressWarnings("unchecked")
+			Comparator<String> cipherComparator = (Comparator<String>) FieldUtils.readDeclaredStaticField(comparatorClass, "COMPARATOR");
+			sslContextFactory.setCipherComparator(cipherComparator);
+
+			Class<?> alpnClass = bundle.loadClass("org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory");
+			NegotiatingServerConnectionFactory alpn = (NegotiatingServerConnectionFactory) ConstructorUtils
+					.invokeConstructor(alpnClass, (Object) new String[] {h2.getProtocol(), http.getProtocol()});
+			alpn.setDefaultProtocol(http.getProtocol());
+			return alpn;
+		} catch (ReflectiveOperationException e) {
+			log.warn("Could not create the ALPN connection factory, HTTP/2 is disabled", e);
+			return null;
+		}
+	}
+
+	private boolean http2ClassesAvailable() {
+		try {
+			bundle.loadClass("org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory");
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
 	}
 
 	private boolean alpnCLassesAvailable() {
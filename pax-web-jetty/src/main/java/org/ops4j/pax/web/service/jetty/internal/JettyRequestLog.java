@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.jetty.internal;
+
+import javax.servlet.http.Cookie;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Authentication;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.ops4j.pax.web.service.spi.util.AsyncRequestLog;
+
+/**
+ * Passes the requests handled by Jetty to the {@link AsyncRequestLog}.
+ */
+class JettyRequestLog extends AbstractLifeCycle implements RequestLog {
+
+	private final AsyncRequestLog requestLog;
+
+	JettyRequestLog(AsyncRequestLog requestLog) {
+		this.requestLog = requestLog;
+	}
+
+	@Override
+	protected void doStart() throws Exception {
+		requestLog.start();
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		requestLog.stop();
+	}
+
+	@Override
+	public void log(Request request, Response response) {
+		String user = null;
+		Authentication authentication = request.getAuthentication();
+		if (authentication instanceof Authentication.User) {
+			user = ((Authentication.User) authentication).getUserIdentity().getUserPrincipal().getName();
+		}
+		long now = System.currentTimeMillis();
+		requestLog.log(request.getTimeStamp(), request.getServerName(), request.getRemoteAddr(), user,
+				request.getMethod(), request.getHttpURI().toString(), request.getProtocol(),
+				response.getCommittedMetaData().getStatus(), response.getHttpChannel().getBytesWritten(),
+				request.getHeader(HttpHeader.REFERER.asString()), request.getHeader(HttpHeader.USER_AGENT.asString()),
+				requestLog.isLogCookies() ? cookies(request.getCookies()) : null, now - request.getTimeStamp());
+	}
+
+	private static String cookies(Cookie[] cookies) {
+		if (cookies == null || cookies.length == 0) {
+			return null;
+		}
+		StringBuilder builder = new StringBuilder();
+		for (Cookie cookie : cookies) {
+			if (builder.length() > 0) {
+				builder.append(';');
+			}
+			builder.append(cookie.getName()).append('=').append(cookie.getValue());
+		}
+		return builder.toString();
+	}
+
+}
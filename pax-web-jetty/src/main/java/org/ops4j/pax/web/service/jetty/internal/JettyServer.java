@@ -22,6 +22,7 @@ import java.util.Map;
 
 import org.eclipse.jetty.server.Connector;
 import org.ops4j.pax.web.service.spi.LifeCycle;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
 import org.ops4j.pax.web.service.spi.model.ContainerInitializerModel;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
 import org.ops4j.pax.web.service.spi.model.ErrorPageModel;
@@ -95,6 +96,12 @@ public interface JettyServer {
 
 	void removeServlet(ServletModel model);
 
+	/**
+	 * Changes the url patterns and init params of a registered servlet
+	 * without stopping its holder.
+	 */
+	void remapServlet(ServletModel registered, ServletModel model);
+
 	void addEventListener(EventListenerModel eventListenerModel);
 
 	void removeEventListener(EventListenerModel eventListenerModel);
@@ -103,6 +110,12 @@ public interface JettyServer {
 
 	void removeFilter(FilterModel filterModel);
 
+	/**
+	 * Changes the mapping and init params of a registered filter without
+	 * stopping its holder, keeping the position of its mappings.
+	 */
+	void remapFilter(FilterModel registered, FilterModel filterModel);
+
 	void addErrorPage(ErrorPageModel model);
 
 	void removeErrorPage(ErrorPageModel model);
@@ -133,6 +146,36 @@ public interface JettyServer {
 
 	JettyServerWrapper getServer();
 
+	/**
+	 * Logs requests in NCSA format, replacing a request log configured
+	 * before. Can be called while the server is running.
+	 * 
+	 * @param configureRequestParameters
+	 *            request log settings
+	 */
 	void configureRequestLog(ConfigureRequestLogParameter configureRequestParameters);
 
+	/**
+	 * Stops logging requests.
+	 */
+	void removeRequestLog();
+
+	/**
+	 * Sets the maximum number of request targets for which the resolved
+	 * context is cached.
+	 * 
+	 * @param size
+	 *            maximum number of cached targets, 0 disables the cache
+	 */
+	void setRoutingCacheSize(int size);
+
+	/**
+	 * Records request metrics of the contexts, servlets and filters added
+	 * from now on.
+	 * 
+	 * @param metrics
+	 *            registry keeping the metrics, null to stop recording
+	 */
+	void setMetrics(WebMetricsRegistry metrics);
+
 }
@@ -17,6 +17,10 @@
 package org.ops4j.pax.web.service.jetty.internal;
 
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -27,6 +31,8 @@ import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.HandlerCollection;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
 import org.ops4j.pax.web.service.spi.model.ServerModel;
@@ -37,23 +43,67 @@ import org.slf4j.LoggerFactory;
  * Jetty Handler collection that calls only the handler (=context) that matches
  * the request path after performing the substring based matching of requests
  * path to registered aliases.
+ * <p>
+ * The context handler resolved for a request target is kept in a bounded
+ * routing cache, so frequently requested targets skip both the matching and the
+ * context lookup. The cache is tagged with the revisions of the
+ * {@link ServerModel} routing state and of the contexts of the
+ * {@link JettyServerWrapper} and is dropped as a whole as soon as either of them
+ * changes.
  * 
  * @author Alin Dreghiciu
  * @since 0.2.3, December 22, 2007
  */
+@ManagedObject("Pax Web context dispatching handler")
 class JettyServerHandlerCollection extends HandlerCollection {
 
 	private static final Logger LOG = LoggerFactory
 			.getLogger(JettyServerHandlerCollection.class);
 
+	/**
+	 * Default maximum number of cached request targets.
+	 */
+	private static final int DEFAULT_ROUTING_CACHE_SIZE = 256;
+
 	private final ServerModel serverModel;
 
+	private volatile int routingCacheSize = DEFAULT_ROUTING_CACHE_SIZE;
+	private volatile RoutingCache routingCache;
+	private final LongAdder routingCacheHits = new LongAdder();
+	private final LongAdder routingCacheMisses = new LongAdder();
+
 	JettyServerHandlerCollection(final ServerModel serverModel) {
 		super(true);
 		NullArgumentException.validateNotNull(serverModel, "Service model");
 		this.serverModel = serverModel;
 	}
 
+	/**
+	 * Sets the maximum number of request targets for which the resolved
+	 * context is cached and drops the current cache content.
+	 * 
+	 * @param size maximum number of cached targets, 0 disables the cache
+	 */
+	void setRoutingCacheSize(final int size) {
+		routingCacheSize = Math.max(0, size);
+		routingCache = null;
+	}
+
+	@ManagedAttribute("maximum number of cached request targets")
+	public int getRoutingCacheSize() {
+		return routingCacheSize;
+	}
+
+	@ManagedAttribute("number of requests routed through the routing cache")
+	public long getRoutingCacheHits() {
+		return routingCacheHits.sum();
+	}
+
+	@ManagedAttribute("number of requests that had to be matched against the server model")
+	public long getRoutingCacheMisses() {
+		return routingCacheMisses.sum();
+	}
+
 	@Override
 	public void handle(final String target, final Request baseRequest,
 			final HttpServletRequest request, final HttpServletResponse response)
@@ -62,21 +112,9 @@ class JettyServerHandlerCollection extends HandlerCollection {
 			return;
 		}
 
-		final ContextModel matched = serverModel.matchPathToContext(target);
-		if (matched != null) {
-			// check for nulls and start complaining
-			NullArgumentException.validateNotNull(matched.getHttpContext(),
-					"The http Context of " + matched.getContextName()
-							+ " is null");
-			NullArgumentException.validateNotNull(getServer(),
-					"The server is null!");
-
-			final ContextHandler context = ((JettyServerWrapper) getServer())
-					.getContext(matched.getHttpContext());
-
+		final ContextHandler context = resolveContext(target);
+		if (context != null) {
 			try {
-				NullArgumentException.validateNotNull(context,
-						"Found context is Null");
 				context.handle(target, baseRequest, request, response);
 
 				//CHECKSTYLE:OFF
@@ -92,18 +130,66 @@ class JettyServerHandlerCollection extends HandlerCollection {
 		}
 		// now handle all other handlers
 		for (Handler handler : getHandlers()) {
-			if (matched != null
-					&& matchedContextEqualsHandler(matched, handler)) {
+			if (context != null && handler == context) {
 				continue;
 			}
 			handler.handle(target, baseRequest, request, response);
 		}
 	}
 
-	private boolean matchedContextEqualsHandler(ContextModel matched,
-			Handler handler) {
-		return handler == ((JettyServerWrapper) getServer())
+	/**
+	 * Finds the context handler serving the target, using the routing cache
+	 * if enabled.
+	 * 
+	 * @param target request target
+	 * @return the context handler or null if no context matches the target
+	 */
+	private ContextHandler resolveContext(final String target) {
+		final int size = routingCacheSize;
+		if (size <= 0) {
+			return matchContext(target);
+		}
+		final JettyServerWrapper server = (JettyServerWrapper) getServer();
+		// read the revisions before matching, so a result computed while
+		// registrations change ends up in a cache that is already stale
+		final long serverRevision = serverModel.getRoutingRevision();
+		final long contextsRevision = server == null ? 0 : server.getContextsRevision();
+		RoutingCache cache = routingCache;
+		if (cache == null || cache.serverRevision != serverRevision
+				|| cache.contextsRevision != contextsRevision) {
+			cache = new RoutingCache(serverRevision, contextsRevision, size);
+			routingCache = cache;
+		}
+		ContextHandler context = cache.targets.get(target);
+		if (context != null) {
+			routingCacheHits.increment();
+			return context;
+		}
+		routingCacheMisses.increment();
+		context = matchContext(target);
+		if (context != null) {
+			cache.put(target, context);
+		}
+		return context;
+	}
+
+	private ContextHandler matchContext(final String target) {
+		final ContextModel matched = serverModel.matchPathToContext(target);
+		if (matched == null) {
+			return null;
+		}
+		// check for nulls and start complaining
+		NullArgumentException.validateNotNull(matched.getHttpContext(),
+				"The http Context of " + matched.getContextName()
+						+ " is null");
+		NullArgumentException.validateNotNull(getServer(),
+				"The server is null!");
+
+		final ContextHandler context = ((JettyServerWrapper) getServer())
 				.getContext(matched.getHttpContext());
+		NullArgumentException.validateNotNull(context,
+				"Found context is Null");
+		return context;
 	}
 
 	@Override
@@ -118,4 +204,38 @@ class JettyServerHandlerCollection extends HandlerCollection {
 		return addBean(o, false);
 	}
 
+	/**
+	 * Request targets resolved for one revision of the routing state. Never
+	 * cleared, a new instance replaces it when the routing state changes.
+	 */
+	private static final class RoutingCache {
+
+		private final long serverRevision;
+		private final long contextsRevision;
+		private final int maxSize;
+		private final ConcurrentMap<String, ContextHandler> targets;
+		private final AtomicInteger size = new AtomicInteger();
+
+		RoutingCache(final long serverRevision, final long contextsRevision, final int maxSize) {
+			this.serverRevision = serverRevision;
+			this.contextsRevision = contextsRevision;
+			this.maxSize = maxSize;
+			this.targets = new ConcurrentHashMap<String, ContextHandler>();
+		}
+
+		/**
+		 * Caches the context of a target unless the cache is full. Targets
+		 * requested often show up early, so once full the cache keeps what it
+		 * has until the next routing change.
+		 */
+		void put(final String target, final ContextHandler context) {
+			if (size.get() >= maxSize) {
+				return;
+			}
+			if (targets.putIfAbsent(target, context) == null) {
+				size.incrementAndGet();
+			}
+		}
+	}
+
 }
@@ -17,7 +17,6 @@
 package org.ops4j.pax.web.service.jetty.internal;
 
 import java.io.File;
-import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
 import java.net.URL;
@@ -41,7 +40,6 @@ import org.eclipse.jetty.security.ConstraintSecurityHandler;
 import org.eclipse.jetty.security.SecurityHandler;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
-import org.eclipse.jetty.server.NCSARequestLog;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.HandlerCollection;
 import org.eclipse.jetty.server.handler.RequestLogHandler;
@@ -60,6 +58,7 @@ import org.eclipse.jetty.xml.XmlConfiguration;
 import org.ops4j.pax.swissbox.core.BundleClassLoader;
 import org.ops4j.pax.swissbox.core.ContextClassLoaderUtils;
 import org.ops4j.pax.web.service.spi.LifeCycle;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
 import org.ops4j.pax.web.service.spi.model.ContainerInitializerModel;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
 import org.ops4j.pax.web.service.spi.model.ErrorPageModel;
@@ -71,6 +70,7 @@ import org.ops4j.pax.web.service.spi.model.ServerModel;
 import org.ops4j.pax.web.service.spi.model.ServletModel;
 import org.ops4j.pax.web.service.spi.model.WebSocketModel;
 import org.ops4j.pax.web.service.spi.model.WelcomeFileModel;
+import org.ops4j.pax.web.service.spi.util.AsyncRequestLog;
 import org.ops4j.pax.web.service.spi.util.ResourceDelegatingBundleClassLoader;
 import org.osgi.framework.Bundle;
 import org.osgi.service.http.HttpContext;
@@ -86,6 +86,8 @@ class JettyServerImpl implements JettyServer {
 
 	private Bundle bundle;
 
+	private RequestLogHandler requestLogHandler;
+
 
 	JettyServerImpl(final ServerModel serverModel, Bundle bundle) {
 		this(serverModel, bundle, null, null, new QueuedThreadPool());
@@ -289,15 +291,7 @@ class JettyServerImpl implements JettyServer {
 	@Override
 	public void addServlet(final ServletModel model) {
 		LOG.debug("Adding servlet [" + model + "]");
-		final ServletMapping mapping = new ServletMapping();
-		mapping.setServletName(model.getName());
-		mapping.setPathSpecs(model.getUrlPatterns());
-
-		if (model instanceof ResourceModel
-				&& "default".equalsIgnoreCase(model.getName())) {
-			// this is a default resource
-			mapping.setDefault(true);
-		}
+		final ServletMapping mapping = createServletMapping(model);
 
 		final ServletContextHandler context = server.getOrCreateContext(model);
 		final ServletHandler servletHandler = context.getServletHandler();
@@ -307,10 +301,14 @@ class JettyServerImpl implements JettyServer {
 		}
 
 		final ServletHolder holder;
+		final WebMetricsRegistry metrics = server.getMetrics();
+		final String contextName = model.getContextModel().getContextName();
 		if (model.getServlet() == null) {
-			holder = new ServletHolder(model.getServletClass());
+			holder = metrics == null ? new ServletHolder(model.getServletClass())
+					: new MeteredServletHolder(model.getServletClass(), metrics, contextName);
 		} else {
-			holder = new ServletHolder(model.getServlet());
+			holder = metrics == null ? new ServletHolder(model.getServlet())
+					: new MeteredServletHolder(model.getServlet(), metrics, contextName);
 		}
 		holder.setName(model.getName());
 		if (model.getInitParams() != null) {
@@ -355,6 +353,68 @@ class JettyServerImpl implements JettyServer {
 		//CHECKSTYLE:ON
 	}
 
+	private static ServletMapping createServletMapping(final ServletModel model) {
+		final ServletMapping mapping = new ServletMapping();
+		mapping.setServletName(model.getName());
+		mapping.setPathSpecs(model.getUrlPatterns());
+
+		if (model instanceof ResourceModel
+				&& "default".equalsIgnoreCase(model.getName())) {
+			// this is a default resource
+			mapping.setDefault(true);
+		}
+		return mapping;
+	}
+
+	@Override
+	public void remapServlet(final ServletModel registered, final ServletModel model) {
+		LOG.debug("Remapping servlet [" + registered + "] to [" + model + "]");
+		final ServletContextHandler context = server.getContext(registered
+				.getContextModel().getHttpContext());
+		final ServletHandler servletHandler = context == null ? null : context.getServletHandler();
+		final ServletHolder holder = servletHandler == null ? null
+				: servletHandler.getServlet(registered.getName());
+		final ServletMapping[] mappings = holder == null ? null
+				: servletHandler.getServletMappings();
+		if (mappings == null) {
+			throw new IllegalStateException(registered + " was not found");
+		}
+		// the holder keeps its servlet, only the mapping is swapped
+		final List<ServletMapping> remapped = new ArrayList<>(Arrays.asList(mappings));
+		boolean found = false;
+		for (int i = 0; i < remapped.size(); i++) {
+			if (holder.getName().equals(remapped.get(i).getServletName())) {
+				remapped.set(i, createServletMapping(model));
+				found = true;
+				break;
+			}
+		}
+		if (!found) {
+			throw new IllegalStateException(registered + " was not found");
+		}
+		holder.setInitParameters(model.getInitParams());
+		try {
+			ContextClassLoaderUtils.doWithClassLoader(context.getClassLoader(),
+					new Callable<Void>() {
+
+						@Override
+						public Void call() {
+							servletHandler.setServletMappings(remapped
+									.toArray(new ServletMapping[remapped.size()]));
+							return null;
+						}
+
+					});
+			//CHECKSTYLE:OFF
+		} catch (Exception e) {
+			if (e instanceof RuntimeException) {
+				throw (RuntimeException) e;
+			}
+			LOG.error("Ignored exception during servlet remapping", e);
+		}
+		//CHECKSTYLE:ON
+	}
+
 	@Override
 	public void removeServlet(final ServletModel model) {
 		LOG.debug("Removing servlet [" + model + "]");
@@ -467,6 +527,55 @@ class JettyServerImpl implements JettyServer {
 	@Override
 	public void addFilter(final FilterModel model) {
 		LOG.debug("Adding filter model [" + model + "]");
+		final FilterMapping mapping = createFilterMapping(model);
+
+		final ServletContextHandler context = server.getOrCreateContext(model);
+		final ServletHandler servletHandler = context.getServletHandler();
+		if (servletHandler == null) {
+			throw new IllegalStateException(
+					"Internal error: Cannot find the servlet holder");
+		}
+		
+		final FilterHolder holder;
+		final WebMetricsRegistry metrics = server.getMetrics();
+		final String contextName = model.getContextModel().getContextName();
+		if (model.getFilter() == null) {
+			holder = metrics == null ? new FilterHolder(model.getFilterClass())
+					: new MeteredFilterHolder(model.getFilterClass(), metrics, contextName);
+		} else {
+			holder = metrics == null ? new FilterHolder(model.getFilter())
+					: new MeteredFilterHolder(model.getFilter(), metrics, contextName);
+		}
+		holder.setName(model.getName());
+		if (model.getInitParams() != null) {
+			holder.setInitParameters(model.getInitParams());
+		}
+		holder.setAsyncSupported(model.isAsyncSupported());
+
+		// Jetty does not set the context class loader on adding the filters so
+		// we do that instead
+		try {
+			ContextClassLoaderUtils.doWithClassLoader(context.getClassLoader(),
+					new Callable<Void>() {
+
+						@Override
+						public Void call() {
+							servletHandler.addFilter(holder, mapping);
+							return null;
+						}
+
+					});
+			//CHECKSTYLE:OFF
+		} catch (Exception e) { 
+			if (e instanceof RuntimeException) {
+				throw (RuntimeException) e;
+			}
+			LOG.error("Ignored exception during filter registration", e);
+		}
+		//CHECKSTYLE:OFF
+	}
+
+	private static FilterMapping createFilterMapping(final FilterModel model) {
 		final FilterMapping mapping = new FilterMapping();
 		mapping.setFilterName(model.getName());
 		if (model.getUrlPatterns() != null && model.getUrlPatterns().length > 0) {
@@ -501,47 +610,57 @@ class JettyServerImpl implements JettyServer {
 			}
 		}
 		mapping.setDispatches(dispatcher);
+		return mapping;
+	}
 
-		final ServletContextHandler context = server.getOrCreateContext(model);
-		final ServletHandler servletHandler = context.getServletHandler();
-		if (servletHandler == null) {
-			throw new IllegalStateException(
-					"Internal error: Cannot find the servlet holder");
-		}
-		
-		final FilterHolder holder;
-		if (model.getFilter() == null) {
-			holder = new FilterHolder(model.getFilterClass());
-		} else {
-			holder = new FilterHolder(model.getFilter());
+	@Override
+	public void remapFilter(final FilterModel registered, final FilterModel model) {
+		LOG.debug("Remapping filter model [" + registered + "] to [" + model + "]");
+		final ServletContextHandler context = server.getContext(registered
+				.getContextModel().getHttpContext());
+		final ServletHandler servletHandler = context == null ? null : context.getServletHandler();
+		final FilterHolder holder = servletHandler == null ? null
+				: servletHandler.getFilter(registered.getName());
+		final FilterMapping[] filterMappings = holder == null ? null
+				: servletHandler.getFilterMappings();
+		if (filterMappings == null) {
+			throw new IllegalStateException(registered + " was not found");
+		}
+		// the new mapping takes the place of the first one of the filter
+		final List<FilterMapping> remapped = new ArrayList<>();
+		boolean found = false;
+		for (FilterMapping filterMapping : filterMappings) {
+			if (!filterMapping.getFilterName().equals(registered.getName())) {
+				remapped.add(filterMapping);
+			} else if (!found) {
+				remapped.add(createFilterMapping(model));
+				found = true;
+			}
 		}
-		holder.setName(model.getName());
-		if (model.getInitParams() != null) {
-			holder.setInitParameters(model.getInitParams());
+		if (!found) {
+			throw new IllegalStateException(registered + " was not found");
 		}
-		holder.setAsyncSupported(model.isAsyncSupported());
-
-		// Jetty does not set the context class loader on adding the filters so
-		// we do that instead
+		holder.setInitParameters(model.getInitParams());
 		try {
 			ContextClassLoaderUtils.doWithClassLoader(context.getClassLoader(),
 					new Callable<Void>() {
 
 						@Override
 						public Void call() {
-							servletHandler.addFilter(holder, mapping);
+							servletHandler.setFilterMappings(remapped
+									.toArray(new FilterMapping[remapped.size()]));
 							return null;
 						}
 
 					});
-			//CHECKSTYLE:OFF
-		} catch (Exception e) { 
+			// CHECKSTYLE:OFF
+		} catch (Exception e) {
 			if (e instanceof RuntimeException) {
 				throw (RuntimeException) e;
 			}
-			LOG.error("Ignored exception during filter registration", e);
+			LOG.error("Ignored exception during filter remapping", e);
 		}
-		//CHECKSTYLE:OFF
+		// CHECKSTYLE:ON
 	}
 
 	@Override
@@ -765,47 +884,43 @@ class JettyServerImpl implements JettyServer {
 		}
 	}
 
-	@SuppressWarnings("deprecation")
 	@Override
 	public void configureRequestLog(ConfigureRequestLogParameter configureRequestParameters) {
+		removeRequestLog();
+		requestLogHandler = new RequestLogHandler();
+		requestLogHandler.setRequestLog(new JettyRequestLog(new AsyncRequestLog(configureRequestParameters.dir,
+				configureRequestParameters.format, configureRequestParameters.retainDays,
+				configureRequestParameters.append, configureRequestParameters.extend,
+				configureRequestParameters.timeZone, configureRequestParameters.logLatency,
+				configureRequestParameters.logCookies, configureRequestParameters.logServer,
+				configureRequestParameters.bufferSize)));
 
-		String directory = configureRequestParameters.dir;
-		RequestLogHandler requestLogHandler = new RequestLogHandler();
-
-		// TODO: Improve that to set the path of the LOG relative to
-		// $JETTY_HOME
-
-		if (directory == null || directory.isEmpty()) {
-			directory = "./logs/"; 
-		}
-		File file = new File(directory);
-		if (!file.exists()) {
-			file.mkdirs();
+		((HandlerCollection) server.getHandler()).addHandler(requestLogHandler);
+		if (server.isStarted()) {
 			try {
-				file.createNewFile();
-			} catch (IOException e) {
-				LOG.error("can't create NCSARequestLog", e);
+				requestLogHandler.start();
+				//CHECKSTYLE:OFF
+			} catch (Exception e) {
+				LOG.error("Exception while starting the request log", e);
 			}
+			//CHECKSTYLE:ON
 		}
-		LOG.info("NCSARequestlogging is using the following directory: {}",
-				file.getAbsolutePath());
+	}
 
-		if (!directory.endsWith("/")) {
-			directory += "/";
+	@Override
+	public void removeRequestLog() {
+		if (requestLogHandler == null) {
+			return;
 		}
-
-		NCSARequestLog requestLog = new NCSARequestLog(directory + configureRequestParameters.format);
-		requestLog.setRetainDays(Integer.parseInt(configureRequestParameters.retainDays));
-		requestLog.setAppend(configureRequestParameters.append);
-		requestLog.setExtended(configureRequestParameters.extend);
-		requestLog.setLogDispatch(configureRequestParameters.dispatch);
-		requestLog.setLogTimeZone(configureRequestParameters.timeZone);
-		requestLog.setLogLatency(configureRequestParameters.logLatency);
-		requestLog.setLogCookies(configureRequestParameters.logCookies);
-		requestLog.setLogServer(configureRequestParameters.logServer);
-		requestLogHandler.setRequestLog(requestLog);
-
-		((HandlerCollection) server.getHandler()).addHandler(requestLogHandler);
+		((HandlerCollection) server.getHandler()).removeHandler(requestLogHandler);
+		try {
+			requestLogHandler.stop();
+			//CHECKSTYLE:OFF
+		} catch (Exception e) {
+			LOG.warn("Exception while stopping the request log", e);
+		}
+		//CHECKSTYLE:ON
+		requestLogHandler = null;
 	}
 
 	@Override
@@ -815,6 +930,16 @@ class JettyServerImpl implements JettyServer {
 				.append("}").toString();
 	}
 
+	@Override
+	public void setRoutingCacheSize(int size) {
+		server.setRoutingCacheSize(size);
+	}
+
+	@Override
+	public void setMetrics(WebMetricsRegistry metrics) {
+		server.setMetrics(metrics);
+	}
+
 	@Override
 	public void setServerConfigDir(File serverConfigDir) {
 		server.setServerConfigDir(serverConfigDir);
@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -60,6 +61,7 @@ import org.eclipse.jetty.util.security.Constraint;
 import org.eclipse.jetty.util.thread.ThreadPool;
 import org.ops4j.pax.swissbox.core.BundleUtils;
 import org.ops4j.pax.web.service.WebContainerConstants;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
 import org.ops4j.pax.web.service.spi.model.Model;
 import org.ops4j.pax.web.service.spi.model.ServerModel;
@@ -110,6 +112,12 @@ class JettyServerWrapper extends Server {
 	@SuppressWarnings("unused")
 	private final ServerModel serverModel;
 	private final Map<HttpContext, ServletContextInfo> contexts = new IdentityHashMap<HttpContext, ServletContextInfo>();
+	/**
+	 * Incremented every time a context is added to or removed from
+	 * {@link #contexts}.
+	 */
+	private final AtomicLong contextsRevision = new AtomicLong();
+	private final JettyServerHandlerCollection handlerCollection;
 	private Map<String, Object> contextAttributes;
 	private Integer sessionTimeout;
 	private String sessionCookie;
@@ -132,12 +140,14 @@ class JettyServerWrapper extends Server {
 	private final Lock readLock = rwLock.readLock();
 	private final Lock writeLock = rwLock.writeLock();
 	private Bundle jettyBundle;
+	private volatile WebMetricsRegistry metrics;
 	private ServiceTracker<PackageAdmin, PackageAdmin> packageAdminTracker;
 
 	JettyServerWrapper(ServerModel serverModel, ThreadPool threadPool) {
 		super(threadPool);
 		this.serverModel = serverModel;
-		setHandler(new JettyServerHandlerCollection(serverModel));
+		handlerCollection = new JettyServerHandlerCollection(serverModel);
+		setHandler(handlerCollection);
 
 		jettyBundle = FrameworkUtil.getBundle(getClass());
 
@@ -172,6 +182,38 @@ class JettyServerWrapper extends Server {
 		this.storeDirectory = directory;
 	}
 
+	/**
+	 * Sets the maximum number of request targets for which the resolved
+	 * context is cached.
+	 * 
+	 * @param size maximum number of cached targets, 0 disables the cache
+	 */
+	void setRoutingCacheSize(final int size) {
+		handlerCollection.setRoutingCacheSize(size);
+	}
+
+	void setMetrics(final WebMetricsRegistry metrics) {
+		this.metrics = metrics;
+	}
+
+	WebMetricsRegistry getMetrics() {
+		return metrics;
+	}
+
+	JettyServerHandlerCollection getHandlerCollection() {
+		return handlerCollection;
+	}
+
+	/**
+	 * Returns the revision of the registered contexts, changing every time a
+	 * context is added or removed.
+	 * 
+	 * @return current contexts revision
+	 */
+	long getContextsRevision() {
+		return contextsRevision.get();
+	}
+
 	HttpServiceContext getContext(final HttpContext httpContext) {
 		readLock.lock();
 		try {
@@ -207,6 +249,7 @@ class JettyServerWrapper extends Server {
 
 						context = new ServletContextInfo(this.addContext(model));
 						contexts.put(httpContext, context);
+						contextsRevision.incrementAndGet();
 						context.incrementRefCount();
 					} else {
 						context = contexts.get(httpContext);
@@ -238,6 +281,7 @@ class JettyServerWrapper extends Server {
 					writeLock.lock();
 					LOG.debug("Removing ServletContextHandler for HTTP context [{}].", httpContext);
 					context = contexts.remove(httpContext);
+					contextsRevision.incrementAndGet();
 				} finally {
 					readLock.lock();
 					writeLock.unlock();
@@ -284,9 +328,11 @@ class JettyServerWrapper extends Server {
 
 		HttpServiceContext context = new HttpServiceContext((HandlerContainer) getHandler(), model.getContextParams(),
 				getContextAttributes(bundleContext), model.getContextName(), model.getHttpContext(),
-				model.getAccessControllerContext(), model.getContainerInitializers(), model.getJettyWebXmlURL(),
+				model.getAccessControllerContext(), model.getBundle(), model.getContainerInitializers(),
+				model.getJettyWebXmlURL(),
 				model.getVirtualHosts());
 		context.setClassLoader(model.getClassLoader());
+		context.setMetrics(metrics);
 		Integer modelSessionTimeout = model.getSessionTimeout();
 		if (modelSessionTimeout == null) {
 			modelSessionTimeout = sessionTimeout;
@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.jetty.internal;
+
+import javax.servlet.Filter;
+
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.ops4j.pax.web.service.spi.metrics.RequestMetrics;
+import org.ops4j.pax.web.service.spi.metrics.TimedFilter;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
+
+/**
+ * Filter holder owning the metrics of its filter while it is started. The
+ * filter chains of Jetty invoke the filter returned by {@link #getFilter()},
+ * which is wrapped in a {@link TimedFilter} so that instances created by
+ * Jetty from a class are measured as well.
+ */
+class MeteredFilterHolder extends FilterHolder {
+
+	private final WebMetricsRegistry registry;
+
+	private final String contextName;
+
+	private volatile RequestMetrics metrics;
+
+	private volatile TimedFilter timedFilter;
+
+	MeteredFilterHolder(Class<? extends Filter> filterClass, WebMetricsRegistry registry, String contextName) {
+		super(filterClass);
+		this.registry = registry;
+		this.contextName = contextName;
+	}
+
+	MeteredFilterHolder(Filter filter, WebMetricsRegistry registry, String contextName) {
+		super(filter);
+		this.registry = registry;
+		this.contextName = contextName;
+	}
+
+	@Override
+	public Filter getFilter() {
+		final Filter filter = super.getFilter();
+		final RequestMetrics requestMetrics = metrics;
+		if (filter == null || requestMetrics == null) {
+			return filter;
+		}
+		TimedFilter timed = timedFilter;
+		if (timed == null || timed.getFilter() != filter || timed.getMetrics() != requestMetrics) {
+			timed = new TimedFilter(filter, requestMetrics);
+			timedFilter = timed;
+		}
+		return timed;
+	}
+
+	@Override
+	public void doStart() throws Exception {
+		metrics = registry.acquireFilterMetrics(contextName, getName());
+		super.doStart();
+	}
+
+	@Override
+	public void doStop() throws Exception {
+		try {
+			super.doStop();
+		} finally {
+			registry.release(metrics);
+			metrics = null;
+			timedFilter = null;
+		}
+	}
+
+}
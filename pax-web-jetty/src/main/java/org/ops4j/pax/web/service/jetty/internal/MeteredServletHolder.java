@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.jetty.internal;
+
+import javax.servlet.Servlet;
+
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.ops4j.pax.web.service.spi.metrics.RequestMetrics;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
+
+/**
+ * Servlet holder owning the metrics of its servlet while it is started. The
+ * requests are measured by the {@link HttpServiceServletHandler}.
+ */
+class MeteredServletHolder extends ServletHolder {
+
+	private final WebMetricsRegistry registry;
+
+	private final String contextName;
+
+	private volatile RequestMetrics metrics;
+
+	MeteredServletHolder(Class<? extends Servlet> servletClass, WebMetricsRegistry registry, String contextName) {
+		super(servletClass);
+		this.registry = registry;
+		this.contextName = contextName;
+	}
+
+	MeteredServletHolder(Servlet servlet, WebMetricsRegistry registry, String contextName) {
+		super(servlet);
+		this.registry = registry;
+		this.contextName = contextName;
+	}
+
+	RequestMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public void doStart() throws Exception {
+		metrics = registry.acquireServletMetrics(contextName, getName());
+		super.doStart();
+	}
+
+	@Override
+	public void doStop() throws Exception {
+		try {
+			super.doStop();
+		} finally {
+			registry.release(metrics);
+			metrics = null;
+		}
+	}
+
+}
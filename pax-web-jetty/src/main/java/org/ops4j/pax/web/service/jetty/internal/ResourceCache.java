@@ -0,0 +1,297 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.jetty.internal;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * In memory cache of static resource content used by {@link ResourceServlet}.
+ * One cache is shared by all resource registrations of a server, entries are
+ * keyed by context, alias and path. Entries are kept in least recently used
+ * order and evicted once the total size of the cached content exceeds the
+ * configured budget.
+ * <p>
+ * Every entry remembers the revision (last modification time) of the bundle
+ * it was read from and is dropped when looked up with a different revision, so
+ * updating a bundle invalidates everything cached from it.
+ */
+class ResourceCache {
+
+	private final int maxEntrySize;
+	private final long maxSize;
+	private final boolean direct;
+
+	/**
+	 * Guarded by itself.
+	 */
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	private long size;
+
+	/**
+	 * Creates a new resource cache.
+	 *
+	 * @param maxEntrySize
+	 *            maximum size in bytes of a single cached resource
+	 * @param maxSize
+	 *            maximum number of bytes cached in total
+	 * @param direct
+	 *            if the content should be kept in direct buffers instead of the
+	 *            heap
+	 */
+	ResourceCache(final int maxEntrySize, final long maxSize, final boolean direct) {
+		this.maxEntrySize = maxEntrySize;
+		this.maxSize = maxSize;
+		this.direct = direct;
+	}
+
+	/**
+	 * Checks if a resource of the given length may be cached.
+	 *
+	 * @param length
+	 *            resource length in bytes, negative if unknown
+	 * @return true if a resource of that length fits into the cache
+	 */
+	boolean accepts(final long length) {
+		return length >= 0 && length <= maxEntrySize && length <= maxSize;
+	}
+
+	/**
+	 * Looks up a cached resource.
+	 *
+	 * @param key
+	 *            registration and path of the resource
+	 * @param bundleRevision
+	 *            current revision of the bundle providing the resource
+	 * @return the cached resource or null if not cached or cached from another
+	 *         revision of the bundle
+	 */
+	Entry get(final Key key, final long bundleRevision) {
+		synchronized (entries) {
+			final Entry entry = entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.bundleRevision != bundleRevision) {
+				entries.remove(key);
+				size -= entry.length;
+				return null;
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Caches the content of a resource, evicting least recently used entries
+	 * if needed.
+	 *
+	 * @param key
+	 *            registration and path of the resource
+	 * @param bundleRevision
+	 *            revision of the bundle the content was read from
+	 * @param content
+	 *            resource content
+	 * @param contentType
+	 *            content type or null if unknown
+	 * @param lastModified
+	 *            last modification time of the resource
+	 * @return the new entry
+	 */
+	Entry put(final Key key, final long bundleRevision, final byte[] content,
+			final String contentType, final long lastModified) {
+		final Entry entry = new Entry(bundleRevision, wrap(content), contentType, lastModified,
+				eTag(content, lastModified));
+		synchronized (entries) {
+			final Entry previous = entries.put(key, entry);
+			if (previous != null) {
+				size -= previous.length;
+			}
+			size += entry.length;
+			final Iterator<Entry> eldest = entries.values().iterator();
+			while (size > maxSize && eldest.hasNext()) {
+				final Entry evicted = eldest.next();
+				if (evicted != entry) {
+					eldest.remove();
+					size -= evicted.length;
+				}
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Drops the cached resources of a registration.
+	 *
+	 * @param context
+	 *            context name of the registration
+	 * @param alias
+	 *            alias of the registration
+	 */
+	void remove(final String context, final String alias) {
+		synchronized (entries) {
+			final Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+			while (iterator.hasNext()) {
+				final Map.Entry<Key, Entry> cached = iterator.next();
+				if (Objects.equals(cached.getKey().context, context) && Objects.equals(cached.getKey().alias, alias)) {
+					iterator.remove();
+					size -= cached.getValue().length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops all cached resources.
+	 */
+	void clear() {
+		synchronized (entries) {
+			entries.clear();
+			size = 0;
+		}
+	}
+
+	/**
+	 * Returns the number of cached bytes.
+	 *
+	 * @return size of the cached content
+	 */
+	long size() {
+		synchronized (entries) {
+			return size;
+		}
+	}
+
+	private ByteBuffer wrap(final byte[] content) {
+		if (!direct) {
+			return ByteBuffer.wrap(content).asReadOnlyBuffer();
+		}
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+		buffer.put(content);
+		buffer.flip();
+		return buffer.asReadOnlyBuffer();
+	}
+
+	private static String eTag(final byte[] content, final long lastModified) {
+		final CRC32 crc = new CRC32();
+		crc.update(content, 0, content.length);
+		return new StringBuilder().append('"')
+				.append(Long.toHexString(lastModified)).append('-')
+				.append(Integer.toHexString(content.length)).append('-')
+				.append(Long.toHexString(crc.getValue())).append('"')
+				.toString();
+	}
+
+	/**
+	 * Context, alias and path a resource is cached under.
+	 */
+	static final class Key {
+
+		private final String context;
+		private final String alias;
+		private final String path;
+
+		Key(final String context, final String alias, final String path) {
+			this.context = context;
+			this.alias = alias;
+			this.path = path;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(context, alias, path);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return Objects.equals(context, other.context) && Objects.equals(alias, other.alias)
+					&& Objects.equals(path, other.path);
+		}
+	}
+
+	/**
+	 * Cached resource.
+	 */
+	static final class Entry {
+
+		private final long bundleRevision;
+		private final ByteBuffer content;
+		private final String contentType;
+		private final int length;
+		private final long lastModified;
+		private final String eTag;
+
+		private Entry(final long bundleRevision, final ByteBuffer content, final String contentType,
+				final long lastModified, final String eTag) {
+			this.bundleRevision = bundleRevision;
+			this.content = content;
+			this.contentType = contentType;
+			this.length = content.remaining();
+			this.lastModified = lastModified;
+			this.eTag = eTag;
+		}
+
+		/**
+		 * Returns a new read only view of the content, positioned at its
+		 * start.
+		 *
+		 * @return resource content
+		 */
+		ByteBuffer getContent() {
+			return content.duplicate();
+		}
+
+		String getContentType() {
+			return contentType;
+		}
+
+		int getLength() {
+			return length;
+		}
+
+		long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * Strong entity tag derived from the content.
+		 *
+		 * @return quoted entity tag
+		 */
+		String getETag() {
+			return eTag;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder().append(getClass().getSimpleName())
+				.append("{maxEntrySize=").append(maxEntrySize)
+				.append(",maxSize=").append(maxSize)
+				.append(",direct=").append(direct).append("}").toString();
+	}
+
+}
@@ -17,10 +17,14 @@
 package org.ops4j.pax.web.service.jetty.internal;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.regex.Matcher;
 
 import javax.servlet.RequestDispatcher;
@@ -33,9 +37,13 @@ import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceFactory;
+import org.ops4j.pax.web.service.spi.util.ByteRanges;
+import org.ops4j.pax.web.service.spi.util.CompressedResourceCache;
+import org.osgi.framework.Bundle;
 import org.osgi.service.http.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,8 +63,6 @@ class ResourceServlet extends HttpServlet implements ResourceFactory {
 	@SuppressWarnings("unused")
 	private static final String IF_MATCH = "If-Match";
 	private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
-	@SuppressWarnings("unused")
-	private static final String IF_RANGE = "If-Range";
 	private static final String IF_UNMODIFIED_SINCE = "If-Unmodified-Since";
 	@SuppressWarnings("unused")
 	private static final String KEEP_ALIVE = "Keep-Alive";
@@ -71,12 +77,47 @@ class ResourceServlet extends HttpServlet implements ResourceFactory {
 	private final String alias;
 	private final String name;
 	private final MimeTypes mimeTypes = new MimeTypes();
+	private final Bundle bundle;
+	private final ResourceCache cache;
+	private final CompressedResourceCache compression;
 
 	private String[] welcomes;
 
 	ResourceServlet(final HttpContext httpContext, final String contextName,
 			final String alias, final String name) {
+		this(httpContext, contextName, alias, name, null, null, null);
+	}
+
+	/**
+	 * Creates a resource servlet that keeps the content of resources served
+	 * out of the bundle in the given cache and serves compressed variants of
+	 * them.
+	 * 
+	 * @param httpContext
+	 *            http context resources are looked up with
+	 * @param contextName
+	 *            name of the servlet context
+	 * @param alias
+	 *            registration alias
+	 * @param name
+	 *            resource name the alias is mapped to
+	 * @param bundle
+	 *            bundle providing the resources, used to invalidate cached
+	 *            content when it is updated; nothing is cached if null
+	 * @param cache
+	 *            resource cache shared by the registrations of the server or
+	 *            null to disable caching
+	 * @param compression
+	 *            compressed variants or null to always serve resources
+	 *            uncompressed
+	 */
+	ResourceServlet(final HttpContext httpContext, final String contextName,
+			final String alias, final String name, final Bundle bundle,
+			final ResourceCache cache, final CompressedResourceCache compression) {
 		this.httpContext = httpContext;
+		this.bundle = bundle;
+		this.cache = bundle == null ? null : cache;
+		this.compression = compression;
 		this.contextName = "/" + contextName;
 		this.alias = alias;
 		if ("/".equals(name)) {
@@ -97,6 +138,18 @@ class ResourceServlet extends HttpServlet implements ResourceFactory {
 		}
 	}
 
+	@Override
+	public void destroy() {
+		if (cache != null) {
+			// the cache is shared with the other registrations of the server
+			cache.remove(contextName, alias);
+		}
+		if (compression != null) {
+			compression.clear();
+		}
+		super.destroy();
+	}
+
 	/**
 	 * Compute the field _contextHandler.<br/>
 	 * In the case where the DefaultServlet is deployed on the HttpService it is
@@ -173,6 +226,15 @@ class ResourceServlet extends HttpServlet implements ResourceFactory {
 		boolean endsWithSlash = (mapping == null ? request.getServletPath()
 				: mapping).endsWith(URIUtil.SLASH);
 
+		if (cache != null) {
+			final ResourceCache.Entry cached = cache.get(cacheKey(mapping),
+					bundle.getLastModified());
+			if (cached != null) {
+				writeCached(request, response, mapping, cached);
+				return;
+			}
+		}
+
 		final URL url = httpContext.getResource(mapping);
 		if (url == null) {
 			response.sendError(HttpServletResponse.SC_NOT_FOUND);
@@ -238,67 +300,68 @@ class ResourceServlet extends HttpServlet implements ResourceFactory {
 				return;
 			}
 
+			if (cache != null && !resource.isDirectory()
+					&& isBundleResource(url) && cache.accepts(resource.length())) {
+				// read the content once, later requests are served from memory
+				final long lastModified = resource.lastModified();
+				final byte[] content;
+				try (InputStream in = resource.getInputStream()) {
+					content = IO.readBytes(in);
+				}
+				final ResourceCache.Entry cached = cache.put(cacheKey(mapping),
+						bundle.getLastModified(), content,
+						getMimeType(mapping, url), lastModified);
+				writeCached(request, response, mapping, cached);
+				return;
+			}
+
+			String mimeType = getMimeType(mapping, url);
+			final CompressedResourceCache.Variant variant = findVariant(
+					request, response, mapping, url, mimeType);
+
 			// if the request contains an etag and its the same for the
 			// resource, we deliver a NOT MODIFIED response
 			String eTag = String.valueOf(resource.lastModified());
-			if ((request.getHeader(IF_NONE_MATCH) != null)
-					&& (eTag.equals(request.getHeader(IF_NONE_MATCH)))) {
-				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			if (variant != null) {
+				eTag = variant.getETag(eTag);
+			}
+			if (checkPreconditions(request, response, eTag,
+					resource.lastModified())) {
 				return;
-			} else if (request.getHeader(IF_MODIFIED_SINCE) != null) {
-				long ifModifiedSince = request.getDateHeader(IF_MODIFIED_SINCE);
-				if (resource.lastModified() != -1) {
-					// resource.lastModified()/1000 <= ifmsl/1000
-					if (resource.lastModified() / SECOND <= ifModifiedSince / SECOND) {
-						response.reset();
-						response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-						response.flushBuffer();
-						return;
-					}
-				}
-			} else if (request.getHeader(IF_UNMODIFIED_SINCE) != null) {
-				long modifiedSince = request.getDateHeader(IF_UNMODIFIED_SINCE);
-
-				if (modifiedSince != -1) {
-					if (resource.lastModified() / SECOND > modifiedSince / SECOND) {
-						response.sendError(HttpServletResponse.SC_PRECONDITION_FAILED);
-						return;
-					}
-				}
 			}
 
 			// set the etag
 			response.setHeader(ETAG, eTag);
-			String mimeType = httpContext.getMimeType(mapping);
-			if (mimeType == null) {
-				mimeType = mimeTypes.getMimeByExtension(mapping);
-			}
-
-			if (mimeType == null) {
-				try {
-					mimeType = url.openConnection().getContentType();
-				} catch (IOException ignore) {
-					// we do not care about such an exception as the fact that
-					// we are using also the connection for
-					// finding the mime type is just a "nice to have" not an
-					// requirement
-				}
-			}
-
-			if (mimeType == null) {
-				ServletContext servletContext = getServletConfig()
-						.getServletContext();
-				mimeType = servletContext.getMimeType(mapping);
+			if (variant == null
+					&& !resource.isDirectory()
+					&& ByteRanges.serve(request, response, resource.length(),
+							eTag, resource.lastModified(), mimeType,
+							isFileResource(url) && resource.getFile() != null
+									? ByteRanges.source(resource.getFile())
+									: ByteRanges.source(url))) {
+				return;
 			}
-
 			if (mimeType != null) {
 				response.setContentType(mimeType);
 			}
+			if (variant != null) {
+				writeVariant(response, variant);
+				return;
+			}
+			response.setHeader(ByteRanges.ACCEPT_RANGES, ByteRanges.BYTES);
 
 			OutputStream out = response.getOutputStream();
 			if (out != null) { // null should be just in unit testing
 				if (out instanceof HttpOutput) {
-					((HttpOutput) out).sendContent(resource.getInputStream());
+					final ReadableByteChannel channel = isFileResource(url) ? resource
+							.getReadableByteChannel() : null;
+					if (channel != null) {
+						// file channel, no copying through the heap
+						response.setContentLengthLong(resource.length());
+						((HttpOutput) out).sendContent(channel);
+					} else {
+						((HttpOutput) out).sendContent(resource.getInputStream());
+					}
 				} else {
 					// Write content normally
 					resource.writeTo(out, 0, resource.length());
@@ -310,6 +373,173 @@ class ResourceServlet extends HttpServlet implements ResourceFactory {
 		}
 	}
 
+	private ResourceCache.Key cacheKey(final String mapping) {
+		return new ResourceCache.Key(contextName, alias, mapping);
+	}
+
+	/**
+	 * Writes a cached resource without touching the bundle.
+	 */
+	private void writeCached(final HttpServletRequest request,
+			final HttpServletResponse response, final String mapping,
+			final ResourceCache.Entry cached) throws IOException {
+		final CompressedResourceCache.Variant variant = findVariant(request,
+				response, mapping, null, cached.getContentType());
+		final String eTag = variant == null ? cached.getETag() : variant
+				.getETag(cached.getETag());
+		if (checkPreconditions(request, response, eTag,
+				cached.getLastModified())) {
+			return;
+		}
+		response.setHeader(ETAG, eTag);
+		if (variant == null
+				&& ByteRanges.serve(request, response, cached.getLength(),
+						eTag, cached.getLastModified(),
+						cached.getContentType(),
+						ByteRanges.source(cached.getContent()))) {
+			return;
+		}
+		if (cached.getContentType() != null) {
+			response.setContentType(cached.getContentType());
+		}
+		if (variant != null) {
+			writeVariant(response, variant);
+			return;
+		}
+		response.setHeader(ByteRanges.ACCEPT_RANGES, ByteRanges.BYTES);
+		response.setContentLength(cached.getLength());
+
+		OutputStream out = response.getOutputStream();
+		if (out != null) { // null should be just in unit testing
+			if (out instanceof HttpOutput) {
+				((HttpOutput) out).sendContent(cached.getContent());
+			} else {
+				Channels.newChannel(out).write(cached.getContent());
+			}
+		}
+		response.setStatus(HttpServletResponse.SC_OK);
+	}
+
+	/**
+	 * Finds the compressed variant of a resource to serve, if compression is
+	 * enabled and the client accepts one.
+	 * 
+	 * @param url
+	 *            the resource, null if served from the resource cache
+	 * @return the variant or null to serve the resource as is
+	 */
+	private CompressedResourceCache.Variant findVariant(
+			final HttpServletRequest request,
+			final HttpServletResponse response, final String mapping,
+			final URL url, final String mimeType) {
+		if (compression == null
+				|| !CompressedResourceCache.isCompressible(mimeType)
+				|| request.getHeader(ByteRanges.RANGE) != null) {
+			// ranges are served from the identity encoding
+			return null;
+		}
+		response.addHeader(CompressedResourceCache.VARY,
+				CompressedResourceCache.ACCEPT_ENCODING);
+		return compression.find(mapping, url,
+				bundle == null ? 0 : bundle.getLastModified(),
+				request.getHeader(CompressedResourceCache.ACCEPT_ENCODING),
+				httpContext::getResource);
+	}
+
+	private void writeVariant(final HttpServletResponse response,
+			final CompressedResourceCache.Variant variant) throws IOException {
+		response.setHeader(CompressedResourceCache.CONTENT_ENCODING,
+				variant.getEncoding());
+		response.setContentLength(variant.getContent().length);
+
+		OutputStream out = response.getOutputStream();
+		if (out != null) { // null should be just in unit testing
+			if (out instanceof HttpOutput) {
+				((HttpOutput) out).sendContent(ByteBuffer.wrap(variant
+						.getContent()));
+			} else {
+				out.write(variant.getContent());
+			}
+		}
+		response.setStatus(HttpServletResponse.SC_OK);
+	}
+
+	/**
+	 * Evaluates the conditional request headers against the entity tag and
+	 * modification time of a resource.
+	 * 
+	 * @return true if the response has already been completed (not modified
+	 *         or precondition failed)
+	 */
+	private boolean checkPreconditions(final HttpServletRequest request,
+			final HttpServletResponse response, final String eTag,
+			final long lastModified) throws IOException {
+		if ((request.getHeader(IF_NONE_MATCH) != null)
+				&& (eTag.equals(request.getHeader(IF_NONE_MATCH)))) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		} else if (request.getHeader(IF_MODIFIED_SINCE) != null) {
+			long ifModifiedSince = request.getDateHeader(IF_MODIFIED_SINCE);
+			if (lastModified != -1) {
+				// resource.lastModified()/1000 <= ifmsl/1000
+				if (lastModified / SECOND <= ifModifiedSince / SECOND) {
+					response.reset();
+					response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+					response.flushBuffer();
+					return true;
+				}
+			}
+		} else if (request.getHeader(IF_UNMODIFIED_SINCE) != null) {
+			long modifiedSince = request.getDateHeader(IF_UNMODIFIED_SINCE);
+
+			if (modifiedSince != -1) {
+				if (lastModified / SECOND > modifiedSince / SECOND) {
+					response.sendError(HttpServletResponse.SC_PRECONDITION_FAILED);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private String getMimeType(final String mapping, final URL url) {
+		String mimeType = httpContext.getMimeType(mapping);
+		if (mimeType == null) {
+			mimeType = mimeTypes.getMimeByExtension(mapping);
+		}
+
+		if (mimeType == null) {
+			try {
+				mimeType = url.openConnection().getContentType();
+			} catch (IOException ignore) {
+				// we do not care about such an exception as the fact that
+				// we are using also the connection for
+				// finding the mime type is just a "nice to have" not an
+				// requirement
+			}
+		}
+
+		if (mimeType == null) {
+			ServletContext servletContext = getServletConfig()
+					.getServletContext();
+			mimeType = servletContext.getMimeType(mapping);
+		}
+		return mimeType;
+	}
+
+	private static boolean isFileResource(final URL url) {
+		return "file".equals(url.getProtocol());
+	}
+
+	/**
+	 * Only content of bundle entries is cached, it can not change without the
+	 * bundle being updated. Resources on the file system or elsewhere may
+	 * change at any time.
+	 */
+	private static boolean isBundleResource(final URL url) {
+		return url.getProtocol().startsWith("bundle");
+	}
+
 	/**
 	 * Finds a matching welcome file for the supplied {@link Resource}. This
 	 * will be the first entry in the list of configured {@link #_welcomes
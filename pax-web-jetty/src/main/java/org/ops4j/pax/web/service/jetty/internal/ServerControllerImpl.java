@@ -17,7 +17,11 @@
 package org.ops4j.pax.web.service.jetty.internal;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
@@ -27,11 +31,15 @@ import javax.servlet.Servlet;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.ops4j.pax.web.service.spi.Configuration;
 import org.ops4j.pax.web.service.spi.LifeCycle;
 import org.ops4j.pax.web.service.spi.ServerController;
 import org.ops4j.pax.web.service.spi.ServerEvent;
 import org.ops4j.pax.web.service.spi.ServerListener;
+import org.ops4j.pax.web.service.spi.metrics.WebMetrics;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
 import org.ops4j.pax.web.service.spi.model.ContainerInitializerModel;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
 import org.ops4j.pax.web.service.spi.model.ErrorPageModel;
@@ -42,6 +50,9 @@ import org.ops4j.pax.web.service.spi.model.SecurityConstraintMappingModel;
 import org.ops4j.pax.web.service.spi.model.ServletModel;
 import org.ops4j.pax.web.service.spi.model.WebSocketModel;
 import org.ops4j.pax.web.service.spi.model.WelcomeFileModel;
+import org.ops4j.pax.web.service.spi.util.CompressedResourceCache;
+import org.ops4j.pax.web.service.spi.util.ConfigurationChanges;
+import org.ops4j.pax.web.service.spi.util.VirtualThreads;
 import org.osgi.service.http.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +62,19 @@ class ServerControllerImpl implements ServerController {
 	private static final Logger LOG = LoggerFactory
 			.getLogger(ServerControllerImpl.class);
 
+	/**
+	 * Largest resource cached if no maximum entry size is configured.
+	 */
+	private static final int DEFAULT_RESOURCE_CACHE_MAX_ENTRY_SIZE = 64 * 1024;
+
+	/**
+	 * Thread pool settings of {@link QueuedThreadPool} restored when a
+	 * setting is removed from the configuration.
+	 */
+	private static final int DEFAULT_MAX_THREADS = 200;
+	private static final int DEFAULT_MIN_THREADS = 8;
+	private static final int DEFAULT_THREAD_IDLE_TIMEOUT = 60000;
+
 	private Configuration configuration;
 	private State state;
 	private final JettyFactory jettyFactory;
@@ -58,6 +82,18 @@ class ServerControllerImpl implements ServerController {
 	private final Set<ServerListener> listeners;
 	private ServerConnector httpConnector;
 	private ServerConnector httpSecureConnector;
+	/**
+	 * Connectors created from the configuration, as opposed to the ones of a
+	 * jetty.xml. Only these are removed on reconfiguration.
+	 */
+	private final Set<Connector> managedConnectors = new HashSet<Connector>();
+	private WebMetricsRegistry metrics;
+	/**
+	 * Static resource content cache shared by all resource registrations, so
+	 * the configured size bounds the memory of the server. Created with the
+	 * first resource registration.
+	 */
+	private ResourceCache resourceCache;
 	
 	ServerControllerImpl(final JettyFactory jettyFactory) {
 		this.jettyFactory = jettyFactory;
@@ -85,14 +121,33 @@ class ServerControllerImpl implements ServerController {
 			throw new IllegalArgumentException("configuration == null");
 		}
 		configuration = config;
+		// recreated with the settings of the new configuration
+		resourceCache = null;
+		if (metrics == null && Boolean.TRUE.equals(config.isMetricsEnabled())) {
+			metrics = new WebMetricsRegistry();
+		}
 		state.configure();
 	}
 
+	@Override
+	public synchronized boolean reconfigure(final Configuration config) {
+		LOG.debug("Reconfiguring server [{}] -> [{}] ", this, config);
+		if (config == null) {
+			throw new IllegalArgumentException("configuration == null");
+		}
+		return state.reconfigure(config);
+	}
+
 	@Override
 	public Configuration getConfiguration() {
 		return configuration;
 	}
 
+	@Override
+	public WebMetrics getMetrics() {
+		return metrics;
+	}
+
 	@Override
 	public void addListener(ServerListener listener) {
 		if (listener == null) {
@@ -116,6 +171,11 @@ class ServerControllerImpl implements ServerController {
 		state.removeServlet(model);
 	}
 
+	@Override
+	public void remapServlet(final ServletModel registered, final ServletModel model) {
+		state.remapServlet(registered, model);
+	}
+
 	@Override
 	public boolean isStarted() {
 		return state instanceof Started;
@@ -151,6 +211,11 @@ class ServerControllerImpl implements ServerController {
 		state.removeFilter(filterModel);
 	}
 
+	@Override
+	public void remapFilter(final FilterModel registered, final FilterModel filterModel) {
+		state.remapFilter(registered, filterModel);
+	}
+
 	@Override
 	public void addErrorPage(final ErrorPageModel model) {
 		state.addErrorPage(model);
@@ -207,7 +272,125 @@ class ServerControllerImpl implements ServerController {
 	public Servlet createResourceServlet(ContextModel contextModel,
 			String alias, String name) {
 		return new ResourceServlet(contextModel.getHttpContext(),
-				contextModel.getContextName(), alias, name);
+				contextModel.getContextName(), alias, name,
+				contextModel.getBundle(), getResourceCache(),
+				CompressedResourceCache.create(configuration));
+	}
+
+	/**
+	 * Returns the resource cache of the server, creating it on first use if
+	 * enabled in the configuration.
+	 * 
+	 * @return the resource cache or null if caching is disabled
+	 */
+	synchronized ResourceCache getResourceCache() {
+		if (resourceCache != null) {
+			return resourceCache;
+		}
+		final Integer size = configuration.getResourceCacheSize();
+		if (size == null || size <= 0) {
+			return null;
+		}
+		Integer maxEntrySize = configuration.getResourceCacheMaxEntrySize();
+		if (maxEntrySize == null || maxEntrySize <= 0) {
+			maxEntrySize = Math.min(size, DEFAULT_RESOURCE_CACHE_MAX_ENTRY_SIZE);
+		}
+		final Boolean direct = configuration.isResourceCacheDirect();
+		resourceCache = new ResourceCache(maxEntrySize, size, direct != null && direct);
+		return resourceCache;
+	}
+
+	private String[] getListeningAddresses() {
+		String[] addresses = configuration.getListeningAddresses();
+		if (addresses == null || addresses.length == 0) {
+			addresses = new String[] { null };
+		}
+		return addresses;
+	}
+
+	private void configureContext() {
+		Map<String, Object> attributes = new HashMap<String, Object>();
+		attributes.put("javax.servlet.context.tempdir",
+				configuration.getTemporaryDirectory());
+		jettyServer.configureContext(attributes,
+				configuration.getSessionTimeout(),
+				configuration.getSessionCookie(),
+				configuration.getSessionDomain(),
+				configuration.getSessionPath(),
+				configuration.getSessionUrl(),
+				configuration.getSessionCookieHttpOnly(),
+				configuration.getSessionCookieSecure(),
+				configuration.getWorkerName(),
+				configuration.getSessionLazyLoad(),
+				configuration.getSessionStoreDirectory());
+	}
+
+	private void configureRequestLog() {
+		jettyServer.configureRequestLog(
+				new ConfigureRequestLogParameter(configuration.getLogNCSAFormat(), configuration.getLogNCSARetainDays(),
+						configuration.isLogNCSAAppend(), configuration.isLogNCSAExtended(), configuration.isLogNCSADispatch(), configuration.getLogNCSATimeZone(),
+						configuration.getLogNCSADirectory(), configuration.isLogNCSALatency(), configuration.isLogNCSACookies(), configuration.isLogNCSAServer(),
+						configuration.getLogNCSABufferSize()));
+	}
+
+	private Connector createConnector(String address) {
+		final Connector connector = jettyFactory.createConnector(
+				jettyServer.getServer(), configuration.getHttpConnectorName(),
+				configuration.getHttpPort(), configuration.getHttpSecurePort(),
+				address, configuration.checkForwardedHeaders(), configuration.isHttp2Enabled(),
+				configuration.getHttp2MaxConcurrentStreams(), configuration.getHttp2InitialWindowSize());
+		managedConnectors.add(connector);
+		return connector;
+	}
+
+	/**
+	 * @return the connector or null if the SSL passwords are not configured
+	 */
+	private Connector createSecureConnector(String address) {
+		final String sslKeystorePassword = configuration.getSslKeystorePassword();
+		final String sslKeyPassword = configuration.getSslKeyPassword();
+		if (sslKeystorePassword == null || sslKeyPassword == null) {
+			LOG.warn("SSL password and SSL keystore password must be set in order to enable SSL.");
+			LOG.warn("SSL connector will not be started");
+			return null;
+		}
+		final Connector connector = jettyFactory.createSecureConnector(
+				jettyServer.getServer(),
+				configuration.getHttpSecureConnectorName(),
+				configuration.getHttpSecurePort(),
+				configuration.getSslKeystore(),
+				sslKeystorePassword,
+				sslKeyPassword,
+				address,
+				configuration.getSslKeystoreType(),
+				configuration.getSslKeyAlias(),
+				configuration.getTrustStore(),
+				configuration.getTrustStorePassword(),
+				configuration.getTrustStoreType(),
+				configuration.isClientAuthNeeded(),
+				configuration.isClientAuthWanted(), 
+				configuration.getCiphersuiteIncluded(), 
+				configuration.getCiphersuiteExcluded(),
+				configuration.getProtocolsIncluded(),
+				configuration.getProtocolsExcluded(),
+				configuration.isSslRenegotiationAllowed(),
+				configuration.isHttp2Enabled(),
+				configuration.getHttp2MaxConcurrentStreams(),
+				configuration.getHttp2InitialWindowSize());
+		managedConnectors.add(connector);
+		return connector;
+	}
+
+	private static boolean match(String address, Integer httpPort,
+			Connector connector) {
+		InetSocketAddress isa1 = address != null ? new InetSocketAddress(
+				address, httpPort) : new InetSocketAddress(httpPort);
+		InetSocketAddress isa2 = ((ServerConnector) connector).getHost() != null ? new InetSocketAddress(
+				((ServerConnector) connector).getHost(),
+				((ServerConnector) connector).getPort())
+				: new InetSocketAddress(
+						((ServerConnector) connector).getPort());
+		return isa1.equals(isa2);
 	}
 
 	void notifyListeners(ServerEvent event) {
@@ -242,10 +425,14 @@ class ServerControllerImpl implements ServerController {
 
 		void configure();
 
+		boolean reconfigure(Configuration config);
+
 		void addServlet(ServletModel model);
 
 		void removeServlet(ServletModel model);
 
+		void remapServlet(ServletModel registered, ServletModel model);
+
 		void addEventListener(EventListenerModel eventListenerModel);
 
 		void removeEventListener(EventListenerModel eventListenerModel);
@@ -256,6 +443,8 @@ class ServerControllerImpl implements ServerController {
 
 		void removeFilter(FilterModel filterModel);
 
+		void remapFilter(FilterModel registered, FilterModel filterModel);
+
 		void addErrorPage(ErrorPageModel model);
 
 		void removeErrorPage(ErrorPageModel model);
@@ -285,6 +474,109 @@ class ServerControllerImpl implements ServerController {
 			ServerControllerImpl.this.start();
 		}
 
+		@Override
+		public boolean reconfigure(final Configuration config) {
+			final Configuration previous = configuration;
+			configuration = config;
+			if (ConfigurationChanges.threadPool(previous, config)) {
+				updateThreadPool();
+			}
+			if (ConfigurationChanges.connectors(previous, config)) {
+				updateConnectors(false, configuration.isHttpEnabled(), configuration.getHttpPort());
+				updateConnectors(true, configuration.isHttpSecureEnabled(), configuration.getHttpSecurePort());
+			}
+			if (ConfigurationChanges.requestLog(previous, config)) {
+				if (configuration.isLogNCSAFormatEnabled()) {
+					configureRequestLog();
+				} else {
+					jettyServer.removeRequestLog();
+				}
+			}
+			if (ConfigurationChanges.sessionDefaults(previous, config)) {
+				// applies to the contexts created from now on
+				configureContext();
+			}
+			notifyListeners(ServerEvent.CONFIGURED);
+			return true;
+		}
+
+		private void updateThreadPool() {
+			final ThreadPool threadPool = jettyServer.getServer().getThreadPool();
+			if (!(threadPool instanceof QueuedThreadPool)) {
+				LOG.warn("Thread pool {} can not be resized", threadPool);
+				return;
+			}
+			final QueuedThreadPool pool = (QueuedThreadPool) threadPool;
+			final Integer maxThreads = configuration.getServerMaxThreads();
+			final Integer minThreads = configuration.getServerMinThreads();
+			final Integer idleTimeout = configuration.getServerIdleTimeout();
+			pool.setMaxThreads(maxThreads != null ? maxThreads : DEFAULT_MAX_THREADS);
+			pool.setMinThreads(minThreads != null ? minThreads : Math.min(DEFAULT_MIN_THREADS, pool.getMaxThreads()));
+			pool.setIdleTimeout(idleTimeout != null ? idleTimeout : DEFAULT_THREAD_IDLE_TIMEOUT);
+			LOG.info("Resized thread pool to {}-{} threads", pool.getMinThreads(), pool.getMaxThreads());
+		}
+
+		/**
+		 * Adds the connectors missing for the listening addresses and removes
+		 * the connectors created for addresses or ports no longer configured.
+		 */
+		private void updateConnectors(final boolean secure, final Boolean enabled, final Integer port) {
+			final List<String> missing = new ArrayList<String>();
+			if (enabled != null && enabled) {
+				missing.addAll(Arrays.asList(getListeningAddresses()));
+			}
+			ServerConnector first = null;
+			for (Connector connector : jettyServer.getConnectors()) {
+				if (!(connector instanceof ServerConnector)
+						|| (connector.getConnectionFactory(SslConnectionFactory.class) != null) != secure) {
+					continue;
+				}
+				int found = -1;
+				for (int i = 0; i < missing.size() && found < 0; i++) {
+					if (match(missing.get(i), port, connector)) {
+						found = i;
+					}
+				}
+				if (found >= 0) {
+					missing.remove(found);
+					if (first == null) {
+						first = (ServerConnector) connector;
+					}
+				} else if (managedConnectors.remove(connector)) {
+					try {
+						connector.stop();
+						//CHECKSTYLE:OFF
+					} catch (Exception e) {
+						LOG.warn("Exception while stopping connector {}", connector, e);
+					}
+					//CHECKSTYLE:ON
+					jettyServer.removeConnector(connector);
+				}
+			}
+			for (String address : missing) {
+				final Connector connector = secure ? createSecureConnector(address) : createConnector(address);
+				if (connector == null) {
+					continue;
+				}
+				jettyServer.addConnector(connector);
+				try {
+					connector.start();
+					//CHECKSTYLE:OFF
+				} catch (Exception e) {
+					LOG.error("Exception while starting connector {}", connector, e);
+				}
+				//CHECKSTYLE:ON
+				if (first == null) {
+					first = (ServerConnector) connector;
+				}
+			}
+			if (secure) {
+				httpSecureConnector = first;
+			} else {
+				httpConnector = first;
+			}
+		}
+
 		@Override
 		public void addServlet(final ServletModel model) {
 			jettyServer.addServlet(model);
@@ -295,6 +587,11 @@ class ServerControllerImpl implements ServerController {
 			jettyServer.removeServlet(model);
 		}
 
+		@Override
+		public void remapServlet(final ServletModel registered, final ServletModel model) {
+			jettyServer.remapServlet(registered, model);
+		}
+
 		@Override
 		public void addEventListener(EventListenerModel eventListenerModel) {
 			jettyServer.addEventListener(eventListenerModel);
@@ -320,6 +617,11 @@ class ServerControllerImpl implements ServerController {
 			jettyServer.removeFilter(filterModel);
 		}
 
+		@Override
+		public void remapFilter(FilterModel registered, FilterModel filterModel) {
+			jettyServer.remapFilter(registered, filterModel);
+		}
+
 		@Override
 		public void addErrorPage(ErrorPageModel model) {
 			jettyServer.addErrorPage(model);
@@ -374,43 +676,30 @@ class ServerControllerImpl implements ServerController {
 		Stopped() {
 			httpConnector = null;
 			httpSecureConnector = null;
+			managedConnectors.clear();
 		}
 
 		@Override
 		public void start() {
-			jettyServer = jettyFactory.createServer(configuration.getServerMaxThreads(), configuration.getServerMinThreads(), configuration.getServerIdleTimeout());
+			jettyServer = jettyFactory.createServer(configuration.getServerMaxThreads(), configuration.getServerMinThreads(), configuration.getServerIdleTimeout(),
+					VirtualThreads.newExecutor(configuration, "jetty-request-"));
 			
 			httpConnector = null;
 			httpSecureConnector = null;
-			String[] addresses = configuration.getListeningAddresses();
-			if (addresses == null || addresses.length == 0) {
-				addresses = new String[] { null };
-			}
-			Map<String, Object> attributes = new HashMap<String, Object>();
-			attributes.put("javax.servlet.context.tempdir",
-					configuration.getTemporaryDirectory());
+			String[] addresses = getListeningAddresses();
 
 			// Fix for PAXWEB-193
 			jettyServer.setServerConfigDir(configuration.getConfigurationDir()); 
 			jettyServer.setServerConfigURL(configuration.getConfigurationURL());
-			jettyServer.configureContext(attributes,
-					configuration.getSessionTimeout(),
-					configuration.getSessionCookie(),
-					configuration.getSessionDomain(),
-					configuration.getSessionPath(),
-					configuration.getSessionUrl(),
-					configuration.getSessionCookieHttpOnly(),
-					configuration.getSessionCookieSecure(),
-					configuration.getWorkerName(),
-					configuration.getSessionLazyLoad(),
-					configuration.getSessionStoreDirectory());
+			configureContext();
+			jettyServer.setMetrics(metrics);
+			if (configuration.getServerRoutingCacheSize() != null) {
+				jettyServer.setRoutingCacheSize(configuration.getServerRoutingCacheSize());
+			}
 
 			// Configure NCSA RequestLogHandler
 			if (configuration.isLogNCSAFormatEnabled()) {
-				jettyServer.configureRequestLog(
-						new ConfigureRequestLogParameter(configuration.getLogNCSAFormat(), configuration.getLogNCSARetainDays(),
-								configuration.isLogNCSAAppend(), configuration.isLogNCSAExtended(), configuration.isLogNCSADispatch(), configuration.getLogNCSATimeZone(),
-								configuration.getLogNCSADirectory(), configuration.isLogNCSALatency(), configuration.isLogNCSACookies(), configuration.isLogNCSAServer()));
+				configureRequestLog();
 			}
 
 			jettyServer.start(); 
@@ -459,10 +748,7 @@ class ServerControllerImpl implements ServerController {
 						}
 					}
 					if (!masterConnectorFound) {
-						final Connector connector = jettyFactory
-								.createConnector(jettyServer.getServer(),
-										configuration.getHttpConnectorName(),
-										httpPort, httpSecurePort, address, configuration.checkForwardedHeaders());
+						final Connector connector = createConnector(address);
 						if (httpConnector == null) {
 							httpConnector = (ServerConnector) connector;
 						}
@@ -524,35 +810,12 @@ class ServerControllerImpl implements ServerController {
 					if (!masterSSLConnectorFound) {
 						// no combination of jetty.xml and
 						// config-admin/properties needed
-						if (sslKeystorePassword != null && sslKeyPassword != null) {
-							final Connector secureConnector = jettyFactory
-									.createSecureConnector(jettyServer
-											.getServer(),
-											configuration.getHttpSecureConnectorName(),
-											httpSecurePort,
-											configuration.getSslKeystore(),
-											sslKeystorePassword,
-											sslKeyPassword,
-											address,
-											configuration.getSslKeystoreType(),
-											configuration.getSslKeyAlias(),
-											configuration.getTrustStore(),
-											configuration.getTrustStorePassword(),
-											configuration.getTrustStoreType(),
-											configuration.isClientAuthNeeded(),
-											configuration.isClientAuthWanted(), 
-											configuration.getCiphersuiteIncluded(), 
-											configuration.getCiphersuiteExcluded(),
-											configuration.getProtocolsIncluded(),
-											configuration.getProtocolsExcluded(),
-											configuration.isSslRenegotiationAllowed());
+						final Connector secureConnector = createSecureConnector(address);
+						if (secureConnector != null) {
 							if (httpSecureConnector == null) {
 								httpSecureConnector = (ServerConnector) secureConnector;
 							}
 							jettyServer.addConnector(secureConnector);
-						} else {
-							LOG.warn("SSL password and SSL keystore password must be set in order to enable SSL.");
-							LOG.warn("SSL connector will not be started");
 						}
 					}
 				} else {
@@ -578,18 +841,6 @@ class ServerControllerImpl implements ServerController {
 			notifyListeners(ServerEvent.STARTED);
 		}
 
-		private boolean match(String address, Integer httpPort,
-				Connector connector) {
-			InetSocketAddress isa1 = address != null ? new InetSocketAddress(
-					address, httpPort) : new InetSocketAddress(httpPort);
-			InetSocketAddress isa2 = ((ServerConnector) connector).getHost() != null ? new InetSocketAddress(
-					((ServerConnector) connector).getHost(),
-					((ServerConnector) connector).getPort())
-					: new InetSocketAddress(
-							((ServerConnector) connector).getPort());
-			return isa1.equals(isa2);
-		}
-
 		@Override
 		public void stop() {
 			// do nothing. already stopped
@@ -600,6 +851,11 @@ class ServerControllerImpl implements ServerController {
 			notifyListeners(ServerEvent.CONFIGURED);
 		}
 
+		@Override
+		public boolean reconfigure(final Configuration config) {
+			return false;
+		}
+
 		@Override
 		public void addServlet(final ServletModel model) {
 			// do nothing if server is not started
@@ -610,6 +866,11 @@ class ServerControllerImpl implements ServerController {
 			// do nothing if server is not started
 		}
 
+		@Override
+		public void remapServlet(final ServletModel registered, final ServletModel model) {
+			// do nothing if server is not started
+		}
+
 		@Override
 		public void addEventListener(EventListenerModel eventListenerModel) {
 			// do nothing if server is not started
@@ -635,6 +896,11 @@ class ServerControllerImpl implements ServerController {
 			// do nothing if server is not started
 		}
 
+		@Override
+		public void remapFilter(FilterModel registered, FilterModel filterModel) {
+			// do nothing if server is not started
+		}
+
 		@Override
 		public void addErrorPage(ErrorPageModel model) {
 			// do nothing if server is not started
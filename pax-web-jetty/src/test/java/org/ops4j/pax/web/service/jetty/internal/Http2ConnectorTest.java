@@ -0,0 +1,145 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.jetty.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.ops4j.pax.web.service.spi.model.ServerModel;
+import org.osgi.framework.Bundle;
+
+/**
+ * Negotiates HTTP/2 with the connectors the factory creates. Only h2c
+ * upgrades are tried, h2 over TLS needs alpn-boot on the boot class path of
+ * Java 8.
+ */
+public class Http2ConnectorTest {
+
+	private Server server;
+
+	@After
+	public void tearDown() throws Exception {
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void plainConnectorAcceptsH2cUpgrade() throws Exception {
+		List<String> response = upgrade(start(true));
+		assertEquals("HTTP/1.1 101 Switching Protocols", response.get(0));
+		// the server preface, a SETTINGS frame, follows the 101 response
+		assertEquals("SETTINGS", response.get(response.size() - 1));
+	}
+
+	@Test
+	public void plainConnectorStaysOnHttp11WithoutHttp2() throws Exception {
+		List<String> response = upgrade(start(false));
+		assertEquals("HTTP/1.1 200 OK", response.get(0));
+	}
+
+	private int start(boolean http2Enabled) throws Exception {
+		Bundle bundle = mock(Bundle.class);
+		when(bundle.loadClass(anyString())).thenAnswer(new Answer<Class<?>>() {
+			@Override
+			public Class<?> answer(InvocationOnMock invocation) throws Throwable {
+				return getClass().getClassLoader().loadClass((String) invocation.getArguments()[0]);
+			}
+		});
+		server = new Server();
+		ServerConnector connector = new JettyFactoryImpl(new ServerModel(), bundle).createConnector(server,
+				"default", 0, 0, "localhost", false, http2Enabled, null, null);
+		server.addConnector(connector);
+		server.setHandler(new AbstractHandler() {
+			@Override
+			public void handle(String target, Request baseRequest, HttpServletRequest request,
+					HttpServletResponse response) throws IOException {
+				response.setContentLength(0);
+				baseRequest.setHandled(true);
+			}
+		});
+		server.start();
+		return connector.getLocalPort();
+	}
+
+	/**
+	 * Sends an HTTP/1.1 request asking for an h2c upgrade and returns the
+	 * status line and headers of the response, followed by SETTINGS once the
+	 * server switched to HTTP/2.
+	 */
+	private static List<String> upgrade(int port) throws IOException {
+		try (Socket socket = new Socket("localhost", port)) {
+			socket.setSoTimeout(10000);
+			OutputStream out = socket.getOutputStream();
+			out.write(("GET / HTTP/1.1\r\n"
+					+ "Host: localhost\r\n"
+					+ "Connection: Upgrade, HTTP2-Settings\r\n"
+					+ "Upgrade: h2c\r\n"
+					+ "HTTP2-Settings: AAMAAABkAAQAAP__\r\n"
+					+ "\r\n").getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			List<String> lines = new ArrayList<String>();
+			for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+				lines.add(line);
+			}
+			if (lines.get(0).contains(" 101 ")) {
+				byte[] frameHeader = new byte[9];
+				in.readFully(frameHeader);
+				if (frameHeader[3] == 0x4) {
+					lines.add("SETTINGS");
+				}
+			}
+			return lines;
+		}
+	}
+
+	private static String readLine(DataInputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		for (int c = in.read(); c != '\n'; c = in.read()) {
+			if (c == -1) {
+				throw new EOFException();
+			}
+			if (c != '\r') {
+				line.append((char) c);
+			}
+		}
+		return line.toString();
+	}
+
+}
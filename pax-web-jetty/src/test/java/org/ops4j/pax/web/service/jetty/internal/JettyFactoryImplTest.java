@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.jetty.internal;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.Test;
+import org.ops4j.pax.web.service.spi.model.ServerModel;
+
+public class JettyFactoryImplTest {
+
+	@Test
+	public void pooledThreadsWithoutRequestExecutor() {
+		JettyServer server = new JettyFactoryImpl(new ServerModel(), null).createServer(10, 2, null, null);
+		assertTrue(server.getServer().getThreadPool() instanceof QueuedThreadPool);
+	}
+
+	/**
+	 * Requests run on the given executor, which is shut down together with
+	 * the server.
+	 */
+	@Test
+	public void requestExecutorRunsTasksAndIsShutDownWithServer() throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		JettyServer server = new JettyFactoryImpl(new ServerModel(), null).createServer(10, 2, null, executor);
+		assertTrue(server.getServer().getThreadPool() instanceof ExecutorThreadPool);
+
+		server.start();
+		// started lazily with the first context otherwise
+		server.getServer().start();
+		try {
+			final CountDownLatch ran = new CountDownLatch(1);
+			server.getServer().getThreadPool().execute(new Runnable() {
+				@Override
+				public void run() {
+					ran.countDown();
+				}
+			});
+			assertTrue(ran.await(10, TimeUnit.SECONDS));
+			assertFalse(executor.isShutdown());
+		} finally {
+			server.stop();
+		}
+		assertTrue(executor.isShutdown());
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+}
@@ -15,6 +15,8 @@
  */
  package org.ops4j.pax.web.service.jetty.internal;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -178,4 +180,27 @@ public class JettyServerWrapperTest {
 			jettyServerWrapperUnderTest.stop();
 		}
 	}
+
+	@Test
+	public void contextsRevisionChangesWhenContextIsCreatedOrRemoved()
+			throws Exception {
+		final JettyServerWrapper jettyServerWrapperUnderTest = new JettyServerWrapper(
+				serverModelMock, new QueuedThreadPool());
+		try {
+			jettyServerWrapperUnderTest.start();
+			final long initial = jettyServerWrapperUnderTest.getContextsRevision();
+			jettyServerWrapperUnderTest.getOrCreateContext(contextModelMock);
+			final long created = jettyServerWrapperUnderTest.getContextsRevision();
+			assertNotEquals(initial, created);
+
+			// context is still referenced
+			jettyServerWrapperUnderTest.removeContext(httpContextMock);
+			assertEquals(created, jettyServerWrapperUnderTest.getContextsRevision());
+
+			jettyServerWrapperUnderTest.removeContext(httpContextMock);
+			assertNotEquals(created, jettyServerWrapperUnderTest.getContextsRevision());
+		} finally {
+			jettyServerWrapperUnderTest.stop();
+		}
+	}
 }
@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.jetty.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ResourceCacheTest {
+
+	@Test
+	public void cachedContent() {
+		final ResourceCache cache = new ResourceCache(16, 64, true);
+		cache.put(key("/a.txt"), 1, "hello".getBytes(), "text/plain", 1000);
+
+		final ResourceCache.Entry entry = cache.get(key("/a.txt"), 1);
+		assertNotNull(entry);
+		assertEquals("text/plain", entry.getContentType());
+		assertEquals(5, entry.getLength());
+		assertTrue(entry.getETag().startsWith("\""));
+		final ByteBuffer content = entry.getContent();
+		final byte[] bytes = new byte[content.remaining()];
+		content.get(bytes);
+		assertEquals("hello", new String(bytes));
+		// every caller gets its own view
+		assertEquals(5, entry.getContent().remaining());
+	}
+
+	@Test
+	public void eTagDependsOnContent() {
+		final ResourceCache cache = new ResourceCache(16, 64, false);
+		final String first = cache.put(key("/a.txt"), 1, "hello".getBytes(), null, 1000).getETag();
+		final String second = cache.put(key("/a.txt"), 1, "world".getBytes(), null, 1000).getETag();
+		assertNotEquals(first, second);
+		assertEquals(5, cache.size());
+	}
+
+	@Test
+	public void leastRecentlyUsedIsEvicted() {
+		final ResourceCache cache = new ResourceCache(16, 10, false);
+		assertFalse(cache.accepts(11));
+		cache.put(key("/a"), 1, new byte[4], null, 0);
+		cache.put(key("/b"), 1, new byte[4], null, 0);
+		cache.get(key("/a"), 1);
+		cache.put(key("/c"), 1, new byte[4], null, 0);
+
+		assertNotNull(cache.get(key("/a"), 1));
+		assertNull(cache.get(key("/b"), 1));
+		assertNotNull(cache.get(key("/c"), 1));
+		assertEquals(8, cache.size());
+	}
+
+	@Test
+	public void registrationsShareTheBudget() {
+		final ResourceCache cache = new ResourceCache(16, 10, false);
+		cache.put(new ResourceCache.Key("/", "/first", "/a"), 1, new byte[4], null, 0);
+		cache.put(new ResourceCache.Key("/", "/second", "/a"), 1, new byte[4], null, 0);
+		cache.put(new ResourceCache.Key("/other", "/first", "/a"), 1, new byte[4], null, 0);
+
+		assertEquals(8, cache.size());
+		assertNull(cache.get(new ResourceCache.Key("/", "/first", "/a"), 1));
+		assertNotNull(cache.get(new ResourceCache.Key("/", "/second", "/a"), 1));
+	}
+
+	@Test
+	public void removesOneRegistration() {
+		final ResourceCache cache = new ResourceCache(16, 64, false);
+		cache.put(new ResourceCache.Key("/", "/first", "/a"), 1, new byte[4], null, 0);
+		cache.put(new ResourceCache.Key("/", "/first", "/b"), 1, new byte[4], null, 0);
+		cache.put(new ResourceCache.Key("/", "/second", "/a"), 1, new byte[4], null, 0);
+
+		cache.remove("/", "/first");
+		assertEquals(4, cache.size());
+		assertNull(cache.get(new ResourceCache.Key("/", "/first", "/a"), 1));
+		assertNotNull(cache.get(new ResourceCache.Key("/", "/second", "/a"), 1));
+	}
+
+	@Test
+	public void bundleUpdateInvalidates() {
+		final ResourceCache cache = new ResourceCache(16, 64, false);
+		cache.put(key("/a"), 1, new byte[4], null, 0);
+
+		assertNull(cache.get(key("/a"), 2));
+		assertNull(cache.get(key("/a"), 1));
+		assertEquals(0, cache.size());
+	}
+
+	private static ResourceCache.Key key(String path) {
+		return new ResourceCache.Key("/", "/", path);
+	}
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.jetty.internal;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.HttpOutput;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.service.http.HttpContext;
+
+/**
+ * Resources on the file system are handed to Jetty as file channel instead of
+ * being copied through an input stream.
+ */
+public class ResourceServletTransferTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void fileResourceIsSentFromItsChannel() throws Exception {
+		File file = folder.newFile("large.bin");
+		Files.write(file.toPath(), new byte[64 * 1024]);
+		HttpContext httpContext = mock(HttpContext.class);
+		when(httpContext.getResource("/large.bin")).thenReturn(file.toURI().toURL());
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getRequestURI()).thenReturn("/large.bin");
+		when(request.getMethod()).thenReturn("GET");
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		HttpOutput out = mock(HttpOutput.class);
+		when(response.getOutputStream()).thenReturn(out);
+
+		new ResourceServlet(httpContext, "", "/", "").doGet(request, response);
+
+		verify(response).setContentLengthLong(file.length());
+		verify(out).sendContent(isA(FileChannel.class));
+		verify(out, never()).sendContent(any(InputStream.class));
+	}
+
+}
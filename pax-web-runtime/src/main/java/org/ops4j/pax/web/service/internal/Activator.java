@@ -63,11 +63,27 @@ import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_CIPHERSUI
 import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_TEMP_DIR;
 import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_WORKER_NAME;
 import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_SSL_RENEGOTIATION_ALLOWED;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_IDLE_TIMEOUT;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_LOG_NCSA_COOKIES;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_LOG_NCSA_ENABLED;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_LOG_NCSA_LATENCY;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_LOG_NCSA_LOGDIR;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_LOG_NCSA_SERVER;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_LOG_NCSA_BUFFER_SIZE;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_MAX_THREADS;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_MIN_THREADS;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_SESSION_COOKIE_HTTP_ONLY;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_SESSION_LAZY_LOAD;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_SESSION_STORE_DIRECTORY;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -82,6 +98,7 @@ import org.ops4j.pax.web.service.spi.ServerController;
 import org.ops4j.pax.web.service.spi.ServerControllerFactory;
 import org.ops4j.pax.web.service.spi.ServletListener;
 import org.ops4j.pax.web.service.spi.model.ServerModel;
+import org.ops4j.pax.web.utils.ClassPathCacheInvalidator;
 import org.ops4j.util.property.DictionaryPropertyResolver;
 import org.ops4j.util.property.PropertyResolver;
 import org.osgi.framework.Bundle;
@@ -106,8 +123,32 @@ public class Activator implements BundleActivator {
 
 	private static final Logger LOG = LoggerFactory.getLogger(Activator.class);
 
+	/**
+	 * Properties a started server applies in place, see
+	 * {@link ServerController#reconfigure(Configuration)}.
+	 */
+	private static final Set<String> RECONFIGURABLE_PROPERTIES = Collections
+			.unmodifiableSet(new HashSet<String>(Arrays.asList(
+					PROPERTY_MAX_THREADS, PROPERTY_MIN_THREADS,
+					PROPERTY_IDLE_TIMEOUT, PROPERTY_LISTENING_ADDRESSES,
+					PROPERTY_HTTP_ENABLED, PROPERTY_HTTP_PORT,
+					PROPERTY_HTTP_SECURE_ENABLED, PROPERTY_HTTP_SECURE_PORT,
+					PROPERTY_LOG_NCSA_ENABLED, PROPERTY_LOG_NCSA_FORMAT,
+					PROPERTY_LOG_NCSA_RETAINDAYS, PROPERTY_LOG_NCSA_APPEND,
+					PROPERTY_LOG_NCSA_EXTENDED, PROPERTY_LOG_NCSA_DISPATCH,
+					PROPERTY_LOG_NCSA_LOGTIMEZONE, PROPERTY_LOG_NCSA_LOGDIR,
+					PROPERTY_LOG_NCSA_LATENCY, PROPERTY_LOG_NCSA_COOKIES,
+					PROPERTY_LOG_NCSA_SERVER, PROPERTY_LOG_NCSA_BUFFER_SIZE,
+					PROPERTY_SESSION_TIMEOUT,
+					PROPERTY_SESSION_COOKIE, PROPERTY_SESSION_DOMAIN,
+					PROPERTY_SESSION_PATH, PROPERTY_SESSION_URL,
+					PROPERTY_SESSION_COOKIE_HTTP_ONLY,
+					PROPERTY_SESSION_COOKIE_SECURE, PROPERTY_SESSION_LAZY_LOAD,
+					PROPERTY_SESSION_STORE_DIRECTORY, PROPERTY_WORKER_NAME)));
+
 	private ServerController serverController;
 	private ServiceRegistration<?> httpServiceFactoryReg;
+	private MetricsExporter metricsExporter;
 
 	private BundleContext bundleContext;
 
@@ -119,6 +160,8 @@ public class Activator implements BundleActivator {
 
 	private ServiceTracker<ServerControllerFactory, ServerControllerFactory> dynamicsServiceTracker;
 
+	private final ClassPathCacheInvalidator classPathCacheInvalidator = new ClassPathCacheInvalidator();
+
 	private final ExecutorService configExecutor = new ThreadPoolExecutor(0, 1,
 			20, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
 
@@ -135,6 +178,7 @@ public class Activator implements BundleActivator {
 	public void start(final BundleContext context) throws Exception {
 		LOG.debug("Starting Pax Web");
 		this.bundleContext = context;
+		classPathCacheInvalidator.register(context);
 		servletEventDispatcher = new ServletEventDispatcher(context);
 		if (SupportUtils.isEventAdminAvailable()) {
 			// Do use the filters this way the eventadmin packages can be
@@ -188,6 +232,7 @@ public class Activator implements BundleActivator {
 	public void stop(final BundleContext context) {
 		LOG.debug("Stopping Pax Web...");
 
+		classPathCacheInvalidator.unregister(context);
 		if (dynamicsServiceTracker != null) {
 			dynamicsServiceTracker.close();
 		}
@@ -331,10 +376,18 @@ public class Activator implements BundleActivator {
 		if (same(dictionary, this.config) && same(controllerFactory, this.factory)) {
 			return;
 		}
+		if (reconfigureController(dictionary, controllerFactory)) {
+			this.config = dictionary;
+			return;
+		}
 		if (httpServiceFactoryReg != null) {
 			httpServiceFactoryReg.unregister();
 			httpServiceFactoryReg = null;
 		}
+		if (metricsExporter != null) {
+			metricsExporter.close();
+			metricsExporter = null;
+		}
 		if (serverController != null) {
 			serverController.stop();
 			serverController = null;
@@ -350,6 +403,11 @@ public class Activator implements BundleActivator {
 				final ServerModel serverModel = new ServerModel();
 				serverController = controllerFactory.createServerController(serverModel);
 				serverController.configure(configuration);
+				if (serverController.getMetrics() != null) {
+					metricsExporter = new MetricsExporter(bundleContext,
+							serverController.getMetrics());
+					metricsExporter.open();
+				}
 				Dictionary<String, Object> props = determineServiceProperties(
 						dictionary, configuration,
 						serverController.getHttpPort(),
@@ -391,6 +449,58 @@ public class Activator implements BundleActivator {
 		this.config = dictionary;
 	}
 
+	/**
+	 * Applies a configuration change to the started server in place when only
+	 * {@link #RECONFIGURABLE_PROPERTIES} changed, keeping the registered
+	 * contexts and the http service registration.
+	 * 
+	 * @return false if the server has to be restarted instead
+	 */
+	private boolean reconfigureController(Dictionary<String, ?> dictionary,
+			ServerControllerFactory controllerFactory) {
+		if (!same(controllerFactory, this.factory) || serverController == null
+				|| httpServiceFactoryReg == null || dictionary == null
+				|| this.config == null || !serverController.isStarted()
+				|| !onlyReconfigurableChanges(this.config, dictionary)) {
+			return false;
+		}
+		try {
+			final PropertyResolver tmpResolver = new BundleContextPropertyResolver(
+					bundleContext, new DefaultPropertyResolver());
+			final ConfigurationImpl configuration = new ConfigurationImpl(
+					new DictionaryPropertyResolver(dictionary, tmpResolver));
+			if (!serverController.reconfigure(configuration)) {
+				return false;
+			}
+			httpServiceFactoryReg.setProperties(determineServiceProperties(
+					dictionary, configuration,
+					serverController.getHttpPort(),
+					serverController.getHttpSecurePort()));
+			LOG.info("Applied configuration change without restarting the server");
+			return true;
+			//CHECKSTYLE:OFF
+		} catch (Throwable t) {
+			LOG.warn("Unable to reconfigure pax web server, restarting it: "
+					+ t.getMessage(), t);
+			return false;
+		}
+		//CHECKSTYLE:ON
+	}
+
+	private static boolean onlyReconfigurableChanges(
+			Dictionary<String, ?> cfg1, Dictionary<String, ?> cfg2) {
+		final Set<String> keys = new HashSet<String>(Collections.list(cfg1.keys()));
+		keys.addAll(Collections.list(cfg2.keys()));
+		for (String key : keys) {
+			if (!Arrays.deepEquals(new Object[] { cfg1.get(key) },
+					new Object[] { cfg2.get(key) })
+					&& !RECONFIGURABLE_PROPERTIES.contains(key)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private Dictionary<String, Object> determineServiceProperties(
 			final Dictionary<String, ?> managedConfig,
 			final Configuration configuration, final Integer httpPort,
@@ -38,6 +38,7 @@ import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_LOG_NCSA_
 import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_LOG_NCSA_LOGTIMEZONE;
 import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_LOG_NCSA_RETAINDAYS;
 import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_LOG_NCSA_SERVER;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_LOG_NCSA_BUFFER_SIZE;
 import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_SERVER_CONFIGURATION_FILE;
 import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_SERVER_CONFIGURATION_URL;
 import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_SESSION_COOKIE;
@@ -73,6 +74,20 @@ import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_WORKER_NA
 import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_MAX_THREADS;
 import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_MIN_THREADS;
 import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_IDLE_TIMEOUT;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_VIRTUAL_THREADS;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_IO_THREADS;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_BUFFER_SIZE;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_DIRECT_BUFFERS;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_HTTP2_ENABLED;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_HTTP2_MAX_CONCURRENT_STREAMS;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_HTTP2_INITIAL_WINDOW_SIZE;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_METRICS_ENABLED;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_ROUTING_CACHE_SIZE;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_RESOURCE_CACHE_SIZE;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_RESOURCE_CACHE_MAX_ENTRY_SIZE;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_RESOURCE_CACHE_DIRECT;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_RESOURCE_COMPRESSION;
+import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_RESOURCE_COMPRESSION_CACHE_SIZE;
 import static org.ops4j.pax.web.service.WebContainerConstants.PROPERTY_SSL_RENEGOTIATION_ALLOWED;
 
 import java.io.File;
@@ -782,6 +797,11 @@ public class ConfigurationImpl extends PropertyStore implements Configuration {
 	public Boolean isLogNCSAServer() {
 		return getResolvedBooleanProperty(PROPERTY_LOG_NCSA_SERVER);
 	}
+
+	@Override
+	public Integer getLogNCSABufferSize() {
+		return getResolvedIntegerProperty(PROPERTY_LOG_NCSA_BUFFER_SIZE);
+	}
 	
 	@Override
 	public Integer getServerMaxThreads() {
@@ -797,5 +817,75 @@ public class ConfigurationImpl extends PropertyStore implements Configuration {
 	public Integer getServerIdleTimeout() {
 		return getResolvedIntegerProperty(PROPERTY_IDLE_TIMEOUT);
 	}
+
+	@Override
+	public Boolean useVirtualThreads() {
+		return getResolvedBooleanProperty(PROPERTY_VIRTUAL_THREADS);
+	}
+
+	@Override
+	public Integer getServerIoThreads() {
+		return getResolvedIntegerProperty(PROPERTY_IO_THREADS);
+	}
+
+	@Override
+	public Integer getServerBufferSize() {
+		return getResolvedIntegerProperty(PROPERTY_BUFFER_SIZE);
+	}
+
+	@Override
+	public Boolean getServerDirectBuffers() {
+		return getResolvedBooleanProperty(PROPERTY_DIRECT_BUFFERS);
+	}
+
+	@Override
+	public Boolean isHttp2Enabled() {
+		return getResolvedBooleanProperty(PROPERTY_HTTP2_ENABLED);
+	}
+
+	@Override
+	public Integer getHttp2MaxConcurrentStreams() {
+		return getResolvedIntegerProperty(PROPERTY_HTTP2_MAX_CONCURRENT_STREAMS);
+	}
+
+	@Override
+	public Integer getHttp2InitialWindowSize() {
+		return getResolvedIntegerProperty(PROPERTY_HTTP2_INITIAL_WINDOW_SIZE);
+	}
+
+	@Override
+	public Boolean isMetricsEnabled() {
+		return getResolvedBooleanProperty(PROPERTY_METRICS_ENABLED);
+	}
+
+	@Override
+	public Integer getServerRoutingCacheSize() {
+		return getResolvedIntegerProperty(PROPERTY_ROUTING_CACHE_SIZE);
+	}
+
+	@Override
+	public Integer getResourceCacheSize() {
+		return getResolvedIntegerProperty(PROPERTY_RESOURCE_CACHE_SIZE);
+	}
+
+	@Override
+	public Integer getResourceCacheMaxEntrySize() {
+		return getResolvedIntegerProperty(PROPERTY_RESOURCE_CACHE_MAX_ENTRY_SIZE);
+	}
+
+	@Override
+	public Boolean isResourceCacheDirect() {
+		return getResolvedBooleanProperty(PROPERTY_RESOURCE_CACHE_DIRECT);
+	}
+
+	@Override
+	public Boolean isResourceCompressionEnabled() {
+		return getResolvedBooleanProperty(PROPERTY_RESOURCE_COMPRESSION);
+	}
+
+	@Override
+	public Integer getResourceCompressionCacheSize() {
+		return getResolvedIntegerProperty(PROPERTY_RESOURCE_COMPRESSION_CACHE_SIZE);
+	}
 	
 }
\ No newline at end of file
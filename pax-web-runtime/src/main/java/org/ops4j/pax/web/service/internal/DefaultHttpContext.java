@@ -26,7 +26,9 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.web.service.WebContainerContext;
+import org.ops4j.pax.web.service.spi.util.CachingHttpContext;
 import org.ops4j.pax.web.service.spi.util.Path;
+import org.ops4j.pax.web.service.spi.util.ResourceUrlCache;
 import org.osgi.framework.Bundle;
 import org.osgi.service.http.HttpContext;
 import org.osgi.service.http.HttpService;
@@ -39,7 +41,7 @@ import org.slf4j.LoggerFactory;
  * 
  * @author Alin Dreghiciu (adreghiciu@gmail.com)
  */
-class DefaultHttpContext implements WebContainerContext {
+class DefaultHttpContext implements WebContainerContext, CachingHttpContext {
 
 	/**
 	 * Logger.
@@ -54,6 +56,20 @@ class DefaultHttpContext implements WebContainerContext {
 
 	private String contextID;
 
+	/**
+	 * Resolved resources, dropped when the bundle is updated.
+	 */
+	private final ResourceUrlCache resourceCache = new ResourceUrlCache();
+
+	private final ResourceUrlCache.Lookup lookup = new ResourceUrlCache.Lookup() {
+		@Override
+		public URL getResource(final String name) {
+			LOG.debug("Searching bundle [" + bundle + "] for resource ["
+					+ name + "]");
+			return bundle.getResource(name);
+		}
+	};
+
 	/**
 	 * Constructor.
 	 * 
@@ -84,9 +100,8 @@ class DefaultHttpContext implements WebContainerContext {
 	@Override
 	public URL getResource(final String name) {
 		final String normalizedname = Path.normalizeResourcePath(name);
-		LOG.debug("Searching bundle [" + bundle + "] for resource ["
-				+ normalizedname + "]");
-		return bundle.getResource(normalizedname);
+		return resourceCache.getResource(normalizedname,
+				bundle.getLastModified(), lookup);
 	}
 
 	/**
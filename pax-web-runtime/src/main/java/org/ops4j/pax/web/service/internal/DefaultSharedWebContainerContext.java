@@ -18,10 +18,14 @@ package org.ops4j.pax.web.service.internal;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.servlet.http.HttpServletRequest;
@@ -29,34 +33,118 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.ops4j.pax.web.service.SharedWebContainerContext;
 import org.ops4j.pax.web.service.spi.util.Path;
+import org.ops4j.pax.web.service.spi.util.ResourceUrlCache;
 import org.osgi.framework.Bundle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * {@link SharedWebContainerContext} looking up resources in the bundles
+ * registered with it, the first registered bundle providing a resource wins.
+ * <p>
+ * The entries of every registered bundle, including its fragments, are
+ * indexed by path when the bundle is registered. Resource paths are entries,
+ * so only the bundles containing the path are asked for them. A resource may
+ * also come from the class path of a bundle, like an imported package, so
+ * the index only answers a resource lookup if the first registered bundle
+ * contains it. Other resources are looked up in all bundles in registration
+ * order and cached.
+ */
 public class DefaultSharedWebContainerContext implements
 		SharedWebContainerContext {
 	private static final Logger LOG = LoggerFactory
 			.getLogger(DefaultSharedWebContainerContext.class);
 
+	private static final Bundle[] NO_BUNDLES = new Bundle[0];
+
 	private Queue<Bundle> bundles = new ConcurrentLinkedQueue<Bundle>();
 
+	/**
+	 * Bundles containing an entry or directory, in registration order. The
+	 * arrays are never modified, only replaced while holding this.
+	 */
+	private final Map<String, Bundle[]> index = new ConcurrentHashMap<String, Bundle[]>();
+
+	/**
+	 * Indexed paths of each registered bundle, guarded by this.
+	 */
+	private final Map<Bundle, Set<String>> indexedPaths = new HashMap<Bundle, Set<String>>();
+
+	/**
+	 * Resources not owned by the first registered bundle, dropped whenever a
+	 * bundle is registered or deregistered.
+	 */
+	private final ResourceUrlCache resourceCache = new ResourceUrlCache();
+
+	private final ResourceUrlCache.Lookup lookup = new ResourceUrlCache.Lookup() {
+		@Override
+		public URL getResource(final String name) {
+			for (Bundle bundle : bundles) {
+				URL pathUrl = DefaultSharedWebContainerContext.this.getResource(bundle, name);
+				if (pathUrl != null) {
+					return pathUrl;
+				}
+			}
+			return null;
+		}
+	};
+
 	@Override
-	public boolean registerBundle(Bundle bundle) {
+	public synchronized boolean registerBundle(Bundle bundle) {
 		if (!bundles.contains(bundle)) {
+			final Set<String> paths = entryPaths(bundle);
+			for (String path : paths) {
+				final Bundle[] owners = index.get(path);
+				if (owners == null) {
+					index.put(path, new Bundle[] { bundle });
+				} else {
+					final Bundle[] extended = Arrays.copyOf(owners, owners.length + 1);
+					extended[owners.length] = bundle;
+					index.put(path, extended);
+				}
+			}
+			indexedPaths.put(bundle, paths);
 			bundles.add(bundle);
+			resourceCache.clear();
 			return true;
 		}
 		return false;
 	}
 
 	@Override
-	public boolean deregisterBundle(Bundle bundle) {
-		return bundles.remove(bundle);
+	public synchronized boolean deregisterBundle(Bundle bundle) {
+		if (bundles.remove(bundle)) {
+			final Set<String> paths = indexedPaths.remove(bundle);
+			if (paths != null) {
+				for (String path : paths) {
+					final Bundle[] owners = index.get(path);
+					if (owners == null) {
+						continue;
+					}
+					if (owners.length == 1) {
+						index.remove(path);
+						continue;
+					}
+					final Bundle[] reduced = new Bundle[owners.length - 1];
+					int i = 0;
+					for (Bundle owner : owners) {
+						if (owner != bundle && i < reduced.length) {
+							reduced[i++] = owner;
+						}
+					}
+					index.put(path, reduced);
+				}
+			}
+			resourceCache.clear();
+			return true;
+		}
+		return false;
 	}
 
 	@Override
 	public Set<String> getResourcePaths(String path) {
-		for (Bundle bundle : bundles) {
+		// entry paths are found in the bundles containing them only
+		for (Bundle bundle : owners(path)) {
 			Set<String> paths = getResourcePaths(bundle, path);
 			if (paths != null) {
 				return paths;
@@ -72,13 +160,76 @@ public class DefaultSharedWebContainerContext implements
 
 	@Override
 	public URL getResource(String path) {
-		for (Bundle bundle : bundles) {
-			URL pathUrl = getResource(bundle, path);
+		// no other bundle is asked before the first registered one
+		final Bundle[] owners = owners(path);
+		if (owners.length > 0 && owners[0] == bundles.peek()) {
+			URL pathUrl = getResource(owners[0], path);
 			if (pathUrl != null) {
 				return pathUrl;
 			}
 		}
-		return null;
+		return resourceCache.getResource(path, revision(), lookup);
+	}
+
+	private Bundle[] owners(String path) {
+		final String key = indexKey(Path.normalizeResourcePath(path));
+		if (key == null) {
+			return NO_BUNDLES;
+		}
+		final Bundle[] owners = index.get(key);
+		return owners == null ? NO_BUNDLES : owners;
+	}
+
+	/**
+	 * @return the key of a normalized path in the index, without trailing
+	 *         slash
+	 */
+	private static String indexKey(String normalizedPath) {
+		if (normalizedPath == null) {
+			return null;
+		}
+		String key = normalizedPath;
+		while (key.startsWith("/") && key.length() > 1) {
+			key = key.substring(1);
+		}
+		while (key.endsWith("/") && key.length() > 1) {
+			key = key.substring(0, key.length() - 1);
+		}
+		return key.isEmpty() ? "/" : key;
+	}
+
+	/**
+	 * Collects the paths of all entries of a bundle and its fragments, and of
+	 * the directories containing them.
+	 */
+	private static Set<String> entryPaths(Bundle bundle) {
+		final Set<String> paths = new HashSet<String>();
+		paths.add("/");
+		final Enumeration<URL> entries = bundle.findEntries("/", "*", true);
+		if (entries == null) {
+			return paths;
+		}
+		while (entries.hasMoreElements()) {
+			String path = indexKey(entries.nextElement().getPath());
+			while (path != null && paths.add(path)) {
+				final int slash = path.lastIndexOf('/');
+				path = slash > 0 ? path.substring(0, slash) : null;
+			}
+		}
+		LOG.debug("Indexed " + paths.size() + " paths of bundle [" + bundle + "]");
+		return paths;
+	}
+
+	/**
+	 * @return the latest revision of the registered bundles, changing when
+	 *         one of them is updated
+	 */
+	private long revision() {
+		long revision = 0;
+		for (Bundle bundle : bundles) {
+			revision = Math.max(revision, bundle.getLastModified());
+		}
+		return revision;
 	}
 
 	private URL getResource(Bundle bundle, final String name) {
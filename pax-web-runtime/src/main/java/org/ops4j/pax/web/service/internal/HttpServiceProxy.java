@@ -163,6 +163,16 @@ public class HttpServiceProxy implements StoppableHttpService {
 		delegate.unregisterServlets(servletClass);
 	}
 
+	/**
+	 * @see WebContainer#remapServlet(Servlet, String[], Dictionary)
+	 */
+	@Override
+	public void remapServlet(final Servlet servlet, final String[] urlPatterns,
+			final Dictionary<String, ?> initParams) throws ServletException {
+		LOG.debug("Remapping servlet [" + servlet + "]");
+		delegate.remapServlet(servlet, urlPatterns, initParams);
+	}
+
 	/**
 	 * @see WebContainer#registerEventListener(EventListener, HttpContext) )
 	 */
@@ -254,6 +264,16 @@ public class HttpServiceProxy implements StoppableHttpService {
 		delegate.unregisterFilter(filterName);
 	}
 
+	/**
+	 * @see WebContainer#remapFilter(Filter, String[], String[], Dictionary)
+	 */
+	@Override
+	public void remapFilter(final Filter filter, final String[] urlPatterns,
+			final String[] servletNames, final Dictionary<String, String> initParams) {
+		LOG.debug("Remapping filter [" + filter + "]");
+		delegate.remapFilter(filter, urlPatterns, servletNames, initParams);
+	}
+
 	/**
 	 * @see WebContainer#setContextParam(Dictionary, HttpContext)
 	 */
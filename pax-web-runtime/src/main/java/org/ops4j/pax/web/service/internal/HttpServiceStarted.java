@@ -33,9 +33,13 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -104,6 +108,30 @@ class HttpServiceStarted implements StoppableHttpService {
 
 	private final Object lock = new Object();
 
+	/**
+	 * Registrations between begin() and end() of an http context. The
+	 * context is started once in the outermost end(), the DEPLOYED events are
+	 * held back until then. Begin and end change the map holding it.
+	 */
+	private final ConcurrentMap<HttpContext, Batch> batches = new ConcurrentHashMap<>();
+
+	/**
+	 * Registrations of a batch, rolled back if the context fails to start at
+	 * its end.
+	 */
+	private static final class Batch {
+		/**
+		 * Nesting depth of begin() calls, guarded by the batches.
+		 */
+		private int depth;
+		private final Queue<ServletModel> servlets = new ConcurrentLinkedQueue<>();
+		private final Queue<FilterModel> filters = new ConcurrentLinkedQueue<>();
+		/**
+		 * Remapped servlets, which are not rolled back.
+		 */
+		private final Queue<ServletModel> remapped = new ConcurrentLinkedQueue<>();
+	}
+
 	static {
 		sharedWebContainerContext = new DefaultSharedWebContainerContext();
 	}
@@ -163,6 +191,7 @@ class HttpServiceStarted implements StoppableHttpService {
 
 	@Override
 	public void stop() {
+		batches.clear();
 		for (ServletModel model : serviceModel.getServletModels()) {
 			servletEvent(ServletEvent.UNDEPLOYING, serviceBundle, model);
 			serverModel.removeServletModel(model);
@@ -219,6 +248,7 @@ class HttpServiceStarted implements StoppableHttpService {
 	private void registerServlet(ServletModel model)
 			throws ServletException, NamespaceException {
 		servletEvent(ServletEvent.DEPLOYING, serviceBundle, model);
+		final Batch batch = batches.get(model.getContextModel().getHttpContext());
 		boolean serverSuccess = false;
 		boolean serviceSuccess = false;
 		boolean controllerSuccess = false;
@@ -230,7 +260,7 @@ class HttpServiceStarted implements StoppableHttpService {
 			serverController.addServlet(model);
 			controllerSuccess = true;
             ContextModel contextModel = model.getContextModel();
-			if (model.getServlet() != null && !isWebAppWebContainerContext(contextModel)) {
+			if (model.getServlet() != null && batch == null && !isWebAppWebContainerContext(contextModel)) {
                 try {
                     serverController.getContext(contextModel).start();
                     // CHECKSTYLE:OFF
@@ -250,6 +280,8 @@ class HttpServiceStarted implements StoppableHttpService {
 					serverModel.removeServletModel(model);
 				}
 				servletEvent(ServletEvent.FAILED, serviceBundle, model);
+			} else if (batch != null) {
+				batch.servlets.add(model);
 			} else {
 				servletEvent(ServletEvent.DEPLOYED, serviceBundle, model);
 			}
@@ -408,6 +440,69 @@ class HttpServiceStarted implements StoppableHttpService {
 		}
 	}
 
+	/**
+	 * Swaps the servlet model in the server and service model and lets the
+	 * server controller change the mapping in place. The registered model is
+	 * restored if the remapped one cannot be applied.
+	 * 
+	 * @see WebContainer#remapServlet(Servlet, String[], Dictionary)
+	 */
+	@Override
+	public void remapServlet(final Servlet servlet, final String[] urlPatterns,
+			final Dictionary<String, ?> initParams) throws ServletException {
+		NullArgumentException.validateNotNull(servlet, "Servlet");
+		final ServletModel registered = serviceModel.getServletModel(servlet);
+		if (registered == null) {
+			throw new IllegalArgumentException("Servlet [" + servlet
+					+ "] is not currently registered in any context");
+		}
+		if (registered.getAlias() != null) {
+			throw new IllegalArgumentException("Servlet [" + servlet
+					+ "] is registered with alias [" + registered.getAlias()
+					+ "] and cannot be remapped");
+		}
+		final ServletModel model = registered.remap(urlPatterns, initParams);
+		final Batch batch = batches.get(model.getContextModel().getHttpContext());
+		boolean serverSuccess = false;
+		boolean controllerSuccess = false;
+		serverModel.removeServletModel(registered);
+		try {
+			serverModel.addServletModel(model);
+			serverSuccess = true;
+			serviceModel.replaceServletModel(registered, model);
+			serverController.remapServlet(registered, model);
+			controllerSuccess = true;
+		} catch (NamespaceException e) {
+			// cannot happen, servlets without alias are remapped only
+			throw new ServletException(e);
+		} finally {
+			// as for registrations the compensatory actions should not throw
+			// exceptions.
+			if (!controllerSuccess) {
+				if (serverSuccess) {
+					serviceModel.replaceServletModel(model, registered);
+					serverModel.removeServletModel(model);
+				}
+				restoreServletModel(registered);
+			}
+		}
+		// the old mapping goes, the new one comes
+		servletEvent(ServletEvent.UNDEPLOYED, serviceBundle, registered);
+		if (batch != null) {
+			batch.remapped.add(model);
+		} else {
+			servletEvent(ServletEvent.DEPLOYED, serviceBundle, model);
+		}
+	}
+
+	private void restoreServletModel(final ServletModel model) {
+		try {
+			serverModel.addServletModel(model);
+		} catch (ServletException | NamespaceException e) {
+			LOG.error("Could not restore the mapping of servlet [" + model + "]", e);
+		}
+	}
+
 	@Override
 	public void registerServlet(Class<? extends Servlet> servletClass,
 			final String[] urlPatterns, final Dictionary<String, ?> initParams,
@@ -554,6 +649,18 @@ class HttpServiceStarted implements StoppableHttpService {
 	    } else {
 	        registerFilter(model);
 	    }
+	    addToBatch(model);
+	}
+
+	/**
+	 * Keeps a registered filter to roll it back if the batch of its context
+	 * fails.
+	 */
+	private void addToBatch(FilterModel model) {
+		final Batch batch = batches.get(model.getContextModel().getHttpContext());
+		if (batch != null) {
+			batch.filters.add(model);
+		}
 	}
     
     
@@ -603,6 +710,7 @@ class HttpServiceStarted implements StoppableHttpService {
 		final FilterModel model = new FilterModel(contextModel, filterClass,
 				urlPatterns, servletNames, initParams, asyncSupported);
 		registerFilter(model);
+		addToBatch(model);
 	}
 	
 	@Override
@@ -632,6 +740,49 @@ class HttpServiceStarted implements StoppableHttpService {
 		}
 	}
 
+	/**
+	 * Swaps the filter model in the server and service model and lets the
+	 * server controller change the mapping in place. The ranking ordering the
+	 * filters is part of the init params and must not change, so the filter
+	 * keeps its position.
+	 * 
+	 * @see WebContainer#remapFilter(Filter, String[], String[], Dictionary)
+	 */
+	@Override
+	public void remapFilter(final Filter filter, final String[] urlPatterns,
+			final String[] servletNames, final Dictionary<String, String> initParams) {
+		NullArgumentException.validateNotNull(filter, "Filter");
+		final FilterModel registered = serviceModel.getFilterModel(filter);
+		if (registered == null) {
+			throw new IllegalArgumentException("Filter [" + filter
+					+ "] is not currently registered in any context");
+		}
+		final FilterModel model = registered.remap(urlPatterns, servletNames, initParams);
+		final String name = model.getInitParams().get(WebContainerConstants.FILTER_NAME);
+		if ((name != null && !name.equals(registered.getName()))
+				|| !Objects.equals(registered.getInitParams().get(WebContainerConstants.FILTER_RANKING),
+						model.getInitParams().get(WebContainerConstants.FILTER_RANKING))
+				|| !new HashSet<>(Arrays.asList(registered.getDispatcher())).equals(
+						new HashSet<>(Arrays.asList(model.getDispatcher())))) {
+			throw new IllegalArgumentException("Filter [" + filter
+					+ "] cannot change its name, ranking or dispatcher types in place");
+		}
+		boolean controllerSuccess = false;
+		serverModel.removeFilterModel(registered);
+		serverModel.addFilterModel(model);
+		serviceModel.replaceFilterModel(model);
+		try {
+			serverController.remapFilter(registered, model);
+			controllerSuccess = true;
+		} finally {
+			if (!controllerSuccess) {
+				serviceModel.replaceFilterModel(registered);
+				serverModel.removeFilterModel(model);
+				serverModel.addFilterModel(registered);
+			}
+		}
+	}
+
 	/**
 	 * @see WebContainer#setContextParam(Dictionary, HttpContext)
 	 */
@@ -1084,6 +1235,8 @@ class HttpServiceStarted implements StoppableHttpService {
 					bundleClassLoader);
 			contextModel.setVirtualHosts(serverController.getConfiguration()
 					.getVirtualHosts());
+			// not kept before its first registration, which may be batched
+			contextModel.setBatched(httpContext != null && batches.containsKey(httpContext));
 		}
 		return contextModel;
 	}
@@ -1104,7 +1257,18 @@ class HttpServiceStarted implements StoppableHttpService {
 		LOG.debug("Beginning and ssing context [" + contextModel + "]");
 		try {
 			serverController.getContext(contextModel);
-			contextModel.setWebBundle(true);
+			if (isWebAppWebContainerContext(contextModel)) {
+				contextModel.setWebBundle(true);
+			}
+			synchronized (batches) {
+				Batch batch = batches.get(httpContext);
+				if (batch == null) {
+					batch = new Batch();
+					batches.put(httpContext, batch);
+				}
+				batch.depth++;
+			}
+			contextModel.setBatched(true);
 			//CHECKSTYLE:OFF
 		} catch (Exception e) { 
 			if (e instanceof RuntimeException) {
@@ -1115,22 +1279,88 @@ class HttpServiceStarted implements StoppableHttpService {
 		//CHECKSTYLE:ON
 	}
 
+	/**
+	 * Ends a batch. Only the outermost end() of nested begin() and end()
+	 * calls starts the context. If it fails to start, all servlets and
+	 * filters registered during the batch are unregistered again.
+	 */
 	@Override
 	public void end(HttpContext httpContext) {
 		final ContextModel contextModel = getOrCreateContext(httpContext);
 		LOG.debug("Using context [" + contextModel + "]");
+		final Batch batch;
+		synchronized (batches) {
+			batch = batches.get(httpContext);
+			if (batch != null && --batch.depth > 0) {
+				LOG.debug("Ended nested batch of context [{}]", contextModel);
+				return;
+			}
+			batches.remove(httpContext);
+		}
+		contextModel.setBatched(false);
+		boolean started = false;
 		try {
 			serverController.getContext(contextModel).start();
+			started = true;
 			//CHECKSTYLE:OFF
 		} catch (Exception e) { 
 			if (e instanceof RuntimeException) {
 				throw (RuntimeException) e;
 			}
-			LOG.warn("Exception finalizing HttpContext registration");
+			LOG.warn("Exception finalizing HttpContext registration", e);
+		} finally {
+			if (batch != null) {
+				if (started) {
+					LOG.debug("Committed " + batch.servlets.size() + " servlet and " + batch.filters.size()
+							+ " filter registrations to context [" + contextModel + "]");
+				} else {
+					rollback(batch, contextModel);
+				}
+				for (ServletModel model : batch.servlets) {
+					servletEvent(started ? ServletEvent.DEPLOYED : ServletEvent.FAILED, serviceBundle, model);
+				}
+				for (ServletModel model : batch.remapped) {
+					servletEvent(started ? ServletEvent.DEPLOYED : ServletEvent.FAILED, serviceBundle, model);
+				}
+			}
 		}
 		//CHECKSTYLE:ON
 	}
 
+	/**
+	 * Unregisters the servlets and filters of a failed batch, in reverse
+	 * order of registration.
+	 */
+	private void rollback(Batch batch, ContextModel contextModel) {
+		LOG.warn("Rolling back " + batch.servlets.size() + " servlet and " + batch.filters.size()
+				+ " filter registrations to context [" + contextModel + "]");
+		final List<FilterModel> filters = new ArrayList<>(batch.filters);
+		Collections.reverse(filters);
+		// skip the ones unregistered during the batch already
+		filters.retainAll(Arrays.asList(serviceModel.getFilterModels()));
+		for (FilterModel model : filters) {
+			//CHECKSTYLE:OFF
+			try {
+				unregister(model);
+			} catch (RuntimeException e) {
+				LOG.warn("Could not roll back filter [" + model + "]", e);
+			}
+		}
+		final List<ServletModel> servlets = new ArrayList<>(batch.servlets);
+		Collections.reverse(servlets);
+		servlets.retainAll(Arrays.asList(serviceModel.getServletModels()));
+		for (ServletModel model : servlets) {
+			try {
+				serviceModel.removeServletModel(model);
+				serverModel.removeServletModel(model);
+				serverController.removeServlet(model);
+			} catch (RuntimeException e) {
+				LOG.warn("Could not roll back servlet [" + model + "]", e);
+			}
+			//CHECKSTYLE:ON
+		}
+	}
+
 	@Override
 	public void setConnectorsAndVirtualHosts(List<String> connectors, List<String> virtualHosts,
 			HttpContext httpContext) {
@@ -1277,7 +1507,7 @@ class HttpServiceStarted implements StoppableHttpService {
             }
         }
         
-        if (!isWebAppWebContainerContext(contextModel)) {
+        if (!isWebAppWebContainerContext(contextModel) && !batches.containsKey(httpContext)) {
             try {
                 serverController.getContext(contextModel).start();
                 // CHECKSTYLE:OFF
@@ -192,6 +192,17 @@ class HttpServiceStopped implements StoppableHttpService {
 		LOG.warn("Http service has already been stopped");
 	}
 
+	/**
+	 * Does nothing.
+	 * 
+	 * @see WebContainer#remapServlet(Servlet, String[], Dictionary)
+	 */
+	@Override
+	public void remapServlet(final Servlet servlet, final String[] urlPatterns,
+			final Dictionary<String, ?> initParams) {
+		LOG.warn("Http service has already been stopped");
+	}
+
 	/**
 	 * Does nothing.
 	 * 
@@ -265,6 +276,17 @@ class HttpServiceStopped implements StoppableHttpService {
 		LOG.warn("Http service has already been stopped");
 	}
 
+	/**
+	 * Does nothing.
+	 * 
+	 * @see WebContainer#remapFilter(Filter, String[], String[], Dictionary)
+	 */
+	@Override
+	public void remapFilter(final Filter filter, final String[] urlPatterns,
+			final String[] servletNames, final Dictionary<String, String> initParams) {
+		LOG.warn("Http service has already been stopped");
+	}
+
 	/**
 	 * @see WebContainer#setContextParam(Dictionary, HttpContext)
 	 */
@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.internal;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.ops4j.pax.web.service.spi.metrics.RequestMetrics;
+import org.ops4j.pax.web.service.spi.metrics.WebMetrics;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsListener;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the {@link WebMetrics} of a server controller as a service and
+ * each of its {@link RequestMetrics} as an MXBean named
+ * <code>org.ops4j.pax.web:type=RequestMetrics,kind=...,context=...,name=...</code>.
+ */
+class MetricsExporter implements WebMetricsListener {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(MetricsExporter.class);
+
+	private static final String DOMAIN = "org.ops4j.pax.web";
+
+	private final BundleContext bundleContext;
+
+	private final WebMetrics metrics;
+
+	private final MBeanServer mbeanServer = ManagementFactory
+			.getPlatformMBeanServer();
+
+	private final Map<RequestMetrics, ObjectName> names = new ConcurrentHashMap<RequestMetrics, ObjectName>();
+
+	private ServiceRegistration<WebMetrics> registration;
+
+	MetricsExporter(BundleContext bundleContext, WebMetrics metrics) {
+		this.bundleContext = bundleContext;
+		this.metrics = metrics;
+	}
+
+	void open() {
+		metrics.addListener(this);
+		for (RequestMetrics requestMetrics : metrics.getMetrics()) {
+			metricsAdded(requestMetrics);
+		}
+		registration = bundleContext.registerService(WebMetrics.class,
+				metrics, null);
+	}
+
+	void close() {
+		if (registration != null) {
+			try {
+				registration.unregister();
+			} catch (IllegalStateException e) {
+				// already unregistered with the bundle
+			}
+			registration = null;
+		}
+		metrics.removeListener(this);
+		for (RequestMetrics requestMetrics : names.keySet()) {
+			metricsRemoved(requestMetrics);
+		}
+	}
+
+	@Override
+	public void metricsAdded(RequestMetrics requestMetrics) {
+		try {
+			final ObjectName name = objectName(requestMetrics);
+			if (names.putIfAbsent(requestMetrics, name) == null) {
+				mbeanServer.registerMBean(requestMetrics, name);
+			}
+		} catch (JMException e) {
+			names.remove(requestMetrics);
+			LOG.warn("Cannot register MBean for " + requestMetrics, e);
+		}
+	}
+
+	@Override
+	public void metricsRemoved(RequestMetrics requestMetrics) {
+		final ObjectName name = names.remove(requestMetrics);
+		if (name == null) {
+			return;
+		}
+		try {
+			mbeanServer.unregisterMBean(name);
+		} catch (JMException e) {
+			LOG.debug("Cannot unregister MBean " + name, e);
+		}
+	}
+
+	private static ObjectName objectName(RequestMetrics requestMetrics)
+			throws JMException {
+		final StringBuilder name = new StringBuilder(DOMAIN)
+				.append(":type=RequestMetrics,kind=")
+				.append(requestMetrics.getKind().toLowerCase())
+				.append(",context=")
+				.append(ObjectName.quote("/" + requestMetrics.getContextName()));
+		if (requestMetrics.getMetricsKind() != RequestMetrics.Kind.CONTEXT) {
+			name.append(",name=").append(
+					ObjectName.quote(requestMetrics.getName()));
+		}
+		return new ObjectName(name.toString());
+	}
+
+}
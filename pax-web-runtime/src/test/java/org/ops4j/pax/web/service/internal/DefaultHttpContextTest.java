@@ -57,9 +57,12 @@ public class DefaultHttpContextTest {
 	@Test
 	public void getResource() throws MalformedURLException {
 		URL url = new URL("file://");
+		expect(bundle.getLastModified()).andReturn(1L).anyTimes();
 		expect(bundle.getResource("test")).andReturn(url);
 		replay(bundle);
-		contextUnderTest.getResource("test");
+		assertEquals(url, contextUnderTest.getResource("test"));
+		// second lookup is served from the cache
+		assertEquals(url, contextUnderTest.getResource("test"));
 		verify(bundle);
 	}
 
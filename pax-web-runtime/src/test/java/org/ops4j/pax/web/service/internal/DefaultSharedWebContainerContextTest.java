@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+
+public class DefaultSharedWebContainerContextTest {
+
+	@Test
+	public void getResourceAsksFirstBundleIfIndexed() throws MalformedURLException {
+		final URL first = new URL("file://b1/css/site.css");
+		final URL second = new URL("file://b2/css/site.css");
+		final URL script = new URL("file://b2/js/app.js");
+
+		final Bundle bundle1 = createMock(Bundle.class);
+		expect(bundle1.findEntries("/", "*", true)).andReturn(
+				Collections.enumeration(Collections.singletonList(first)));
+		expect(bundle1.getResource("css/site.css")).andReturn(first);
+		expect(bundle1.getResource("js/app.js")).andReturn(null);
+		expect(bundle1.getLastModified()).andReturn(1L).anyTimes();
+		final Bundle bundle2 = createMock(Bundle.class);
+		expect(bundle2.findEntries("/", "*", true)).andReturn(
+				Collections.enumeration(Arrays.asList(second, script)));
+		expect(bundle2.getResource("js/app.js")).andReturn(script);
+		expect(bundle2.getResource("css/site.css")).andReturn(second);
+		expect(bundle2.getLastModified()).andReturn(1L).anyTimes();
+		replay(bundle1, bundle2);
+
+		final DefaultSharedWebContainerContext context = new DefaultSharedWebContainerContext();
+		context.registerBundle(bundle1);
+		context.registerBundle(bundle2);
+
+		// first registered bundle wins, the other one is not asked
+		assertEquals(first, context.getResource("/css/site.css"));
+		assertEquals(script, context.getResource("/js/app.js"));
+		// found in the cache
+		assertEquals(script, context.getResource("/js/app.js"));
+
+		context.deregisterBundle(bundle1);
+		assertEquals(second, context.getResource("/css/site.css"));
+		verify(bundle1, bundle2);
+	}
+
+	@Test
+	public void getResourceKeepsRegistrationOrderOverIndex() throws MalformedURLException {
+		final URL imported = new URL("file://exporter/css/site.css");
+		final URL entry = new URL("file://b2/css/site.css");
+
+		// the first bundle gets the resource from an imported package
+		final Bundle bundle1 = createMock(Bundle.class);
+		expect(bundle1.findEntries("/", "*", true)).andReturn(null);
+		expect(bundle1.getResource("css/site.css")).andReturn(imported);
+		expect(bundle1.getLastModified()).andReturn(1L).anyTimes();
+		final Bundle bundle2 = createMock(Bundle.class);
+		expect(bundle2.findEntries("/", "*", true)).andReturn(
+				Collections.enumeration(Collections.singletonList(entry)));
+		expect(bundle2.getLastModified()).andReturn(1L).anyTimes();
+		replay(bundle1, bundle2);
+
+		final DefaultSharedWebContainerContext context = new DefaultSharedWebContainerContext();
+		context.registerBundle(bundle1);
+		context.registerBundle(bundle2);
+
+		assertEquals(imported, context.getResource("/css/site.css"));
+		verify(bundle1, bundle2);
+	}
+
+	@Test
+	public void getResourceFallsBackToAllBundles() throws MalformedURLException {
+		final Bundle bundle = createMock(Bundle.class);
+		expect(bundle.findEntries("/", "*", true)).andReturn(null);
+		expect(bundle.getLastModified()).andReturn(1L).anyTimes();
+		expect(bundle.getResource("missing.html")).andReturn(null).once();
+		replay(bundle);
+
+		final DefaultSharedWebContainerContext context = new DefaultSharedWebContainerContext();
+		context.registerBundle(bundle);
+
+		assertNull(context.getResource("missing.html"));
+		// misses are cached
+		assertNull(context.getResource("missing.html"));
+		verify(bundle);
+	}
+
+}
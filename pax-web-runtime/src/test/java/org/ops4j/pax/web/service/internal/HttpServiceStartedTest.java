@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.internal;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+
+import javax.servlet.Filter;
+import javax.servlet.Servlet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.pax.web.service.spi.Configuration;
+import org.ops4j.pax.web.service.spi.LifeCycle;
+import org.ops4j.pax.web.service.spi.ServerController;
+import org.ops4j.pax.web.service.spi.ServletEvent;
+import org.ops4j.pax.web.service.spi.ServletListener;
+import org.ops4j.pax.web.service.spi.model.ContextModel;
+import org.ops4j.pax.web.service.spi.model.FilterModel;
+import org.ops4j.pax.web.service.spi.model.ServerModel;
+import org.ops4j.pax.web.service.spi.model.ServletModel;
+import org.osgi.framework.Bundle;
+import org.osgi.service.http.HttpContext;
+
+public class HttpServiceStartedTest {
+
+	private final List<Integer> events = new ArrayList<Integer>();
+	private ServerController serverController;
+	private ServerModel serverModel;
+	private LifeCycle context;
+	private HttpContext httpContext;
+	private HttpServiceStarted httpService;
+
+	@Before
+	public void setUp() {
+		Configuration configuration = createNiceMock(Configuration.class);
+		expect(configuration.getVirtualHosts()).andReturn(new ArrayList<String>()).anyTimes();
+		context = createMock(LifeCycle.class);
+		serverController = createNiceMock(ServerController.class);
+		expect(serverController.getConfiguration()).andReturn(configuration).anyTimes();
+		expect(serverController.getContext((ContextModel) anyObject())).andReturn(context).anyTimes();
+		httpContext = createNiceMock(HttpContext.class);
+		Bundle bundle = createNiceMock(Bundle.class);
+		expect(bundle.getHeaders()).andReturn(new Hashtable<String, String>()).anyTimes();
+		replay(configuration, serverController, httpContext, bundle);
+		serverModel = new ServerModel();
+		httpService = new HttpServiceStarted(bundle, serverController, serverModel,
+				new ServletListener() {
+					@Override
+					public void servletEvent(ServletEvent servletEvent) {
+						events.add(servletEvent.getType());
+					}
+				});
+	}
+
+	@Test
+	public void nestedBatchStartsContextOnceAtOutermostEnd() throws Exception {
+		replay(context);
+		httpService.begin(httpContext);
+		httpService.begin(httpContext);
+		httpService.registerServlet("/servlet", createNiceMock(Servlet.class), null, httpContext);
+		httpService.end(httpContext);
+		verify(context);
+		assertEquals(Arrays.asList(ServletEvent.DEPLOYING), events);
+
+		reset(context);
+		context.start();
+		expectLastCall().once();
+		replay(context);
+		httpService.end(httpContext);
+		verify(context);
+		assertEquals(Arrays.asList(ServletEvent.DEPLOYING, ServletEvent.DEPLOYED), events);
+	}
+
+	@Test
+	public void failedBatchIsRolledBack() throws Exception {
+		context.start();
+		expectLastCall().andThrow(new IllegalStateException("start failed"));
+		replay(context);
+		httpService.begin(httpContext);
+		httpService.registerServlet("/servlet", createNiceMock(Servlet.class), null, httpContext);
+		httpService.registerFilter(createNiceMock(Filter.class), new String[] {"/*"}, null, null, httpContext);
+
+		reset(serverController);
+		expect(serverController.getContext((ContextModel) anyObject())).andReturn(context).anyTimes();
+		serverController.removeFilter(isA(FilterModel.class));
+		expectLastCall().once();
+		serverController.removeServlet(isA(ServletModel.class));
+		expectLastCall().once();
+		replay(serverController);
+		try {
+			httpService.end(httpContext);
+		} catch (IllegalStateException expected) {
+			// the failure is reported to the caller
+		}
+		verify(serverController);
+		assertEquals(Arrays.asList(ServletEvent.DEPLOYING, ServletEvent.FAILED), events);
+	}
+
+}
@@ -202,6 +202,8 @@ public interface Configuration {
 
 	Boolean isLogNCSAServer();
 
+	Integer getLogNCSABufferSize();
+
 	List<String> getCiphersuiteIncluded();
 
 	List<String> getCiphersuiteExcluded();
@@ -216,6 +218,34 @@ public interface Configuration {
 
 	Integer getServerIdleTimeout();
 
+	Boolean useVirtualThreads();
+
+	Integer getServerIoThreads();
+
+	Integer getServerBufferSize();
+
+	Boolean getServerDirectBuffers();
+
+	Boolean isHttp2Enabled();
+
+	Integer getHttp2MaxConcurrentStreams();
+
+	Integer getHttp2InitialWindowSize();
+
+	Boolean isMetricsEnabled();
+
+	Integer getServerRoutingCacheSize();
+
+	Integer getResourceCacheSize();
+
+	Integer getResourceCacheMaxEntrySize();
+
+	Boolean isResourceCacheDirect();
+
+	Boolean isResourceCompressionEnabled();
+
+	Integer getResourceCompressionCacheSize();
+
 	String getTrustStore();
 
 	String getTrustStorePassword();
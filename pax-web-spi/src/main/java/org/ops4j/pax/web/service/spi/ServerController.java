@@ -18,6 +18,7 @@ package org.ops4j.pax.web.service.spi;
 
 import javax.servlet.Servlet;
 
+import org.ops4j.pax.web.service.spi.metrics.WebMetrics;
 import org.ops4j.pax.web.service.spi.model.ContainerInitializerModel;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
 import org.ops4j.pax.web.service.spi.model.ErrorPageModel;
@@ -41,8 +42,34 @@ public interface ServerController {
 
 	void configure(Configuration configuration);
 
+	/**
+	 * Applies a changed configuration to the started server in place, without
+	 * stopping it and without touching the registered contexts. Only the
+	 * groups of settings in
+	 * {@link org.ops4j.pax.web.service.spi.util.ConfigurationChanges} are
+	 * expected to differ from the current configuration. Controllers not
+	 * supporting this are restarted instead.
+	 *
+	 * @param configuration
+	 *            the new configuration
+	 * @return true if the configuration has been applied, false if the
+	 *         server is not started or the changes need a restart, in which
+	 *         case nothing has been changed
+	 */
+	default boolean reconfigure(Configuration configuration) {
+		return false;
+	}
+
 	Configuration getConfiguration();
 
+	/**
+	 * @return the request metrics of the server, or null if metrics are not
+	 *         enabled in the configuration or not supported by the server
+	 */
+	default WebMetrics getMetrics() {
+		return null;
+	}
+
 	void addListener(ServerListener listener);
 
 	void removeListener(ServerListener listener);
@@ -53,6 +80,23 @@ public interface ServerController {
 
 	void removeServlet(ServletModel model);
 
+	/**
+	 * Maps a registered servlet to the url patterns and init params of a
+	 * model created by {@link ServletModel#remap}. Implementations change the
+	 * mapping in place, without destroying the servlet and without
+	 * restarting the context. The default removes the registered servlet and
+	 * adds the new model.
+	 *
+	 * @param registered
+	 *            the model the servlet is registered with
+	 * @param model
+	 *            the remapped model
+	 */
+	default void remapServlet(ServletModel registered, ServletModel model) {
+		removeServlet(registered);
+		addServlet(model);
+	}
+
 	void addEventListener(EventListenerModel eventListenerModel);
 
 	void removeEventListener(EventListenerModel eventListenerModel);
@@ -61,6 +105,24 @@ public interface ServerController {
 
 	void removeFilter(FilterModel filterModel);
 
+	/**
+	 * Maps a registered filter to the url patterns, servlet names and init
+	 * params of a model created by {@link FilterModel#remap}, keeping its
+	 * position among the filters of the context. Implementations change the
+	 * mapping in place, without destroying the filter and without restarting
+	 * the context. The default removes the registered filter and adds the
+	 * new model.
+	 *
+	 * @param registered
+	 *            the model the filter is registered with
+	 * @param model
+	 *            the remapped model
+	 */
+	default void remapFilter(FilterModel registered, FilterModel model) {
+		removeFilter(registered);
+		addFilter(model);
+	}
+
 	void addErrorPage(ErrorPageModel model);
 
 	void removeErrorPage(ErrorPageModel model);
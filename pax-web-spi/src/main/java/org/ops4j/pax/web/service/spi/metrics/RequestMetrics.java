@@ -0,0 +1,184 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counters and latency histogram of a context, a servlet or a
+ * filter.
+ * <p>
+ * The server implementations call {@link #begin()} when a request enters the
+ * measured component and {@link #end(long, boolean)} when it leaves it, so
+ * only the synchronous part of asynchronous requests is measured. A servlet
+ * is measured including the filters mapped to it, a filter excluding the
+ * rest of its chain.
+ */
+public final class RequestMetrics implements RequestMetricsMXBean {
+
+	/**
+	 * The measured component.
+	 */
+	public enum Kind {
+		CONTEXT, SERVLET, FILTER
+	}
+
+	private final Kind kind;
+
+	private final String contextName;
+
+	private final String name;
+
+	private final LongAdder requests = new LongAdder();
+
+	private final LongAdder errors = new LongAdder();
+
+	private final LongAdder active = new LongAdder();
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	public RequestMetrics(Kind kind, String contextName, String name) {
+		this.kind = kind;
+		this.contextName = contextName;
+		this.name = name;
+	}
+
+	/**
+	 * Counts a request entering the measured component.
+	 *
+	 * @return start time to pass to {@link #end(long, boolean)}
+	 */
+	public long begin() {
+		active.increment();
+		return System.nanoTime();
+	}
+
+	/**
+	 * Counts a request leaving the measured component.
+	 *
+	 * @param start
+	 *            the value returned by {@link #begin()}
+	 * @param failed
+	 *            true if the request failed with an exception or a server
+	 *            error status
+	 */
+	public void end(long start, boolean failed) {
+		active.decrement();
+		record(System.nanoTime() - start, failed);
+	}
+
+	/**
+	 * Records a request measured by the caller, without counting it as
+	 * active.
+	 *
+	 * @param nanos
+	 *            time spent in the measured component
+	 * @param failed
+	 *            true if the request failed
+	 */
+	public void record(long nanos, boolean failed) {
+		requests.increment();
+		if (failed) {
+			errors.increment();
+		}
+		latency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+	}
+
+	public Kind getMetricsKind() {
+		return kind;
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	@Override
+	public String getKind() {
+		return kind.name();
+	}
+
+	@Override
+	public String getContextName() {
+		return contextName;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getRequestCount() {
+		return requests.sum();
+	}
+
+	@Override
+	public long getErrorCount() {
+		return errors.sum();
+	}
+
+	@Override
+	public long getActiveRequests() {
+		return active.sum();
+	}
+
+	@Override
+	public double getMeanLatency() {
+		return latency.getMean();
+	}
+
+	@Override
+	public long getMaxLatency() {
+		return latency.getMax();
+	}
+
+	@Override
+	public long getLatency50thPercentile() {
+		return latency.getPercentile(0.5);
+	}
+
+	@Override
+	public long getLatency90thPercentile() {
+		return latency.getPercentile(0.9);
+	}
+
+	@Override
+	public long getLatency99thPercentile() {
+		return latency.getPercentile(0.99);
+	}
+
+	@Override
+	public long getLatency999thPercentile() {
+		return latency.getPercentile(0.999);
+	}
+
+	/**
+	 * Clears the counters and the histogram, except for the active requests.
+	 */
+	@Override
+	public void reset() {
+		requests.reset();
+		errors.reset();
+		latency.reset();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "{kind=" + kind + ",context=" + contextName + ",name=" + name + "}";
+	}
+
+}
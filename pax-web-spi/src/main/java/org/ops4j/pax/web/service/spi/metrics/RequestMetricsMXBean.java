@@ -0,0 +1,50 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.metrics;
+
+/**
+ * Management view of the {@link RequestMetrics} of a context, servlet or
+ * filter. Latencies are in microseconds.
+ */
+public interface RequestMetricsMXBean {
+
+	String getKind();
+
+	String getContextName();
+
+	String getName();
+
+	long getRequestCount();
+
+	long getErrorCount();
+
+	long getActiveRequests();
+
+	double getMeanLatency();
+
+	long getMaxLatency();
+
+	long getLatency50thPercentile();
+
+	long getLatency90thPercentile();
+
+	long getLatency99thPercentile();
+
+	long getLatency999thPercentile();
+
+	void reset();
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.metrics;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * Filter measuring the time spent in the filter it wraps, excluding the time
+ * spent further down the chain.
+ */
+public class TimedFilter implements Filter {
+
+	private final Filter filter;
+
+	private final RequestMetrics metrics;
+
+	/**
+	 * Chain handed to the wrapped filter, summing up the time spent in the
+	 * rest of the chain.
+	 */
+	private static final class TimedChain implements FilterChain {
+		private final FilterChain chain;
+		private long nanos;
+
+		private TimedChain(FilterChain chain) {
+			this.chain = chain;
+		}
+
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response) throws IOException,
+				ServletException {
+			final long start = System.nanoTime();
+			try {
+				chain.doFilter(request, response);
+			} finally {
+				nanos += System.nanoTime() - start;
+			}
+		}
+	}
+
+	public TimedFilter(Filter filter, RequestMetrics metrics) {
+		this.filter = filter;
+		this.metrics = metrics;
+	}
+
+	public Filter getFilter() {
+		return filter;
+	}
+
+	public RequestMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		filter.init(filterConfig);
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException,
+			ServletException {
+		final TimedChain timedChain = new TimedChain(chain);
+		final long start = metrics.begin();
+		boolean failed = true;
+		try {
+			filter.doFilter(request, response, timedChain);
+			failed = false;
+		} finally {
+			metrics.end(start + timedChain.nanos, failed);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		filter.destroy();
+	}
+
+	@Override
+	public String toString() {
+		return filter.toString();
+	}
+
+}
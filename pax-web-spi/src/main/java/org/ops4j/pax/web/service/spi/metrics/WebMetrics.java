@@ -0,0 +1,50 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.metrics;
+
+import java.util.Collection;
+
+/**
+ * Request metrics of the contexts, servlets and filters of a server,
+ * registered as a service while metrics are enabled.
+ */
+public interface WebMetrics {
+
+	/**
+	 * @return the metrics of all registered contexts, servlets and filters
+	 */
+	Collection<RequestMetrics> getMetrics();
+
+	/**
+	 * @return the metrics of the context or null if there is none
+	 */
+	RequestMetrics getContextMetrics(String contextName);
+
+	/**
+	 * @return the metrics of the servlet or null if there is none
+	 */
+	RequestMetrics getServletMetrics(String contextName, String servletName);
+
+	/**
+	 * @return the metrics of the filter or null if there is none
+	 */
+	RequestMetrics getFilterMetrics(String contextName, String filterName);
+
+	void addListener(WebMetricsListener listener);
+
+	void removeListener(WebMetricsListener listener);
+
+}
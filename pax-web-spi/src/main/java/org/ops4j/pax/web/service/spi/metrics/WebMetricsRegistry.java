@@ -0,0 +1,193 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link WebMetrics} kept by a server controller.
+ * <p>
+ * Contexts, servlets and filters acquire their metrics when they are
+ * registered and release them when they are removed. Registrations sharing a
+ * context name, like the http contexts of several bundles, share their
+ * metrics, which are removed when the last of them is released.
+ */
+public class WebMetricsRegistry implements WebMetrics {
+
+	private static final Logger LOG = LoggerFactory.getLogger(WebMetricsRegistry.class);
+
+	private static final class Key {
+		private final RequestMetrics.Kind kind;
+		private final String contextName;
+		private final String name;
+
+		private Key(RequestMetrics.Kind kind, String contextName, String name) {
+			this.kind = kind;
+			this.contextName = contextName == null ? "" : contextName;
+			this.name = name == null ? "" : name;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return kind == other.kind && contextName.equals(other.contextName) && name.equals(other.name);
+		}
+
+		@Override
+		public int hashCode() {
+			return (kind.hashCode() * 31 + contextName.hashCode()) * 31 + name.hashCode();
+		}
+	}
+
+	private final ConcurrentHashMap<Key, RequestMetrics> metrics = new ConcurrentHashMap<>();
+
+	/**
+	 * Registrations holding each of the metrics, guarded by this.
+	 */
+	private final Map<RequestMetrics, Integer> references = new HashMap<>();
+
+	private final List<WebMetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+	public RequestMetrics acquireContextMetrics(String contextName) {
+		return acquire(new Key(RequestMetrics.Kind.CONTEXT, contextName, null));
+	}
+
+	public RequestMetrics acquireServletMetrics(String contextName, String servletName) {
+		return acquire(new Key(RequestMetrics.Kind.SERVLET, contextName, servletName));
+	}
+
+	public RequestMetrics acquireFilterMetrics(String contextName, String filterName) {
+		return acquire(new Key(RequestMetrics.Kind.FILTER, contextName, filterName));
+	}
+
+	/**
+	 * Releases metrics returned by one of the acquire methods. Does nothing
+	 * for null or already removed metrics.
+	 */
+	public void release(RequestMetrics requestMetrics) {
+		if (requestMetrics == null) {
+			return;
+		}
+		synchronized (this) {
+			final Integer count = references.get(requestMetrics);
+			if (count == null) {
+				return;
+			}
+			if (count > 1) {
+				references.put(requestMetrics, count - 1);
+				return;
+			}
+			references.remove(requestMetrics);
+			metrics.remove(new Key(requestMetrics.getMetricsKind(), requestMetrics.getContextName(),
+					requestMetrics.getName()));
+		}
+		notifyRemoved(requestMetrics);
+	}
+
+	/**
+	 * Removes all metrics, for example when the server is stopped.
+	 */
+	public void clear() {
+		final List<RequestMetrics> removed;
+		synchronized (this) {
+			removed = new ArrayList<>(references.keySet());
+			references.clear();
+			metrics.clear();
+		}
+		for (RequestMetrics requestMetrics : removed) {
+			notifyRemoved(requestMetrics);
+		}
+	}
+
+	@Override
+	public Collection<RequestMetrics> getMetrics() {
+		return new ArrayList<>(metrics.values());
+	}
+
+	@Override
+	public RequestMetrics getContextMetrics(String contextName) {
+		return metrics.get(new Key(RequestMetrics.Kind.CONTEXT, contextName, null));
+	}
+
+	@Override
+	public RequestMetrics getServletMetrics(String contextName, String servletName) {
+		return metrics.get(new Key(RequestMetrics.Kind.SERVLET, contextName, servletName));
+	}
+
+	@Override
+	public RequestMetrics getFilterMetrics(String contextName, String filterName) {
+		return metrics.get(new Key(RequestMetrics.Kind.FILTER, contextName, filterName));
+	}
+
+	@Override
+	public void addListener(WebMetricsListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void removeListener(WebMetricsListener listener) {
+		listeners.remove(listener);
+	}
+
+	private RequestMetrics acquire(Key key) {
+		final RequestMetrics requestMetrics;
+		synchronized (this) {
+			final RequestMetrics existing = metrics.get(key);
+			if (existing != null) {
+				references.put(existing, references.get(existing) + 1);
+				return existing;
+			}
+			requestMetrics = new RequestMetrics(key.kind, key.contextName, key.name);
+			metrics.put(key, requestMetrics);
+			references.put(requestMetrics, 1);
+		}
+		for (WebMetricsListener listener : listeners) {
+			try {
+				listener.metricsAdded(requestMetrics);
+				//CHECKSTYLE:OFF
+			} catch (RuntimeException e) {
+				LOG.warn("Listener " + listener + " failed on added metrics " + requestMetrics, e);
+			}
+			//CHECKSTYLE:ON
+		}
+		return requestMetrics;
+	}
+
+	private void notifyRemoved(RequestMetrics requestMetrics) {
+		for (WebMetricsListener listener : listeners) {
+			try {
+				listener.metricsRemoved(requestMetrics);
+				//CHECKSTYLE:OFF
+			} catch (RuntimeException e) {
+				LOG.warn("Listener " + listener + " failed on removed metrics " + requestMetrics, e);
+			}
+			//CHECKSTYLE:ON
+		}
+	}
+
+}
@@ -140,6 +140,14 @@ public class ContextModel extends Identity {
 	 * <code>begin</code> method.
 	 */
 	private boolean webBundle;
+
+	/**
+	 * flag showing if registrations to this context are batched between the
+	 * <code>begin</code> and <code>end</code> methods of
+	 * <code>HttpServiceStarted</code>, which starts the context once at the
+	 * end.
+	 */
+	private volatile boolean batched;
 	
 	/**
 	 * JSPConfig TagLib location
@@ -519,6 +527,22 @@ public class ContextModel extends Identity {
 		this.webBundle = webBundle;
 	}
 
+	/**
+	 * @return true if registrations are batched, the context is started at
+	 *         the end of the batch
+	 */
+	public boolean isBatched() {
+		return batched;
+	}
+
+	/**
+	 * @param batched
+	 *            whether registrations are batched
+	 */
+	public void setBatched(boolean batched) {
+		this.batched = batched;
+	}
+
 	public void addTagLibLocation(String tagLibLocation) {
 		this.tagLibLocation = tagLibLocation;
 	}
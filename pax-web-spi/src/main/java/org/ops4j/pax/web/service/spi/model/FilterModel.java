@@ -59,6 +59,15 @@ public class FilterModel extends Model {
 			final String[] urlPatterns, final String[] servletNames,
 			final Dictionary<String, ?> initParameter,
 			final boolean asyncSupported) {
+		this(contextModel, filter, filterClass, null, urlPatterns, servletNames,
+				initParameter, asyncSupported);
+	}
+
+	private FilterModel(final ContextModel contextModel, final Filter filter,
+			final Class <? extends Filter> filterClass, final String filterName,
+			final String[] urlPatterns, final String[] servletNames,
+			final Dictionary<String, ?> initParameter,
+			final boolean asyncSupported) {
 		super(contextModel);
 		if (filterClass == null) {
 			NullArgumentException.validateNotNull(filter, "Filter");
@@ -86,7 +95,10 @@ public class FilterModel extends Model {
 		}
 			
 		this.initParams = ConversionUtil.convertToMap(initParameter);
-		String idName = initParams.get(WebContainerConstants.FILTER_NAME);
+		String idName = filterName;
+		if (idName == null) {
+			idName = initParams.get(WebContainerConstants.FILTER_NAME);
+		}
 		if (idName == null) {
 			idName = getId();
 		}
@@ -95,6 +107,24 @@ public class FilterModel extends Model {
 		setupDispatcher();
 	}
 
+	/**
+	 * Creates the model of this filter with another mapping and other init
+	 * params. Name, context and async support are kept.
+	 * 
+	 * @param urlPatterns
+	 *            url patterns of the new model
+	 * @param servletNames
+	 *            servlet names of the new model
+	 * @param initParameter
+	 *            init params of the new model, may be null
+	 * @return the new model
+	 */
+	public FilterModel remap(final String[] urlPatterns,
+			final String[] servletNames, final Dictionary<String, ?> initParameter) {
+		return new FilterModel(getContextModel(), filter, filterClass, name,
+				urlPatterns, servletNames, initParameter, asyncSupported);
+	}
+
 	/*
 
      */
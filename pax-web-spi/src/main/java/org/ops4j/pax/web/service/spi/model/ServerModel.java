@@ -19,12 +19,15 @@ package org.ops4j.pax.web.service.spi.model;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
 
@@ -69,6 +72,12 @@ public class ServerModel {
 	 * registered patterns) the right servlet context for the pattern.
 	 */
 	private final Map<String, UrlPattern> servletUrlPatterns;
+	/**
+	 * Routing index built out of servlet url patterns. Rebuilt (copy on write)
+	 * on every servlet registration/unregistration so request matching does not
+	 * need to acquire the servlet lock.
+	 */
+	private volatile UrlPatternIndex<UrlPattern> servletIndex;
 	/**
 	 * Mapping between full registration url patterns and filter model. Full url
 	 * pattern mean that it has the context name prepended (if context name is
@@ -76,6 +85,22 @@ public class ServerModel {
 	 * registered patterns) the right filter context for the pattern.
 	 */
 	private final ConcurrentMap<String, Set<UrlPattern>> filterUrlPatterns;
+	/**
+	 * Routing index built out of filter url patterns, used when no servlet
+	 * matches. Rebuilt (copy on write) on every filter
+	 * registration/unregistration.
+	 */
+	private volatile UrlPatternIndex<UrlPattern> filterIndex;
+	/**
+	 * Number of requests that did not match any servlet and were matched
+	 * against filter url patterns.
+	 */
+	private final LongAdder filterOnlyMatches;
+	/**
+	 * Incremented every time one of the routing indices is replaced, so
+	 * callers caching routing results can tell they became stale.
+	 */
+	private final AtomicLong routingRevision;
 	/**
 	 * Map between http contexts and the bundle that registred a web element
 	 * using that http context. Used to block more bundles registering web
@@ -100,7 +125,11 @@ public class ServerModel {
 		aliasMapping = new HashMap<String, ServletModel>();
 		servlets = new HashSet<Servlet>();
 		servletUrlPatterns = new HashMap<String, UrlPattern>();
+		servletIndex = UrlPatternIndex.build(servletUrlPatterns);
 		filterUrlPatterns = new ConcurrentHashMap<String, Set<UrlPattern>>();
+		filterIndex = buildFilterIndex(filterUrlPatterns);
+		filterOnlyMatches = new LongAdder();
+		routingRevision = new AtomicLong();
 		httpContexts = new ConcurrentHashMap<HttpContext, Bundle>();
 		containerInitializers = new ConcurrentHashMap<ServletContainerInitializer, ContainerInitializerModel>();
 		servletLock = new ReentrantReadWriteLock(true);
@@ -138,6 +167,8 @@ public class ServerModel {
 				servletUrlPatterns.put(getFullPath(model.getContextModel(), urlPattern),
 						new UrlPattern(getFullPath(model.getContextModel(), urlPattern), model));
 			}
+			servletIndex = UrlPatternIndex.build(servletUrlPatterns);
+			routingRevision.incrementAndGet();
 		} finally {
 			servletLock.writeLock().unlock();
 		}
@@ -163,6 +194,8 @@ public class ServerModel {
 					servletUrlPatterns.remove(getFullPath(model.getContextModel(), urlPattern));
 				}
 			}
+			servletIndex = UrlPatternIndex.build(servletUrlPatterns);
+			routingRevision.incrementAndGet();
 		} finally {
 			servletLock.writeLock().unlock();
 		}
@@ -198,6 +231,8 @@ public class ServerModel {
 //								+ " because is already associated to " + existingPattern);
 //					}
 				}
+				filterIndex = buildFilterIndex(filterUrlPatterns);
+				routingRevision.incrementAndGet();
 			} finally {
 				filterLock.writeLock().unlock();
 			}
@@ -229,6 +264,8 @@ public class ServerModel {
 					}
 					urlSet.remove(toDelete);
 				}
+				filterIndex = buildFilterIndex(filterUrlPatterns);
+				routingRevision.incrementAndGet();
 			} finally {
 				filterLock.writeLock().unlock();
 			}
@@ -315,17 +352,12 @@ public class ServerModel {
 		if (debug) {
 			LOG.debug("Matching [" + path + "]...");
 		}
-		UrlPattern urlPattern = null;
 		// first match servlets
-		servletLock.readLock().lock();
-		try {
-			urlPattern = matchPathToContext(servletUrlPatterns, path);
-		} finally {
-			servletLock.readLock().unlock();
-		}
+		UrlPattern urlPattern = servletIndex.match(path);
 		// then if there is no matched servlet look for filters
 		if (urlPattern == null) {
-			urlPattern = matchFilterPathToContext(filterUrlPatterns, path);
+			filterOnlyMatches.increment();
+			urlPattern = filterIndex.match(path);
 		}
 		ContextModel matched = null;
 		if (urlPattern != null) {
@@ -341,96 +373,46 @@ public class ServerModel {
 		return matched;
 	}
 	
-	private static UrlPattern matchFilterPathToContext(final Map<String, Set<UrlPattern>> urlPatternsMap, final String path) {
-		Set<String> keySet = urlPatternsMap.keySet();
-		for (String key : keySet) {
-			Set<UrlPattern> patternsMap = urlPatternsMap.get(key);
-			
-			for (UrlPattern urlPattern : patternsMap) {
-				Map<String, UrlPattern> tempMap = new HashMap<String, ServerModel.UrlPattern>();
-				tempMap.put(key, urlPattern);
-				UrlPattern pattern = matchPathToContext(tempMap, path);
-				if (pattern != null) {
-					return pattern;
-				}
-			}
-		}
-		return null;
+	/**
+	 * Returns the number of requests that did not match any servlet and fell
+	 * through to matching against filter url patterns.
+	 * 
+	 * @return number of filter only matching attempts
+	 */
+	public long getFilterOnlyMatchCount() {
+		return filterOnlyMatches.sum();
 	}
 
-	private static UrlPattern matchPathToContext(final Map<String, UrlPattern> urlPatternsMap, final String path) {
-		UrlPattern matched = null;
-		String servletPath = path;
-
-		while ((matched == null) && (!"".equals(servletPath))) {
-			// Match the asterisks first that comes just after the current
-			// servlet path, so that it satisfies the longest path req
-			if (servletPath.endsWith("/")) {
-				matched = urlPatternsMap.get(servletPath + "*");
-			} else {
-				matched = urlPatternsMap.get(servletPath + "/*");
-			}
-
-			// try to match the exact resource if the above fails
-			if (matched == null) {
-				matched = urlPatternsMap.get(servletPath);
-			}
-
-			// now try to match the url backwards one directory at a time
-			if (matched == null) {
-				String lastPathSegment = servletPath.substring(servletPath.lastIndexOf("/") + 1);
-				servletPath = servletPath.substring(0, servletPath.lastIndexOf("/"));
-				// case 1: the servlet path is /
-				if (("".equals(servletPath)) && ("".equals(lastPathSegment))) {
-					break;
-				} else if ("".equals(lastPathSegment)) {
-					// case 2 the servlet path ends with /
-					matched = urlPatternsMap.get(servletPath + "/*");
-					continue;
-				} else if (lastPathSegment.contains(".")) {
-					// case 3 the last path segment has a extension that needs
-					// to be
-					// matched
-					String extension = lastPathSegment.substring(lastPathSegment.lastIndexOf("."));
-					if (extension.length() > 1) {
-						// case 3.5 refer to second bulleted point of heading
-						// Specification of Mappings
-						// in servlet specification
-						// PATCH - do not go global too early. Next 3 lines
-						// modified.
-						// matched = urlPatternsMap.get("*" + extension);
-						if (matched == null) {
-							matched = urlPatternsMap.get(("".equals(servletPath) ? "*" : servletPath + "/*")
-									+ extension);
-						}
-					}
-				} else {
-					// case 4 search for the wild cards at the end of servlet
-					// path
-					// of the next iteration
-					if (servletPath.endsWith("/")) {
-						matched = urlPatternsMap.get(servletPath + "*");
-					} else {
-						matched = urlPatternsMap.get(servletPath + "/*");
-					}
-				}
-
-				// case 5 if all the above fails look for the actual mapping
-				if (matched == null) {
-					matched = urlPatternsMap.get(servletPath);
-				}
+	/**
+	 * Returns the revision of the routing state used by
+	 * {@link #matchPathToContext(String)}. The revision changes after every
+	 * servlet or filter registration/unregistration.
+	 * 
+	 * @return current routing revision
+	 */
+	public long getRoutingRevision() {
+		return routingRevision.get();
+	}
 
-				// case 6 the servlet path has / followed by context name, this
-				// case is
-				// selected at the end of the directory, when none of the them
-				// matches.
-				// So we try to match to root.
-				if ((matched == null) && ("".equals(servletPath)) && (!"".equals(lastPathSegment))) {
-					matched = urlPatternsMap.get("/");
-				}
+	/**
+	 * Builds the routing index for filters. Filters registered for the same
+	 * full url pattern all resolve to the same context path, so the first one
+	 * is representative.
+	 * 
+	 * @param urlPatterns
+	 *            full url patterns mapped to the filters registered for them
+	 * 
+	 * @return routing index
+	 */
+	private static UrlPatternIndex<UrlPattern> buildFilterIndex(final Map<String, Set<UrlPattern>> urlPatterns) {
+		final Map<String, UrlPattern> firstPatterns = new HashMap<String, UrlPattern>();
+		for (Map.Entry<String, Set<UrlPattern>> entry : urlPatterns.entrySet()) {
+			final Iterator<UrlPattern> patterns = entry.getValue().iterator();
+			if (patterns.hasNext()) {
+				firstPatterns.put(entry.getKey(), patterns.next());
 			}
 		}
-		return matched;
+		return UrlPatternIndex.build(firstPatterns);
 	}
 
 	/**
@@ -90,7 +90,7 @@ public class ServiceModel {
 			throw new IllegalArgumentException("Servlet [" + servlet
 					+ " is not currently registered in any context");
 		}
-		servletModels.remove(servlet);
+		servletModels.remove(model);
 		return model;
 	}
 	
@@ -99,11 +99,29 @@ public class ServiceModel {
 		if (model == null) {
 			throw new IllegalArgumentException("Servlet with name ["+servletName+"] is currently not registered in any context");
 		}
-		Servlet servlet = model.getServlet();
-		servletModels.remove(servlet);
+		servletModels.remove(model);
 		return model;
 	}
 
+	/**
+	 * @param servlet
+	 *            a servlet
+	 * @return the model the servlet is registered with, or null if none
+	 */
+	public synchronized ServletModel getServletModel(final Servlet servlet) {
+		return findServletModel(servlet);
+	}
+
+	/**
+	 * Replaces the model of a registered servlet by a remapped one, see
+	 * {@link ServletModel#remap}.
+	 */
+	public synchronized void replaceServletModel(final ServletModel registered,
+			final ServletModel model) {
+		servletModels.remove(registered);
+		servletModels.add(model);
+	}
+
 	private synchronized ServletModel findServletModel(Servlet servlet) {
 		for (ServletModel servletModel : servletModels) {
 			if (servletModel.getServlet() != null
@@ -201,6 +219,24 @@ public class ServiceModel {
 		return models.iterator().next();
 	}
 
+	/**
+	 * @param filter
+	 *            a servlet filter
+	 * @return the model the filter is registered with, or null if none
+	 */
+	public synchronized FilterModel getFilterModel(final Filter filter) {
+		Set<FilterModel> models = findFilterModels(filter);
+		return models == null || models.isEmpty() ? null : models.iterator().next();
+	}
+
+	/**
+	 * Replaces the model of a registered filter by a remapped one of the same
+	 * name, see {@link FilterModel#remap}. The filter keeps its position.
+	 */
+	public synchronized void replaceFilterModel(final FilterModel model) {
+		filterModels.put(model.getName(), model);
+	}
+
 	public synchronized FilterModel removeFilter(final String filterName) {
 		FilterModel filterModel = filterModels.remove(filterName);
 		return filterModel;
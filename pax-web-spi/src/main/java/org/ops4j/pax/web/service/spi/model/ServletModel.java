@@ -113,6 +113,23 @@ public class ServletModel extends Model {
 		this.multipartConfigElement = multiPartConfig;
 	}
 
+	/**
+	 * Creates the model of this servlet mapped to other url patterns with
+	 * other init params. Name, context and all other settings are kept.
+	 * 
+	 * @param urlPatterns
+	 *            url patterns of the new model
+	 * @param initParameters
+	 *            init params of the new model, may be null
+	 * @return the new model
+	 */
+	public ServletModel remap(final String[] urlPatterns,
+			final Dictionary<String, ?> initParameters) {
+		return new ServletModel(getContextModel(), servletClass, servlet, name,
+				urlPatterns, alias, initParameters, loadOnStartup,
+				asyncSupported, multipartConfigElement);
+	}
+
 	public String getName() {
 		return name;
 	}
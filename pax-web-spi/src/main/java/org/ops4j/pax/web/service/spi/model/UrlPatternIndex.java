@@ -0,0 +1,349 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable, segment based index of full url patterns (context name prepended)
+ * used to find the pattern that serves a request path. The index is a trie of
+ * path segments where every node knows the exact pattern, the
+ * <code>/*</code> pattern and the <code>*.ext</code> patterns registered
+ * below it, plus a table for the global <code>*.ext</code> patterns.
+ * <p>
+ * Lookups produce no garbage and follow the same precedence as the former
+ * string chopping matcher of {@link ServerModel}: on every directory level,
+ * starting with the full path, the wildcard mapping is tried before the exact
+ * one, then extension mappings of the parent directory and finally the
+ * <code>/</code> default mapping.
+ * <p>
+ * Instances are never modified once built. Registrations build a new index
+ * (copy on write) so readers do not need any locking.
+ *
+ * @param <T> type of the mapped value
+ */
+final class UrlPatternIndex<T> {
+
+	private final Node<T> root;
+	/**
+	 * Global extension mappings (<code>*.ext</code>), keyed by extension
+	 * including the dot.
+	 */
+	private final SegmentTable<T> rootExtensions;
+	/**
+	 * Value mapped to <code>/</code>, the default mapping.
+	 */
+	private final T defaultMapping;
+	private final int size;
+
+	private UrlPatternIndex(final Node<T> root, final SegmentTable<T> rootExtensions, final int size) {
+		this.root = root;
+		this.rootExtensions = rootExtensions;
+		final Node<T> slash = root.child("", 0, 0);
+		this.defaultMapping = slash == null ? null : slash.exact;
+		this.size = size;
+	}
+
+	/**
+	 * Builds an index out of full url patterns.
+	 *
+	 * @param patterns mapping between full url patterns and the value to be
+	 *                 returned for matching paths
+	 * @return the index
+	 */
+	static <T> UrlPatternIndex<T> build(final Map<String, T> patterns) {
+		final Builder<T> root = new Builder<T>();
+		final Map<String, T> rootExtensions = new HashMap<String, T>();
+		for (Map.Entry<String, T> entry : patterns.entrySet()) {
+			final String key = entry.getKey();
+			final T value = entry.getValue();
+			if (key.isEmpty()) {
+				root.exact = value;
+			} else if (key.charAt(0) == '/') {
+				root.descend(key, key.length()).exact = value;
+				if (key.endsWith("/*")) {
+					root.descend(key, key.length() - 2).wildcard = value;
+				} else {
+					final int star = key.lastIndexOf("/*.");
+					// "/*.ext" is never looked up, global extensions are "*.ext"
+					if (star > 0 && key.indexOf('/', star + 1) < 0) {
+						root.descend(key, star).extensions.put(key.substring(star + 2), value);
+					}
+				}
+			} else if (key.startsWith("*.")) {
+				rootExtensions.put(key.substring(1), value);
+			}
+		}
+		return new UrlPatternIndex<T>(root.freeze(null, 0), new SegmentTable<T>(rootExtensions), patterns.size());
+	}
+
+	/**
+	 * Number of patterns the index was built from.
+	 *
+	 * @return number of patterns
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Finds the value of the url pattern matching the path.
+	 *
+	 * @param path request path, starting with a slash
+	 * @return matched value or null if no pattern matches
+	 */
+	T match(final String path) {
+		if (path == null || path.isEmpty() || path.charAt(0) != '/') {
+			return null;
+		}
+		final int length = path.length();
+
+		// go as deep as possible into the trie and count the segments
+		Node<T> cursor = root;
+		int depth = 0;
+		int end = 0;
+		boolean descending = true;
+		while (end < length) {
+			int next = path.indexOf('/', end + 1);
+			if (next < 0) {
+				next = length;
+			}
+			if (descending) {
+				final Node<T> child = cursor.child(path, end + 1, next);
+				if (child == null) {
+					descending = false;
+				} else {
+					cursor = child;
+				}
+			}
+			end = next;
+			depth++;
+		}
+
+		// walk back one directory at a time, "end" delimits the current
+		// servlet path and "depth" is its number of segments
+		T matched = null;
+		while (matched == null && end > 0) {
+			final int slash = path.lastIndexOf('/', end - 1);
+			final boolean trailingSlash = slash == end - 1;
+			final Node<T> node = at(cursor, depth);
+			final Node<T> parent = at(cursor, depth - 1);
+
+			// wildcard right after the current servlet path, then exact
+			matched = wildcard(trailingSlash ? parent : node);
+			if (matched == null) {
+				matched = exact(node);
+			}
+			if (matched != null) {
+				break;
+			}
+
+			if (trailingSlash) {
+				if (slash == 0) {
+					// servlet path is "/"
+					break;
+				}
+				matched = wildcard(parent);
+			} else {
+				final int dot = path.lastIndexOf('.', end - 1);
+				if (dot > slash) {
+					if (end - dot > 1) {
+						matched = slash == 0 ? rootExtensions.get(path, dot, end) : extension(parent, path, dot, end);
+					}
+				} else if (slash > 0 && path.charAt(slash - 1) == '/') {
+					matched = wildcard(at(cursor, depth - 2));
+				} else {
+					matched = wildcard(parent);
+				}
+				if (matched == null) {
+					matched = exact(parent);
+				}
+				if (matched == null && slash == 0) {
+					matched = defaultMapping;
+				}
+			}
+			end = slash;
+			depth--;
+			if (cursor.depth > depth) {
+				cursor = cursor.parent;
+			}
+		}
+		return matched;
+	}
+
+	/**
+	 * Returns the node on the given depth if it is on the path from the root
+	 * to the cursor.
+	 */
+	private static <T> Node<T> at(Node<T> cursor, final int depth) {
+		while (cursor != null && cursor.depth > depth) {
+			cursor = cursor.parent;
+		}
+		return cursor != null && cursor.depth == depth ? cursor : null;
+	}
+
+	private static <T> T exact(final Node<T> node) {
+		return node == null ? null : node.exact;
+	}
+
+	private static <T> T wildcard(final Node<T> node) {
+		return node == null ? null : node.wildcard;
+	}
+
+	private static <T> T extension(final Node<T> node, final String path, final int start, final int end) {
+		return node == null || node.extensions == null ? null : node.extensions.get(path, start, end);
+	}
+
+	/**
+	 * A directory level of the index.
+	 */
+	private static final class Node<T> {
+
+		private final Node<T> parent;
+		private final int depth;
+		/**
+		 * Pattern equal to the path of this node.
+		 */
+		private T exact;
+		/**
+		 * Pattern equal to the path of this node followed by <code>/*</code>.
+		 */
+		private T wildcard;
+		/**
+		 * Patterns equal to the path of this node followed by
+		 * <code>/*.ext</code>, keyed by extension.
+		 */
+		private SegmentTable<T> extensions;
+		private SegmentTable<Node<T>> children;
+
+		Node(final Node<T> parent, final int depth) {
+			this.parent = parent;
+			this.depth = depth;
+		}
+
+		Node<T> child(final String path, final int start, final int end) {
+			return children == null ? null : children.get(path, start, end);
+		}
+	}
+
+	/**
+	 * Mutable counterpart of {@link Node} used while building the index.
+	 */
+	private static final class Builder<T> {
+
+		private final Map<String, Builder<T>> children = new HashMap<String, Builder<T>>();
+		private final Map<String, T> extensions = new HashMap<String, T>();
+		private T exact;
+		private T wildcard;
+
+		/**
+		 * Returns (creating if needed) the builder for the first
+		 * <code>end</code> characters of the pattern, which has to start with
+		 * a slash.
+		 */
+		Builder<T> descend(final String pattern, final int end) {
+			Builder<T> current = this;
+			int start = 0;
+			while (start < end) {
+				int next = pattern.indexOf('/', start + 1);
+				if (next < 0 || next > end) {
+					next = end;
+				}
+				final String segment = pattern.substring(start + 1, next);
+				Builder<T> child = current.children.get(segment);
+				if (child == null) {
+					child = new Builder<T>();
+					current.children.put(segment, child);
+				}
+				current = child;
+				start = next;
+			}
+			return current;
+		}
+
+		Node<T> freeze(final Node<T> parent, final int depth) {
+			final Node<T> node = new Node<T>(parent, depth);
+			node.exact = exact;
+			node.wildcard = wildcard;
+			if (!extensions.isEmpty()) {
+				node.extensions = new SegmentTable<T>(extensions);
+			}
+			if (!children.isEmpty()) {
+				final Map<String, Node<T>> frozen = new HashMap<String, Node<T>>();
+				for (Map.Entry<String, Builder<T>> entry : children.entrySet()) {
+					frozen.put(entry.getKey(), entry.getValue().freeze(node, depth + 1));
+				}
+				node.children = new SegmentTable<Node<T>>(frozen);
+			}
+			return node;
+		}
+	}
+
+	/**
+	 * Open addressing hash table with string keys that can be queried with a
+	 * region of another string, so no substrings have to be created for
+	 * lookups.
+	 */
+	private static final class SegmentTable<V> {
+
+		private final String[] keys;
+		private final Object[] values;
+		private final int mask;
+
+		SegmentTable(final Map<String, V> entries) {
+			int capacity = 2;
+			while (capacity < entries.size() * 2) {
+				capacity <<= 1;
+			}
+			keys = new String[capacity];
+			values = new Object[capacity];
+			mask = capacity - 1;
+			for (Map.Entry<String, V> entry : entries.entrySet()) {
+				int index = spread(entry.getKey().hashCode()) & mask;
+				while (keys[index] != null) {
+					index = (index + 1) & mask;
+				}
+				keys[index] = entry.getKey();
+				values[index] = entry.getValue();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		V get(final String path, final int start, final int end) {
+			final int length = end - start;
+			// same as String.hashCode() for the region
+			int hash = 0;
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + path.charAt(i);
+			}
+			int index = spread(hash) & mask;
+			String key;
+			while ((key = keys[index]) != null) {
+				if (key.length() == length && path.regionMatches(start, key, 0, length)) {
+					return (V) values[index];
+				}
+				index = (index + 1) & mask;
+			}
+			return null;
+		}
+
+		private static int spread(final int hash) {
+			return hash ^ (hash >>> 16);
+		}
+	}
+
+}
@@ -0,0 +1,473 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.ops4j.pax.web.service.spi.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * NCSA request log shared by all server implementations.
+ * <p>
+ * Request threads only copy the fields of a request into a preallocated
+ * record of a ring buffer, claimed without locking. A single writer thread
+ * formats the published records in batches and writes them to a file, which
+ * is rolled over daily if its name contains <code>yyyy_mm_dd</code>. If the
+ * ring buffer is full, records are dropped and counted instead of blocking
+ * the request.
+ */
+public class AsyncRequestLog {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AsyncRequestLog.class);
+
+	/**
+	 * Token of the file name replaced by the date of the file.
+	 */
+	private static final String DATE_TOKEN = "yyyy_mm_dd";
+
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private static final long DROPPED_REPORT_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+	/**
+	 * Fields of one request, reused for every lap around the ring.
+	 */
+	private static final class Record {
+		private long timestamp;
+		private String serverName;
+		private String remoteAddr;
+		private String user;
+		private String method;
+		private String uri;
+		private String protocol;
+		private int status;
+		private long bytes;
+		private String referer;
+		private String userAgent;
+		private String cookies;
+		private long latency;
+
+		private void clear() {
+			serverName = null;
+			remoteAddr = null;
+			user = null;
+			method = null;
+			uri = null;
+			protocol = null;
+			referer = null;
+			userAgent = null;
+			cookies = null;
+		}
+	}
+
+	private final File directory;
+	private final String fileName;
+	private final int retainDays;
+	private final boolean append;
+	private final boolean extended;
+	private final boolean logLatency;
+	private final boolean logCookies;
+	private final boolean logServer;
+	private final TimeZone timeZone;
+
+	private final Record[] ring;
+	private final int mask;
+	/**
+	 * Sequence of the record published in each slot, -1 while none is.
+	 */
+	private final AtomicLongArray published;
+	/**
+	 * Next sequence claimed by a request thread.
+	 */
+	private final AtomicLong head = new AtomicLong();
+	/**
+	 * Next sequence written, slots before it may be claimed again.
+	 */
+	private volatile long tail;
+	private final LongAdder dropped = new LongAdder();
+
+	private volatile boolean running;
+	private Thread writerThread;
+
+	// used by the writer thread only
+	private Writer out;
+	private long nextRollover = Long.MAX_VALUE;
+	private final SimpleDateFormat fileDateFormat;
+	private final SimpleDateFormat logDateFormat;
+	private long formattedSecond = -1;
+	private String formattedDate;
+	private long reportedDropped;
+	private long lastDroppedReport;
+
+	/**
+	 * Creates the request log from the NCSA settings of the configuration.
+	 */
+	public AsyncRequestLog(final Configuration configuration) {
+		this(configuration.getLogNCSADirectory(), configuration.getLogNCSAFormat(),
+				configuration.getLogNCSARetainDays(), configuration.isLogNCSAAppend(),
+				configuration.isLogNCSAExtended(), configuration.getLogNCSATimeZone(),
+				configuration.isLogNCSALatency(), configuration.isLogNCSACookies(),
+				configuration.isLogNCSAServer(), configuration.getLogNCSABufferSize());
+	}
+
+	/**
+	 * @param directory
+	 *            directory of the log files, <code>./logs/</code> if not set
+	 * @param fileName
+	 *            name of the log files, with <code>yyyy_mm_dd</code> replaced
+	 *            by the date of each file
+	 * @param retainDays
+	 *            number of days rolled over files are kept, all are kept if
+	 *            not set
+	 * @param bufferSize
+	 *            number of records buffered before further records are
+	 *            dropped, rounded up to a power of two
+	 */
+	public AsyncRequestLog(final String directory, final String fileName, final String retainDays,
+			final Boolean append, final Boolean extended, final String timeZone, final Boolean logLatency,
+			final Boolean logCookies, final Boolean logServer, final Integer bufferSize) {
+		this.directory = new File(directory == null || directory.isEmpty() ? "./logs/" : directory);
+		this.fileName = fileName == null || fileName.isEmpty() ? DATE_TOKEN + ".request.log" : fileName;
+		this.retainDays = retainDays == null || retainDays.isEmpty() ? 0 : Integer.parseInt(retainDays.trim());
+		this.append = append == null || append;
+		this.extended = Boolean.TRUE.equals(extended);
+		this.logLatency = Boolean.TRUE.equals(logLatency);
+		this.logCookies = Boolean.TRUE.equals(logCookies);
+		this.logServer = Boolean.TRUE.equals(logServer);
+		this.timeZone = TimeZone.getTimeZone(timeZone == null || timeZone.isEmpty() ? "GMT" : timeZone);
+
+		int capacity = Integer.highestOneBit(Math.max(bufferSize == null ? DEFAULT_BUFFER_SIZE : bufferSize, 16) - 1) << 1;
+		ring = new Record[capacity];
+		for (int i = 0; i < capacity; i++) {
+			ring[i] = new Record();
+		}
+		mask = capacity - 1;
+		published = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			published.set(i, -1);
+		}
+
+		fileDateFormat = new SimpleDateFormat("yyyy_MM_dd");
+		fileDateFormat.setTimeZone(this.timeZone);
+		logDateFormat = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z", Locale.US);
+		logDateFormat.setTimeZone(this.timeZone);
+	}
+
+	/**
+	 * Opens the log file and starts the writer thread.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		if (!directory.exists() && !directory.mkdirs()) {
+			LOG.error("Can't create the request log directory {}", directory.getAbsolutePath());
+		}
+		LOG.info("NCSA request logging is using the following directory: {}", directory.getAbsolutePath());
+		try {
+			openFile(System.currentTimeMillis());
+		} catch (IOException e) {
+			LOG.error("Can't open the request log in " + directory.getAbsolutePath(), e);
+		}
+		running = true;
+		writerThread = new Thread(this::run, "pax-web-request-log");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Stops the writer thread after it wrote the records logged so far and
+	 * closes the log file.
+	 */
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(writerThread);
+		try {
+			writerThread.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writerThread = null;
+	}
+
+	/**
+	 * Queues one request for logging, without waiting for the record to be
+	 * written.
+	 *
+	 * @param timestamp
+	 *            time the request was received, in milliseconds
+	 * @param bytes
+	 *            number of bytes of the response body, negative if unknown
+	 * @param latency
+	 *            time the request took, in milliseconds
+	 * @return false if the record was dropped because the buffer is full
+	 */
+	public boolean log(long timestamp, String serverName, String remoteAddr, String user, String method,
+			String uri, String protocol, int status, long bytes, String referer, String userAgent,
+			String cookies, long latency) {
+		long sequence;
+		do {
+			sequence = head.get();
+			if (sequence - tail >= ring.length) {
+				dropped.increment();
+				return false;
+			}
+		} while (!head.compareAndSet(sequence, sequence + 1));
+
+		final int index = (int) (sequence & mask);
+		final Record record = ring[index];
+		record.timestamp = timestamp;
+		record.serverName = serverName;
+		record.remoteAddr = remoteAddr;
+		record.user = user;
+		record.method = method;
+		record.uri = uri;
+		record.protocol = protocol;
+		record.status = status;
+		record.bytes = bytes;
+		record.referer = referer;
+		record.userAgent = userAgent;
+		record.cookies = cookies;
+		record.latency = latency;
+		published.lazySet(index, sequence);
+		return true;
+	}
+
+	/**
+	 * @return whether the cookies are logged, callers pass null cookies
+	 *         otherwise instead of formatting them
+	 */
+	public boolean isLogCookies() {
+		return logCookies;
+	}
+
+	/**
+	 * @return number of records dropped because the buffer was full
+	 */
+	public long getDroppedRecords() {
+		return dropped.sum();
+	}
+
+	private void run() {
+		final StringBuilder line = new StringBuilder(256);
+		while (running) {
+			if (drain(line) == 0) {
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+			}
+		}
+		drain(line);
+		closeFile();
+	}
+
+	/**
+	 * Writes all published records.
+	 *
+	 * @return number of records written
+	 */
+	private int drain(final StringBuilder line) {
+		final long now = System.currentTimeMillis();
+		if (now >= nextRollover) {
+			closeFile();
+			try {
+				openFile(now);
+			} catch (IOException e) {
+				LOG.error("Can't roll over the request log", e);
+			}
+		}
+
+		long next = tail;
+		int count = 0;
+		try {
+			int index = (int) (next & mask);
+			while (published.get(index) == next) {
+				final Record record = ring[index];
+				if (out != null) {
+					line.setLength(0);
+					format(record, line);
+					out.write(line.toString());
+				}
+				record.clear();
+				next++;
+				count++;
+				if ((count & mask) == 0) {
+					// free the slots already written while the buffer keeps filling up
+					tail = next;
+				}
+				index = (int) (next & mask);
+			}
+			if (count > 0 && out != null) {
+				out.flush();
+			}
+		} catch (IOException e) {
+			LOG.warn("Can't write the request log", e);
+		} finally {
+			tail = next;
+		}
+		reportDropped(now);
+		return count;
+	}
+
+	private void format(final Record record, final StringBuilder line) {
+		if (logServer) {
+			line.append(orDash(record.serverName)).append(' ');
+		}
+		line.append(orDash(record.remoteAddr)).append(" - ").append(orDash(record.user)).append(" [")
+				.append(formatDate(record.timestamp)).append("] \"").append(record.method).append(' ')
+				.append(record.uri).append(' ').append(record.protocol).append("\" ").append(record.status)
+				.append(' ');
+		if (record.bytes >= 0) {
+			line.append(record.bytes);
+		} else {
+			line.append('-');
+		}
+		if (extended) {
+			line.append(" \"").append(orDash(record.referer)).append("\" \"").append(orDash(record.userAgent))
+					.append('"');
+		}
+		if (logCookies) {
+			line.append(" \"").append(orDash(record.cookies)).append('"');
+		}
+		if (logLatency) {
+			line.append(' ').append(record.latency);
+		}
+		line.append(System.lineSeparator());
+	}
+
+	private String formatDate(final long timestamp) {
+		final long second = timestamp / 1000;
+		if (second != formattedSecond) {
+			formattedDate = logDateFormat.format(new Date(timestamp));
+			formattedSecond = second;
+		}
+		return formattedDate;
+	}
+
+	private static String orDash(final String value) {
+		return value == null || value.isEmpty() ? "-" : value;
+	}
+
+	private void reportDropped(final long now) {
+		if (now - lastDroppedReport < DROPPED_REPORT_INTERVAL) {
+			return;
+		}
+		final long total = dropped.sum();
+		if (total > reportedDropped) {
+			LOG.warn("{} request log records dropped, the buffer of {} records was full",
+					total - reportedDropped, ring.length);
+			reportedDropped = total;
+			lastDroppedReport = now;
+		}
+	}
+
+	private void openFile(final long now) throws IOException {
+		final boolean rolling = fileName.contains(DATE_TOKEN);
+		final String name = rolling ? fileName.replace(DATE_TOKEN, fileDateFormat.format(new Date(now))) : fileName;
+		final File file = new File(directory, name);
+		if (!append && file.exists()) {
+			final SimpleDateFormat backupFormat = new SimpleDateFormat("HHmmssSSS");
+			backupFormat.setTimeZone(timeZone);
+			if (!file.renameTo(new File(directory, name + "." + backupFormat.format(new Date(now))))) {
+				LOG.warn("Can't back up the request log {}", file.getAbsolutePath());
+			}
+		}
+		out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8),
+				64 * 1024);
+		if (rolling) {
+			nextRollover = nextMidnight(now);
+			deleteExpiredFiles(now);
+		}
+	}
+
+	private void closeFile() {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			LOG.warn("Can't close the request log", e);
+		}
+		out = null;
+	}
+
+	private long nextMidnight(final long now) {
+		final Calendar calendar = Calendar.getInstance(timeZone);
+		calendar.setTimeInMillis(now);
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		calendar.add(Calendar.DAY_OF_MONTH, 1);
+		return calendar.getTimeInMillis();
+	}
+
+	/**
+	 * Deletes the rolled over files older than the retained days.
+	 */
+	private void deleteExpiredFiles(final long now) {
+		if (retainDays <= 0) {
+			return;
+		}
+		final int token = fileName.indexOf(DATE_TOKEN);
+		final String prefix = fileName.substring(0, token);
+		final String suffix = fileName.substring(token + DATE_TOKEN.length());
+		final long expired = now - TimeUnit.DAYS.toMillis(retainDays);
+		final String[] names = directory.list();
+		if (names == null) {
+			return;
+		}
+		for (String name : names) {
+			if (name.length() < prefix.length() + DATE_TOKEN.length() || !name.startsWith(prefix)
+					|| !name.substring(prefix.length() + DATE_TOKEN.length()).startsWith(suffix)) {
+				continue;
+			}
+			try {
+				final Date date = fileDateFormat
+						.parse(name.substring(prefix.length(), prefix.length() + DATE_TOKEN.length()));
+				if (date.getTime() < expired && !new File(directory, name).delete()) {
+					LOG.warn("Can't delete the expired request log {}", name);
+				}
+			} catch (ParseException e) {
+				// not a request log file
+			}
+		}
+	}
+
+}
@@ -0,0 +1,383 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * HTTP byte range requests (<code>Range</code>, <code>If-Range</code>) for
+ * static resources, shared by the resource servlets of all server
+ * implementations. Single ranges are answered with the slice of the resource,
+ * multiple ranges with a <code>multipart/byteranges</code> body.
+ * <p>
+ * Slices of files are read with positional reads of a memory mapped
+ * {@link FileChannel}, other resources are skipped through.
+ */
+public final class ByteRanges {
+
+	public static final String RANGE = "Range";
+	public static final String IF_RANGE = "If-Range";
+	public static final String ACCEPT_RANGES = "Accept-Ranges";
+	public static final String CONTENT_RANGE = "Content-Range";
+	public static final String BYTES = "bytes";
+
+	/**
+	 * More ranges are considered abusive and answered with the whole
+	 * resource.
+	 */
+	private static final int MAX_RANGES = 16;
+	/**
+	 * Largest region of a file mapped at once.
+	 */
+	private static final long MAX_MAPPED_REGION = 16 * 1024 * 1024;
+	private static final int BUFFER_SIZE = 8192;
+	private static final String CRLF = "\r\n";
+
+	/**
+	 * Content of a resource that can be written in slices.
+	 */
+	public interface Source {
+
+		/**
+		 * Writes a slice of the content.
+		 *
+		 * @param out
+		 *            stream to write to
+		 * @param start
+		 *            offset of the first byte
+		 * @param length
+		 *            number of bytes
+		 * @throws IOException
+		 *             if reading or writing fails
+		 */
+		void write(OutputStream out, long start, long length) throws IOException;
+	}
+
+	/**
+	 * Inclusive range of bytes.
+	 */
+	static final class Range {
+
+		private final long first;
+		private final long last;
+
+		Range(final long first, final long last) {
+			this.first = first;
+			this.last = last;
+		}
+
+		long getFirst() {
+			return first;
+		}
+
+		long getLast() {
+			return last;
+		}
+
+		long getLength() {
+			return last - first + 1;
+		}
+
+		String toContentRange(final long length) {
+			return BYTES + " " + first + "-" + last + "/" + length;
+		}
+	}
+
+	private ByteRanges() {
+		// utility class
+	}
+
+	/**
+	 * Answers a range request with a partial response.
+	 *
+	 * @param request
+	 *            request to answer
+	 * @param response
+	 *            response to write to
+	 * @param length
+	 *            length of the whole resource
+	 * @param eTag
+	 *            entity tag of the resource, may be null
+	 * @param lastModified
+	 *            last modification time of the resource, -1 if unknown
+	 * @param contentType
+	 *            content type of the resource, may be null
+	 * @param source
+	 *            content of the resource
+	 * @return true if a partial (206) or range not satisfiable (416) response
+	 *         has been sent, false if the whole resource should be served
+	 * @throws IOException
+	 *             if writing the response fails
+	 */
+	public static boolean serve(final HttpServletRequest request, final HttpServletResponse response,
+			final long length, final String eTag, final long lastModified, final String contentType,
+			final Source source) throws IOException {
+		final String header = request.getHeader(RANGE);
+		if (header == null || length < 0 || !ifRange(request, eTag, lastModified)) {
+			return false;
+		}
+		final List<Range> ranges = parse(header, length);
+		if (ranges == null) {
+			return false;
+		}
+		if (ranges.isEmpty()) {
+			response.setHeader(CONTENT_RANGE, BYTES + " */" + length);
+			response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			return true;
+		}
+
+		response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+		response.setHeader(ACCEPT_RANGES, BYTES);
+		final boolean head = "HEAD".equals(request.getMethod());
+		if (ranges.size() == 1) {
+			final Range range = ranges.get(0);
+			response.setHeader(CONTENT_RANGE, range.toContentRange(length));
+			response.setContentLengthLong(range.getLength());
+			if (contentType != null) {
+				response.setContentType(contentType);
+			}
+			if (!head) {
+				source.write(response.getOutputStream(), range.getFirst(), range.getLength());
+			}
+			return true;
+		}
+
+		final String boundary = UUID.randomUUID().toString().replace("-", "");
+		final List<byte[]> partHeaders = new ArrayList<byte[]>(ranges.size());
+		long contentLength = 0;
+		for (int i = 0; i < ranges.size(); i++) {
+			final Range range = ranges.get(i);
+			final StringBuilder part = new StringBuilder();
+			if (i > 0) {
+				part.append(CRLF);
+			}
+			part.append("--").append(boundary).append(CRLF);
+			if (contentType != null) {
+				part.append("Content-Type: ").append(contentType).append(CRLF);
+			}
+			part.append(CONTENT_RANGE).append(": ").append(range.toContentRange(length)).append(CRLF).append(CRLF);
+			final byte[] bytes = part.toString().getBytes(StandardCharsets.ISO_8859_1);
+			partHeaders.add(bytes);
+			contentLength += bytes.length + range.getLength();
+		}
+		final byte[] end = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.ISO_8859_1);
+		contentLength += end.length;
+
+		response.setContentType("multipart/byteranges; boundary=" + boundary);
+		response.setContentLengthLong(contentLength);
+		if (!head) {
+			final OutputStream out = response.getOutputStream();
+			for (int i = 0; i < ranges.size(); i++) {
+				final Range range = ranges.get(i);
+				out.write(partHeaders.get(i));
+				source.write(out, range.getFirst(), range.getLength());
+			}
+			out.write(end);
+		}
+		return true;
+	}
+
+	/**
+	 * Checks the <code>If-Range</code> precondition.
+	 *
+	 * @return true if there is no such header or it matches the current
+	 *         entity tag or modification time of the resource
+	 */
+	static boolean ifRange(final HttpServletRequest request, final String eTag, final long lastModified) {
+		final String ifRange = request.getHeader(IF_RANGE);
+		if (ifRange == null) {
+			return true;
+		}
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			// weak entity tags can not be used for ranges
+			return eTag != null && !eTag.startsWith("W/") && eTag.equals(ifRange);
+		}
+		if (eTag != null && eTag.equals(ifRange)) {
+			// entity tags of pax web resources used to be unquoted
+			return true;
+		}
+		try {
+			final long date = request.getDateHeader(IF_RANGE);
+			return lastModified != -1 && date != -1 && lastModified / 1000 <= date / 1000;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Parses the value of a <code>Range</code> header.
+	 *
+	 * @param header
+	 *            header value
+	 * @param length
+	 *            length of the resource
+	 * @return satisfiable ranges in request order, empty if none is
+	 *         satisfiable, or null if the header has to be ignored
+	 */
+	static List<Range> parse(final String header, final long length) {
+		final String value = header.trim();
+		final int equals = value.indexOf('=');
+		if (equals < 0 || !BYTES.equals(value.substring(0, equals).trim().toLowerCase(Locale.ENGLISH))) {
+			return null;
+		}
+		final String[] specs = value.substring(equals + 1).split(",");
+		if (specs.length > MAX_RANGES) {
+			return null;
+		}
+		final List<Range> ranges = new ArrayList<Range>(specs.length);
+		for (String spec : specs) {
+			final String trimmed = spec.trim();
+			final int dash = trimmed.indexOf('-');
+			if (dash < 0) {
+				return null;
+			}
+			final long first;
+			long last;
+			try {
+				if (dash == 0) {
+					// suffix range: last n bytes
+					final long suffix = Long.parseLong(trimmed.substring(1));
+					if (suffix < 0) {
+						return null;
+					}
+					if (suffix == 0 || length == 0) {
+						continue;
+					}
+					first = Math.max(0, length - suffix);
+					last = length - 1;
+				} else {
+					first = Long.parseLong(trimmed.substring(0, dash));
+					last = dash == trimmed.length() - 1 ? Long.MAX_VALUE : Long.parseLong(trimmed.substring(dash + 1));
+					if (first < 0 || last < first) {
+						return null;
+					}
+					if (first >= length) {
+						continue;
+					}
+					last = Math.min(last, length - 1);
+				}
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			ranges.add(new Range(first, last));
+		}
+		return ranges.isEmpty() ? Collections.<Range>emptyList() : ranges;
+	}
+
+	/**
+	 * Content held in memory.
+	 *
+	 * @param content
+	 *            content, not modified
+	 * @return the source
+	 */
+	public static Source source(final ByteBuffer content) {
+		return (out, start, length) -> {
+			final ByteBuffer slice = content.duplicate();
+			slice.position(slice.position() + (int) start);
+			slice.limit(slice.position() + (int) length);
+			write(out, slice);
+		};
+	}
+
+	/**
+	 * Content of a file, read with memory mapped regions.
+	 *
+	 * @param file
+	 *            the file
+	 * @return the source
+	 */
+	public static Source source(final File file) {
+		return (out, start, length) -> {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				long position = start;
+				long remaining = length;
+				while (remaining > 0) {
+					final long region = Math.min(remaining, MAX_MAPPED_REGION);
+					write(out, channel.map(FileChannel.MapMode.READ_ONLY, position, region));
+					position += region;
+					remaining -= region;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Content of an url, skipped through for every slice.
+	 *
+	 * @param url
+	 *            the url
+	 * @return the source
+	 */
+	public static Source source(final URL url) {
+		return (out, start, length) -> {
+			try (InputStream in = url.openStream()) {
+				long skip = start;
+				while (skip > 0) {
+					final long skipped = in.skip(skip);
+					if (skipped <= 0) {
+						if (in.read() < 0) {
+							throw new IOException("Unexpected end of " + url);
+						}
+						skip--;
+					} else {
+						skip -= skipped;
+					}
+				}
+				final byte[] buffer = new byte[BUFFER_SIZE];
+				long remaining = length;
+				while (remaining > 0) {
+					final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+					if (read < 0) {
+						throw new IOException("Unexpected end of " + url);
+					}
+					out.write(buffer, 0, read);
+					remaining -= read;
+				}
+			}
+		};
+	}
+
+	private static void write(final OutputStream out, final ByteBuffer buffer) throws IOException {
+		if (buffer.hasArray()) {
+			out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			return;
+		}
+		final WritableByteChannel channel = Channels.newChannel(out);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+}
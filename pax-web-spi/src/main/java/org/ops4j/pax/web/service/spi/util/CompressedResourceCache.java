@@ -0,0 +1,545 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.ops4j.pax.web.service.spi.Configuration;
+
+/**
+ * Compressed variants of static resources, shared by the resource servlets of
+ * all server implementations.
+ * <p>
+ * For a resource the client accepts compressed, a precompressed sibling
+ * (<code>foo.js.br</code>, <code>foo.js.gz</code>) is served if the http
+ * context provides one. Otherwise the resource is gzipped once and the result
+ * is kept. Brotli is only served from precompressed siblings since the JDK
+ * has no brotli encoder.
+ * <p>
+ * Variants (and the fact that there is none) are cached by resource path,
+ * encoding and bundle revision in least recently used order, bounded by a
+ * total byte budget. Variants of files are also checked against the
+ * modification time and length of the file, which may change without the
+ * bundle. Variants of resources that are neither bundle entries nor files
+ * are not cached.
+ */
+public class CompressedResourceCache {
+
+	public static final String ACCEPT_ENCODING = "Accept-Encoding";
+	public static final String CONTENT_ENCODING = "Content-Encoding";
+	public static final String VARY = "Vary";
+	public static final String ETAG = "ETag";
+	public static final String LAST_MODIFIED = "Last-Modified";
+	public static final String IF_NONE_MATCH = "If-None-Match";
+	public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+	public static final String IF_MATCH = "If-Match";
+	public static final String IF_UNMODIFIED_SINCE = "If-Unmodified-Since";
+
+	/**
+	 * Largest resource compressed if no maximum entry size is configured.
+	 */
+	private static final int DEFAULT_MAX_ENTRY_SIZE = 1024 * 1024;
+	private static final int DEFAULT_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * Supported encodings in order of preference, with the extension of their
+	 * precompressed siblings.
+	 */
+	private static final String[][] ENCODINGS = { { "br", ".br" }, { "gzip", ".gz" } };
+	private static final String GZIP = "gzip";
+
+	/**
+	 * Marks resources without a variant for an encoding.
+	 */
+	private static final Variant NONE = new Variant(null, new byte[0]);
+
+	/**
+	 * Lookup of resources relative to the http context.
+	 */
+	public interface Lookup {
+
+		/**
+		 * @param path
+		 *            resource path
+		 * @return resource url or null if there is no such resource
+		 */
+		URL getResource(String path);
+	}
+
+	/**
+	 * Compressed content of a resource.
+	 */
+	public static final class Variant {
+
+		private final String encoding;
+		private final byte[] content;
+
+		private Variant(final String encoding, final byte[] content) {
+			this.encoding = encoding;
+			this.content = content;
+		}
+
+		/**
+		 * @return value of the Content-Encoding header
+		 */
+		public String getEncoding() {
+			return encoding;
+		}
+
+		/**
+		 * @return compressed content, must not be modified
+		 */
+		public byte[] getContent() {
+			return content;
+		}
+
+		/**
+		 * Derives the entity tag of the variant from the entity tag of the
+		 * resource, so caches do not mix up the variants.
+		 *
+		 * @param eTag
+		 *            entity tag of the uncompressed resource
+		 * @return entity tag of the variant
+		 */
+		public String getETag(final String eTag) {
+			if (eTag.length() > 1 && eTag.endsWith("\"")) {
+				return eTag.substring(0, eTag.length() - 1) + "-" + encoding + "\"";
+			}
+			return eTag + "-" + encoding;
+		}
+	}
+
+	private static final class Entry {
+
+		private final long revision;
+		private final Stamp stamp;
+		private final Variant variant;
+
+		private Entry(final long revision, final Stamp stamp, final Variant variant) {
+			this.revision = revision;
+			this.stamp = stamp;
+			this.variant = variant;
+		}
+	}
+
+	/**
+	 * Modification time and length of a file.
+	 */
+	private static final class Stamp {
+
+		private final File file;
+		private final long lastModified;
+		private final long length;
+
+		private Stamp(final File file) {
+			this.file = file;
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+		}
+
+		private boolean isCurrent() {
+			return file.lastModified() == lastModified && file.length() == length;
+		}
+	}
+
+	private final int maxEntrySize;
+	private final long maxSize;
+
+	/**
+	 * Guarded by itself.
+	 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long size;
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param maxEntrySize
+	 *            maximum size in bytes of a resource to compress and of a
+	 *            variant to cache
+	 * @param maxSize
+	 *            maximum number of bytes cached in total
+	 */
+	public CompressedResourceCache(final int maxEntrySize, final long maxSize) {
+		this.maxEntrySize = maxEntrySize;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Creates a cache for a resource registration if compression of resources
+	 * is enabled in the configuration.
+	 *
+	 * @param configuration
+	 *            server configuration
+	 * @return new cache or null if resources should not be compressed
+	 */
+	public static CompressedResourceCache create(final Configuration configuration) {
+		if (configuration == null || !Boolean.TRUE.equals(configuration.isResourceCompressionEnabled())) {
+			return null;
+		}
+		Integer size = configuration.getResourceCompressionCacheSize();
+		if (size == null || size <= 0) {
+			size = DEFAULT_SIZE;
+		}
+		return new CompressedResourceCache(Math.min(size, DEFAULT_MAX_ENTRY_SIZE), size);
+	}
+
+	/**
+	 * Checks if content of the given type benefits from compression.
+	 *
+	 * @param mimeType
+	 *            content type, may be null
+	 * @return true for textual content
+	 */
+	public static boolean isCompressible(final String mimeType) {
+		if (mimeType == null) {
+			return false;
+		}
+		final String type = mimeType.toLowerCase(Locale.ENGLISH);
+		return type.startsWith("text/") || type.contains("javascript") || type.contains("json")
+				|| type.contains("xml") || type.contains("svg") || type.contains("ecmascript");
+	}
+
+	/**
+	 * Returns the supported encodings accepted by the client, by descending
+	 * quality. Encodings of the same quality are in order of preference of
+	 * the server, encodings of quality 0 are not accepted.
+	 *
+	 * @param acceptEncoding
+	 *            value of the Accept-Encoding header
+	 * @return accepted encodings, empty if none
+	 */
+	public static List<String> acceptedEncodings(final String acceptEncoding) {
+		if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+			return Collections.emptyList();
+		}
+		final Map<String, Float> qualities = new HashMap<String, Float>();
+		for (String coding : acceptEncoding.split(",")) {
+			final String[] parts = coding.split(";");
+			final String name = parts[0].trim().toLowerCase(Locale.ENGLISH);
+			if (name.isEmpty()) {
+				continue;
+			}
+			float quality = 1f;
+			for (int i = 1; i < parts.length; i++) {
+				final int equals = parts[i].indexOf('=');
+				if (equals > 0 && "q".equalsIgnoreCase(parts[i].substring(0, equals).trim())) {
+					quality = quality(parts[i].substring(equals + 1).trim());
+				}
+			}
+			final String encoding = "x-gzip".equals(name) ? GZIP : name;
+			final Float previous = qualities.get(encoding);
+			if (previous == null || previous < quality) {
+				qualities.put(encoding, quality);
+			}
+		}
+		final List<String> accepted = new ArrayList<String>(ENCODINGS.length);
+		final List<Float> acceptedQualities = new ArrayList<Float>(ENCODINGS.length);
+		for (String[] encoding : ENCODINGS) {
+			Float quality = qualities.get(encoding[0]);
+			if (quality == null) {
+				quality = qualities.get("*");
+			}
+			if (quality == null || quality <= 0) {
+				continue;
+			}
+			// stable insertion by descending quality
+			int index = accepted.size();
+			while (index > 0 && acceptedQualities.get(index - 1) < quality) {
+				index--;
+			}
+			accepted.add(index, encoding[0]);
+			acceptedQualities.add(index, quality);
+		}
+		return accepted;
+	}
+
+	/**
+	 * @return the quality value, 0 if it is invalid
+	 */
+	private static float quality(final String value) {
+		try {
+			final float quality = Float.parseFloat(value);
+			return quality >= 0 && quality <= 1 ? quality : 0f;
+		} catch (NumberFormatException e) {
+			return 0f;
+		}
+	}
+
+	/**
+	 * Evaluates the conditional request headers against the entity tag and
+	 * modification time of the response to a GET or HEAD request and answers
+	 * with 304 (not modified) or 412 (precondition failed) if they demand it.
+	 *
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @param eTag
+	 *            entity tag of the response, null if none
+	 * @param lastModified
+	 *            modification time of the response, -1 if unknown
+	 * @return true if the response has been completed
+	 */
+	public static boolean checkPreconditions(final HttpServletRequest request,
+			final HttpServletResponse response, final String eTag,
+			final long lastModified) throws IOException {
+		final String ifMatch = request.getHeader(IF_MATCH);
+		if (ifMatch != null && !matches(ifMatch, eTag)) {
+			response.sendError(HttpServletResponse.SC_PRECONDITION_FAILED);
+			return true;
+		}
+		if (ifMatch == null && lastModified != -1) {
+			final long ifUnmodifiedSince = dateHeader(request, IF_UNMODIFIED_SINCE);
+			if (ifUnmodifiedSince != -1 && lastModified / 1000 > ifUnmodifiedSince / 1000) {
+				response.sendError(HttpServletResponse.SC_PRECONDITION_FAILED);
+				return true;
+			}
+		}
+		final String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+		boolean notModified;
+		if (ifNoneMatch != null) {
+			notModified = matches(ifNoneMatch, eTag);
+		} else {
+			final long ifModifiedSince = dateHeader(request, IF_MODIFIED_SINCE);
+			notModified = ifModifiedSince != -1 && lastModified != -1
+					&& lastModified / 1000 <= ifModifiedSince / 1000;
+		}
+		if (notModified) {
+			if (eTag != null) {
+				response.setHeader(ETAG, eTag);
+			}
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a list of entity tags matches an entity tag, weakly.
+	 */
+	private static boolean matches(final String header, final String eTag) {
+		if ("*".equals(header.trim())) {
+			return eTag != null;
+		}
+		if (eTag == null) {
+			return false;
+		}
+		final String opaque = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+		for (String candidate : header.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals(opaque)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long dateHeader(final HttpServletRequest request, final String name) {
+		try {
+			return request.getDateHeader(name);
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Finds the preferred compressed variant of a resource the client
+	 * accepts.
+	 *
+	 * @param path
+	 *            resource path
+	 * @param resource
+	 *            url of the resource, as looked up by the caller, or null to
+	 *            look up a bundle entry only if the variant is not cached yet
+	 * @param revision
+	 *            revision of the bundle providing the resource
+	 * @param acceptEncoding
+	 *            value of the Accept-Encoding header
+	 * @param lookup
+	 *            used to look up the precompressed siblings of the resource
+	 *            if the variant is not cached yet, and the resource if not
+	 *            given
+	 * @return the variant or null if the resource should be served
+	 *         uncompressed
+	 */
+	public Variant find(final String path, final URL resource, final long revision,
+			final String acceptEncoding, final Lookup lookup) {
+		final List<String> encodings = acceptedEncodings(acceptEncoding);
+		if (encodings.isEmpty()) {
+			return null;
+		}
+		final File file = resource == null ? null : toFile(resource);
+		final boolean cacheable = resource == null || file != null
+				|| resource.getProtocol().startsWith("bundle");
+		for (String encoding : encodings) {
+			final String key = path + '\n' + encoding;
+			Variant variant = cacheable ? get(key, revision) : null;
+			if (variant == null) {
+				// stamped before reading, a concurrent change is seen next time
+				final Stamp stamp = file == null ? null : new Stamp(file);
+				variant = load(path, resource, encoding, lookup);
+				if (cacheable) {
+					put(key, revision, stamp, variant);
+				}
+			}
+			if (variant != NONE) {
+				return variant;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Drops all cached variants.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+			size = 0;
+		}
+	}
+
+	private Variant get(final String key, final long revision) {
+		synchronized (entries) {
+			final Entry entry = entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.revision != revision || (entry.stamp != null && !entry.stamp.isCurrent())) {
+				entries.remove(key);
+				size -= entry.variant.content.length;
+				return null;
+			}
+			return entry.variant;
+		}
+	}
+
+	private void put(final String key, final long revision, final Stamp stamp, final Variant variant) {
+		if (variant.content.length > maxEntrySize) {
+			return;
+		}
+		synchronized (entries) {
+			final Entry previous = entries.put(key, new Entry(revision, stamp, variant));
+			if (previous != null) {
+				size -= previous.variant.content.length;
+			}
+			size += variant.content.length;
+			final Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+			while (size > maxSize && eldest.hasNext()) {
+				final Map.Entry<String, Entry> evicted = eldest.next();
+				if (!evicted.getKey().equals(key)) {
+					eldest.remove();
+					size -= evicted.getValue().variant.content.length;
+				}
+			}
+		}
+	}
+
+	private Variant load(final String path, final URL resource, final String encoding, final Lookup lookup) {
+		final URL sibling = lookup.getResource(path + extension(encoding));
+		try {
+			if (sibling != null) {
+				final byte[] content = read(sibling);
+				return content == null ? NONE : new Variant(encoding, content);
+			}
+			if (!GZIP.equals(encoding)) {
+				return NONE;
+			}
+			final URL url = resource != null ? resource : lookup.getResource(path);
+			final byte[] content = url == null ? null : read(url);
+			if (content == null) {
+				return NONE;
+			}
+			final ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 2 + 32);
+			try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+				out.write(content);
+			}
+			if (compressed.size() >= content.length) {
+				// not worth it
+				return NONE;
+			}
+			return new Variant(encoding, compressed.toByteArray());
+		} catch (IOException e) {
+			return NONE;
+		}
+	}
+
+	/**
+	 * Reads the content of an url, unless it is larger than the maximum entry
+	 * size.
+	 *
+	 * @return the content or null if too large
+	 */
+	private byte[] read(final URL url) throws IOException {
+		try (InputStream in = url.openStream()) {
+			final ByteArrayOutputStream content = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				if (content.size() + read > maxEntrySize) {
+					return null;
+				}
+				content.write(buffer, 0, read);
+			}
+			return content.toByteArray();
+		}
+	}
+
+	/**
+	 * @return the file of a file url, or null
+	 */
+	private static File toFile(final URL url) {
+		if (!"file".equals(url.getProtocol())) {
+			return null;
+		}
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static String extension(final String encoding) {
+		for (String[] candidate : ENCODINGS) {
+			if (candidate[0].equals(encoding)) {
+				return candidate[1];
+			}
+		}
+		throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.util;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.ops4j.pax.web.service.spi.Configuration;
+
+/**
+ * Groups of settings a running server can apply without being restarted,
+ * see {@link org.ops4j.pax.web.service.spi.ServerController#reconfigure}.
+ * Each method tells whether a group differs between two configurations.
+ */
+public final class ConfigurationChanges {
+
+	private ConfigurationChanges() {
+		// utility class
+	}
+
+	/**
+	 * @return true if the size or idle timeout of the thread pool changed
+	 */
+	public static boolean threadPool(final Configuration previous, final Configuration current) {
+		return !Objects.equals(previous.getServerMaxThreads(), current.getServerMaxThreads())
+				|| !Objects.equals(previous.getServerMinThreads(), current.getServerMinThreads())
+				|| !Objects.equals(previous.getServerIdleTimeout(), current.getServerIdleTimeout());
+	}
+
+	/**
+	 * @return true if the listening addresses, ports or enabled connectors
+	 *         changed
+	 */
+	public static boolean connectors(final Configuration previous, final Configuration current) {
+		return !Arrays.equals(previous.getListeningAddresses(), current.getListeningAddresses())
+				|| !Objects.equals(previous.isHttpEnabled(), current.isHttpEnabled())
+				|| !Objects.equals(previous.getHttpPort(), current.getHttpPort())
+				|| !Objects.equals(previous.isHttpSecureEnabled(), current.isHttpSecureEnabled())
+				|| !Objects.equals(previous.getHttpSecurePort(), current.getHttpSecurePort());
+	}
+
+	/**
+	 * @return true if the NCSA request log settings changed
+	 */
+	public static boolean requestLog(final Configuration previous, final Configuration current) {
+		return !Objects.equals(previous.isLogNCSAFormatEnabled(), current.isLogNCSAFormatEnabled())
+				|| !Objects.equals(previous.getLogNCSAFormat(), current.getLogNCSAFormat())
+				|| !Objects.equals(previous.getLogNCSARetainDays(), current.getLogNCSARetainDays())
+				|| !Objects.equals(previous.isLogNCSAAppend(), current.isLogNCSAAppend())
+				|| !Objects.equals(previous.isLogNCSAExtended(), current.isLogNCSAExtended())
+				|| !Objects.equals(previous.isLogNCSADispatch(), current.isLogNCSADispatch())
+				|| !Objects.equals(previous.getLogNCSATimeZone(), current.getLogNCSATimeZone())
+				|| !Objects.equals(previous.getLogNCSADirectory(), current.getLogNCSADirectory())
+				|| !Objects.equals(previous.isLogNCSALatency(), current.isLogNCSALatency())
+				|| !Objects.equals(previous.isLogNCSACookies(), current.isLogNCSACookies())
+				|| !Objects.equals(previous.isLogNCSAServer(), current.isLogNCSAServer())
+				|| !Objects.equals(previous.getLogNCSABufferSize(), current.getLogNCSABufferSize());
+	}
+
+	/**
+	 * @return true if the defaults for the sessions of new contexts changed
+	 */
+	public static boolean sessionDefaults(final Configuration previous, final Configuration current) {
+		return !Objects.equals(previous.getSessionTimeout(), current.getSessionTimeout())
+				|| !Objects.equals(previous.getSessionCookie(), current.getSessionCookie())
+				|| !Objects.equals(previous.getSessionDomain(), current.getSessionDomain())
+				|| !Objects.equals(previous.getSessionPath(), current.getSessionPath())
+				|| !Objects.equals(previous.getSessionUrl(), current.getSessionUrl())
+				|| !Objects.equals(previous.getSessionCookieHttpOnly(), current.getSessionCookieHttpOnly())
+				|| !Objects.equals(previous.getSessionCookieSecure(), current.getSessionCookieSecure())
+				|| !Objects.equals(previous.getSessionStoreDirectory(), current.getSessionStoreDirectory())
+				|| !Objects.equals(previous.getSessionLazyLoad(), current.getSessionLazyLoad())
+				|| !Objects.equals(previous.getWorkerName(), current.getWorkerName());
+	}
+
+}
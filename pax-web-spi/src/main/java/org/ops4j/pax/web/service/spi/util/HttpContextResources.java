@@ -0,0 +1,195 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.util;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+
+import org.ops4j.pax.web.service.SharedWebContainerContext;
+import org.osgi.framework.Bundle;
+import org.osgi.service.http.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the resources of a servlet context against its http context, the
+ * same way for all server implementations.
+ * <ul>
+ * <li>Paths which already are urls are returned as such (PAXWEB-314). Only
+ * paths starting with a scheme are parsed, so plain paths never go through a
+ * {@link MalformedURLException}.</li>
+ * <li>A trailing slash is removed before asking the http context
+ * (PAXWEB-233), unless the server tells directories apart by it.</li>
+ * <li>The http context is called with the access control context of the
+ * bundle that registered it if a security manager is installed.</li>
+ * <li>Resources found in a bundle are cached until the bundle providing the
+ * http context is updated. Misses and urls of other protocols, like files,
+ * may change and are looked up every time. Http contexts caching their
+ * resources themselves ({@link CachingHttpContext}) and shared contexts, whose
+ * set of bundles changes while the servlet context lives, are not cached
+ * here.</li>
+ * </ul>
+ * A cached lookup does not allocate.
+ */
+public class HttpContextResources {
+
+	private static final Logger LOG = LoggerFactory.getLogger(HttpContextResources.class);
+
+	private final HttpContext httpContext;
+
+	private final AccessControlContext accessControlContext;
+
+	private final boolean stripTrailingSlash;
+
+	private final Bundle bundle;
+
+	private final ResourceUrlCache cache;
+
+	private final ResourceUrlCache.Lookup lookup = new ResourceUrlCache.Lookup() {
+		@Override
+		public URL getResource(final String name) {
+			return resolve(name);
+		}
+	};
+
+	/**
+	 * @param httpContext
+	 *            http context providing the resources
+	 * @param accessControlContext
+	 *            access control context of the bundle that registered the
+	 *            http context, may be null
+	 * @param bundle
+	 *            bundle that registered the http context, resources are not
+	 *            cached if null
+	 */
+	public HttpContextResources(final HttpContext httpContext, final AccessControlContext accessControlContext,
+			final Bundle bundle) {
+		this(httpContext, accessControlContext, bundle, true);
+	}
+
+	/**
+	 * @param httpContext
+	 *            http context providing the resources
+	 * @param accessControlContext
+	 *            access control context of the bundle that registered the
+	 *            http context, may be null
+	 * @param bundle
+	 *            bundle that registered the http context, resources are not
+	 *            cached if null
+	 * @param stripTrailingSlash
+	 *            whether to remove a trailing slash from the path
+	 */
+	public HttpContextResources(final HttpContext httpContext, final AccessControlContext accessControlContext,
+			final Bundle bundle, final boolean stripTrailingSlash) {
+		this.httpContext = httpContext;
+		this.accessControlContext = accessControlContext;
+		this.bundle = bundle;
+		this.stripTrailingSlash = stripTrailingSlash;
+		if (bundle == null || httpContext instanceof CachingHttpContext
+				|| httpContext instanceof SharedWebContainerContext) {
+			cache = null;
+		} else {
+			cache = new ResourceUrlCache(ResourceUrlCache.DEFAULT_MAX_ENTRIES, 0) {
+				@Override
+				protected boolean isCacheable(final URL url) {
+					return url.getProtocol().startsWith("bundle");
+				}
+			};
+		}
+	}
+
+	/**
+	 * @param path
+	 *            resource path or url
+	 * @return resource url or null if the http context has no such resource
+	 */
+	public URL getResource(final String path) {
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("getting resource: [{}]", path);
+		}
+		if (path != null && hasScheme(path)) {
+			try {
+				final URL url = new URL(path);
+				LOG.debug("resource: [{}] is already a URL, returning", path);
+				return url;
+			} catch (MalformedURLException e) {
+				LOG.debug("not a URL or invalid URL: [{}], treating as a file path", path);
+			}
+		}
+		if (path == null || cache == null) {
+			return resolve(path);
+		}
+		return cache.getResource(path, bundle.getLastModified(), lookup);
+	}
+
+	/**
+	 * Checks if a path starts with an url scheme as defined by RFC 3986,
+	 * letters followed by letters, digits, "+", "-" or "." and a colon.
+	 */
+	static boolean hasScheme(final String path) {
+		final int length = path.length();
+		if (length == 0 || !isLetter(path.charAt(0))) {
+			return false;
+		}
+		for (int i = 1; i < length; i++) {
+			final char c = path.charAt(i);
+			if (c == ':') {
+				return true;
+			}
+			if (!isLetter(c) && !(c >= '0' && c <= '9') && c != '+' && c != '-' && c != '.') {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isLetter(final char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private URL resolve(final String path) {
+		final String p;
+		if (stripTrailingSlash && path != null && path.endsWith("/") && path.length() > 1) {
+			p = path.substring(0, path.length() - 1);
+		} else {
+			p = path;
+		}
+		URL resource = null;
+		if (System.getSecurityManager() == null) {
+			resource = httpContext.getResource(p);
+		} else {
+			try {
+				resource = AccessController.doPrivileged(new PrivilegedExceptionAction<URL>() {
+					@Override
+					public URL run() throws Exception {
+						return httpContext.getResource(p);
+					}
+				}, accessControlContext);
+			} catch (PrivilegedActionException e) {
+				LOG.warn("Unauthorized access: " + e.getMessage());
+			}
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("found resource: {}", resource);
+		}
+		return resource;
+	}
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.util;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Resolved resource urls of an http context, shared by the http context
+ * implementations of the runtime and the war extender.
+ * <p>
+ * Entries, including the fact that there is no such resource, are kept in
+ * least recently used order up to a maximum number of entries. Every entry
+ * remembers the revision (last modification time) of the bundle it was
+ * resolved against and is dropped when looked up with a different revision,
+ * so an updated bundle never serves stale urls. Misses additionally expire
+ * after a configurable time, so probing for random paths does not pin them
+ * and resources showing up later, like attached fragments, are found.
+ * Contexts spanning several bundles call {@link #clear()} when the set of
+ * bundles changes.
+ */
+public class ResourceUrlCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+	public static final long DEFAULT_NEGATIVE_TTL = TimeUnit.SECONDS.toMillis(10);
+
+	/**
+	 * Lookup of resources not cached yet.
+	 */
+	public interface Lookup {
+
+		/**
+		 * @param name
+		 *            resource name
+		 * @return resource url or null if there is no such resource
+		 */
+		URL getResource(String name);
+	}
+
+	private static final class Entry {
+
+		private final URL url;
+		private final long revision;
+		/**
+		 * Nano time after which a miss is looked up again.
+		 */
+		private final long expires;
+
+		private Entry(final URL url, final long revision, final long expires) {
+			this.url = url;
+			this.revision = revision;
+			this.expires = expires;
+		}
+	}
+
+	private final int maxEntries;
+	private final long negativeTtlNanos;
+	/**
+	 * Source of the nano time misses expire by.
+	 */
+	private final LongSupplier nanoTime;
+
+	/**
+	 * Guarded by itself.
+	 */
+	private final LinkedHashMap<String, Entry> entries;
+
+	/**
+	 * Creates a cache with the default limits.
+	 */
+	public ResourceUrlCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_NEGATIVE_TTL);
+	}
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param maxEntries
+	 *            maximum number of names cached, 0 disables caching
+	 * @param negativeTtl
+	 *            milliseconds a miss is cached, 0 does not cache misses
+	 */
+	public ResourceUrlCache(final int maxEntries, final long negativeTtl) {
+		this(maxEntries, negativeTtl, System::nanoTime);
+	}
+
+	/**
+	 * Creates a new cache expiring misses by the given time source.
+	 *
+	 * @param maxEntries
+	 *            maximum number of names cached, 0 disables caching
+	 * @param negativeTtl
+	 *            milliseconds a miss is cached, 0 does not cache misses
+	 * @param nanoTime
+	 *            source of the time in nanoseconds, like
+	 *            {@link System#nanoTime()}
+	 */
+	ResourceUrlCache(final int maxEntries, final long negativeTtl, final LongSupplier nanoTime) {
+		this.maxEntries = maxEntries;
+		this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtl);
+		this.nanoTime = nanoTime;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+				return size() > ResourceUrlCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached url of a resource or looks it up.
+	 *
+	 * @param name
+	 *            normalized resource name
+	 * @param revision
+	 *            current revision of the bundle providing the resource
+	 * @param lookup
+	 *            used to look up the resource if it is not cached
+	 * @return resource url or null if there is no such resource
+	 */
+	public URL getResource(final String name, final long revision, final Lookup lookup) {
+		if (maxEntries <= 0) {
+			return lookup.getResource(name);
+		}
+		synchronized (entries) {
+			final Entry entry = entries.get(name);
+			if (entry != null) {
+				if (entry.revision == revision
+						&& (entry.url != null || nanoTime.getAsLong() - entry.expires < 0)) {
+					return entry.url;
+				}
+				entries.remove(name);
+			}
+		}
+		final URL url = lookup.getResource(name);
+		if (url != null ? isCacheable(url) : negativeTtlNanos > 0) {
+			final Entry entry = new Entry(url, revision, nanoTime.getAsLong() + negativeTtlNanos);
+			synchronized (entries) {
+				entries.put(name, entry);
+			}
+		}
+		return url;
+	}
+
+	/**
+	 * Checks if a found url may be cached until the bundle revision changes.
+	 *
+	 * @param url
+	 *            url returned by the lookup
+	 * @return true by default
+	 */
+	protected boolean isCacheable(final URL url) {
+		return true;
+	}
+
+	/**
+	 * Drops all cached urls.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @return number of cached names
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.ops4j.pax.web.service.spi.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the executors handling requests on virtual threads, see
+ * {@link Configuration#useVirtualThreads()}.
+ * <p>
+ * Pax Web is built for Java 8, so virtual threads are looked up reflectively
+ * and only used if the running Java provides them. Otherwise the servers keep
+ * their regular, pooled request threads.
+ */
+public final class VirtualThreads {
+
+	private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+
+	private VirtualThreads() {
+		// utility class
+	}
+
+	/**
+	 * @return an executor starting a new virtual thread per task, or null if
+	 *         virtual threads are not enabled by the configuration or not
+	 *         available in the running Java
+	 */
+	public static ExecutorService newExecutor(final Configuration configuration, final String namePrefix) {
+		if (configuration.useVirtualThreads() == null || !configuration.useVirtualThreads()) {
+			return null;
+		}
+		try {
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+			final ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			final Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			LOG.info("Handling requests on virtual threads");
+			return (ExecutorService) newExecutor.invoke(null, factory);
+		} catch (ReflectiveOperationException e) {
+			LOG.warn("Virtual threads are not available in Java {}, using pooled request threads",
+					System.getProperty("java.version"));
+			return null;
+		}
+	}
+
+}
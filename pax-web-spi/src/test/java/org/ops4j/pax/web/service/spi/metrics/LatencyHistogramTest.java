@@ -0,0 +1,67 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void bucketsCoverAllValuesWithBoundedError() {
+		int previous = -1;
+		for (long value = 0; value < 1 << 20; value++) {
+			final int index = LatencyHistogram.index(value);
+			assertTrue(index == previous || index == previous + 1);
+			final long reported = LatencyHistogram.highestEquivalentValue(index);
+			assertTrue(reported >= value);
+			assertTrue(reported - value <= value / 32);
+			previous = index;
+		}
+		assertEquals(LatencyHistogram.MAX_VALUE,
+				LatencyHistogram.highestEquivalentValue(LatencyHistogram.index(LatencyHistogram.MAX_VALUE)));
+	}
+
+	@Test
+	public void reportsPercentiles() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMax());
+		assertEquals(500.5, histogram.getMean(), 0.001);
+		assertEquals(500, histogram.getPercentile(0.5), 500 / 32);
+		assertEquals(990, histogram.getPercentile(0.99), 990 / 32);
+		assertEquals(1000, histogram.getPercentile(1));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(0.5));
+	}
+
+	@Test
+	public void clampsOutOfRangeValues() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(0, histogram.getPercentile(0.5));
+		assertEquals(LatencyHistogram.MAX_VALUE, histogram.getPercentile(1));
+	}
+
+}
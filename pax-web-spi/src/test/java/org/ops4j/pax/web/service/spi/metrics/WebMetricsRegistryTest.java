@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.junit.Test;
+
+public class WebMetricsRegistryTest {
+
+	@Test
+	public void sharesMetricsUntilLastRelease() {
+		final WebMetricsRegistry registry = new WebMetricsRegistry();
+		final List<RequestMetrics> added = new ArrayList<>();
+		final List<RequestMetrics> removed = new ArrayList<>();
+		registry.addListener(new WebMetricsListener() {
+			@Override
+			public void metricsAdded(RequestMetrics metrics) {
+				added.add(metrics);
+			}
+
+			@Override
+			public void metricsRemoved(RequestMetrics metrics) {
+				removed.add(metrics);
+			}
+		});
+
+		final RequestMetrics first = registry.acquireServletMetrics("ctx", "servlet");
+		final RequestMetrics second = registry.acquireServletMetrics("ctx", "servlet");
+		assertSame(first, second);
+		assertSame(first, registry.getServletMetrics("ctx", "servlet"));
+		assertNull(registry.getFilterMetrics("ctx", "servlet"));
+		assertEquals(1, added.size());
+
+		registry.release(first);
+		assertSame(first, registry.getServletMetrics("ctx", "servlet"));
+		registry.release(second);
+		assertNull(registry.getServletMetrics("ctx", "servlet"));
+		assertEquals(1, removed.size());
+	}
+
+	@Test
+	public void timesFilterExcludingChain() throws IOException, ServletException {
+		final RequestMetrics metrics = new RequestMetrics(RequestMetrics.Kind.FILTER, "ctx", "filter");
+		final TimedFilter filter = new TimedFilter(new Filter() {
+			@Override
+			public void init(FilterConfig filterConfig) {
+			}
+
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+					throws IOException, ServletException {
+				chain.doFilter(request, response);
+			}
+
+			@Override
+			public void destroy() {
+			}
+		}, metrics);
+
+		filter.doFilter(null, null, new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+
+		assertEquals(1, metrics.getRequestCount());
+		assertEquals(0, metrics.getErrorCount());
+		assertEquals(0, metrics.getActiveRequests());
+		assertEquals(0, metrics.getMaxLatency(), 100000);
+	}
+
+}
@@ -19,6 +19,9 @@
 package org.ops4j.pax.web.service.spi.model;
 
 import static org.easymock.EasyMock.createMock;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.util.Arrays;
 import java.util.Hashtable;
@@ -103,4 +106,23 @@ public class FilterModelTest {
 				}, false);
 
 	}
+
+	@Test
+	public void remapKeepsNameAndFilter() {
+		Filter filter = createMock(Filter.class);
+		FilterModel fm = new FilterModel(new ContextModel(
+				createMock(HttpContext.class), null, getClass()
+						.getClassLoader()), filter,
+				new String[] { "/a/*" }, null, new Hashtable<String, Object>(), true);
+		Hashtable<String, String> initParams = new Hashtable<String, String>();
+		initParams.put("key", "value");
+
+		FilterModel remapped = fm.remap(new String[] { "/b/*" }, null, initParams);
+
+		assertEquals(fm.getName(), remapped.getName());
+		assertSame(filter, remapped.getFilter());
+		assertSame(fm.getContextModel(), remapped.getContextModel());
+		assertArrayEquals(new String[] { "/b/*" }, remapped.getUrlPatterns());
+		assertEquals("value", remapped.getInitParams().get("key"));
+	}
 }
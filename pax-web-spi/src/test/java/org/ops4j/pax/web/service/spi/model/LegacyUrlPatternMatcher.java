@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.model;
+
+import java.util.Map;
+
+/**
+ * The string chopping matcher {@link ServerModel} used before
+ * {@link UrlPatternIndex}. Kept as the reference for precedence tests and
+ * benchmarks.
+ */
+final class LegacyUrlPatternMatcher {
+
+	private LegacyUrlPatternMatcher() {
+	}
+
+	static <T> T match(final Map<String, T> urlPatternsMap, final String path) {
+		T matched = null;
+		String servletPath = path;
+
+		while ((matched == null) && (!"".equals(servletPath))) {
+			if (servletPath.endsWith("/")) {
+				matched = urlPatternsMap.get(servletPath + "*");
+			} else {
+				matched = urlPatternsMap.get(servletPath + "/*");
+			}
+
+			if (matched == null) {
+				matched = urlPatternsMap.get(servletPath);
+			}
+
+			if (matched == null) {
+				String lastPathSegment = servletPath.substring(servletPath.lastIndexOf("/") + 1);
+				servletPath = servletPath.substring(0, servletPath.lastIndexOf("/"));
+				if (("".equals(servletPath)) && ("".equals(lastPathSegment))) {
+					break;
+				} else if ("".equals(lastPathSegment)) {
+					matched = urlPatternsMap.get(servletPath + "/*");
+					continue;
+				} else if (lastPathSegment.contains(".")) {
+					String extension = lastPathSegment.substring(lastPathSegment.lastIndexOf("."));
+					if (extension.length() > 1) {
+						matched = urlPatternsMap.get(("".equals(servletPath) ? "*" : servletPath + "/*") + extension);
+					}
+				} else {
+					if (servletPath.endsWith("/")) {
+						matched = urlPatternsMap.get(servletPath + "*");
+					} else {
+						matched = urlPatternsMap.get(servletPath + "/*");
+					}
+				}
+
+				if (matched == null) {
+					matched = urlPatternsMap.get(servletPath);
+				}
+
+				if ((matched == null) && ("".equals(servletPath)) && (!"".equals(lastPathSegment))) {
+					matched = urlPatternsMap.get("/");
+				}
+			}
+		}
+		return matched;
+	}
+
+}
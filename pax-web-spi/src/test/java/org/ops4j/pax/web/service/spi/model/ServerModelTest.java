@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.model;
+
+import static org.easymock.EasyMock.createMock;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Hashtable;
+
+import javax.servlet.Filter;
+import javax.servlet.Servlet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.pax.web.service.WebContainerConstants;
+import org.osgi.service.http.HttpContext;
+
+public class ServerModelTest {
+
+	private ServerModel serverModel;
+
+	@Before
+	public void setUp() {
+		serverModel = new ServerModel();
+	}
+
+	@Test
+	public void matchServletPath() throws Exception {
+		final ContextModel context = context("app");
+		serverModel.addServletModel(new ServletModel(context, createMock(Servlet.class), "/servlet",
+				new Hashtable<String, Object>(), null, null));
+
+		assertSame(context, serverModel.matchPathToContext("/app/servlet/info"));
+		assertEquals(0, serverModel.getFilterOnlyMatchCount());
+	}
+
+	@Test
+	public void unregisteredServletIsNotMatched() throws Exception {
+		final ServletModel servlet = new ServletModel(context("app"), createMock(Servlet.class), "/servlet",
+				new Hashtable<String, Object>(), null, null);
+		serverModel.addServletModel(servlet);
+		serverModel.removeServletModel(servlet);
+
+		assertNull(serverModel.matchPathToContext("/app/servlet"));
+	}
+
+	@Test
+	public void fallBackToFilters() throws Exception {
+		final ContextModel servletContext = context("servlets");
+		final ContextModel filterContext = context("filters");
+		serverModel.addServletModel(new ServletModel(servletContext, createMock(Servlet.class), "/servlet",
+				new Hashtable<String, Object>(), null, null));
+		final FilterModel filter = new FilterModel(filterContext, createMock(Filter.class),
+				new String[] {"/*"}, null, new Hashtable<String, Object>(), false);
+		serverModel.addFilterModel(filter);
+
+		assertSame(servletContext, serverModel.matchPathToContext("/servlets/servlet"));
+		assertSame(filterContext, serverModel.matchPathToContext("/filters/index.html"));
+		assertNull(serverModel.matchPathToContext("/other"));
+		assertEquals(2, serverModel.getFilterOnlyMatchCount());
+
+		serverModel.removeFilterModel(filter);
+		assertNull(serverModel.matchPathToContext("/filters/index.html"));
+	}
+
+	@Test
+	public void registrationsChangeRoutingRevision() throws Exception {
+		final long initial = serverModel.getRoutingRevision();
+		final ServletModel servlet = new ServletModel(context("app"), createMock(Servlet.class), "/servlet",
+				new Hashtable<String, Object>(), null, null);
+		serverModel.addServletModel(servlet);
+		final long registered = serverModel.getRoutingRevision();
+		assertNotEquals(initial, registered);
+
+		serverModel.matchPathToContext("/app/servlet");
+		assertEquals(registered, serverModel.getRoutingRevision());
+
+		serverModel.removeServletModel(servlet);
+		assertNotEquals(registered, serverModel.getRoutingRevision());
+	}
+
+	private static ContextModel context(final String name) {
+		final ContextModel context = new ContextModel(createMock(HttpContext.class), null,
+				ServerModelTest.class.getClassLoader());
+		final Hashtable<String, String> params = new Hashtable<String, String>();
+		params.put(WebContainerConstants.CONTEXT_NAME, name);
+		context.setContextParams(params);
+		return context;
+	}
+
+}
@@ -17,6 +17,9 @@
 package org.ops4j.pax.web.service.spi.model;
 
 import static org.easymock.EasyMock.createMock;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.util.Hashtable;
 
@@ -27,6 +30,26 @@ import org.osgi.service.http.HttpContext;
 
 public class ServletModelTest {
 
+	@Test
+	public void remapKeepsNameAndSettings() {
+		Servlet servlet = createMock(Servlet.class);
+		ServletModel sm = new ServletModel(new ContextModel(
+				createMock(HttpContext.class), null, getClass().getClassLoader()),
+				servlet, "name", new String[] { "/a" }, null,
+				new Hashtable<String, Object>(), 1, true, null);
+		Hashtable<String, String> initParams = new Hashtable<String, String>();
+		initParams.put("key", "value");
+
+		ServletModel remapped = sm.remap(new String[] { "/b" }, initParams);
+
+		assertEquals("name", remapped.getName());
+		assertSame(servlet, remapped.getServlet());
+		assertEquals(Integer.valueOf(1), remapped.getLoadOnStartup());
+		assertEquals(Boolean.TRUE, remapped.getAsyncSupported());
+		assertArrayEquals(new String[] { "/b" }, remapped.getUrlPatterns());
+		assertEquals("value", remapped.getInitParams().get("key"));
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void registerServletWithNullAlias() {
 		new ServletModel(new ContextModel(createMock(HttpContext.class), null,
@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link UrlPatternIndex} with the former string chopping matcher.
+ * Only compiled with the <code>benchmarks</code> profile
+ * (<code>mvn -Pbenchmarks test-compile</code>), start it with the main method
+ * on the test classpath or through the JMH runner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlPatternIndexBenchmark {
+
+	@Param({"10", "100", "1000"})
+	private int patterns;
+
+	private Map<String, String> urlPatterns;
+	private UrlPatternIndex<String> index;
+	private String[] paths;
+
+	@Setup
+	public void setUp() {
+		urlPatterns = new HashMap<String, String>();
+		// 10 contexts, every one with alias, wildcard and extension mappings
+		for (int i = 0; urlPatterns.size() < patterns; i++) {
+			final String context = "/context" + (i % 10);
+			final String pattern;
+			switch (i % 3) {
+				case 0:
+					pattern = context + "/servlet" + i;
+					break;
+				case 1:
+					pattern = context + "/servlet" + i + "/*";
+					break;
+				default:
+					pattern = context + "/*.ext" + i;
+			}
+			urlPatterns.put(pattern, pattern);
+		}
+		index = UrlPatternIndex.build(urlPatterns);
+		paths = new String[] {
+			"/context0/servlet0",
+			"/context1/servlet1/some/deep/path/info",
+			"/context2/page.ext2",
+			"/context3/resources/images/logo.png",
+			"/unknown/path/index.html",
+			"/",
+		};
+	}
+
+	@Benchmark
+	public void index(final Blackhole blackhole) {
+		for (String path : paths) {
+			blackhole.consume(index.match(path));
+		}
+	}
+
+	@Benchmark
+	public void legacy(final Blackhole blackhole) {
+		for (String path : paths) {
+			blackhole.consume(LegacyUrlPatternMatcher.match(urlPatterns, path));
+		}
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(UrlPatternIndexBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class UrlPatternIndexTest {
+
+	private static UrlPatternIndex<String> index(final String... patterns) {
+		final Map<String, String> map = new HashMap<String, String>();
+		for (String pattern : patterns) {
+			map.put(pattern, pattern);
+		}
+		return UrlPatternIndex.build(map);
+	}
+
+	@Test
+	public void emptyIndexMatchesNothing() {
+		final UrlPatternIndex<String> index = index();
+		assertNull(index.match("/"));
+		assertNull(index.match("/foo/bar.jsp"));
+		assertNull(index.match(""));
+		assertNull(index.match(null));
+	}
+
+	@Test
+	public void longestPathPrefixWins() {
+		final UrlPatternIndex<String> index = index("/*", "/foo/*", "/foo/bar/*");
+		assertEquals("/foo/bar/*", index.match("/foo/bar/baz"));
+		assertEquals("/foo/bar/*", index.match("/foo/bar"));
+		assertEquals("/foo/*", index.match("/foo/baz/bar"));
+		assertEquals("/*", index.match("/baz"));
+	}
+
+	@Test
+	public void exactMatchAfterWildcardOnSameLevel() {
+		final UrlPatternIndex<String> index = index("/foo", "/foo/bar");
+		assertEquals("/foo/bar", index.match("/foo/bar"));
+		assertEquals("/foo", index.match("/foo"));
+		assertEquals("/foo", index.match("/foo/baz"));
+	}
+
+	@Test
+	public void extensionMappings() {
+		final UrlPatternIndex<String> index = index("*.jsp", "/ctx/*.do", "/ctx/admin/*");
+		assertEquals("*.jsp", index.match("/index.jsp"));
+		assertEquals("/ctx/*.do", index.match("/ctx/login.do"));
+		assertEquals("/ctx/admin/*", index.match("/ctx/admin/login.do"));
+		assertNull(index.match("/other/login.do"));
+		assertNull(index.match("/index."));
+	}
+
+	@Test
+	public void defaultMapping() {
+		final UrlPatternIndex<String> index = index("/", "/ctx/*");
+		assertEquals("/", index.match("/foo"));
+		assertEquals("/ctx/*", index.match("/ctx/foo"));
+		assertEquals("/", index.match("/"));
+		assertNull(index("/ctx/*").match("/"));
+	}
+
+	@Test
+	public void pathsWithoutLeadingSlashDoNotMatch() {
+		assertNull(index("/*", "*.jsp").match("index.jsp"));
+	}
+
+	@Test
+	public void sameResultsAsLegacyMatcher() {
+		final String[] segments = {"a", "b", "ctx", "", "x.jsp", "y.do", "*", "*.jsp", "*.do", "d."};
+		final Random random = new Random(42);
+		for (int round = 0; round < 2000; round++) {
+			final Map<String, String> patterns = new HashMap<String, String>();
+			final int count = random.nextInt(12);
+			for (int i = 0; i < count; i++) {
+				final String pattern;
+				switch (random.nextInt(8)) {
+					case 0:
+						pattern = random.nextBoolean() ? "*.jsp" : "*.do";
+						break;
+					case 1:
+						pattern = "/";
+						break;
+					case 2:
+						pattern = "/*";
+						break;
+					default:
+						pattern = randomPath(random, segments, 3);
+				}
+				patterns.put(pattern, pattern);
+			}
+			final UrlPatternIndex<String> index = UrlPatternIndex.build(patterns);
+			for (int i = 0; i < 20; i++) {
+				final String path = randomPath(random, segments, 4);
+				assertEquals(patterns.keySet() + " " + path, LegacyUrlPatternMatcher.match(patterns, path),
+						index.match(path));
+			}
+		}
+	}
+
+	private static String randomPath(final Random random, final String[] segments, final int maxDepth) {
+		final StringBuilder path = new StringBuilder();
+		final int depth = 1 + random.nextInt(maxDepth);
+		for (int i = 0; i < depth; i++) {
+			path.append('/').append(segments[random.nextInt(segments.length)]);
+		}
+		return path.toString();
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsyncRequestLogTest {
+
+	private static final long TIMESTAMP = 1262304000000L; // 2010-01-01 00:00:00 GMT
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writesNcsaRecords() throws IOException {
+		final AsyncRequestLog log = new AsyncRequestLog(folder.getRoot().getPath(), "request.log", null, true,
+				true, "GMT", true, true, false, 16);
+		assertTrue(log.isLogCookies());
+		log.start();
+		assertTrue(log.log(TIMESTAMP, "localhost", "127.0.0.1", "admin", "GET", "/index.html?a=b", "HTTP/1.1",
+				200, 1234, "http://example.org/", "curl", "JSESSIONID=1", 5));
+		assertTrue(log.log(TIMESTAMP, "localhost", "127.0.0.1", null, "POST", "/form", "HTTP/1.1", 404, -1, null,
+				null, null, 7));
+		log.stop();
+
+		final List<String> lines = Files.readAllLines(new File(folder.getRoot(), "request.log").toPath(),
+				StandardCharsets.UTF_8);
+		assertEquals(2, lines.size());
+		assertEquals("127.0.0.1 - admin [01/Jan/2010:00:00:00 +0000] \"GET /index.html?a=b HTTP/1.1\" 200 1234"
+				+ " \"http://example.org/\" \"curl\" \"JSESSIONID=1\" 5", lines.get(0));
+		assertEquals("127.0.0.1 - - [01/Jan/2010:00:00:00 +0000] \"POST /form HTTP/1.1\" 404 - \"-\" \"-\" \"-\" 7",
+				lines.get(1));
+	}
+
+	@Test
+	public void dropsRecordsWhenFull() {
+		final AsyncRequestLog log = new AsyncRequestLog(folder.getRoot().getPath(), "request.log", null, true,
+				false, "GMT", false, false, false, 16);
+		assertFalse(log.isLogCookies());
+		// not started, so nothing frees the buffer
+		for (int i = 0; i < 16; i++) {
+			assertTrue(log.log(TIMESTAMP, null, "127.0.0.1", null, "GET", "/", "HTTP/1.1", 200, 0, null, null,
+					null, 0));
+		}
+		assertFalse(log.log(TIMESTAMP, null, "127.0.0.1", null, "GET", "/", "HTTP/1.1", 200, 0, null, null, null,
+				0));
+		assertEquals(1, log.getDroppedRecords());
+	}
+
+	@Test
+	public void rollsDailyAndDeletesExpiredFiles() throws IOException {
+		final SimpleDateFormat format = new SimpleDateFormat("yyyy_MM_dd");
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		final long now = System.currentTimeMillis();
+		final File expired = folder.newFile(format.format(new Date(now - TimeUnit.DAYS.toMillis(10))) + ".request.log");
+		final File retained = folder.newFile(format.format(new Date(now - TimeUnit.DAYS.toMillis(1))) + ".request.log");
+
+		final AsyncRequestLog log = new AsyncRequestLog(folder.getRoot().getPath(), "yyyy_mm_dd.request.log", "5",
+				true, false, "GMT", false, false, false, 16);
+		log.start();
+		log.stop();
+
+		assertFalse(expired.exists());
+		assertTrue(retained.exists());
+		assertTrue(new File(folder.getRoot(), format.format(new Date()) + ".request.log").exists());
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.util;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ByteRangesTest {
+
+	private static final byte[] CONTENT = "0123456789".getBytes();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void parse() {
+		List<ByteRanges.Range> ranges = ByteRanges.parse("bytes=0-3, 8-, -2", 10);
+		assertEquals(3, ranges.size());
+		assertEquals("bytes 0-3/10", ranges.get(0).toContentRange(10));
+		assertEquals("bytes 8-9/10", ranges.get(1).toContentRange(10));
+		assertEquals("bytes 8-9/10", ranges.get(2).toContentRange(10));
+
+		assertEquals("bytes 5-9/10", ByteRanges.parse("bytes=5-100", 10).get(0).toContentRange(10));
+		assertTrue(ByteRanges.parse("bytes=10-", 10).isEmpty());
+		assertNull(ByteRanges.parse("items=0-1", 10));
+		assertNull(ByteRanges.parse("bytes=3-1", 10));
+		assertNull(ByteRanges.parse("bytes=a-b", 10));
+	}
+
+	@Test
+	public void ifRange() {
+		assertTrue(ByteRanges.ifRange(request(null), "\"1\"", 1000));
+		assertTrue(ByteRanges.ifRange(request("\"1\""), "\"1\"", 1000));
+		assertFalse(ByteRanges.ifRange(request("\"2\""), "\"1\"", 1000));
+		assertFalse(ByteRanges.ifRange(request("W/\"1\""), "W/\"1\"", 1000));
+	}
+
+	@Test
+	public void sources() throws IOException {
+		final File file = folder.newFile("content.txt");
+		Files.write(file.toPath(), CONTENT);
+
+		assertEquals("234", slice(ByteRanges.source(ByteBuffer.wrap(CONTENT)), 2, 3));
+		assertEquals("234", slice(ByteRanges.source(file), 2, 3));
+		assertEquals("789", slice(ByteRanges.source(file.toURI().toURL()), 7, 3));
+	}
+
+	private static String slice(final ByteRanges.Source source, final long start, final long length)
+			throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		source.write(out, start, length);
+		return new String(out.toByteArray());
+	}
+
+	private static HttpServletRequest request(final String ifRange) {
+		final HttpServletRequest request = createMock(HttpServletRequest.class);
+		expect(request.getHeader(ByteRanges.IF_RANGE)).andReturn(ifRange).anyTimes();
+		replay(request);
+		return request;
+	}
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CompressedResourceCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final AtomicInteger lookups = new AtomicInteger();
+	private final CompressedResourceCache.Lookup lookup = path -> {
+		lookups.incrementAndGet();
+		final File file = new File(folder.getRoot(), path);
+		try {
+			return file.isFile() ? file.toURI().toURL() : null;
+		} catch (MalformedURLException e) {
+			throw new IllegalStateException(e);
+		}
+	};
+	private byte[] script;
+
+	@Before
+	public void setUp() throws IOException {
+		final StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			content.append("console.log('compress me');\n");
+		}
+		script = content.toString().getBytes("UTF-8");
+		Files.write(new File(folder.getRoot(), "app.js").toPath(), script);
+	}
+
+	@Test
+	public void acceptedEncodings() {
+		assertEquals(Collections.emptyList(), CompressedResourceCache.acceptedEncodings(null));
+		assertEquals(Arrays.asList("br", "gzip"), CompressedResourceCache.acceptedEncodings("gzip, deflate, br"));
+		assertEquals(Arrays.asList("gzip"), CompressedResourceCache.acceptedEncodings("x-gzip"));
+		assertEquals(Arrays.asList("gzip"), CompressedResourceCache.acceptedEncodings("br;q=0, *"));
+		assertEquals(Collections.emptyList(), CompressedResourceCache.acceptedEncodings("identity"));
+	}
+
+	@Test
+	public void acceptedEncodingsByQuality() {
+		assertEquals(Arrays.asList("gzip", "br"), CompressedResourceCache.acceptedEncodings("br;q=0.1, gzip"));
+		assertEquals(Arrays.asList("gzip", "br"), CompressedResourceCache.acceptedEncodings("gzip;q=0.8, br;q=0.5"));
+		assertEquals(Arrays.asList("br", "gzip"), CompressedResourceCache.acceptedEncodings("gzip;q=0.5, br;q=0.5"));
+		assertEquals(Arrays.asList("gzip", "br"), CompressedResourceCache.acceptedEncodings("*;q=0.2, gzip"));
+	}
+
+	@Test
+	public void refusedEncodings() {
+		assertEquals(Collections.emptyList(), CompressedResourceCache.acceptedEncodings("gzip;q=0"));
+		assertEquals(Collections.emptyList(), CompressedResourceCache.acceptedEncodings("gzip ; Q = 0.0"));
+		assertEquals(Collections.emptyList(), CompressedResourceCache.acceptedEncodings("gzip;q=0.000, br;q=0"));
+		assertEquals(Arrays.asList("br"), CompressedResourceCache.acceptedEncodings("gzip;q=0, *"));
+		assertEquals(Collections.emptyList(), CompressedResourceCache.acceptedEncodings("gzip;q=abc"));
+	}
+
+	@Test
+	public void compressible() {
+		assertTrue(CompressedResourceCache.isCompressible("application/javascript"));
+		assertTrue(CompressedResourceCache.isCompressible("text/html; charset=UTF-8"));
+		assertFalse(CompressedResourceCache.isCompressible("image/png"));
+		assertFalse(CompressedResourceCache.isCompressible(null));
+	}
+
+	@Test
+	public void gzipOnceAndCache() throws IOException {
+		final CompressedResourceCache cache = new CompressedResourceCache(1024 * 1024, 1024 * 1024);
+		final CompressedResourceCache.Variant variant = cache.find("/app.js", url("/app.js"), 1, "gzip", lookup);
+		assertNotNull(variant);
+		assertEquals("gzip", variant.getEncoding());
+		assertArrayEquals(script, gunzip(variant.getContent()));
+		assertEquals("\"1-gzip\"", variant.getETag("\"1\""));
+
+		final int before = lookups.get();
+		assertTrue(variant == cache.find("/app.js", url("/app.js"), 1, "gzip", lookup));
+		assertEquals(before, lookups.get());
+
+		// bundle updated
+		assertTrue(variant != cache.find("/app.js", url("/app.js"), 2, "gzip", lookup));
+	}
+
+	@Test
+	public void changedFileIsCompressedAgain() throws IOException {
+		final CompressedResourceCache cache = new CompressedResourceCache(1024 * 1024, 1024 * 1024);
+		final File file = new File(folder.getRoot(), "app.js");
+		final CompressedResourceCache.Variant variant = cache.find("/app.js", url("/app.js"), 1, "gzip", lookup);
+		assertTrue(variant == cache.find("/app.js", url("/app.js"), 1, "gzip", lookup));
+
+		final byte[] changed = Arrays.copyOf(script, script.length + 10);
+		Arrays.fill(changed, script.length, changed.length, (byte) ' ');
+		Files.write(file.toPath(), changed);
+		final CompressedResourceCache.Variant recompressed = cache.find("/app.js", url("/app.js"), 1, "gzip", lookup);
+		assertArrayEquals(changed, gunzip(recompressed.getContent()));
+	}
+
+	@Test
+	public void notModifiedForMatchingETag() throws IOException {
+		final HttpServletRequest request = createMock(HttpServletRequest.class);
+		final HttpServletResponse response = createMock(HttpServletResponse.class);
+		expect(request.getHeader(CompressedResourceCache.IF_MATCH)).andReturn(null);
+		expect(request.getDateHeader(CompressedResourceCache.IF_UNMODIFIED_SINCE)).andReturn(-1L);
+		expect(request.getHeader(CompressedResourceCache.IF_NONE_MATCH)).andReturn("\"other\", \"1-gzip\"");
+		response.setHeader(CompressedResourceCache.ETAG, "\"1-gzip\"");
+		response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		replay(request, response);
+
+		assertTrue(CompressedResourceCache.checkPreconditions(request, response, "\"1-gzip\"", 1000L));
+		verify(response);
+	}
+
+	@Test
+	public void notModifiedSince() throws IOException {
+		final HttpServletRequest request = createMock(HttpServletRequest.class);
+		final HttpServletResponse response = createMock(HttpServletResponse.class);
+		expect(request.getHeader(CompressedResourceCache.IF_MATCH)).andReturn(null);
+		expect(request.getDateHeader(CompressedResourceCache.IF_UNMODIFIED_SINCE)).andReturn(-1L);
+		expect(request.getHeader(CompressedResourceCache.IF_NONE_MATCH)).andReturn(null);
+		expect(request.getDateHeader(CompressedResourceCache.IF_MODIFIED_SINCE)).andReturn(5000L);
+		response.setHeader(CompressedResourceCache.ETAG, "\"1-gzip\"");
+		response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		replay(request, response);
+
+		assertTrue(CompressedResourceCache.checkPreconditions(request, response, "\"1-gzip\"", 4500L));
+		verify(response);
+	}
+
+	@Test
+	public void modifiedSince() throws IOException {
+		final HttpServletRequest request = createMock(HttpServletRequest.class);
+		final HttpServletResponse response = createMock(HttpServletResponse.class);
+		expect(request.getHeader(CompressedResourceCache.IF_MATCH)).andReturn(null);
+		expect(request.getDateHeader(CompressedResourceCache.IF_UNMODIFIED_SINCE)).andReturn(-1L);
+		expect(request.getHeader(CompressedResourceCache.IF_NONE_MATCH)).andReturn(null);
+		expect(request.getDateHeader(CompressedResourceCache.IF_MODIFIED_SINCE)).andReturn(5000L);
+		replay(request, response);
+
+		assertFalse(CompressedResourceCache.checkPreconditions(request, response, "\"1-gzip\"", 7000L));
+		verify(response);
+	}
+
+	@Test
+	public void precompressedSiblingIsPreferred() throws IOException {
+		final byte[] brotli = new byte[] { 1, 2, 3 };
+		Files.write(new File(folder.getRoot(), "app.js.br").toPath(), brotli);
+		final CompressedResourceCache cache = new CompressedResourceCache(1024 * 1024, 1024 * 1024);
+
+		final CompressedResourceCache.Variant variant = cache.find("/app.js", url("/app.js"), 1, "gzip, br", lookup);
+		assertEquals("br", variant.getEncoding());
+		assertArrayEquals(brotli, variant.getContent());
+		assertEquals("gzip", cache.find("/app.js", url("/app.js"), 1, "gzip", lookup).getEncoding());
+	}
+
+	@Test
+	public void noBrotliWithoutSibling() {
+		final CompressedResourceCache cache = new CompressedResourceCache(1024 * 1024, 1024 * 1024);
+		assertNull(cache.find("/app.js", url("/app.js"), 1, "br", lookup));
+		assertNull(cache.find("/missing.js", url("/missing.js"), 1, "gzip", lookup));
+	}
+
+	@Test
+	public void largeResourcesAreNotCompressed() {
+		final CompressedResourceCache cache = new CompressedResourceCache(script.length - 1, 1024 * 1024);
+		assertNull(cache.find("/app.js", url("/app.js"), 1, "gzip", lookup));
+	}
+
+	private URL url(final String path) {
+		try {
+			return new File(folder.getRoot(), path).toURI().toURL();
+		} catch (MalformedURLException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] gunzip(final byte[] content) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+			final byte[] buffer = new byte[1024];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		}
+		return out.toByteArray();
+	}
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.util;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.service.http.HttpContext;
+
+public class HttpContextResourcesTest {
+
+	private static final URLStreamHandler HANDLER = new URLStreamHandler() {
+		@Override
+		protected URLConnection openConnection(URL u) throws IOException {
+			throw new IOException("not supported");
+		}
+	};
+
+	private final List<String> lookups = new ArrayList<>();
+
+	private long lastModified = 1;
+
+	private final Bundle bundle = createMock(Bundle.class);
+
+	private final HttpContext httpContext = new HttpContext() {
+		@Override
+		public boolean handleSecurity(HttpServletRequest request, HttpServletResponse response) {
+			return true;
+		}
+
+		@Override
+		public URL getResource(String name) {
+			lookups.add(name);
+			try {
+				if (name.startsWith("/bundle")) {
+					return new URL("bundle", "1.0", 1, name, HANDLER);
+				}
+				if (name.startsWith("/file")) {
+					return new URL("file", null, name);
+				}
+			} catch (MalformedURLException e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		}
+
+		@Override
+		public String getMimeType(String name) {
+			return null;
+		}
+	};
+
+	@Before
+	public void setUp() {
+		expect(bundle.getLastModified()).andAnswer(() -> lastModified).anyTimes();
+		replay(bundle);
+	}
+
+	@Test
+	public void hasScheme() {
+		assertTrue(HttpContextResources.hasScheme("http://localhost/index.html"));
+		assertTrue(HttpContextResources.hasScheme("jar:file:/a.jar!/b"));
+		assertFalse(HttpContextResources.hasScheme("/index.html"));
+		assertFalse(HttpContextResources.hasScheme("index.html"));
+		assertFalse(HttpContextResources.hasScheme("/a:b"));
+		assertFalse(HttpContextResources.hasScheme("1a:b"));
+		assertFalse(HttpContextResources.hasScheme(""));
+	}
+
+	@Test
+	public void returnsUrlsAsSuch() {
+		final HttpContextResources resources = new HttpContextResources(httpContext, null, bundle);
+		assertEquals("http://localhost/x", resources.getResource("http://localhost/x").toString());
+		// unknown protocol, looked up as a path
+		assertNull(resources.getResource("foo:bar"));
+		assertEquals(1, lookups.size());
+	}
+
+	@Test
+	public void cachesBundleResourcesOnly() {
+		final HttpContextResources resources = new HttpContextResources(httpContext, null, bundle);
+		final URL url = resources.getResource("/bundle/a.css");
+		assertEquals(url, resources.getResource("/bundle/a.css"));
+		resources.getResource("/file/a.css");
+		resources.getResource("/file/a.css");
+		assertEquals(3, lookups.size());
+	}
+
+	@Test
+	public void doesNotCacheMisses() {
+		final HttpContextResources resources = new HttpContextResources(httpContext, null, bundle);
+		assertNull(resources.getResource("/missing.css"));
+		assertNull(resources.getResource("/missing.css"));
+		assertEquals(2, lookups.size());
+	}
+
+	@Test
+	public void looksUpAgainOnceBundleIsUpdated() {
+		final HttpContextResources resources = new HttpContextResources(httpContext, null, bundle);
+		resources.getResource("/bundle/a.css");
+		resources.getResource("/bundle/a.css");
+		lastModified = 2;
+		resources.getResource("/bundle/a.css");
+		assertEquals(2, lookups.size());
+	}
+
+	@Test
+	public void doesNotCacheForCachingHttpContext() {
+		final CachingHttpContext cachingContext = new CachingHttpContext() {
+			@Override
+			public boolean handleSecurity(HttpServletRequest request, HttpServletResponse response) {
+				return true;
+			}
+
+			@Override
+			public URL getResource(String name) {
+				return httpContext.getResource(name);
+			}
+
+			@Override
+			public String getMimeType(String name) {
+				return null;
+			}
+		};
+		final HttpContextResources resources = new HttpContextResources(cachingContext, null, bundle);
+		resources.getResource("/bundle/a.css");
+		resources.getResource("/bundle/a.css");
+		assertEquals(2, lookups.size());
+	}
+
+	@Test
+	public void stripsTrailingSlash() {
+		new HttpContextResources(httpContext, null, bundle).getResource("/dir/");
+		new HttpContextResources(httpContext, null, bundle, false).getResource("/dir/");
+		assertEquals("/dir", lookups.get(0));
+		assertEquals("/dir/", lookups.get(1));
+	}
+
+}
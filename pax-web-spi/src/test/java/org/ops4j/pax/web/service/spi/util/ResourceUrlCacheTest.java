@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class ResourceUrlCacheTest {
+
+	private final AtomicInteger lookups = new AtomicInteger();
+	private final ResourceUrlCache.Lookup lookup = name -> {
+		lookups.incrementAndGet();
+		if (name.startsWith("missing")) {
+			return null;
+		}
+		try {
+			return new URL("file:/" + name);
+		} catch (MalformedURLException e) {
+			throw new IllegalStateException(e);
+		}
+	};
+
+	@Test
+	public void cachesHitsUntilRevisionChanges() {
+		final ResourceUrlCache cache = new ResourceUrlCache();
+
+		final URL url = cache.getResource("index.html", 1, lookup);
+		assertEquals(url, cache.getResource("index.html", 1, lookup));
+		assertEquals(1, lookups.get());
+
+		assertEquals(url, cache.getResource("index.html", 2, lookup));
+		assertEquals(2, lookups.get());
+	}
+
+	@Test
+	public void expiresMisses() {
+		final AtomicLong nanoTime = new AtomicLong(Long.MAX_VALUE - TimeUnit.MILLISECONDS.toNanos(30));
+		final ResourceUrlCache cache = new ResourceUrlCache(16, 50, nanoTime::get);
+
+		assertNull(cache.getResource("missing.html", 1, lookup));
+		nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(49));
+		assertNull(cache.getResource("missing.html", 1, lookup));
+		assertEquals(1, lookups.get());
+
+		// expires across the overflow of the nano time as well
+		nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(2));
+		assertNull(cache.getResource("missing.html", 1, lookup));
+		assertEquals(2, lookups.get());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		final ResourceUrlCache cache = new ResourceUrlCache(2, 1000);
+
+		cache.getResource("a", 1, lookup);
+		cache.getResource("b", 1, lookup);
+		cache.getResource("a", 1, lookup);
+		cache.getResource("missing", 1, lookup);
+		assertEquals(2, cache.size());
+		assertEquals(3, lookups.get());
+
+		cache.getResource("a", 1, lookup);
+		assertEquals(3, lookups.get());
+		cache.getResource("b", 1, lookup);
+		assertEquals(4, lookups.get());
+	}
+
+}
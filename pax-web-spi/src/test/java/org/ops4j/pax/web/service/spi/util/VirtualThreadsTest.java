@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.spi.util;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.ops4j.pax.web.service.spi.Configuration;
+
+public class VirtualThreadsTest {
+
+	@Test
+	public void noExecutorUnlessEnabled() {
+		assertNull(VirtualThreads.newExecutor(configuration(null), "test-"));
+		assertNull(VirtualThreads.newExecutor(configuration(false), "test-"));
+	}
+
+	/**
+	 * Pooled threads are kept on a Java without virtual threads, otherwise
+	 * each task runs on a new named virtual thread until the executor is shut
+	 * down.
+	 */
+	@Test
+	public void enabledExecutorRunsTasksOnVirtualThreads() throws Exception {
+		ExecutorService executor = VirtualThreads.newExecutor(configuration(true), "test-");
+		if (!virtualThreadsAvailable()) {
+			assertNull(executor);
+			return;
+		}
+		assertNotNull(executor);
+		Future<String> name = executor.submit(() -> {
+			assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+			return Thread.currentThread().getName();
+		});
+		assertEquals("test-0", name.get(10, TimeUnit.SECONDS));
+
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	private static Configuration configuration(Boolean useVirtualThreads) {
+		Configuration configuration = createMock(Configuration.class);
+		expect(configuration.useVirtualThreads()).andReturn(useVirtualThreads).anyTimes();
+		replay(configuration);
+		return configuration;
+	}
+
+	private static boolean virtualThreadsAvailable() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+}
@@ -24,6 +24,7 @@ import javax.servlet.Servlet;
 
 import org.ops4j.pax.web.service.spi.Configuration;
 import org.ops4j.pax.web.service.spi.LifeCycle;
+import org.ops4j.pax.web.service.spi.metrics.WebMetrics;
 import org.ops4j.pax.web.service.spi.model.ContainerInitializerModel;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
 import org.ops4j.pax.web.service.spi.model.ErrorPageModel;
@@ -82,11 +83,22 @@ abstract class AbstractServerState implements ServerState {
 		return result.toString();
 	}
 
+	@Override
+	public boolean reconfigure(Configuration configuration) {
+		// only a running server can be changed in place
+		return false;
+	}
+
 	@Override
 	public Configuration getConfiguration() {
 		return throwIllegalState();
 	}
 
+	@Override
+	public WebMetrics getMetrics() {
+		return null;
+	}
+
 	@Override
 	public void removeContext(HttpContext httpContext) {
 		throwIllegalState();
@@ -102,6 +114,11 @@ abstract class AbstractServerState implements ServerState {
 		throwIllegalState();
 	}
 
+	@Override
+	public void remapServlet(ServletModel registered, ServletModel model) {
+		throwIllegalState();
+	}
+
 	@Override
 	public void addEventListener(EventListenerModel eventListenerModel) {
 		throwIllegalState();
@@ -122,6 +139,11 @@ abstract class AbstractServerState implements ServerState {
 		throwIllegalState();
 	}
 
+	@Override
+	public void remapFilter(FilterModel registered, FilterModel filterModel) {
+		throwIllegalState();
+	}
+
 	@Override
 	public void addErrorPage(ErrorPageModel model) {
 		throwIllegalState();
@@ -25,6 +25,7 @@ import javax.servlet.Servlet;
 
 import org.ops4j.pax.web.service.spi.Configuration;
 import org.ops4j.pax.web.service.spi.LifeCycle;
+import org.ops4j.pax.web.service.spi.metrics.WebMetrics;
 import org.ops4j.pax.web.service.spi.model.ContainerInitializerModel;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
 import org.ops4j.pax.web.service.spi.model.ErrorPageModel;
@@ -33,6 +34,7 @@ import org.ops4j.pax.web.service.spi.model.FilterModel;
 import org.ops4j.pax.web.service.spi.model.SecurityConstraintMappingModel;
 import org.ops4j.pax.web.service.spi.model.ServletModel;
 import org.ops4j.pax.web.service.spi.model.WelcomeFileModel;
+import org.ops4j.pax.web.service.spi.util.CompressedResourceCache;
 import org.osgi.service.http.HttpContext;
 
 /**
@@ -53,7 +55,8 @@ class ActiveServerState extends AbstractServerState implements ServerState {
 	@Override
 	public Servlet createResourceServlet(ContextModel contextModel,
 			String alias, String name) {
-		return serverWrapper.createResourceServlet(contextModel, alias, name);
+		return serverWrapper.createResourceServlet(contextModel, alias, name,
+				CompressedResourceCache.create(getConfiguration()));
 	}
 
 	@Override
@@ -99,6 +102,15 @@ class ActiveServerState extends AbstractServerState implements ServerState {
 		return stop().configure(configuration).start();
 	}
 
+	@Override
+	public boolean reconfigure(Configuration configuration) {
+		if (!serverWrapper.reconfigure(getConfiguration(), configuration)) {
+			return false;
+		}
+		initializedState.configure(configuration);
+		return true;
+	}
+
 	@Override
 	public States getState() {
 		return ACTIVE;
@@ -109,6 +121,11 @@ class ActiveServerState extends AbstractServerState implements ServerState {
 		return initializedState.getConfiguration();
 	}
 
+	@Override
+	public WebMetrics getMetrics() {
+		return initializedState.getMetrics();
+	}
+
 	@Override
 	public void addServlet(ServletModel model) {
 		serverWrapper.addServlet(model);
@@ -119,6 +136,11 @@ class ActiveServerState extends AbstractServerState implements ServerState {
 		serverWrapper.removeServlet(model);
 	}
 
+	@Override
+	public void remapServlet(ServletModel registered, ServletModel model) {
+		serverWrapper.remapServlet(registered, model);
+	}
+
 	@Override
 	public void removeContext(HttpContext httpContext) {
 		serverWrapper.removeContext(httpContext);
@@ -144,6 +166,11 @@ class ActiveServerState extends AbstractServerState implements ServerState {
 		serverWrapper.removeFilter(filterModel);
 	}
 
+	@Override
+	public void remapFilter(FilterModel registered, FilterModel filterModel) {
+		serverWrapper.remapFilter(registered, filterModel);
+	}
+
 	@Override
 	public void addEventListener(EventListenerModel eventListenerModel) {
 		serverWrapper.addEventListener(eventListenerModel);
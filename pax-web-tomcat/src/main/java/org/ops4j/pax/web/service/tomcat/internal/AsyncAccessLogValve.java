@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.tomcat.internal;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+
+import org.apache.catalina.AccessLog;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+import org.ops4j.pax.web.service.spi.util.AsyncRequestLog;
+
+/**
+ * Passes the requests handled by Tomcat to the {@link AsyncRequestLog}
+ * instead of formatting and writing them on the request thread like the
+ * {@link org.apache.catalina.valves.AccessLogValve}.
+ */
+public class AsyncAccessLogValve extends ValveBase implements AccessLog {
+
+	private final AsyncRequestLog requestLog;
+
+	private boolean requestAttributesEnabled;
+
+	public AsyncAccessLogValve(AsyncRequestLog requestLog) {
+		super(true);
+		this.requestLog = requestLog;
+	}
+
+	@Override
+	public void invoke(Request request, Response response) throws IOException,
+			ServletException {
+		getNext().invoke(request, response);
+	}
+
+	@Override
+	public void log(Request request, Response response, long time) {
+		String uri = request.getRequestURI();
+		if (request.getQueryString() != null) {
+			uri = uri + "?" + request.getQueryString();
+		}
+		requestLog.log(request.getCoyoteRequest().getStartTime(),
+				request.getServerName(), request.getRemoteAddr(),
+				request.getRemoteUser(), request.getMethod(), uri,
+				request.getProtocol(), response.getStatus(),
+				response.getBytesWritten(false), request.getHeader("Referer"),
+				request.getHeader("User-Agent"),
+				requestLog.isLogCookies() ? cookies(request.getCookies()) : null,
+				time);
+	}
+
+	@Override
+	public void setRequestAttributesEnabled(boolean requestAttributesEnabled) {
+		this.requestAttributesEnabled = requestAttributesEnabled;
+	}
+
+	@Override
+	public boolean getRequestAttributesEnabled() {
+		return requestAttributesEnabled;
+	}
+
+	@Override
+	protected synchronized void startInternal() throws LifecycleException {
+		requestLog.start();
+		super.startInternal();
+	}
+
+	@Override
+	protected synchronized void stopInternal() throws LifecycleException {
+		super.stopInternal();
+		requestLog.stop();
+	}
+
+	private static String cookies(Cookie[] cookies) {
+		if (cookies == null || cookies.length == 0) {
+			return null;
+		}
+		StringBuilder builder = new StringBuilder();
+		for (Cookie cookie : cookies) {
+			if (builder.length() > 0) {
+				builder.append(';');
+			}
+			builder.append(cookie.getName()).append('=')
+					.append(cookie.getValue());
+		}
+		return builder.toString();
+	}
+
+}
@@ -20,19 +20,23 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.AccessControlContext;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import javax.servlet.ServletContainerInitializer;
 
-import org.apache.catalina.AccessLog;
 import org.apache.catalina.Container;
 import org.apache.catalina.Context;
 import org.apache.catalina.Executor;
 import org.apache.catalina.Host;
+import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleListener;
 import org.apache.catalina.Server;
 import org.apache.catalina.Service;
@@ -42,12 +46,18 @@ import org.apache.catalina.core.ContainerBase;
 import org.apache.catalina.core.StandardHost;
 import org.apache.catalina.startup.Catalina;
 import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.util.ServerInfo;
 import org.apache.catalina.valves.AccessLogValve;
+import org.apache.coyote.AbstractProtocol;
 import org.apache.coyote.http11.Http11NioProtocol;
 import org.apache.coyote.http11.Http11Protocol;
 import org.apache.tomcat.util.digester.Digester;
 import org.ops4j.pax.web.service.spi.Configuration;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
+import org.ops4j.pax.web.service.spi.util.AsyncRequestLog;
+import org.ops4j.pax.web.service.spi.util.ConfigurationChanges;
+import org.ops4j.pax.web.service.spi.util.VirtualThreads;
+import org.osgi.framework.Bundle;
 import org.osgi.service.http.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -160,6 +170,18 @@ public class EmbeddedTomcat extends Tomcat {
 
 	private String configurationWorkerName;
 
+	/**
+	 * Connectors created from the configuration, as opposed to the ones
+	 * declared in the tomcat configuration file.
+	 */
+	private final Set<Connector> managedConnectors = new HashSet<Connector>();
+
+	/**
+	 * Executor shared by all connectors when requests run on virtual threads,
+	 * null for the connectors' own thread pools.
+	 */
+	private ExecutorService requestExecutor;
+
 	private EmbeddedTomcat() {
 	}
 
@@ -265,8 +287,6 @@ public class EmbeddedTomcat extends Tomcat {
 
 	private void mergeConfiguration(Configuration configuration) {
 		LOG.debug("Start merging configuration");
-		Connector httpConnector = null;
-		Connector httpSecureConnector = null;
 		String[] addresses = configuration.getListeningAddresses();
 		if (addresses == null || addresses.length == 0) {
 			addresses = new String[] { null };
@@ -277,12 +297,8 @@ public class EmbeddedTomcat extends Tomcat {
 
 		// Fix for PAXWEB-193
 		configurationDirectory = configuration.getConfigurationDir(); 
-		configurationSessionTimeout = configuration.getSessionTimeout();
-		configurationSessionCookie = configuration.getSessionCookie();
-		configurationSessionUrl = configuration.getSessionUrl();
-		configurationSessionCookieHttpOnly = configuration
-				.getSessionCookieHttpOnly();
-		configurationWorkerName = configuration.getWorkerName();
+		configureSessionDefaults(configuration);
+		requestExecutor = VirtualThreads.newExecutor(configuration, "tomcat-request-");
 
 		for (int i = 0; i < addresses.length; i++) {
 			LOG.debug("Loop {} of {}", i, addresses.length);
@@ -311,26 +327,90 @@ public class EmbeddedTomcat extends Tomcat {
 			}
 		}
 
-		// NCSA Logger --> AccessLogValve
-		if (configuration.isLogNCSAFormatEnabled()) {
-			AccessLog ncsaLogger = new AccessLogValve();
-			boolean modifiedValve = false;
+		// NCSA Logger --> AsyncAccessLogValve
+		configureAccessLog(configuration);
+
+		configureConnectors(configuration);
+	}
+
+	/**
+	 * Applies a changed configuration to the running server. Thread pool,
+	 * connector, access log and session default changes are applied in
+	 * place, session defaults only to the contexts created from now on.
+	 * 
+	 * @return false if the listening addresses or the connector
+	 *         implementation changed, which needs a restart
+	 */
+	boolean reconfigure(Configuration previous, Configuration configuration) {
+		if (!Arrays.equals(previous.getListeningAddresses(),
+				configuration.getListeningAddresses())
+				|| !Objects.equals(previous.useNIO(), configuration.useNIO())) {
+			return false;
+		}
+		if (ConfigurationChanges.connectors(previous, configuration)) {
+			// drop the connectors created for the former ports, the others
+			// are found again by port
+			for (Connector connector : getService().findConnectors()) {
+				boolean enabled = connector.getSecure() ? configuration
+						.isHttpSecureEnabled() : configuration.isHttpEnabled();
+				Integer port = connector.getSecure() ? configuration
+						.getHttpSecurePort() : configuration.getHttpPort();
+				if (managedConnectors.contains(connector)
+						&& (!enabled || port == null || port != connector.getPort())) {
+					LOG.debug("Removing connector {}", connector);
+					managedConnectors.remove(connector);
+					getService().removeConnector(connector);
+				}
+			}
+			configureConnectors(configuration);
+		}
+		if (ConfigurationChanges.threadPool(previous, configuration)) {
+			for (Connector connector : getService().findConnectors()) {
+				configureThreads(configuration, connector);
+			}
+		}
+		if (ConfigurationChanges.requestLog(previous, configuration)) {
 			for (Valve valve : getHost().getPipeline().getValves()) {
-				if (valve instanceof AccessLogValve) {
-					modifiedValve = true;
-					ncsaLogger = (AccessLog) valve;
+				if (valve instanceof AsyncAccessLogValve) {
+					getHost().getPipeline().removeValve(valve);
 				}
 			}
+			configureAccessLog(configuration);
+		}
+		configureSessionDefaults(configuration);
+		return true;
+	}
+
+	private void configureSessionDefaults(Configuration configuration) {
+		configurationSessionTimeout = configuration.getSessionTimeout();
+		configurationSessionCookie = configuration.getSessionCookie();
+		configurationSessionUrl = configuration.getSessionUrl();
+		configurationSessionCookieHttpOnly = configuration
+				.getSessionCookieHttpOnly();
+		configurationWorkerName = configuration.getWorkerName();
+	}
 
-			((AccessLogValve) ncsaLogger).setPattern("common");
-			((AccessLogValve) ncsaLogger).setDirectory(configuration
-					.getLogNCSADirectory());
-			((AccessLogValve) ncsaLogger).setSuffix(".log"); // ncsaLogge
-			if (!modifiedValve) {
-				getHost().getPipeline().addValve((Valve) ncsaLogger);
+	/**
+	 * Replaces the access log valves of the host, including those of the
+	 * tomcat configuration file, by an {@link AsyncAccessLogValve} if NCSA
+	 * logging is enabled.
+	 */
+	private void configureAccessLog(Configuration configuration) {
+		if (configuration.isLogNCSAFormatEnabled()) {
+			for (Valve valve : getHost().getPipeline().getValves()) {
+				if (valve instanceof AccessLogValve) {
+					LOG.debug("Replacing access log valve {}", valve);
+					getHost().getPipeline().removeValve(valve);
+				}
 			}
+			getHost().getPipeline().addValve(
+					new AsyncAccessLogValve(new AsyncRequestLog(configuration)));
 		}
+	}
 
+	private void configureConnectors(Configuration configuration) {
+		Connector httpConnector = null;
+		Connector httpSecureConnector = null;
 		Integer httpPort = configuration.getHttpPort();
 		Boolean useNIO = configuration.useNIO();
 		Integer httpSecurePort = configuration.getHttpSecurePort();
@@ -381,6 +461,7 @@ public class EmbeddedTomcat extends Tomcat {
 				if (httpConnector == null) {
 					httpConnector = connector;
 				}
+				managedConnectors.add(connector);
 				service.addConnector(connector);
 			}
 		} else {
@@ -393,6 +474,7 @@ public class EmbeddedTomcat extends Tomcat {
 					if ((connector instanceof Connector)
 							&& !connector.getSecure()) {
 						LOG.debug("Removing connector {}", connector);
+						managedConnectors.remove(connector);
 						getService().removeConnector(connector);
 					}
 				}
@@ -439,7 +521,8 @@ public class EmbeddedTomcat extends Tomcat {
 					if (httpSecureConnector == null) {
 						httpSecureConnector = secureConnector;
 					}
-					getService().addConnector(httpSecureConnector);
+					managedConnectors.add(secureConnector);
+					getService().addConnector(secureConnector);
 				} else {
 					LOG.warn("SSL password and SSL keystore password must be set in order to enable SSL.");
 					LOG.warn("SSL connector will not be started");
@@ -452,6 +535,7 @@ public class EmbeddedTomcat extends Tomcat {
 			if (connectors != null) {
 				for (Connector connector : connectors) {
 					if (connector.getSecure()) {
+						managedConnectors.remove(connector);
 						getService().removeConnector(connector);
 					}
 				}
@@ -493,10 +577,8 @@ public class EmbeddedTomcat extends Tomcat {
 					.getName());
 		}
 		
-		if (configuration.getServerMaxThreads() != null)
-			secureConnector.setAttribute("maxThreads", configuration.getServerMaxThreads());
-		if (configuration.getServerMinThreads() != null)
-			secureConnector.setAttribute("minSpareThreads", configuration.getServerMinThreads());
+		configureThreads(configuration, secureConnector);
+		configureHttp2(configuration, secureConnector);
 	}
 
 	/**
@@ -521,15 +603,95 @@ public class EmbeddedTomcat extends Tomcat {
 					.getName());
 		}
 		
-		if (configuration.getServerMaxThreads() != null)
-			connector.setAttribute("maxThreads", configuration.getServerMaxThreads());
-		if (configuration.getServerMinThreads() != null)
-			connector.setAttribute("minSpareThreads", configuration.getServerMinThreads());
+		configureThreads(configuration, connector);
+		configureHttp2(configuration, connector);
 		
 		// connector
 		LOG.debug("configuration done: {}", connector);
 	}
 
+	/**
+	 * Sizes the thread pool of the connector, which also resizes the pool of
+	 * a started connector.
+	 */
+	private void configureThreads(Configuration configuration,
+			Connector connector) {
+		if (requestExecutor != null
+				&& connector.getProtocolHandler() instanceof AbstractProtocol) {
+			((AbstractProtocol<?>) connector.getProtocolHandler())
+					.setExecutor(requestExecutor);
+			return;
+		}
+		if (configuration.getServerMaxThreads() != null) {
+			connector.setAttribute("maxThreads", configuration.getServerMaxThreads());
+		}
+		if (configuration.getServerMinThreads() != null) {
+			connector.setAttribute("minSpareThreads", configuration.getServerMinThreads());
+		}
+	}
+
+	/**
+	 * Adds the HTTP/2 upgrade protocol to the connector, which negotiates h2
+	 * with ALPN on secure connectors and accepts h2c upgrades on plain ones.
+	 * HTTP/2 is only available since Tomcat 8.5, Pax Web ships Tomcat 8.0.
+	 * Http2Protocol is looked up reflectively, and the connector stays
+	 * HTTP/1.1 only with older versions.
+	 */
+	private void configureHttp2(Configuration configuration,
+			Connector connector) {
+		if (!Boolean.TRUE.equals(configuration.isHttp2Enabled())) {
+			return;
+		}
+		final ClassLoader loader = Connector.class.getClassLoader();
+		try {
+			loader.loadClass("org.apache.coyote.http2.Http2Protocol");
+		} catch (ClassNotFoundException e) {
+			LOG.warn("HTTP/2 requires Tomcat 8.5 or later, Tomcat {} is deployed, connector {} uses HTTP/1.1 only",
+					ServerInfo.getServerNumber(), connector);
+			return;
+		}
+		try {
+			final Class<?> upgradeProtocolClass = loader
+					.loadClass("org.apache.coyote.UpgradeProtocol");
+			final Class<?> http2ProtocolClass = loader
+					.loadClass("org.apache.coyote.http2.Http2Protocol");
+			final Object[] upgradeProtocols = (Object[]) Connector.class
+					.getMethod("findUpgradeProtocols").invoke(connector);
+			for (Object upgradeProtocol : upgradeProtocols) {
+				if (http2ProtocolClass.isInstance(upgradeProtocol)) {
+					return;
+				}
+			}
+			final Object http2Protocol = http2ProtocolClass.newInstance();
+			if (configuration.getHttp2MaxConcurrentStreams() != null) {
+				http2ProtocolClass.getMethod("setMaxConcurrentStreams", long.class)
+						.invoke(http2Protocol, configuration.getHttp2MaxConcurrentStreams().longValue());
+			}
+			if (configuration.getHttp2InitialWindowSize() != null) {
+				http2ProtocolClass.getMethod("setInitialWindowSize", int.class)
+						.invoke(http2Protocol, configuration.getHttp2InitialWindowSize());
+			}
+			Connector.class.getMethod("addUpgradeProtocol", upgradeProtocolClass)
+					.invoke(connector, http2Protocol);
+			LOG.info("HTTP/2 enabled on connector {}", connector);
+		} catch (ReflectiveOperationException e) {
+			LOG.warn("Could not enable HTTP/2 with Tomcat " + ServerInfo.getServerNumber() + ", connector "
+					+ connector + " uses HTTP/1.1 only", e);
+		}
+	}
+
+	@Override
+	public void stop() throws LifecycleException {
+		try {
+			super.stop();
+		} finally {
+			// not owned by the connectors, so they do not shut it down
+			if (requestExecutor != null) {
+				requestExecutor.shutdown();
+			}
+		}
+	}
+
 	private void initBaseDir(Configuration configuration) {
 		setBaseDir(configuration.getTemporaryDirectory().getAbsolutePath());
 	}
@@ -558,6 +720,7 @@ public class EmbeddedTomcat extends Tomcat {
 			String contextName,
 			HttpContext httpContext,
 			AccessControlContext accessControllerContext,
+			Bundle bundle,
 			Map<ServletContainerInitializer, Set<Class<?>>> containerInitializers,
 			URL jettyWebXmlURL, List<String> virtualHosts,
 			List<String> connectors, String basedir) {
@@ -581,7 +744,7 @@ public class EmbeddedTomcat extends Tomcat {
 		// configurationWorkerName //TODO: missing
 
 		// new OSGi methods
-		((HttpServiceContext) ctx).setHttpContext(httpContext);
+		((HttpServiceContext) ctx).setHttpContext(httpContext, bundle);
 		// TODO: what about the AccessControlContext?
 		// TODO: the virtual host section below
 		// TODO: what about the VirtualHosts?
@@ -21,13 +21,14 @@ package org.ops4j.pax.web.service.tomcat.internal;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.servlet.ServletContext;
@@ -36,7 +37,10 @@ import org.apache.catalina.Globals;
 import org.apache.catalina.Host;
 import org.apache.catalina.core.ApplicationContext;
 import org.apache.catalina.core.StandardContext;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
 import org.ops4j.pax.web.service.WebContainerContext;
+import org.ops4j.pax.web.service.spi.util.HttpContextResources;
+import org.osgi.framework.Bundle;
 import org.osgi.service.http.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,49 +86,7 @@ public class HttpServiceContext extends StandardContext {
 
 		@Override
 		public URL getResource(final String path) {
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("getting resource: [" + path + "]");
-			}
-			URL resource = null;
-
-			// IMPROVEMENT start PAXWEB-314
-			try {
-				resource = new URL(path);
-				LOG.debug("resource: [" + path
-						+ "] is already a URL, returning");
-				return resource;
-			} catch (MalformedURLException e) {
-				// do nothing, simply log
-				LOG.debug("not a URL or invalid URL: [" + path
-						+ "], treating as a file path");
-			}
-			// IMPROVEMENT end PAXWEB-314
-
-			// FIX start PAXWEB-233
-			final String p;
-			if (path != null && path.endsWith("/") && path.length() > 1) {
-				p = path.substring(0, path.length() - 1);
-			} else {
-				p = path;
-			}
-			// FIX end
-
-			try {
-				resource = AccessController.doPrivileged(
-						new PrivilegedExceptionAction<URL>() {
-							@Override
-							public URL run() throws Exception {
-								return httpContext.getResource(p);
-							}
-						}, accessControllerContext);
-				if (LOG.isDebugEnabled()) {
-					LOG.debug("found resource: " + resource);
-				}
-			} catch (PrivilegedActionException e) {
-				LOG.warn("Unauthorized access: " + e.getMessage());
-			}
-			return resource;
-
+			return resources.getResource(path);
 		}
 
 		@Override
@@ -212,6 +174,17 @@ public class HttpServiceContext extends StandardContext {
 	 */
 	private final AccessControlContext accessControllerContext;
 
+	/**
+	 * Resources of the http context, as seen by the servlet context.
+	 */
+	private HttpContextResources resources;
+
+	/**
+	 * Filter maps requests are filtered with while the maps of a filter are
+	 * replaced, null otherwise.
+	 */
+	private volatile FilterMap[] pinnedFilterMaps;
+
 	/**
 	 * @param host
 	 * 
@@ -221,8 +194,9 @@ public class HttpServiceContext extends StandardContext {
 		this.accessControllerContext = accessControllerContext;
 	}
 
-	public void setHttpContext(HttpContext httpContext) {
+	public void setHttpContext(HttpContext httpContext, Bundle bundle) {
 		this.httpContext = httpContext;
+		this.resources = new HttpContextResources(httpContext, accessControllerContext, bundle);
 	}
 
 	@Override
@@ -236,4 +210,63 @@ public class HttpServiceContext extends StandardContext {
 		return super.getServletContext();
 	}
 
+	@Override
+	public FilterMap[] findFilterMaps() {
+		final FilterMap[] pinned = pinnedFilterMaps;
+		return pinned != null ? pinned : super.findFilterMaps();
+	}
+
+	/**
+	 * Replaces the maps of a filter with one map at the position of its first
+	 * map. Tomcat only adds and removes single maps, so the maps from the
+	 * first one of the filter on are added again in their order. Requests
+	 * are filtered with the previous maps until all of them are in place and
+	 * never skip the filters after the replaced one. The previous maps are
+	 * restored if a map is rejected.
+	 * 
+	 * @param filterName
+	 *            name of the filter
+	 * @param filterMap
+	 *            the new map of the filter
+	 */
+	public synchronized void replaceFilterMaps(final String filterName,
+			final FilterMap filterMap) {
+		final FilterMap[] filterMaps = super.findFilterMaps();
+		pinnedFilterMaps = filterMaps;
+		try {
+			int first = 0;
+			while (first < filterMaps.length
+					&& !filterMaps[first].getFilterName().equalsIgnoreCase(
+							filterName)) {
+				first++;
+			}
+			final List<FilterMap> replaced = new ArrayList<FilterMap>();
+			for (int i = first; i < filterMaps.length; i++) {
+				if (!filterMaps[i].getFilterName().equalsIgnoreCase(filterName)) {
+					replaced.add(filterMaps[i]);
+				} else if (i == first) {
+					replaced.add(filterMap);
+				}
+			}
+			for (int i = first; i < filterMaps.length; i++) {
+				removeFilterMap(filterMaps[i]);
+			}
+			try {
+				for (FilterMap map : replaced) {
+					addFilterMapBefore(map);
+				}
+			} catch (RuntimeException e) {
+				for (FilterMap map : super.findFilterMaps()) {
+					removeFilterMap(map);
+				}
+				for (FilterMap map : filterMaps) {
+					addFilterMapBefore(map);
+				}
+				throw e;
+			}
+		} finally {
+			pinnedFilterMaps = null;
+		}
+	}
+
 }
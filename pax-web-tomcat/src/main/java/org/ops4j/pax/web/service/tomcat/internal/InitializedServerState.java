@@ -21,6 +21,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 
 import org.ops4j.pax.web.service.spi.Configuration;
+import org.ops4j.pax.web.service.spi.metrics.WebMetrics;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
 
 /**
  * @author Romain Gilles
@@ -28,12 +30,18 @@ import org.ops4j.pax.web.service.spi.Configuration;
 class InitializedServerState extends InstalledServerState {
 	private Configuration configuration;
 	private final ServerFactory serverFactory;
+	/**
+	 * Kept across restarts of the server.
+	 */
+	private final WebMetricsRegistry metrics;
 
 	private InitializedServerState(ServerStateFactory serverStateFactory,
 			Configuration configuration, ServerFactory serverFactory) {
 		super(serverStateFactory);
 		this.configuration = configuration;
 		this.serverFactory = serverFactory;
+		this.metrics = Boolean.TRUE.equals(configuration.isMetricsEnabled())
+				? new WebMetricsRegistry() : null;
 	}
 
 	static InitializedServerState getInstance(
@@ -48,7 +56,7 @@ class InitializedServerState extends InstalledServerState {
 		// TODO create and start the server.
 		// based on org.apache.catalina.startup.Catalina and
 		// org.apache.catalina.startup.Tomcat code
-		ServerWrapper server = serverFactory.newServer(configuration);
+		ServerWrapper server = serverFactory.newServer(configuration, metrics);
 		server.start();
 		return getServerStateFactory().newActiveState(server, this);
 	}
@@ -92,4 +100,9 @@ class InitializedServerState extends InstalledServerState {
 		return configuration;
 	}
 
+	@Override
+	public WebMetrics getMetrics() {
+		return metrics;
+	}
+
 }
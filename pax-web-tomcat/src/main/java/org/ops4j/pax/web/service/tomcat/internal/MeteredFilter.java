@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.tomcat.internal;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.catalina.Context;
+import org.apache.tomcat.InstanceManager;
+import org.ops4j.pax.web.service.spi.metrics.RequestMetrics;
+import org.ops4j.pax.web.service.spi.metrics.TimedFilter;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
+
+/**
+ * Filter registered with Tomcat in place of a registered filter, measuring
+ * it with a {@link TimedFilter} between its initialization and destruction. A filter registered by class is created by the instance
+ * manager of the context on initialization, as Tomcat would do itself.
+ */
+class MeteredFilter implements Filter {
+
+	private final WebMetricsRegistry registry;
+
+	private final Context context;
+
+	private final String contextName;
+
+	private final String name;
+
+	private final Filter filter;
+
+	private final Class<? extends Filter> filterClass;
+
+	private Filter instance;
+
+	private RequestMetrics metrics;
+
+	private volatile TimedFilter timedFilter;
+
+	MeteredFilter(WebMetricsRegistry registry, Context context,
+			String contextName, String name, Filter filter,
+			Class<? extends Filter> filterClass) {
+		this.registry = registry;
+		this.context = context;
+		this.contextName = contextName;
+		this.name = name;
+		this.filter = filter;
+		this.filterClass = filterClass;
+	}
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		if (filter != null) {
+			instance = filter;
+		} else {
+			try {
+				instance = (Filter) getInstanceManager().newInstance(
+						filterClass);
+				//CHECKSTYLE:OFF
+			} catch (Exception e) {
+				throw new ServletException("Cannot create filter " + name, e);
+			}
+			//CHECKSTYLE:ON
+		}
+		instance.init(filterConfig);
+		metrics = registry.acquireFilterMetrics(contextName, name);
+		timedFilter = new TimedFilter(instance, metrics);
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response,
+			FilterChain chain) throws IOException, ServletException {
+		timedFilter.doFilter(request, response, chain);
+	}
+
+	@Override
+	public void destroy() {
+		try {
+			instance.destroy();
+			if (filter == null) {
+				getInstanceManager().destroyInstance(instance);
+			}
+			//CHECKSTYLE:OFF
+		} catch (Exception e) {
+			throw new IllegalStateException("Cannot destroy filter " + name, e);
+		} finally {
+			//CHECKSTYLE:ON
+			registry.release(metrics);
+			metrics = null;
+		}
+	}
+
+	private InstanceManager getInstanceManager() {
+		return context.getInstanceManager();
+	}
+
+	@Override
+	public String toString() {
+		return filter != null ? filter.toString() : filterClass.getName();
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.tomcat.internal;
+
+import java.io.IOException;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+import org.ops4j.pax.web.service.spi.metrics.RequestMetrics;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
+
+/**
+ * Measures the requests passing the pipeline of a context or of a servlet
+ * wrapper, the latter including the filters mapped to the servlet. The
+ * metrics are held while the valve is started.
+ */
+class MetricsValve extends ValveBase {
+
+	private final WebMetricsRegistry registry;
+
+	private final String contextName;
+
+	/**
+	 * Name of the measured servlet, null for the context.
+	 */
+	private final String servletName;
+
+	private volatile RequestMetrics metrics;
+
+	MetricsValve(WebMetricsRegistry registry, String contextName,
+			String servletName) {
+		super(true);
+		this.registry = registry;
+		this.contextName = contextName;
+		this.servletName = servletName;
+	}
+
+	@Override
+	public void invoke(Request request, Response response) throws IOException,
+			ServletException {
+		final RequestMetrics requestMetrics = metrics;
+		if (requestMetrics == null
+				|| request.getDispatcherType() != DispatcherType.REQUEST) {
+			getNext().invoke(request, response);
+			return;
+		}
+		final long start = requestMetrics.begin();
+		boolean failed = true;
+		try {
+			getNext().invoke(request, response);
+			failed = response.getStatus() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+		} finally {
+			requestMetrics.end(start, failed);
+		}
+	}
+
+	@Override
+	protected synchronized void startInternal() throws LifecycleException {
+		metrics = servletName == null ? registry
+				.acquireContextMetrics(contextName) : registry
+				.acquireServletMetrics(contextName, servletName);
+		super.startInternal();
+	}
+
+	@Override
+	protected synchronized void stopInternal() throws LifecycleException {
+		super.stopInternal();
+		registry.release(metrics);
+		metrics = null;
+	}
+
+}
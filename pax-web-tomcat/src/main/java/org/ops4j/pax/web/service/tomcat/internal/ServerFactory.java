@@ -17,10 +17,16 @@
 package org.ops4j.pax.web.service.tomcat.internal;
 
 import org.ops4j.pax.web.service.spi.Configuration;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
 
 /**
  * @author Romaim Gilles
  */
 interface ServerFactory {
-	ServerWrapper newServer(Configuration configuration);
+	/**
+	 * @param metrics
+	 *            registry of the request metrics, null if disabled
+	 */
+	ServerWrapper newServer(Configuration configuration,
+			WebMetricsRegistry metrics);
 }
@@ -19,6 +19,7 @@ import javax.servlet.Servlet;
 
 import org.ops4j.pax.web.service.spi.Configuration;
 import org.ops4j.pax.web.service.spi.LifeCycle;
+import org.ops4j.pax.web.service.spi.metrics.WebMetrics;
 import org.ops4j.pax.web.service.spi.model.ContainerInitializerModel;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
 import org.ops4j.pax.web.service.spi.model.ErrorPageModel;
@@ -43,14 +44,23 @@ interface ServerState {
 
 	ServerState configure(Configuration configuration);
 
+	boolean reconfigure(Configuration configuration);
+
 	Configuration getConfiguration();
 
+	/**
+	 * @return the request metrics, null if not configured or disabled
+	 */
+	WebMetrics getMetrics();
+
 	void removeContext(HttpContext httpContext);
 
 	void addServlet(ServletModel model);
 
 	void removeServlet(ServletModel model);
 
+	void remapServlet(ServletModel registered, ServletModel model);
+
 	void addEventListener(EventListenerModel eventListenerModel);
 
 	void removeEventListener(EventListenerModel eventListenerModel);
@@ -59,6 +69,8 @@ interface ServerState {
 
 	void removeFilter(FilterModel filterModel);
 
+	void remapFilter(FilterModel registered, FilterModel filterModel);
+
 	void addErrorPage(ErrorPageModel model);
 
 	void removeErrorPage(ErrorPageModel model);
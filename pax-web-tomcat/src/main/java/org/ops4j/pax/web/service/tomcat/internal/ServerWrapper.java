@@ -18,6 +18,7 @@ package org.ops4j.pax.web.service.tomcat.internal;
 
 import javax.servlet.Servlet;
 
+import org.ops4j.pax.web.service.spi.Configuration;
 import org.ops4j.pax.web.service.spi.LifeCycle;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
 import org.ops4j.pax.web.service.spi.model.ErrorPageModel;
@@ -26,6 +27,7 @@ import org.ops4j.pax.web.service.spi.model.FilterModel;
 import org.ops4j.pax.web.service.spi.model.SecurityConstraintMappingModel;
 import org.ops4j.pax.web.service.spi.model.ServletModel;
 import org.ops4j.pax.web.service.spi.model.WelcomeFileModel;
+import org.ops4j.pax.web.service.spi.util.CompressedResourceCache;
 import org.osgi.service.http.HttpContext;
 
 /**
@@ -37,10 +39,17 @@ public interface ServerWrapper {
 
 	void stop();
 
+	/**
+	 * @return false if the changes can only be applied by a restart
+	 */
+	boolean reconfigure(Configuration previous, Configuration configuration);
+
 	void addServlet(ServletModel model);
 
 	void removeServlet(ServletModel model);
 
+	void remapServlet(ServletModel registered, ServletModel model);
+
 	void removeContext(HttpContext httpContext);
 
 	void addErrorPage(ErrorPageModel model);
@@ -51,12 +60,14 @@ public interface ServerWrapper {
 
 	void removeFilter(FilterModel filterModel);
 
+	void remapFilter(FilterModel registered, FilterModel filterModel);
+
 	void addEventListener(EventListenerModel eventListenerModel);
 
 	void removeEventListener(EventListenerModel eventListenerModel);
 
 	Servlet createResourceServlet(ContextModel contextModel, String alias,
-			String name);
+			String name, CompressedResourceCache compression);
 
 	void addSecurityConstraintMapping(SecurityConstraintMappingModel secMapModel);
 
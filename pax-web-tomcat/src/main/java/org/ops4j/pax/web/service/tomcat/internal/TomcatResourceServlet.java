@@ -15,9 +15,12 @@
  */
  package org.ops4j.pax.web.service.tomcat.internal;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.regex.Matcher;
 
 import javax.servlet.RequestDispatcher;
@@ -30,7 +33,11 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.catalina.Globals;
 import org.apache.catalina.connector.ResponseFacade;
+import org.ops4j.pax.web.service.spi.util.ByteRanges;
+import org.ops4j.pax.web.service.spi.util.CompressedResourceCache;
+import org.osgi.framework.Bundle;
 import org.osgi.service.http.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,14 +71,49 @@ public class TomcatResourceServlet extends HttpServlet {
 	 */
 	protected int input = 2048;
 
+	/**
+	 * Minimum size of files served with sendfile, smaller ones are cheaper to
+	 * copy. Same default as the Tomcat DefaultServlet.
+	 */
+	protected int sendfileSize = 48 * 1024;
+
 	private final HttpContext httpContext;
 	private final String contextName;
 	private final String alias;
 	private final String name;
+	private final Bundle bundle;
+	private final CompressedResourceCache compression;
 
 	public TomcatResourceServlet(final HttpContext httpContext,
 			final String contextName, final String alias, final String name) {
+		this(httpContext, contextName, alias, name, null, null);
+	}
+
+	/**
+	 * Creates a resource servlet serving compressed variants of the
+	 * resources.
+	 * 
+	 * @param httpContext
+	 *            http context resources are looked up with
+	 * @param contextName
+	 *            name of the servlet context
+	 * @param alias
+	 *            registration alias
+	 * @param name
+	 *            resource name the alias is mapped to
+	 * @param bundle
+	 *            bundle providing the resources, its revision invalidates
+	 *            compressed variants
+	 * @param compression
+	 *            compressed variants or null to always serve resources
+	 *            uncompressed
+	 */
+	public TomcatResourceServlet(final HttpContext httpContext,
+			final String contextName, final String alias, final String name,
+			final Bundle bundle, final CompressedResourceCache compression) {
 		this.httpContext = httpContext;
+		this.bundle = bundle;
+		this.compression = compression;
 		this.contextName = "/" + contextName;
 		this.alias = alias;
 		if ("/".equals(name)) {
@@ -130,9 +172,14 @@ public class TomcatResourceServlet extends HttpServlet {
 			}
 			return;
 		}
+		File file = null;
 		if ("file".equalsIgnoreCase(url.getProtocol())) {
-			response.sendError(HttpServletResponse.SC_FORBIDDEN);
-			return;
+			file = toFile(url);
+			// no directory listings
+			if (file == null || !file.isFile()) {
+				response.sendError(HttpServletResponse.SC_FORBIDDEN);
+				return;
+			}
 		}
 
 		// For Performanceimprovements turn caching on
@@ -184,6 +231,63 @@ public class TomcatResourceServlet extends HttpServlet {
 			response.setContentType(mimeType);
 		}
 
+		if (request.getHeader(ByteRanges.RANGE) != null
+				&& serveRange(request, response, url, file, mimeType)) {
+			return;
+		}
+
+		if (compression != null && mapping != null
+				&& CompressedResourceCache.isCompressible(mimeType)) {
+			response.addHeader(CompressedResourceCache.VARY,
+					CompressedResourceCache.ACCEPT_ENCODING);
+			final CompressedResourceCache.Variant variant = compression.find(
+					mapping, url, bundle == null ? 0 : bundle.getLastModified(),
+					request.getHeader(CompressedResourceCache.ACCEPT_ENCODING),
+					new CompressedResourceCache.Lookup() {
+						@Override
+						public URL getResource(String path) {
+							return httpContext.getResource(path);
+						}
+					});
+			if (variant != null) {
+				// validators in the format of the Tomcat DefaultServlet, the
+				// entity tag tells the encoding
+				final long length;
+				final long lastModified;
+				if (file != null) {
+					length = file.length();
+					lastModified = file.lastModified();
+				} else {
+					final URLConnection connection = url.openConnection();
+					length = connection.getContentLengthLong();
+					lastModified = connection.getLastModified() == 0 ? -1
+							: connection.getLastModified();
+				}
+				final String eTag = lastModified == -1 ? null : variant
+						.getETag("W/\"" + length + "-" + lastModified + "\"");
+				if (CompressedResourceCache.checkPreconditions(request,
+						response, eTag, lastModified)) {
+					return;
+				}
+				if (eTag != null) {
+					response.setHeader(CompressedResourceCache.ETAG, eTag);
+					response.setDateHeader(
+							CompressedResourceCache.LAST_MODIFIED,
+							lastModified);
+				}
+				response.setHeader(CompressedResourceCache.CONTENT_ENCODING,
+						variant.getEncoding());
+				response.setContentLength(variant.getContent().length);
+				response.getOutputStream().write(variant.getContent());
+				return;
+			}
+		}
+
+		response.setHeader(ByteRanges.ACCEPT_RANGES, ByteRanges.BYTES);
+		if (file != null && sendFile(request, response, file)) {
+			return;
+		}
+
 		ServletOutputStream out = response.getOutputStream();
 		if (out != null) { // null should be just in unit testing
 			ServletResponse r = response;
@@ -205,6 +309,62 @@ public class TomcatResourceServlet extends HttpServlet {
 
 	}
 
+	/**
+	 * Answers a range request, slices of files are read from memory mapped
+	 * regions.
+	 * 
+	 * @return true if a partial response has been sent
+	 */
+	private boolean serveRange(HttpServletRequest request,
+			HttpServletResponse response, URL url, File file, String mimeType)
+			throws IOException {
+		final long length;
+		final long lastModified;
+		final ByteRanges.Source source;
+		if (file != null) {
+			length = file.length();
+			lastModified = file.lastModified();
+			source = ByteRanges.source(file);
+		} else {
+			final URLConnection connection = url.openConnection();
+			length = connection.getContentLengthLong();
+			lastModified = connection.getLastModified() == 0 ? -1
+					: connection.getLastModified();
+			source = ByteRanges.source(url);
+		}
+		return ByteRanges.serve(request, response, length, null,
+				lastModified, mimeType, source);
+	}
+
+	/**
+	 * Lets the connector transfer the file (sendfile) if it supports it.
+	 * 
+	 * @return true if the connector will write the content
+	 */
+	private boolean sendFile(HttpServletRequest request,
+			HttpServletResponse response, File file) {
+		final long length = file.length();
+		if (length < sendfileSize
+				|| !Boolean.TRUE.equals(request
+						.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR))) {
+			return false;
+		}
+		request.setAttribute(Globals.SENDFILE_FILENAME_ATTR,
+				file.getAbsolutePath());
+		request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, 0L);
+		request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, length);
+		response.setContentLengthLong(length);
+		return true;
+	}
+
+	private static File toFile(URL url) {
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
 	/**
 	 * Copy the contents of the specified input stream to the specified output
 	 * stream, and ensure that both streams are closed before returning (even in
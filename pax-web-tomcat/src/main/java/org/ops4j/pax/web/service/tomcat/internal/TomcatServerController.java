@@ -25,6 +25,7 @@ import org.ops4j.pax.web.service.spi.LifeCycle;
 import org.ops4j.pax.web.service.spi.ServerController;
 import org.ops4j.pax.web.service.spi.ServerEvent;
 import org.ops4j.pax.web.service.spi.ServerListener;
+import org.ops4j.pax.web.service.spi.metrics.WebMetrics;
 import org.ops4j.pax.web.service.spi.model.ContainerInitializerModel;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
 import org.ops4j.pax.web.service.spi.model.ErrorPageModel;
@@ -89,11 +90,26 @@ class TomcatServerController implements ServerController {
 		this.start();
 	}
 
+	@Override
+	public boolean reconfigure(Configuration configuration) {
+		LOG.debug("apply configuration");
+		if (!serverState.reconfigure(configuration)) {
+			return false;
+		}
+		fireStateChange(ServerEvent.CONFIGURED);
+		return true;
+	}
+
 	@Override
 	public Configuration getConfiguration() {
 		return serverState.getConfiguration();
 	}
 
+	@Override
+	public WebMetrics getMetrics() {
+		return serverState.getMetrics();
+	}
+
 	@Override
 	public void addListener(ServerListener listener) {
 		listeners.add(listener);
@@ -119,6 +135,11 @@ class TomcatServerController implements ServerController {
 		serverState.removeServlet(model);
 	}
 
+	@Override
+	public void remapServlet(ServletModel registered, ServletModel model) {
+		serverState.remapServlet(registered, model);
+	}
+
 	@Override
 	public void addEventListener(EventListenerModel eventListenerModel) {
 		serverState.addEventListener(eventListenerModel);
@@ -139,6 +160,11 @@ class TomcatServerController implements ServerController {
 		serverState.removeFilter(filterModel);
 	}
 
+	@Override
+	public void remapFilter(FilterModel registered, FilterModel filterModel) {
+		serverState.remapFilter(registered, filterModel);
+	}
+
 	@Override
 	public void addErrorPage(ErrorPageModel model) {
 		serverState.addErrorPage(model);
@@ -17,6 +17,7 @@
 package org.ops4j.pax.web.service.tomcat.internal;
 
 import org.ops4j.pax.web.service.spi.Configuration;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,8 +32,9 @@ public class TomcatServerFactory implements ServerFactory {
 	}
 
 	@Override
-	public ServerWrapper newServer(Configuration configuration) {
-		return TomcatServerWrapper.getInstance(EmbeddedTomcat
-				.newEmbeddedTomcat(configuration));
+	public ServerWrapper newServer(Configuration configuration,
+			WebMetricsRegistry metrics) {
+		return TomcatServerWrapper.getInstance(
+				EmbeddedTomcat.newEmbeddedTomcat(configuration), metrics);
 	}
 }
\ No newline at end of file
@@ -17,6 +17,7 @@
 package org.ops4j.pax.web.service.tomcat.internal;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Dictionary;
 import java.util.EnumSet;
@@ -55,6 +56,7 @@ import org.apache.catalina.LifecycleEvent;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleListener;
 import org.apache.catalina.LifecycleState;
+import org.apache.catalina.Valve;
 import org.apache.catalina.Wrapper;
 import org.apache.catalina.core.ContainerBase;
 import org.apache.catalina.security.SecurityUtil;
@@ -74,7 +76,9 @@ import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.swissbox.core.BundleUtils;
 import org.ops4j.pax.swissbox.core.ContextClassLoaderUtils;
 import org.ops4j.pax.web.service.WebContainerConstants;
+import org.ops4j.pax.web.service.spi.Configuration;
 import org.ops4j.pax.web.service.spi.LifeCycle;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
 import org.ops4j.pax.web.service.spi.model.ErrorPageModel;
 import org.ops4j.pax.web.service.spi.model.EventListenerModel;
@@ -83,6 +87,7 @@ import org.ops4j.pax.web.service.spi.model.Model;
 import org.ops4j.pax.web.service.spi.model.SecurityConstraintMappingModel;
 import org.ops4j.pax.web.service.spi.model.ServletModel;
 import org.ops4j.pax.web.service.spi.model.WelcomeFileModel;
+import org.ops4j.pax.web.service.spi.util.CompressedResourceCache;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -199,15 +204,30 @@ class TomcatServerWrapper implements ServerWrapper {
 
 	private Map<String, Object> contextAttributes;
 
-	private TomcatServerWrapper(final EmbeddedTomcat server) {
+	/**
+	 * Registry of the request metrics, null if disabled.
+	 */
+	private final WebMetricsRegistry metrics;
+
+	/**
+	 * Remapped servlet and filter models, pointing to the model they were
+	 * remapped to. The listeners adding servlets and filters again on start
+	 * of a context use the latest model of the one they were added with.
+	 */
+	private final Map<Model, Model> remappedModels = new ConcurrentHashMap<Model, Model>();
+
+	private TomcatServerWrapper(final EmbeddedTomcat server,
+			final WebMetricsRegistry metrics) {
 		NullArgumentException.validateNotNull(server, "server");
 		this.server = server;
+		this.metrics = metrics;
 		((ContainerBase) server.getHost()).setStartChildren(false);
 		TomcatURLStreamHandlerFactory.disable();
 	}
 
-	static ServerWrapper getInstance(final EmbeddedTomcat server) {
-		return new TomcatServerWrapper(server);
+	static ServerWrapper getInstance(final EmbeddedTomcat server,
+			final WebMetricsRegistry metrics) {
+		return new TomcatServerWrapper(server, metrics);
 	}
 
 	@Override
@@ -227,6 +247,13 @@ class TomcatServerWrapper implements ServerWrapper {
 		}
 	}
 
+	@Override
+	public boolean reconfigure(final Configuration previous,
+			final Configuration configuration) {
+		LOG.debug("reconfigure server");
+		return server.reconfigure(previous, configuration);
+	}
+
 	@Override
 	public void stop() {
 		LOG.debug("stop server");
@@ -273,7 +300,7 @@ class TomcatServerWrapper implements ServerWrapper {
 									if (!servletRegistrations
 											.containsKey(servletName)) { 
 										LOG.debug("need to re-register the servlet ...");
-										createServletWrapper(model, context,
+										createServletWrapper(latest(model), context,
 												servletName, servlet);
 									}
 									//CHECKSTYLE:ON
@@ -306,7 +333,7 @@ class TomcatServerWrapper implements ServerWrapper {
 												.getServletClass().getName());
 
 										addServletWrapper(sw, servletName,
-												context, model);
+												context, latest(model));
 									}
 									//CHECKSTYLE:ON
 								}
@@ -340,7 +367,7 @@ class TomcatServerWrapper implements ServerWrapper {
 									.getServletRegistrations();
 							if (!servletRegistrations.containsKey(servletName)) {
 								LOG.debug("need to re-register the servlet ...");
-								createServletWrapper(model, context,
+								createServletWrapper(latest(model), context,
 										servletName, null);
 							}
 						}
@@ -369,6 +396,8 @@ class TomcatServerWrapper implements ServerWrapper {
 			final Context context, final ServletModel model) {
 
 		sw.setName(servletName);
+		addMetricsValve(sw, model.getContextModel().getContextName(),
+				servletName);
 		context.addChild(sw);
 
 		addServletMappings(context, servletName, model.getUrlPatterns());
@@ -386,6 +415,70 @@ class TomcatServerWrapper implements ServerWrapper {
 
 	}
 
+	/**
+	 * Measures the requests of a context or servlet if metrics are enabled.
+	 * Servlet wrappers may be added again on restart of their context, so
+	 * the valve is only added once.
+	 */
+	private void addMetricsValve(final Container container,
+			final String contextName, final String servletName) {
+		if (metrics == null) {
+			return;
+		}
+		for (Valve valve : container.getPipeline().getValves()) {
+			if (valve instanceof MetricsValve) {
+				return;
+			}
+		}
+		container.getPipeline().addValve(
+				new MetricsValve(metrics, contextName, servletName));
+	}
+
+	/**
+	 * @return the model the given one was remapped to last, or the given one
+	 */
+	@SuppressWarnings("unchecked")
+	private <M extends Model> M latest(final M model) {
+		M latest = model;
+		for (Model next = remappedModels.get(latest); next != null; next = remappedModels
+				.get(latest)) {
+			latest = (M) next;
+		}
+		return latest;
+	}
+
+	@Override
+	public void remapServlet(final ServletModel registered,
+			final ServletModel model) {
+		LOG.debug("remap servlet [{}] to [{}]", registered, model);
+		final Context context = findContext(registered);
+		final Container servlet = context == null ? null : context
+				.findChild(registered.getName());
+		if (!(servlet instanceof Wrapper)) {
+			throw new IllegalStateException(
+					"cannot find the servlet to remap: " + registered);
+		}
+		final Wrapper sw = (Wrapper) servlet;
+		// the new url patterns are mapped before the old ones are removed
+		// and the wrapper keeps its servlet, so it stays available
+		addServletMappings(context, model.getName(), model.getUrlPatterns());
+		final List<String> urlPatterns = Arrays.asList(model.getUrlPatterns());
+		for (String urlPattern : registered.getUrlPatterns()) {
+			if (!urlPatterns.contains(urlPattern)
+					&& model.getName().equals(
+							context.findServletMapping(urlPattern))) {
+				context.removeServletMapping(urlPattern);
+			}
+		}
+		addInitParameters(sw, model.getInitParams());
+		for (String name : sw.findInitParameters()) {
+			if (!model.getInitParams().containsKey(name)) {
+				sw.removeInitParameter(name);
+			}
+		}
+		remappedModels.put(registered, model);
+	}
+
 	@Override
 	public void removeServlet(final ServletModel model) {
 		LOG.debug("remove servlet [{}]", model);
@@ -569,7 +662,8 @@ class TomcatServerWrapper implements ServerWrapper {
 		if ((LifecycleState.STARTING.equals(state) || LifecycleState.STARTED
 				.equals(state)) && !filterModel.getContextModel().isWebBundle()) {
 			try {
-				restartContext = true;
+				// a batch starts the context once at its end
+				restartContext = !filterModel.getContextModel().isBatched();
 				((HttpServiceContext) context).stop();
 			} catch (LifecycleException e) {
 				LOG.warn("Can't reset the Lifecycle ... ", e);
@@ -581,55 +675,66 @@ class TomcatServerWrapper implements ServerWrapper {
 			public void lifecycleEvent(LifecycleEvent event) {
 				if (Lifecycle.BEFORE_START_EVENT.equalsIgnoreCase(event
 						.getType())) {
+					final FilterModel current = latest(filterModel);
 					FilterRegistration.Dynamic filterRegistration = null;
-					if (filterModel.getFilter() != null) {
+					if (metrics != null) {
+						filterRegistration = context.getServletContext()
+								.addFilter(
+										current.getName(),
+										new MeteredFilter(metrics, context,
+												current.getContextModel()
+														.getContextName(),
+												current.getName(),
+												current.getFilter(),
+												current.getFilterClass()));
+					} else if (current.getFilter() != null) {
 						filterRegistration = context
 								.getServletContext().addFilter(
-										filterModel.getName(),
-										filterModel.getFilter());
+										current.getName(),
+										current.getFilter());
 						
-					} else if (filterModel.getFilterClass() != null) {
+					} else if (current.getFilterClass() != null) {
 						filterRegistration = context
 								.getServletContext().addFilter(
-										filterModel.getName(),
-										filterModel.getFilterClass());
+										current.getName(),
+										current.getFilterClass());
 					}
 					
 					if (filterRegistration == null) {
 						filterRegistration = (Dynamic) context
 								.getServletContext().getFilterRegistration(
-										filterModel.getName());
+										current.getName());
 						if (filterRegistration == null) {
 							LOG.error("Can't register Filter due to unknown reason!");
 						}
 					}
 					
-					filterRegistration.setAsyncSupported(filterModel.isAsyncSupported());
+					filterRegistration.setAsyncSupported(current.isAsyncSupported());
 
-					if (filterModel.getServletNames() != null
-							&& filterModel.getServletNames().length > 0) {
+					if (current.getServletNames() != null
+							&& current.getServletNames().length > 0) {
 						filterRegistration.addMappingForServletNames(
-								getDispatcherTypes(filterModel), /*
+								getDispatcherTypes(current), /*
 																 * TODO get
 																 * asynch
 																 * supported?
 																 */false,
-								filterModel.getServletNames());
-					} else if (filterModel.getUrlPatterns() != null
-							&& filterModel.getUrlPatterns().length > 0) {
+								current.getServletNames());
+					} else if (current.getUrlPatterns() != null
+							&& current.getUrlPatterns().length > 0) {
 						filterRegistration.addMappingForUrlPatterns(
-								getDispatcherTypes(filterModel), /*
+								getDispatcherTypes(current), /*
 																 * TODO get
 																 * asynch
 																 * supported?
 																 */false,
-								filterModel.getUrlPatterns());
+								current.getUrlPatterns());
 					} else {
 						throw new AddFilterException(
 								"cannot add filter to the context; at least a not empty list of servlet names or URL patterns in exclusive mode must be provided: "
-										+ filterModel);
+										+ current);
 					}
-					filterRegistration.setInitParameters(filterModel
+					filterRegistration.setInitParameters(current
 							.getInitParams());
 				}
 			}
@@ -660,6 +765,62 @@ class TomcatServerWrapper implements ServerWrapper {
 		return result;
 	}
 
+	/**
+	 * Filters of a context not started yet are added with the latest model
+	 * on start. The maps of a started context are replaced in one step, see
+	 * {@link HttpServiceContext#replaceFilterMaps(String, FilterMap)}.
+	 */
+	@Override
+	public void remapFilter(final FilterModel registered,
+			final FilterModel filterModel) {
+		LOG.debug("remap filter [{}] to [{}]", registered, filterModel);
+		final Context context = findOrCreateContext(registered);
+		remappedModels.put(registered, filterModel);
+		final FilterDef filterDef = context.findFilterDef(registered.getName());
+		if (filterDef == null) {
+			return;
+		}
+		try {
+			((HttpServiceContext) context).replaceFilterMaps(
+					registered.getName(), createFilterMap(filterModel));
+		} catch (RuntimeException e) {
+			remappedModels.remove(registered);
+			throw e;
+		}
+		// the filter config reads the parameters of the definition
+		final Map<String, String> parameters = filterDef.getParameterMap();
+		parameters.putAll(filterModel.getInitParams());
+		parameters.keySet().retainAll(filterModel.getInitParams().keySet());
+	}
+
+	/**
+	 * Creates the filter map the servlet context of Tomcat creates for the
+	 * mapping of the filter.
+	 */
+	private FilterMap createFilterMap(final FilterModel filterModel) {
+		final FilterMap filterMap = new FilterMap();
+		filterMap.setFilterName(filterModel.getName());
+		for (DispatcherType dispatcherType : getDispatcherTypes(filterModel)) {
+			filterMap.setDispatcher(dispatcherType.name());
+		}
+		if (filterModel.getServletNames() != null
+				&& filterModel.getServletNames().length > 0) {
+			for (String servletName : filterModel.getServletNames()) {
+				filterMap.addServletName(servletName);
+			}
+		} else if (filterModel.getUrlPatterns() != null
+				&& filterModel.getUrlPatterns().length > 0) {
+			for (String urlPattern : filterModel.getUrlPatterns()) {
+				filterMap.addURLPattern(urlPattern);
+			}
+		} else {
+			throw new AddFilterException(
+					"cannot remap the filter; at least a not empty list of servlet names or URL patterns in exclusive mode must be provided: "
+							+ filterModel);
+		}
+		return filterMap;
+	}
+
 	@Override
 	public void removeFilter(final FilterModel filterModel) {
 		final Context context = findOrCreateContext(filterModel);
@@ -724,10 +885,12 @@ class TomcatServerWrapper implements ServerWrapper {
 
 	@Override
 	public Servlet createResourceServlet(final ContextModel contextModel,
-			final String alias, final String name) {
+			final String alias, final String name,
+			final CompressedResourceCache compression) {
 		LOG.debug("createResourceServlet( contextModel: {}, alias: {}, name: {})");
 		return new TomcatResourceServlet(contextModel.getHttpContext(),
-				contextModel.getContextName(), alias, name);
+				contextModel.getContextName(), alias, name,
+				contextModel.getBundle(), compression);
 	}
 
 	@Override
@@ -861,12 +1024,14 @@ class TomcatServerWrapper implements ServerWrapper {
 				getContextAttributes(bundleContext),
 				contextModel.getContextName(), contextModel.getHttpContext(),
 				contextModel.getAccessControllerContext(),
+				contextModel.getBundle(),
 				contextModel.getContainerInitializers(),
 				contextModel.getJettyWebXmlURL(),
 				contextModel.getVirtualHosts(), null /*contextModel.getConnectors() */,
 				server.getBasedir());
 
 		context.setParentClassLoader(contextModel.getClassLoader());
+		addMetricsValve(context, contextModel.getContextName(), null);
 		// TODO: is the context already configured?
 		// TODO: how about security, classloader?
 		// TODO: compare with JettyServerWrapper.addContext
@@ -0,0 +1,90 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.undertow.internal;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+import org.ops4j.pax.web.service.spi.util.AsyncRequestLog;
+
+import io.undertow.security.api.SecurityContext;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.Cookie;
+import io.undertow.util.Headers;
+
+/**
+ * Passes the completed exchanges to the {@link AsyncRequestLog}.
+ */
+class AsyncAccessLogHandler implements HttpHandler {
+
+    private final HttpHandler next;
+    private final AsyncRequestLog requestLog;
+
+    AsyncAccessLogHandler(HttpHandler next, AsyncRequestLog requestLog) {
+        this.next = next;
+        this.requestLog = requestLog;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        final long timestamp = System.currentTimeMillis();
+        exchange.addExchangeCompleteListener((completed, nextListener) -> {
+            try {
+                log(completed, timestamp);
+            } finally {
+                nextListener.proceed();
+            }
+        });
+        next.handleRequest(exchange);
+    }
+
+    private void log(HttpServerExchange exchange, long timestamp) {
+        final InetSocketAddress source = exchange.getSourceAddress();
+        String user = null;
+        final SecurityContext securityContext = exchange.getSecurityContext();
+        if (securityContext != null && securityContext.getAuthenticatedAccount() != null) {
+            user = securityContext.getAuthenticatedAccount().getPrincipal().getName();
+        }
+        String uri = exchange.getRequestURI();
+        if (!exchange.getQueryString().isEmpty()) {
+            uri = uri + "?" + exchange.getQueryString();
+        }
+        requestLog.log(timestamp, exchange.getHostName(),
+                source == null || source.getAddress() == null ? null : source.getAddress().getHostAddress(),
+                user, exchange.getRequestMethod().toString(), uri, exchange.getProtocol().toString(),
+                exchange.getStatusCode(), exchange.getResponseBytesSent(),
+                exchange.getRequestHeaders().getFirst(Headers.REFERER),
+                exchange.getRequestHeaders().getFirst(Headers.USER_AGENT),
+                requestLog.isLogCookies() ? cookies(exchange.getRequestCookies()) : null,
+                System.currentTimeMillis() - timestamp);
+    }
+
+    private static String cookies(Map<String, Cookie> cookies) {
+        if (cookies.isEmpty()) {
+            return null;
+        }
+        final StringBuilder builder = new StringBuilder();
+        for (Cookie cookie : cookies.values()) {
+            if (builder.length() > 0) {
+                builder.append(';');
+            }
+            builder.append(cookie.getName()).append('=').append(cookie.getValue());
+        }
+        return builder.toString();
+    }
+
+}
@@ -21,13 +21,20 @@ import java.lang.reflect.Constructor;
 import java.net.URL;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.servlet.DispatcherType;
 import javax.servlet.ServletContainerInitializer;
@@ -38,6 +45,9 @@ import org.ops4j.pax.swissbox.core.BundleClassLoader;
 import org.ops4j.pax.web.service.WebContainerConstants;
 import org.ops4j.pax.web.service.WebContainerContext;
 import org.ops4j.pax.web.service.spi.LifeCycle;
+import org.ops4j.pax.web.service.spi.metrics.RequestMetrics;
+import org.ops4j.pax.web.service.spi.metrics.TimedFilter;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
 import org.ops4j.pax.web.service.spi.model.ContainerInitializerModel;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
 import org.ops4j.pax.web.service.spi.model.ErrorPageModel;
@@ -47,6 +57,7 @@ import org.ops4j.pax.web.service.spi.model.ResourceModel;
 import org.ops4j.pax.web.service.spi.model.SecurityConstraintMappingModel;
 import org.ops4j.pax.web.service.spi.model.ServletModel;
 import org.ops4j.pax.web.service.spi.model.WelcomeFileModel;
+import org.ops4j.pax.web.service.spi.util.HttpContextResources;
 import org.ops4j.pax.web.service.spi.util.ResourceDelegatingBundleClassLoader;
 import org.ops4j.pax.web.utils.ServletContainerInitializerScanner;
 import org.osgi.framework.Bundle;
@@ -80,6 +91,7 @@ import io.undertow.servlet.api.DeploymentManager;
 import io.undertow.servlet.api.ErrorPage;
 import io.undertow.servlet.api.FilterInfo;
 import io.undertow.servlet.api.InstanceFactory;
+import io.undertow.servlet.api.InstanceHandle;
 import io.undertow.servlet.api.ListenerInfo;
 import io.undertow.servlet.api.LoginConfig;
 import io.undertow.servlet.api.SecurityConstraint;
@@ -102,31 +114,87 @@ public class Context implements LifeCycle, HttpHandler, ResourceManager {
     
     private static final Logger LOG = LoggerFactory.getLogger(Context.class);
 
+    /**
+     * Files larger than this are transferred from the file channel, smaller ones are copied.
+     */
+    private static final long FILE_TRANSFER_MIN_SIZE = 1024;
+
+    private final FileResources fileResources = new FileResources(FILE_TRANSFER_MIN_SIZE);
+
     private final IdentityManager identityManager;
     private final PathHandler path;
     private final ContextModel contextModel;
-    private final List<ServletModel> servlets = new ArrayList<>();
-    private final List<WelcomeFileModel> welcomeFiles = new ArrayList<>();
-    private final List<ErrorPageModel> errorPages = new ArrayList<>();
-    private final List<EventListenerModel> eventListeners = new ArrayList<>();
-    private final List<SecurityConstraintMappingModel> securityConstraintMappings = new ArrayList<>();
-    private final List<FilterModel> filters = new ArrayList<>();
-    private final List<ContainerInitializerModel> containerInitializers = new ArrayList<>();
-    private final ServletContainer container = ServletContainer.Factory.newInstance();
+    /*
+     * The model is copied on write, so a deployment can be built from it
+     * while it changes. A deployment built from an outdated model is
+     * replaced right away.
+     */
+    private final List<ServletModel> servlets = new CopyOnWriteArrayList<>();
+    private final List<WelcomeFileModel> welcomeFiles = new CopyOnWriteArrayList<>();
+    private final List<ErrorPageModel> errorPages = new CopyOnWriteArrayList<>();
+    private final List<EventListenerModel> eventListeners = new CopyOnWriteArrayList<>();
+    private final List<SecurityConstraintMappingModel> securityConstraintMappings = new CopyOnWriteArrayList<>();
+    private final List<FilterModel> filters = new CopyOnWriteArrayList<>();
+    private final List<ContainerInitializerModel> containerInitializers = new CopyOnWriteArrayList<>();
     private final AtomicBoolean started = new AtomicBoolean();
     private final ClassLoader classLoader;
-    private volatile HttpHandler handler;
-    
-    private DeploymentManager manager;
+    /**
+     * Resources of the http context, as seen by the servlet context.
+     */
+    private final HttpContextResources resources;
+    private final Executor requestExecutor;
+    private final WebMetricsRegistry metrics;
+    /**
+     * Request metrics held while the context exists, kept across deployments
+     * if metrics are enabled.
+     */
+    private volatile RequestMetrics contextMetrics;
+    private final Map<String, RequestMetrics> servletMetrics = new ConcurrentHashMap<>();
+    private final Map<String, RequestMetrics> filterMetrics = new ConcurrentHashMap<>();
+    /**
+     * Number of changes of the model.
+     */
+    private final AtomicLong generation = new AtomicLong();
+    /**
+     * Held while a deployment is built or replaced, never by requests while
+     * there is a deployment to serve them.
+     */
+    private final ReentrantLock deployLock = new ReentrantLock();
+    private final DeploymentSlot<Deployed> deployed = new DeploymentSlot<>();
+    private final SharedInstances instances = new SharedInstances();
+
+    /**
+     * A started deployment.
+     */
+    private static final class Deployed {
+        private final DeploymentManager manager;
+        private final HttpHandler handler;
+
+        private Deployed(DeploymentManager manager, HttpHandler handler) {
+            this.manager = manager;
+            this.handler = handler;
+        }
+    }
 
     private Bundle undertowBundle;
 
     private ServiceTracker<PackageAdmin, PackageAdmin> packageAdminTracker;
 
-    public Context(IdentityManager identityManager, PathHandler path, ContextModel contextModel) {
+    /**
+     * @param requestExecutor executor running the servlet requests, null to
+     *                        run them on the worker threads
+     * @param metrics         registry of the request metrics, null if disabled
+     */
+    public Context(IdentityManager identityManager, PathHandler path, ContextModel contextModel,
+            Executor requestExecutor, WebMetricsRegistry metrics) {
         this.identityManager = identityManager;
         this.path = path;
         this.contextModel = contextModel;
+        this.requestExecutor = requestExecutor;
+        this.metrics = metrics;
+        // directories are told apart by their trailing slash
+        this.resources = new HttpContextResources(contextModel.getHttpContext(),
+                contextModel.getAccessControllerContext(), contextModel.getBundle(), false);
 
         ClassLoader classLoader = contextModel.getClassLoader();
         List<Bundle> bundles = ((ResourceDelegatingBundleClassLoader)classLoader).getBundles();
@@ -156,12 +224,20 @@ public class Context implements LifeCycle, HttpHandler, ResourceManager {
     }
 
     @Override
-    public synchronized void start() throws Exception {
-        if (started.compareAndSet(false, true)) {
+    public void start() throws Exception {
+        synchronized (this) {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
             for (ServletModel servlet : servlets) {
                 doStart(servlet);
             }
-            createHandler();
+        }
+        deployLock.lock();
+        try {
+            ensureDeployed();
+        } finally {
+            deployLock.unlock();
         }
     }
 
@@ -176,49 +252,96 @@ public class Context implements LifeCycle, HttpHandler, ResourceManager {
 
     private void doStart(ServletModel servlet) throws ServletException {
         for (String pattern : servlet.getUrlPatterns()) {
-            if (!contextModel.getContextName().isEmpty()) {
-                pattern = "/" + contextModel.getContextName() + pattern;
-            }
-            if (pattern.endsWith("/*") || pattern.endsWith("/")) {
-                if (pattern.endsWith("/*")) {
-                    pattern = pattern.substring(0, pattern.length() - 1);
-                }
-                path.addPrefixPath(pattern, this);
-            } else {
-                path.addExactPath(pattern, this);
-            }
+            addPath(pattern);
         }
     }
 
     private void doStop(ServletModel servlet) throws ServletException {
         for (String pattern : servlet.getUrlPatterns()) {
+            removePath(pattern);
+        }
+    }
+
+    private void addPath(String pattern) {
+        pattern = fullPath(pattern);
+        if (pattern.endsWith("/*") || pattern.endsWith("/")) {
+            if (pattern.endsWith("/*")) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            path.addPrefixPath(pattern, this);
+        } else {
+            path.addExactPath(pattern, this);
+        }
+    }
+
+    /**
+     * Removes the path added for the pattern by {@link #addPath(String)}.
+     */
+    private void removePath(String pattern) {
+        pattern = fullPath(pattern);
+        if (pattern.endsWith("/*") || pattern.endsWith("/")) {
             if (pattern.endsWith("/*")) {
                 pattern = pattern.substring(0, pattern.length() - 1);
-                path.removePrefixPath(pattern);
-            } else {
-                path.removeExactPath(pattern);
             }
+            path.removePrefixPath(pattern);
+        } else {
+            path.removeExactPath(pattern);
+        }
+    }
+
+    private String fullPath(String pattern) {
+        if (!contextModel.getContextName().isEmpty()) {
+            return "/" + contextModel.getContextName() + pattern;
         }
+        return pattern;
     }
 
-    public synchronized void destroy() {
+    public void destroy() {
+        deployLock.lock();
         try {
-            destroyHandler();
-        } catch (ServletException e) {
-            e.printStackTrace();
+            // undeployed after the requests in flight
+            undeploy(deployed.clear());
+        } finally {
+            deployLock.unlock();
         }
+        fileResources.clear();
+        releaseMetrics();
     }
 
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
-        HttpHandler h = getHandler();
-        if (h != null) {
+        DeploymentSlot.Entry<Deployed> current = deployed.acquire();
+        if (current == null || current.getGeneration() != generation.get()) {
+            if (exchange.isInIoThread()) {
+                // the deployment is built on a worker thread
+                release(exchange, current);
+                exchange.dispatch(this);
+                return;
+            }
+            current = update(current);
+        }
+        if (current != null) {
+            final DeploymentSlot.Entry<Deployed> serving = current;
+            exchange.addExchangeCompleteListener((completed, nextListener) -> {
+                release(completed, serving);
+                nextListener.proceed();
+            });
+            HttpHandler h = current.getDeployment().handler;
             // Put back original request path
             String path = exchange.getRequestPath();
             if (!contextModel.getContextName().isEmpty()) {
                 path = path.substring(contextModel.getContextName().length() + 1);
             }
             exchange.setRelativePath(path);
+            final RequestMetrics requestMetrics = contextMetrics;
+            if (requestMetrics != null) {
+                // the request continues on a worker thread, so it is measured until completion
+                final long start = requestMetrics.begin();
+                exchange.addExchangeCompleteListener((completed, nextListener) -> {
+                    requestMetrics.end(start, completed.getStatusCode() >= StatusCodes.INTERNAL_SERVER_ERROR);
+                    nextListener.proceed();
+                });
+            }
             h.handleRequest(exchange);
         } else {
             exchange.setResponseCode(StatusCodes.NOT_FOUND);
@@ -226,41 +349,157 @@ public class Context implements LifeCycle, HttpHandler, ResourceManager {
         }
     }
 
-    private HttpHandler getHandler() throws ServletException {
-        if (handler == null) {
-            synchronized (this) {
-                createHandler();
+    /**
+     * Swaps in a deployment of the changed model unless another request is
+     * doing so, this request is still served by the given deployment then.
+     *
+     * @param current the acquired deployment, null if none
+     * @return the acquired deployment serving the request
+     */
+    private DeploymentSlot.Entry<Deployed> update(DeploymentSlot.Entry<Deployed> current) throws ServletException {
+        if (current != null && !deployLock.tryLock()) {
+            return current;
+        }
+        if (current == null) {
+            // nothing to serve, wait for the request building the deployment
+            deployLock.lock();
+        }
+        try {
+            ensureDeployed();
+            return deployed.acquire();
+        } finally {
+            deployLock.unlock();
+            releaseOrUndeploy(current);
+        }
+    }
+
+    private void releaseOrUndeploy(DeploymentSlot.Entry<Deployed> entry) {
+        if (deployed.release(entry)) {
+            undeploy(entry);
+        }
+    }
+
+    /**
+     * Releases a deployment acquired by a request and undeploys it, off the
+     * I/O thread, if it was replaced and this was its last request.
+     */
+    private void release(HttpServerExchange exchange, final DeploymentSlot.Entry<Deployed> entry) {
+        if (deployed.release(entry)) {
+            if (exchange.isInIoThread()) {
+                exchange.getConnection().getWorker().execute(() -> undeploy(entry));
+            } else {
+                undeploy(entry);
+            }
+        }
+    }
+
+    /**
+     * Deploys the current model unless it is deployed already. Must be called
+     * holding the deploy lock.
+     */
+    private void ensureDeployed() throws ServletException {
+        final DeploymentSlot.Entry<Deployed> current = deployed.get();
+        if (current == null || current.getGeneration() != generation.get()) {
+            deploy();
+        }
+    }
+
+    /**
+     * Marks the deployment as outdated, the next request swaps in a
+     * deployment of the changed model. Changes made meanwhile are deployed
+     * together.
+     *
+     * @param release true if the change removed a servlet, filter or listener
+     *                instance, the changed model is deployed right away then,
+     *                so that the instance is destroyed once the requests in
+     *                flight have completed
+     */
+    private void modelChanged(boolean release) throws ServletException {
+        generation.incrementAndGet();
+        if (release) {
+            deployLock.lock();
+            try {
+                if (deployed.get() != null) {
+                    try {
+                        deploy();
+                    } catch (ServletException | RuntimeException e) {
+                        // do not serve the removed instance anymore
+                        undeploy(deployed.clear());
+                        throw e;
+                    }
+                }
+            } finally {
+                deployLock.unlock();
             }
         }
-        return handler;
     }
 
-    private synchronized void createHandler() throws ServletException {
+    /**
+     * Builds and starts a deployment of the current model beside the current
+     * one, which keeps serving requests meanwhile, and then swaps it in. The
+     * replaced deployment is undeployed once its requests in flight have
+     * completed. Servlet, filter and listener instances are shared by both
+     * deployments, see {@link SharedInstances}. Must be called holding the
+     * deploy lock.
+     */
+    private void deploy() throws ServletException {
+        final long building = generation.get();
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
         try {
-            ClassLoader ncl = classLoader;
-            Thread.currentThread().setContextClassLoader(ncl);
-            doCreateHandler();
+            Thread.currentThread().setContextClassLoader(classLoader);
+            DeploymentInfo deployment = createDeployment();
+            // a container of its own, so undeploying the replaced deployment
+            // does not remove the new one of the same name
+            DeploymentManager manager = ServletContainer.Factory.newInstance().addDeployment(deployment);
+            HttpHandler handler;
+            try {
+                manager.deploy();
+                handler = manager.start();
+            } catch (ServletException | RuntimeException e) {
+                // keep serving the current deployment
+                try {
+                    manager.stop();
+                    manager.undeploy();
+                } catch (ServletException | RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+            undeploy(deployed.replace(new Deployed(manager, handler), building));
         } finally {
             Thread.currentThread().setContextClassLoader(cl);
         }
     }
 
-    private synchronized void destroyHandler() throws ServletException {
-        if (manager != null) {
-            manager.stop();
-            manager.undeploy();
-            manager = null;
-            handler = null;
+    /**
+     * @param replaced retired deployment without requests in flight, may be null
+     */
+    private void undeploy(DeploymentSlot.Entry<Deployed> replaced) {
+        if (replaced == null) {
+            return;
+        }
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        try {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            replaced.getDeployment().manager.stop();
+            replaced.getDeployment().manager.undeploy();
+        } catch (ServletException | RuntimeException e) {
+            LOG.warn("Failed to undeploy the replaced deployment of context " + contextModel.getContextName(), e);
+        } finally {
+            Thread.currentThread().setContextClassLoader(cl);
         }
     }
 
-    private void doCreateHandler() throws ServletException {
+    private DeploymentInfo createDeployment() throws ServletException {
+        updateMetrics();
         DeploymentInfo deployment = new DeploymentInfo();
         deployment.setEagerFilterInit(true);
         deployment.setDeploymentName(contextModel.getContextName());
         deployment.setContextPath('/' + contextModel.getContextName());
         deployment.setClassLoader(classLoader);
+        if (requestExecutor != null) {
+            deployment.setExecutor(requestExecutor);
+        }
         BundleContext bundleContext = contextModel.getBundle().getBundleContext();
         if (bundleContext != null) {
             deployment.addServletContextAttribute(WebContainerConstants.BUNDLE_CONTEXT_ATTRIBUTE, bundleContext);
@@ -285,7 +524,9 @@ public class Context implements LifeCycle, HttpHandler, ResourceManager {
             ServletInfo info = new ServletInfo(
                     servlet.getName(),
                     clazz(servlet.getServletClass(), servlet.getServlet()),
-                    factory(servlet.getServletClass(), servlet.getServlet())
+                    servlet.getServlet() != null
+                            ? instances.servlet(servlet.getServlet())
+                            : factory(servlet.getServletClass(), null)
             );
             for (Map.Entry<String, String> param : servlet.getInitParams().entrySet()) {
                 info.addInitParam(param.getKey(), param.getValue());
@@ -339,7 +580,10 @@ public class Context implements LifeCycle, HttpHandler, ResourceManager {
         for (FilterModel filter : filters) {
             FilterInfo info = new FilterInfo(filter.getName(),
                                              clazz(filter.getFilterClass(), filter.getFilter()),
-                                             factory(filter.getFilterClass(), filter.getFilter()));
+                                             timed(filter.getFilter() != null
+                                                             ? instances.filter(filter.getFilter())
+                                                             : factory(filter.getFilterClass(), null),
+                                                     filterMetrics.get(filter.getName())));
             for (Map.Entry<String, String> param : filter.getInitParams().entrySet()) {
                 info.addInitParam(param.getKey(), param.getValue());
             }
@@ -392,7 +636,7 @@ public class Context implements LifeCycle, HttpHandler, ResourceManager {
         for (EventListenerModel listener : eventListeners) {
             ListenerInfo info = new ListenerInfo(
                     clazz(null, listener.getEventListener()),
-                    factory(null, listener.getEventListener()));
+                    instances.listener(listener.getEventListener()));
             deployment.addListener(info);
         }
 
@@ -454,9 +698,113 @@ public class Context implements LifeCycle, HttpHandler, ResourceManager {
             }
         });
 
-        manager = container.addDeployment(deployment);
-        manager.deploy();
-        handler = manager.start();
+        if (metrics != null) {
+            // added last, so that the security check is measured as well
+            deployment.addInnerHandlerChainWrapper(handler -> exchange -> {
+                ServletRequestContext src = exchange.getAttachment(ServletRequestContext.ATTACHMENT_KEY);
+                RequestMetrics requestMetrics = null;
+                if (src.getDispatcherType() == DispatcherType.REQUEST && src.getCurrentServlet() != null) {
+                    requestMetrics = servletMetrics.get(
+                            src.getCurrentServlet().getManagedServlet().getServletInfo().getName());
+                }
+                if (requestMetrics == null) {
+                    handler.handleRequest(exchange);
+                    return;
+                }
+                final long start = requestMetrics.begin();
+                boolean failed = true;
+                try {
+                    handler.handleRequest(exchange);
+                    failed = exchange.getStatusCode() >= StatusCodes.INTERNAL_SERVER_ERROR;
+                } finally {
+                    requestMetrics.end(start, failed);
+                }
+            });
+        }
+
+        return deployment;
+    }
+
+    /**
+     * Acquires the metrics of the context and of the servlets and filters
+     * added since the last deployment and releases the ones of the removed
+     * servlets and filters.
+     */
+    private void updateMetrics() {
+        if (metrics == null) {
+            return;
+        }
+        if (contextMetrics == null) {
+            contextMetrics = metrics.acquireContextMetrics(contextModel.getContextName());
+        }
+        List<String> servletNames = new ArrayList<>();
+        for (ServletModel servlet : servlets) {
+            servletNames.add(servlet.getName());
+        }
+        List<String> filterNames = new ArrayList<>();
+        for (FilterModel filter : filters) {
+            filterNames.add(filter.getName());
+        }
+        updateMetrics(servletMetrics, servletNames, false);
+        updateMetrics(filterMetrics, filterNames, true);
+    }
+
+    private void updateMetrics(Map<String, RequestMetrics> current, List<String> names, boolean filter) {
+        for (Iterator<Map.Entry<String, RequestMetrics>> it = current.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, RequestMetrics> entry = it.next();
+            if (!names.contains(entry.getKey())) {
+                metrics.release(entry.getValue());
+                it.remove();
+            }
+        }
+        for (String name : names) {
+            if (!current.containsKey(name)) {
+                current.put(name, filter
+                        ? metrics.acquireFilterMetrics(contextModel.getContextName(), name)
+                        : metrics.acquireServletMetrics(contextModel.getContextName(), name));
+            }
+        }
+    }
+
+    private void releaseMetrics() {
+        if (metrics == null) {
+            return;
+        }
+        metrics.release(contextMetrics);
+        contextMetrics = null;
+        for (RequestMetrics requestMetrics : servletMetrics.values()) {
+            metrics.release(requestMetrics);
+        }
+        servletMetrics.clear();
+        for (RequestMetrics requestMetrics : filterMetrics.values()) {
+            metrics.release(requestMetrics);
+        }
+        filterMetrics.clear();
+    }
+
+    /**
+     * Wraps the filters created by a factory in a {@link TimedFilter}.
+     */
+    private static InstanceFactory<? extends javax.servlet.Filter> timed(
+            final InstanceFactory<? extends javax.servlet.Filter> factory, final RequestMetrics requestMetrics) {
+        if (requestMetrics == null) {
+            return factory;
+        }
+        return () -> {
+            final InstanceHandle<? extends javax.servlet.Filter> handle = factory.createInstance();
+            final TimedFilter filter = new TimedFilter(handle.getInstance(), requestMetrics);
+            return new InstanceHandle<javax.servlet.Filter>() {
+                @Override
+                public javax.servlet.Filter getInstance() {
+                    return filter;
+                }
+
+                @Override
+                public void release() {
+                    handle.release();
+                }
+            };
+        };
     }
 
     private static <T> Class<? extends T> clazz(Class<? extends T> clazz, T instance) {
@@ -486,13 +834,13 @@ public class Context implements LifeCycle, HttpHandler, ResourceManager {
     public Resource getResource(String path) throws IOException {
         HttpContext context = contextModel.getHttpContext();
         if (context instanceof WebContainerContext) {
-            final URL resource = context.getResource(path);
+            final URL resource = resources.getResource(path);
             if (resource == null) {
                 return null;
             } else if (resource.toString().endsWith("/")) {
                 return new DirectoryResource(resource);
             } else {
-                return new URLResource(resource, resource.openConnection(), path);
+                return createResource(resource, path);
             }
         } else {
             String modPath = path;
@@ -504,11 +852,22 @@ public class Context implements LifeCycle, HttpHandler, ResourceManager {
             if(resource == null) {
                 return null;
             } else {
-                return new URLResource(resource, resource.openConnection(), path);
+                return createResource(resource, path);
             }
         }
     }
 
+    /**
+     * Files are served by {@link FileResources}, transferring the content straight from the file channel.
+     */
+    private Resource createResource(URL resource, String path) throws IOException {
+        final Resource file = fileResources.getResource(resource, path);
+        if (file != null) {
+            return file;
+        }
+        return new URLResource(resource, resource.openConnection(), path);
+    }
+
     @Override
     public boolean isResourceChangeListenerSupported() {
         return false;
@@ -545,93 +904,142 @@ public class Context implements LifeCycle, HttpHandler, ResourceManager {
         }
     }
     
-    public synchronized void addServlet(ServletModel model) throws ServletException {
-        if (servlets.add(model)) {
-            destroyHandler();
+    public void addServlet(ServletModel model) throws ServletException {
+        synchronized (this) {
+            if (!servlets.add(model)) {
+                return;
+            }
             if (started.get()) {
                 doStart(model);
             }
         }
+        modelChanged(false);
     }
 
-    public synchronized void removeServlet(ServletModel model) throws ServletException {
-        if (servlets.remove(model)) {
-            destroyHandler();
+    public void removeServlet(ServletModel model) throws ServletException {
+        synchronized (this) {
+            if (!servlets.remove(model)) {
+                return;
+            }
             if (started.get()) {
                 doStop(model);
             }
         }
+        modelChanged(model.getServlet() != null);
+    }
+
+    /**
+     * Maps a servlet to the patterns of the remapped model. The paths of the
+     * new patterns are added before the ones of the old patterns are
+     * removed. The next deployment shares the servlet instance with the
+     * current one, so it is neither destroyed nor initialized again.
+     */
+    public void remapServlet(ServletModel registered, ServletModel model) throws ServletException {
+        synchronized (this) {
+            int index = servlets.indexOf(registered);
+            if (index < 0) {
+                throw new IllegalStateException("Servlet " + registered + " is not registered");
+            }
+            servlets.set(index, model);
+            if (started.get()) {
+                List<String> patterns = Arrays.asList(model.getUrlPatterns());
+                for (String pattern : patterns) {
+                    addPath(pattern);
+                }
+                for (String pattern : registered.getUrlPatterns()) {
+                    if (!patterns.contains(pattern)) {
+                        removePath(pattern);
+                    }
+                }
+            }
+        }
+        modelChanged(false);
     }
 
-    public synchronized void addWelcomeFile(WelcomeFileModel welcomeFile) throws ServletException {
+    public void addWelcomeFile(WelcomeFileModel welcomeFile) throws ServletException {
         if (welcomeFiles.add(welcomeFile)) {
-            destroyHandler();
+            modelChanged(false);
         }
     }
 
-    public synchronized void removeWelcomeFile(WelcomeFileModel welcomeFile) throws ServletException {
+    public void removeWelcomeFile(WelcomeFileModel welcomeFile) throws ServletException {
         if (welcomeFiles.remove(welcomeFile)) {
-            destroyHandler();
+            modelChanged(false);
         }
     }
 
     public void addErrorPage(ErrorPageModel model) throws ServletException {
         if (errorPages.add(model)) {
-            destroyHandler();
+            modelChanged(false);
         }
     }
 
     public void removeErrorPage(ErrorPageModel model) throws ServletException {
         if (errorPages.remove(model)) {
-            destroyHandler();
+            modelChanged(false);
         }
     }
 
     public void addEventListener(EventListenerModel model) throws ServletException {
         if (eventListeners.add(model)) {
-            destroyHandler();
+            modelChanged(false);
         }
     }
 
     public void removeEventListener(EventListenerModel model) throws ServletException {
         if (eventListeners.remove(model)) {
-            destroyHandler();
+            modelChanged(true);
         }
     }
 
     public void addFilter(FilterModel model) throws ServletException{
         if (filters.add(model)) {
-            destroyHandler();
+            modelChanged(false);
         }
     }
 
     public void removeFilter(FilterModel model) throws ServletException{
         if (filters.remove(model)) {
-            destroyHandler();
+            modelChanged(model.getFilter() != null);
+        }
+    }
+
+    /**
+     * Replaces the filter by the remapped model, keeping its position. The
+     * next deployment shares the filter instance with the current one.
+     */
+    public void remapFilter(FilterModel registered, FilterModel model) throws ServletException {
+        synchronized (this) {
+            int index = filters.indexOf(registered);
+            if (index < 0) {
+                throw new IllegalStateException("Filter " + registered + " is not registered");
+            }
+            filters.set(index, model);
         }
+        modelChanged(false);
     }
 
     public void addSecurityConstraintMapping(SecurityConstraintMappingModel model) throws ServletException {
         if (securityConstraintMappings.add(model)) {
-            destroyHandler();
+            modelChanged(false);
         }
     }
 
     public void removeSecurityConstraintMapping(SecurityConstraintMappingModel model) throws ServletException {
         if (securityConstraintMappings.remove(model)) {
-            destroyHandler();
+            modelChanged(false);
         }
     }
 
     public void addContainerInitializerModel(ContainerInitializerModel model) throws ServletException {
         if (containerInitializers.add(model)) {
-            destroyHandler();
+            modelChanged(false);
         }
     }
 
     public void removeContainerInitializerModel(ContainerInitializerModel model) throws ServletException {
         if (containerInitializers.remove(model)) {
-            destroyHandler();
+            modelChanged(false);
         }
     }
 
@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.undertow.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the deployment serving the requests of a context and counts the
+ * requests in flight per deployment.
+ * <p>
+ * A replaced deployment is retired: it keeps serving the requests that
+ * acquired it before and must be undeployed once the last of them is
+ * released. A retired deployment is never handed out again, so no request
+ * gets a deployment whose undeployment has started. The methods returning
+ * an entry to undeploy return it exactly once.
+ *
+ * @param <T> type of the deployment
+ */
+final class DeploymentSlot<T> {
+
+    /**
+     * Set in the user count of a retired entry.
+     */
+    private static final int RETIRED = Integer.MIN_VALUE;
+
+    private volatile Entry<T> current;
+
+    /**
+     * A deployment and the model generation it was built from.
+     */
+    static final class Entry<T> {
+        private final T deployment;
+        private final long generation;
+        /**
+         * Requests in flight, with {@link #RETIRED} set once replaced.
+         */
+        private final AtomicInteger users = new AtomicInteger();
+
+        private Entry(T deployment, long generation) {
+            this.deployment = deployment;
+            this.generation = generation;
+        }
+
+        T getDeployment() {
+            return deployment;
+        }
+
+        long getGeneration() {
+            return generation;
+        }
+
+        private boolean acquire() {
+            for (;;) {
+                int count = users.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (users.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean release() {
+            return users.decrementAndGet() == RETIRED;
+        }
+
+        private boolean retire() {
+            for (;;) {
+                int count = users.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (users.compareAndSet(count, count | RETIRED)) {
+                    return count == 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the current entry, not acquired, or null if none
+     */
+    Entry<T> get() {
+        return current;
+    }
+
+    /**
+     * Acquires the current entry for a request, which must release it once
+     * completed.
+     *
+     * @return the acquired entry, or null if none
+     */
+    Entry<T> acquire() {
+        for (;;) {
+            Entry<T> entry = current;
+            // a retired entry has been replaced already
+            if (entry == null || entry.acquire()) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * @param entry acquired entry, may be null
+     * @return true if the entry was retired and this was its last request, it
+     *         must be undeployed then
+     */
+    boolean release(Entry<T> entry) {
+        return entry != null && entry.release();
+    }
+
+    /**
+     * Serves the following requests with the given deployment and retires
+     * the current one. Replacements must not run concurrently.
+     *
+     * @return the retired entry if no request uses it, it must be undeployed
+     *         then, or null
+     */
+    Entry<T> replace(T deployment, long generation) {
+        return swap(new Entry<>(deployment, generation));
+    }
+
+    /**
+     * Retires the current entry, the following requests find no deployment.
+     *
+     * @return the retired entry if no request uses it, it must be undeployed
+     *         then, or null
+     */
+    Entry<T> clear() {
+        return swap(null);
+    }
+
+    private Entry<T> swap(Entry<T> next) {
+        Entry<T> replaced = current;
+        current = next;
+        return replaced != null && replaced.retire() ? replaced : null;
+    }
+
+}
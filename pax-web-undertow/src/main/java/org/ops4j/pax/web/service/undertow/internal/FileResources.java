@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.undertow.internal;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.IoUtils;
+
+import io.undertow.server.handlers.resource.FileResource;
+import io.undertow.server.handlers.resource.FileResourceManager;
+import io.undertow.server.handlers.resource.Resource;
+
+/**
+ * Resources of a context backed by files, served as {@link FileResource},
+ * which transfers the content straight from the file channel. The files of a
+ * directory share one {@link FileResourceManager}.
+ */
+class FileResources {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileResources.class);
+
+    /**
+     * Files larger than this are transferred from the file channel, smaller
+     * ones are copied.
+     */
+    private final long transferMinSize;
+    private final ConcurrentMap<File, FileResourceManager> managers = new ConcurrentHashMap<>();
+
+    FileResources(long transferMinSize) {
+        this.transferMinSize = transferMinSize;
+    }
+
+    /**
+     * @return the resource of a regular file, null if the url is no file url
+     *         or no regular file
+     */
+    Resource getResource(URL url, String path) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            final File file = new File(url.toURI());
+            if (file.isFile()) {
+                return new FileResource(file, getManager(file.getParentFile()), path);
+            }
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            LOG.debug("Serving {} as url resource", url, e);
+        }
+        return null;
+    }
+
+    FileResourceManager getManager(File directory) {
+        return managers.computeIfAbsent(directory, base -> new FileResourceManager(base, transferMinSize));
+    }
+
+    /**
+     * Closes the resource managers, files served later get new ones.
+     */
+    void clear() {
+        for (FileResourceManager manager : managers.values()) {
+            IoUtils.safeClose(manager);
+        }
+        managers.clear();
+    }
+
+}
@@ -19,7 +19,9 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.io.IOException;
+import java.util.Date;
 import java.util.regex.Matcher;
 
 import io.undertow.server.HttpHandler;
@@ -30,6 +32,11 @@ import io.undertow.server.handlers.resource.ResourceHandler;
 import io.undertow.server.handlers.resource.ResourceManager;
 import io.undertow.servlet.handlers.ServletRequestContext;
 import io.undertow.servlet.spec.HttpServletRequestImpl;
+import io.undertow.util.CanonicalPathUtils;
+import io.undertow.util.ETag;
+import org.ops4j.pax.web.service.spi.util.ByteRanges;
+import org.ops4j.pax.web.service.spi.util.CompressedResourceCache;
+import org.osgi.framework.Bundle;
 
 /**
  * @author Guillaume Nodet
@@ -40,9 +47,18 @@ public class ResourceServlet extends HttpServlet implements ResourceManager {
     private final HttpHandler handler;
     private final String alias;
     private final String name;
+    private final CompressedResourceCache compression;
 
     public ResourceServlet(final Context context, String alias, String name) {
+        this(context, alias, name, null);
+    }
+
+    /**
+     * @param compression compressed variants or null to always serve resources uncompressed
+     */
+    public ResourceServlet(final Context context, String alias, String name, CompressedResourceCache compression) {
         this.context = context;
+        this.compression = compression;
         this.alias = alias;
         if ("/".equals(name)) {
             this.name = "";
@@ -64,6 +80,12 @@ public class ResourceServlet extends HttpServlet implements ResourceManager {
             throw new IllegalStateException("Request is not an instance of " + HttpServletRequestImpl.class.getName());
         }
         HttpServerExchange exchange = ((HttpServletRequestImpl) request).getExchange();
+        if (writeRanges(exchange, request, resp)) {
+            return;
+        }
+        if (compression != null && writeVariant(exchange, request, resp)) {
+            return;
+        }
         try {
             handler.handleRequest(exchange);
         } catch (IOException | ServletException e) {
@@ -73,8 +95,99 @@ public class ResourceServlet extends HttpServlet implements ResourceManager {
         }
     }
 
+    /**
+     * Serves multiple ranges of the requested resource as multipart/byteranges. Single ranges are handled by
+     * the {@link ResourceHandler} already.
+     *
+     * @return true if a partial response has been sent
+     */
+    private boolean writeRanges(HttpServerExchange exchange, HttpServletRequest request, HttpServletResponse resp) throws IOException {
+        final String range = request.getHeader(ByteRanges.RANGE);
+        if (range == null || range.indexOf(',') < 0
+                || (!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod()))) {
+            return false;
+        }
+        final String mapping = getMapping(CanonicalPathUtils.canonicalize(exchange.getRelativePath()));
+        final Resource resource = context.getResource(mapping);
+        if (resource == null || resource.isDirectory() || resource.getContentLength() == null) {
+            return false;
+        }
+        final ETag eTag = resource.getETag();
+        final Date lastModified = resource.getLastModified();
+        final File file = resource.getFile();
+        return ByteRanges.serve(request, resp, resource.getContentLength(),
+                eTag == null ? null : eTag.toString(), lastModified == null ? -1 : lastModified.getTime(),
+                getServletContext().getMimeType(mapping),
+                file != null ? ByteRanges.source(file) : ByteRanges.source(resource.getUrl()));
+    }
+
+    /**
+     * Serves the compressed variant of the requested resource if the client accepts one.
+     *
+     * @return true if the variant has been served
+     */
+    private boolean writeVariant(HttpServerExchange exchange, HttpServletRequest request, HttpServletResponse resp) throws IOException {
+        boolean head = "HEAD".equals(request.getMethod());
+        if ((!head && !"GET".equals(request.getMethod())) || request.getHeader(ByteRanges.RANGE) != null) {
+            // ranges are served from the identity encoding
+            return false;
+        }
+        final String mapping = getMapping(CanonicalPathUtils.canonicalize(exchange.getRelativePath()));
+        final CompressedResourceCache.Lookup lookup = path -> {
+            try {
+                Resource resource = context.getResource(path);
+                return resource == null || resource.isDirectory() ? null : resource.getUrl();
+            } catch (IOException e) {
+                return null;
+            }
+        };
+        final String mimeType = getServletContext().getMimeType(mapping);
+        if (!CompressedResourceCache.isCompressible(mimeType)) {
+            return false;
+        }
+        final Resource resource = context.getResource(mapping);
+        if (resource == null || resource.isDirectory()) {
+            return false;
+        }
+        resp.addHeader(CompressedResourceCache.VARY, CompressedResourceCache.ACCEPT_ENCODING);
+        Bundle bundle = context.getContextModel().getBundle();
+        CompressedResourceCache.Variant variant = compression.find(mapping, resource.getUrl(),
+                bundle == null ? 0 : bundle.getLastModified(),
+                request.getHeader(CompressedResourceCache.ACCEPT_ENCODING), lookup);
+        if (variant == null) {
+            return false;
+        }
+        // validators of the uncompressed response, the entity tag tells the encoding
+        final Date lastModified = resource.getLastModified();
+        final long modified = lastModified == null ? -1 : lastModified.getTime();
+        final ETag resourceETag = resource.getETag();
+        final String base = resourceETag != null ? resourceETag.toString()
+                : modified != -1 ? "\"" + modified + "\"" : null;
+        final String eTag = base == null ? null : variant.getETag(base);
+        if (CompressedResourceCache.checkPreconditions(request, resp, eTag, modified)) {
+            return true;
+        }
+        if (eTag != null) {
+            resp.setHeader(CompressedResourceCache.ETAG, eTag);
+        }
+        if (modified != -1) {
+            resp.setDateHeader(CompressedResourceCache.LAST_MODIFIED, modified);
+        }
+        resp.setContentType(mimeType);
+        resp.setHeader(CompressedResourceCache.CONTENT_ENCODING, variant.getEncoding());
+        resp.setContentLength(variant.getContent().length);
+        if (!head) {
+            resp.getOutputStream().write(variant.getContent());
+        }
+        return true;
+    }
+
     @Override
     public Resource getResource(String path) throws IOException {
+        return context.getResource(getMapping(path));
+    }
+
+    private String getMapping(String path) {
         String contextName = context.getContextModel().getContextName();
         if (contextName.isEmpty()) {
             contextName = "/";
@@ -95,7 +208,7 @@ public class ResourceServlet extends HttpServlet implements ResourceManager {
                         Matcher.quoteReplacement(name));
             }
         }
-        return context.getResource(mapping);
+        return mapping;
     }
 
     @Override
@@ -113,6 +226,14 @@ public class ResourceServlet extends HttpServlet implements ResourceManager {
 
     }
 
+    @Override
+    public void destroy() {
+        if (compression != null) {
+            compression.clear();
+        }
+        super.destroy();
+    }
+
     @Override
     public void close() throws IOException {
 
@@ -16,21 +16,29 @@
  package org.ops4j.pax.web.service.undertow.internal;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.KeyStore;
 import java.security.SecureRandom;
 import java.security.Security;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
@@ -45,6 +53,8 @@ import org.ops4j.pax.web.service.spi.LifeCycle;
 import org.ops4j.pax.web.service.spi.ServerController;
 import org.ops4j.pax.web.service.spi.ServerEvent;
 import org.ops4j.pax.web.service.spi.ServerListener;
+import org.ops4j.pax.web.service.spi.metrics.WebMetrics;
+import org.ops4j.pax.web.service.spi.metrics.WebMetricsRegistry;
 import org.ops4j.pax.web.service.spi.model.ContainerInitializerModel;
 import org.ops4j.pax.web.service.spi.model.ContextModel;
 import org.ops4j.pax.web.service.spi.model.ErrorPageModel;
@@ -53,22 +63,37 @@ import org.ops4j.pax.web.service.spi.model.FilterModel;
 import org.ops4j.pax.web.service.spi.model.SecurityConstraintMappingModel;
 import org.ops4j.pax.web.service.spi.model.ServletModel;
 import org.ops4j.pax.web.service.spi.model.WelcomeFileModel;
-import org.osgi.framework.Bundle;
-import org.osgi.framework.FrameworkUtil;
-import org.osgi.framework.wiring.BundleWiring;
+import org.ops4j.pax.web.service.spi.util.AsyncRequestLog;
+import org.ops4j.pax.web.service.spi.util.CompressedResourceCache;
+import org.ops4j.pax.web.service.spi.util.ConfigurationChanges;
+import org.ops4j.pax.web.service.spi.util.VirtualThreads;
 import org.osgi.service.http.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xnio.ChannelListener;
+import org.xnio.ChannelListeners;
+import org.xnio.IoUtils;
+import org.xnio.Option;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.StreamConnection;
 import org.xnio.XnioWorker;
+import org.xnio.channels.AcceptingChannel;
+import org.xnio.ssl.SslConnection;
 
 import io.undertow.Handlers;
-import io.undertow.Undertow;
+import io.undertow.UndertowOptions;
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.protocols.ssl.UndertowXnioSsl;
 import io.undertow.security.idm.IdentityManager;
+import io.undertow.server.DefaultByteBufferPool;
 import io.undertow.server.HttpHandler;
+import io.undertow.server.OpenListener;
 import io.undertow.server.handlers.PathHandler;
-import io.undertow.server.handlers.accesslog.AccessLogHandler;
-import io.undertow.server.handlers.accesslog.AccessLogReceiver;
-import io.undertow.server.handlers.accesslog.DefaultAccessLogReceiver;
+import io.undertow.server.protocol.http.AlpnOpenListener;
+import io.undertow.server.protocol.http.HttpOpenListener;
+import io.undertow.server.protocol.http2.Http2OpenListener;
+import io.undertow.server.protocol.http2.Http2UpgradeHandler;
 
 /**
  * @author Guillaume Nodet
@@ -87,7 +112,33 @@ public class ServerControllerImpl implements ServerController {
 
     private IdentityManager identityManager;
     private final PathHandler path = Handlers.path();
-    private Undertow server;
+    /**
+     * The worker shared by the listeners and the request log, created when
+     * the server starts.
+     */
+    private XnioWorker worker;
+    private ByteBufferPool buffers;
+    private final List<AcceptingChannel<? extends StreamConnection>> channels = new ArrayList<>();
+    /**
+     * The undertow configuration the listeners were opened with.
+     */
+    private Map<String, String> listenerConfig;
+    /**
+     * The handler the listeners delegate to, replaced when the request log
+     * configuration changes.
+     */
+    private volatile HttpHandler rootHandler;
+
+    private AsyncRequestLog requestLog;
+    /**
+     * Executor the servlet requests are dispatched to when they run on
+     * virtual threads, null for the worker threads.
+     */
+    private volatile ExecutorService requestExecutor;
+    /**
+     * Registry of the request metrics, null if disabled.
+     */
+    private WebMetricsRegistry metrics;
 
     private final ConcurrentMap<HttpContext, Context> contextMap = new ConcurrentHashMap<>();
 
@@ -98,6 +149,9 @@ public class ServerControllerImpl implements ServerController {
     public synchronized void start() {
         LOG.debug("Starting server [{}]", this);
         assertState(State.Stopped);
+        if (requestExecutor == null) {
+            requestExecutor = VirtualThreads.newExecutor(configuration, "undertow-request-");
+        }
         doStart();
         state = State.Started;
         notifyListeners(ServerEvent.STARTED);
@@ -111,6 +165,10 @@ public class ServerControllerImpl implements ServerController {
             doStop();
             state = State.Stopped;
         }
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+            requestExecutor = null;
+        }
         notifyListeners(ServerEvent.STOPPED);
     }
 
@@ -121,8 +179,12 @@ public class ServerControllerImpl implements ServerController {
             throw new IllegalArgumentException("configuration == null");
         }
         configuration = config;
+        if (metrics == null && Boolean.TRUE.equals(config.isMetricsEnabled())) {
+            metrics = new WebMetricsRegistry();
+        }
         switch (state) {
             case Unconfigured:
+                requestExecutor = VirtualThreads.newExecutor(configuration, "undertow-request-");
                 state = State.Stopped;
                 notifyListeners(ServerEvent.CONFIGURED);
                 break;
@@ -133,6 +195,29 @@ public class ServerControllerImpl implements ServerController {
         }
     }
 
+    @Override
+    public synchronized boolean reconfigure(final Configuration config) {
+        LOG.debug("Reconfiguring server [{}] -> [{}] ", this, config);
+        if (state != State.Started) {
+            return false;
+        }
+        final Configuration previous = configuration;
+        configuration = config;
+        // the worker keeps running, so requests in flight are not dropped
+        if (ConfigurationChanges.threadPool(previous, config)) {
+            resizeWorker();
+        }
+        if (ConfigurationChanges.connectors(previous, config)) {
+            closeListeners();
+            openListeners();
+        }
+        if (ConfigurationChanges.requestLog(previous, config)) {
+            rootHandler = createRootHandler();
+        }
+        notifyListeners(ServerEvent.CONFIGURED);
+        return true;
+    }
+
     @Override
     public void addListener(ServerListener listener) {
         if (listener == null) {
@@ -161,6 +246,11 @@ public class ServerControllerImpl implements ServerController {
         return configuration;
     }
 
+    @Override
+    public WebMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public synchronized Integer getHttpPort() {
         Configuration config = configuration;
@@ -186,10 +276,8 @@ public class ServerControllerImpl implements ServerController {
     }
 
     void doStart() {
-        Undertow.Builder builder = Undertow.builder();
+        Map<String, String> config = new LinkedHashMap<>();
 
-        HttpHandler rootHandler = path;
-        
         // PAXWEB-193 suggested we should open this up for external
         // configuration
         URL undertowResource = configuration.getConfigurationURL();
@@ -202,7 +290,6 @@ public class ServerControllerImpl implements ServerController {
                 try (InputStream is = undertowResource.openStream()) {
                     props.load(is);
                 }
-                Map<String, String> config = new LinkedHashMap<>();
                 for (Map.Entry<Object, Object> entry : props.entrySet()) {
                     config.put(entry.getKey().toString(), entry.getValue().toString());
                 }
@@ -229,46 +316,33 @@ public class ServerControllerImpl implements ServerController {
             }
         }
         
-        
-        
-        if (configuration.isLogNCSAFormatEnabled()) {
-            
-            String logNCSADirectory = configuration.getLogNCSADirectory();
-            String logNCSAFormat = configuration.getLogNCSAFormat();
-            
-            Bundle bundle = FrameworkUtil.getBundle(ServerControllerImpl.class);
-            ClassLoader loader = bundle.adapt(BundleWiring.class).getClassLoader();
-            XnioWorker worker = UndertowUtil.createWorker(loader);
-            
-//            String logNameSuffix = logNCSAFormat.substring(logNCSAFormat.lastIndexOf("."));
-//            String logBaseName = logNCSAFormat.substring(0, logNCSAFormat.lastIndexOf("."));
-            
-            AccessLogReceiver logReceiver = DefaultAccessLogReceiver
-                                                .builder()
-                                                .setLogWriteExecutor(worker)
-                                                .setOutputDirectory(new File(logNCSADirectory).toPath())
-                                                .setLogBaseName("request.")
-                                                .setLogNameSuffix("log")
-                                                .setRotate(true)
-                                                .build(); 
-            
-            String format;
-            if (configuration.isLogNCSAExtended()) {
-                format = "combined";
-            } else {
-                format = "common";
-            }
-            
-            //  String format = "%a - - [%t] \"%m %U %H\" %s ";
-            //TODO: still need to find out how to add cookie etc. 
-            
-            rootHandler = new AccessLogHandler(path, logReceiver,format, AccessLogHandler.class.getClassLoader());
+        try {
+            worker = UndertowUtil.createWorker(null, workerOptions());
+        } catch (IOException e) {
+            throw new RuntimeException("Exception while starting Undertow", e);
         }
+        buffers = new DefaultByteBufferPool(directBuffers(), bufferSize(), -1, 4);
+        rootHandler = createRootHandler();
+        listenerConfig = config;
+        openListeners();
+    }
+
+    /**
+     * Opens the http and https listeners on all listening addresses, handing
+     * the requests to the current root handler.
+     */
+    private void openListeners() {
+        HttpHandler handler = exchange -> rootHandler.handleRequest(exchange);
+        
         
         for (String address : configuration.getListeningAddresses()) {
             if (configuration.isHttpEnabled()) {
                 LOG.info("Starting undertow http listener on " + address + ":" + configuration.getHttpPort());
-                builder.addHttpListener(configuration.getHttpPort(), address);
+                try {
+                    openListener(address, configuration.getHttpPort(), listenerOptions("http"), null, handler);
+                } catch (IOException e) {
+                    throw new RuntimeException("Exception while starting Undertow", e);
+                }
             }
             if (configuration.isHttpSecureEnabled()) {
                 try {
@@ -300,16 +374,210 @@ public class ServerControllerImpl implements ServerController {
                     context.init(keyManagers, trustManagers, random);
 
                     LOG.info("Starting undertow https listener on " + address + ":" + configuration.getHttpSecurePort());
-                    builder.addHttpsListener(configuration.getHttpSecurePort(), address, context);
+                    openListener(address, configuration.getHttpSecurePort(), listenerOptions("https"),
+                            context, handler);
                 } catch (Exception e) {
                     throw new IllegalArgumentException("Unable to build SSL context", e);
                 }
             }
         }
-        
-        builder.setHandler(rootHandler);
-        server = builder.build();
-        server.start();
+    }
+
+    /**
+     * Closes the listeners, connections accepted by them stay open.
+     */
+    private void closeListeners() {
+        for (AcceptingChannel<? extends StreamConnection> channel : channels) {
+            IoUtils.safeClose(channel);
+        }
+        channels.clear();
+    }
+
+    /**
+     * Resizes the task pool of the running worker to the thread settings.
+     */
+    private void resizeWorker() {
+        final OptionMap options = workerOptions();
+        try {
+            worker.setOption(Options.WORKER_TASK_MAX_THREADS, options.get(Options.WORKER_TASK_MAX_THREADS, 0));
+            worker.setOption(Options.WORKER_TASK_CORE_THREADS, options.get(Options.WORKER_TASK_CORE_THREADS, 0));
+            if (options.contains(Options.WORKER_TASK_KEEPALIVE)) {
+                worker.setOption(Options.WORKER_TASK_KEEPALIVE, options.get(Options.WORKER_TASK_KEEPALIVE, 0));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Exception while resizing the Undertow worker", e);
+        }
+    }
+
+    /**
+     * Worker options from the server thread settings, with the defaults of
+     * {@link io.undertow.Undertow}.
+     */
+    OptionMap workerOptions() {
+        final int ioThreads = configuration.getServerIoThreads() != null
+                ? configuration.getServerIoThreads() : Math.max(Runtime.getRuntime().availableProcessors(), 2);
+        final int maxThreads = configuration.getServerMaxThreads() != null
+                ? configuration.getServerMaxThreads() : ioThreads * 8;
+        final int minThreads = configuration.getServerMinThreads() != null
+                ? Math.min(configuration.getServerMinThreads(), maxThreads) : maxThreads;
+        final OptionMap.Builder options = OptionMap.builder()
+                .set(Options.WORKER_NAME, "undertow")
+                .set(Options.WORKER_IO_THREADS, ioThreads)
+                .set(Options.CONNECTION_HIGH_WATER, 1000000)
+                .set(Options.CONNECTION_LOW_WATER, 1000000)
+                .set(Options.WORKER_TASK_CORE_THREADS, minThreads)
+                .set(Options.WORKER_TASK_MAX_THREADS, maxThreads)
+                .set(Options.TCP_NODELAY, true)
+                .set(Options.CORK, true);
+        if (configuration.getServerIdleTimeout() != null) {
+            options.set(Options.WORKER_TASK_KEEPALIVE, configuration.getServerIdleTimeout());
+        }
+        return options.getMap();
+    }
+
+    private int bufferSize() {
+        if (configuration.getServerBufferSize() != null) {
+            return configuration.getServerBufferSize();
+        }
+        // same defaults as io.undertow.Undertow, depending on the heap size
+        final long maxMemory = Runtime.getRuntime().maxMemory();
+        if (maxMemory < 64 * 1024 * 1024) {
+            return 512;
+        } else if (maxMemory < 128 * 1024 * 1024) {
+            return 1024;
+        }
+        return 1024 * 16 - 20;
+    }
+
+    private boolean directBuffers() {
+        if (configuration.getServerDirectBuffers() != null) {
+            return configuration.getServerDirectBuffers();
+        }
+        return Runtime.getRuntime().maxMemory() >= 64 * 1024 * 1024;
+    }
+
+    /**
+     * Options of the http or https listeners: the socket defaults of
+     * {@link io.undertow.Undertow}, overridden by the
+     * <code>&lt;type&gt;.&lt;option&gt;</code> entries of the undertow
+     * configuration, naming a field of {@link Options} or
+     * {@link UndertowOptions}, e.g. <code>https.BACKLOG=2000</code>.
+     */
+    OptionMap listenerOptions(String type) {
+        final OptionMap.Builder options = OptionMap.builder()
+                .set(Options.WORKER_IO_THREADS, worker.getIoThreadCount())
+                .set(Options.TCP_NODELAY, true)
+                .set(Options.REUSE_ADDRESSES, true)
+                .set(Options.BALANCING_TOKENS, 1)
+                .set(Options.BALANCING_CONNECTIONS, 2)
+                .set(Options.BACKLOG, 1000)
+                .set(UndertowOptions.BUFFER_PIPELINED_DATA, true);
+        if (Boolean.TRUE.equals(configuration.isHttp2Enabled())) {
+            options.set(UndertowOptions.ENABLE_HTTP2, true);
+            if (configuration.getHttp2MaxConcurrentStreams() != null) {
+                options.set(UndertowOptions.HTTP2_SETTINGS_MAX_CONCURRENT_STREAMS,
+                        configuration.getHttp2MaxConcurrentStreams());
+            }
+            if (configuration.getHttp2InitialWindowSize() != null) {
+                options.set(UndertowOptions.HTTP2_SETTINGS_INITIAL_WINDOW_SIZE,
+                        configuration.getHttp2InitialWindowSize());
+            }
+        }
+        final String prefix = type + ".";
+        for (Map.Entry<String, String> entry : listenerConfig.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                final String name = entry.getKey().substring(prefix.length());
+                options.parse(option(name), entry.getValue(), getClass().getClassLoader());
+            }
+        }
+        return options.getMap();
+    }
+
+    private Option<?> option(String name) {
+        final ClassLoader loader = getClass().getClassLoader();
+        try {
+            return Option.fromString(Options.class.getName() + "." + name, loader);
+        } catch (IllegalArgumentException e) {
+            return Option.fromString(UndertowOptions.class.getName() + "." + name, loader);
+        }
+    }
+
+    /**
+     * Opens a listener the same way {@link io.undertow.Undertow} does: with
+     * {@link UndertowOptions#ENABLE_HTTP2} secure listeners negotiate h2 with
+     * ALPN and plain listeners accept h2c upgrades.
+     */
+    private void openListener(String address, int port, OptionMap options, SSLContext sslContext,
+            HttpHandler handler) throws IOException {
+        final boolean http2 = options.get(UndertowOptions.ENABLE_HTTP2, false);
+        final HttpOpenListener httpOpenListener = new HttpOpenListener(buffers, options);
+        final OpenListener openListener;
+        if (http2 && sslContext != null && alpnAvailable()) {
+            final AlpnOpenListener alpn = new AlpnOpenListener(buffers, options, "http/1.1", httpOpenListener);
+            final Http2OpenListener http2OpenListener = new Http2OpenListener(buffers, options);
+            alpn.addProtocol(Http2OpenListener.HTTP2, http2OpenListener, 10);
+            alpn.addProtocol(Http2OpenListener.HTTP2_14, http2OpenListener, 7);
+            openListener = alpn;
+            openListener.setRootHandler(handler);
+        } else if (http2 && sslContext == null) {
+            openListener = httpOpenListener;
+            openListener.setRootHandler(new Http2UpgradeHandler(handler));
+        } else {
+            if (http2) {
+                LOG.warn("HTTP/2 enabled, but ALPN is not available, the https listener on " + address + ":" + port
+                        + " uses HTTP/1.1 only");
+            }
+            openListener = httpOpenListener;
+            openListener.setRootHandler(handler);
+        }
+        final InetSocketAddress socketAddress = new InetSocketAddress(Inet4Address.getByName(address), port);
+        final AcceptingChannel<? extends StreamConnection> channel;
+        if (sslContext == null) {
+            final ChannelListener<AcceptingChannel<StreamConnection>> acceptListener = ChannelListeners
+                    .openListenerAdapter(openListener);
+            channel = worker.createStreamConnectionServer(socketAddress, acceptListener, options);
+        } else {
+            final ChannelListener<AcceptingChannel<SslConnection>> acceptListener = ChannelListeners
+                    .openListenerAdapter(openListener);
+            final UndertowXnioSsl xnioSsl = new UndertowXnioSsl(UndertowUtil.getXnio(null),
+                    OptionMap.create(Options.USE_DIRECT_BUFFERS, directBuffers()), sslContext);
+            channel = xnioSsl.createSslConnectionServer(worker, socketAddress, acceptListener, options);
+        }
+        channel.resumeAccepts();
+        channels.add(channel);
+    }
+
+    /**
+     * On Java 8 ALPN needs the alpn-boot library on the boot class path.
+     */
+    private static boolean alpnAvailable() {
+        try {
+            Class.forName("org.eclipse.jetty.alpn.ALPN", false, AlpnOpenListener.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the handler of all requests, logging them if NCSA logging is
+     *         enabled
+     */
+    private HttpHandler createRootHandler() {
+        stopRequestLog();
+        if (configuration.isLogNCSAFormatEnabled()) {
+            requestLog = new AsyncRequestLog(configuration);
+            requestLog.start();
+            return new AsyncAccessLogHandler(path, requestLog);
+        }
+        return path;
+    }
+
+    private void stopRequestLog() {
+        if (requestLog != null) {
+            requestLog.stop();
+            requestLog = null;
+        }
     }
 
     private URL loadResource(String resource) throws MalformedURLException {
@@ -358,7 +626,16 @@ public class ServerControllerImpl implements ServerController {
     }
 
     void doStop() {
-        server.stop();
+        closeListeners();
+        stopRequestLog();
+        if (worker != null) {
+            worker.shutdownNow();
+            worker = null;
+        }
+        if (buffers != null) {
+            buffers.close();
+            buffers = null;
+        }
     }
 
     @Override
@@ -395,9 +672,22 @@ public class ServerControllerImpl implements ServerController {
         return contextMap.get(httpContext);
     }
 
+    /**
+     * Runs a request on the current request executor, contexts keep this
+     * method as their executor across a restart of the server.
+     */
+    private void executeRequest(Runnable request) {
+        final ExecutorService executor = requestExecutor;
+        if (executor == null) {
+            throw new RejectedExecutionException("Server is stopped");
+        }
+        executor.execute(request);
+    }
+
     private Context findOrCreateContext(final ContextModel contextModel) {
         NullArgumentException.validateNotNull(contextModel, "contextModel");
-        Context newCtx = new Context(identityManager, path, contextModel);
+        Context newCtx = new Context(identityManager, path, contextModel,
+                requestExecutor != null ? this::executeRequest : null, metrics);
         Context oldCtx = contextMap.putIfAbsent(contextModel.getHttpContext(), newCtx);
         return oldCtx != null ? oldCtx : newCtx;
     }
@@ -426,6 +716,20 @@ public class ServerControllerImpl implements ServerController {
         }
     }
 
+    @Override
+    public void remapServlet(ServletModel registered, ServletModel model) {
+        assertNotState(State.Unconfigured);
+        try {
+            final Context context = findContext(registered.getContextModel());
+            if (context == null) {
+                throw new IllegalStateException("Cannot find the context of servlet " + registered);
+            }
+            context.remapServlet(registered, model);
+        } catch (ServletException e) {
+            throw new RuntimeException("Unable to remap servlet", e);
+        }
+    }
+
     @Override
     public void addEventListener(EventListenerModel model) {
         assertNotState(State.Unconfigured);
@@ -470,6 +774,17 @@ public class ServerControllerImpl implements ServerController {
         }
     }
 
+    @Override
+    public void remapFilter(FilterModel registered, FilterModel model) {
+        assertNotState(State.Unconfigured);
+        try {
+            final Context context = findOrCreateContext(registered.getContextModel());
+            context.remapFilter(registered, model);
+        } catch (ServletException e) {
+            throw new RuntimeException("Unable to remap filter", e);
+        }
+    }
+
     @Override
     public void addErrorPage(ErrorPageModel model) {
         assertNotState(State.Unconfigured);
@@ -517,7 +832,7 @@ public class ServerControllerImpl implements ServerController {
     @Override
     public Servlet createResourceServlet(ContextModel contextModel, String alias, String name) {
         final Context context = findOrCreateContext(contextModel);
-        return new ResourceServlet(context, alias, name);
+        return new ResourceServlet(context, alias, name, CompressedResourceCache.create(configuration));
     }
 
     @Override
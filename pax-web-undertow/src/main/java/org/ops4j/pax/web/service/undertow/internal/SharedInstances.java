@@ -0,0 +1,361 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.undertow.internal;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Enumeration;
+import java.util.EventListener;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.Servlet;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import io.undertow.servlet.api.InstanceFactory;
+import io.undertow.servlet.util.ImmediateInstanceFactory;
+import io.undertow.servlet.util.ImmediateInstanceHandle;
+
+/**
+ * Servlet, filter and listener instances registered with a context.
+ * <p>
+ * All deployments of the context share these instances, and a deployment is
+ * started before the one it replaces is stopped. So an instance is
+ * initialized by the first deployment starting it and destroyed by the last
+ * one stopping it. The config an instance is initialized with always refers
+ * to the latest deployment.
+ */
+class SharedInstances {
+
+    /**
+     * Guarded by itself.
+     */
+    private final Map<Object, Shared> instances = new IdentityHashMap<>();
+
+    /**
+     * Lifecycle of an instance, from its initialization to its destruction.
+     */
+    private static final class Shared {
+        /**
+         * Guarded by the instances.
+         */
+        private int users;
+        private boolean initialized;
+        private volatile Object config;
+
+        /**
+         * @return true if the instance must be initialized
+         */
+        private synchronized boolean initialize() {
+            if (initialized) {
+                return false;
+            }
+            initialized = true;
+            return true;
+        }
+
+        private synchronized boolean isInitialized() {
+            return initialized;
+        }
+
+        private synchronized void failed() {
+            initialized = false;
+        }
+    }
+
+    InstanceFactory<Servlet> servlet(final Servlet servlet) {
+        return () -> new ImmediateInstanceHandle<>(new SharedServlet(servlet));
+    }
+
+    InstanceFactory<Filter> filter(final Filter filter) {
+        return () -> new ImmediateInstanceHandle<>(new SharedFilter(filter));
+    }
+
+    /**
+     * Only the context events of a {@link ServletContextListener} have a
+     * lifecycle, other listeners are used as they are.
+     */
+    InstanceFactory<? extends EventListener> listener(final EventListener listener) {
+        if (!(listener instanceof ServletContextListener)) {
+            return new ImmediateInstanceFactory<>(listener);
+        }
+        final Class<?>[] interfaces = interfaces(listener.getClass());
+        try {
+            Proxy.getProxyClass(listener.getClass().getClassLoader(), interfaces);
+        } catch (IllegalArgumentException e) {
+            // some interface is not visible to the listener class loader
+            return new ImmediateInstanceFactory<>(listener);
+        }
+        return () -> new ImmediateInstanceHandle<>((EventListener) Proxy.newProxyInstance(
+                listener.getClass().getClassLoader(), interfaces, new SharedListener(listener)));
+    }
+
+    private Shared acquire(Object instance, Object config) {
+        synchronized (instances) {
+            Shared shared = instances.get(instance);
+            if (shared == null) {
+                shared = new Shared();
+                instances.put(instance, shared);
+            }
+            shared.users++;
+            shared.config = config;
+            return shared;
+        }
+    }
+
+    /**
+     * @return true if the instance must be destroyed
+     */
+    private boolean release(Object instance, Shared shared) {
+        synchronized (instances) {
+            if (--shared.users > 0) {
+                return false;
+            }
+            instances.remove(instance);
+        }
+        return shared.isInitialized();
+    }
+
+    private static Class<?>[] interfaces(Class<?> clazz) {
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            collect(c, interfaces);
+        }
+        return interfaces.toArray(new Class<?>[interfaces.size()]);
+    }
+
+    private static void collect(Class<?> clazz, Set<Class<?>> interfaces) {
+        for (Class<?> i : clazz.getInterfaces()) {
+            if (interfaces.add(i)) {
+                collect(i, interfaces);
+            }
+        }
+    }
+
+    private final class SharedServlet implements Servlet {
+
+        private final Servlet servlet;
+        private Shared shared;
+
+        private SharedServlet(Servlet servlet) {
+            this.servlet = servlet;
+        }
+
+        @Override
+        public void init(ServletConfig config) throws ServletException {
+            shared = acquire(servlet, config);
+            if (shared.initialize()) {
+                try {
+                    servlet.init(new LatestServletConfig(shared));
+                } catch (ServletException | RuntimeException e) {
+                    shared.failed();
+                    release(servlet, shared);
+                    shared = null;
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public ServletConfig getServletConfig() {
+            return servlet.getServletConfig();
+        }
+
+        @Override
+        public void service(ServletRequest req, ServletResponse res) throws ServletException, IOException {
+            servlet.service(req, res);
+        }
+
+        @Override
+        public String getServletInfo() {
+            return servlet.getServletInfo();
+        }
+
+        @Override
+        public void destroy() {
+            Shared released = shared;
+            shared = null;
+            if (released != null && release(servlet, released)) {
+                servlet.destroy();
+            }
+        }
+    }
+
+    private final class SharedFilter implements Filter {
+
+        private final Filter filter;
+        private Shared shared;
+
+        private SharedFilter(Filter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public void init(FilterConfig config) throws ServletException {
+            shared = acquire(filter, config);
+            if (shared.initialize()) {
+                try {
+                    filter.init(new LatestFilterConfig(shared));
+                } catch (ServletException | RuntimeException e) {
+                    shared.failed();
+                    release(filter, shared);
+                    shared = null;
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            filter.doFilter(request, response, chain);
+        }
+
+        @Override
+        public void destroy() {
+            Shared released = shared;
+            shared = null;
+            if (released != null && release(filter, released)) {
+                filter.destroy();
+            }
+        }
+    }
+
+    private final class SharedListener implements InvocationHandler {
+
+        private final EventListener listener;
+        private Shared shared;
+
+        private SharedListener(EventListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == ServletContextListener.class) {
+                if ("contextInitialized".equals(method.getName())) {
+                    shared = acquire(listener, ((ServletContextEvent) args[0]).getServletContext());
+                    if (!shared.initialize()) {
+                        return null;
+                    }
+                    try {
+                        return invoke(method, args);
+                    } catch (Throwable t) {
+                        shared.failed();
+                        release(listener, shared);
+                        shared = null;
+                        throw t;
+                    }
+                }
+                Shared released = shared;
+                shared = null;
+                if (released == null || !release(listener, released)) {
+                    return null;
+                }
+            }
+            return invoke(method, args);
+        }
+
+        private Object invoke(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(listener, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static final class LatestServletConfig implements ServletConfig {
+
+        private final Shared shared;
+
+        private LatestServletConfig(Shared shared) {
+            this.shared = shared;
+        }
+
+        private ServletConfig config() {
+            return (ServletConfig) shared.config;
+        }
+
+        @Override
+        public String getServletName() {
+            return config().getServletName();
+        }
+
+        @Override
+        public ServletContext getServletContext() {
+            return config().getServletContext();
+        }
+
+        @Override
+        public String getInitParameter(String name) {
+            return config().getInitParameter(name);
+        }
+
+        @Override
+        public Enumeration<String> getInitParameterNames() {
+            return config().getInitParameterNames();
+        }
+    }
+
+    private static final class LatestFilterConfig implements FilterConfig {
+
+        private final Shared shared;
+
+        private LatestFilterConfig(Shared shared) {
+            this.shared = shared;
+        }
+
+        private FilterConfig config() {
+            return (FilterConfig) shared.config;
+        }
+
+        @Override
+        public String getFilterName() {
+            return config().getFilterName();
+        }
+
+        @Override
+        public ServletContext getServletContext() {
+            return config().getServletContext();
+        }
+
+        @Override
+        public String getInitParameter(String name) {
+            return config().getInitParameter(name);
+        }
+
+        @Override
+        public Enumeration<String> getInitParameterNames() {
+            return config().getInitParameterNames();
+        }
+    }
+
+}
@@ -32,15 +32,19 @@ public class UndertowUtil {
 
     public static XnioWorker createWorker(ClassLoader loader) {
         try {
-            if (loader == null) {
-                loader = Undertow.class.getClassLoader();
-            }
-            Xnio xnio = Xnio.getInstance(loader);
-            return xnio.createWorker(OptionMap.builder().set(Options.THREAD_DAEMON, true).getMap());
+            return createWorker(loader, OptionMap.builder().set(Options.THREAD_DAEMON, true).getMap());
         } catch (IOException ignore) {
             LOG.warn("Xnio Worker failed to be created!", ignore);
             return null;
         }
     }
 
+    public static XnioWorker createWorker(ClassLoader loader, OptionMap options) throws IOException {
+        return getXnio(loader).createWorker(options);
+    }
+
+    public static Xnio getXnio(ClassLoader loader) {
+        return Xnio.getInstance(loader != null ? loader : Undertow.class.getClassLoader());
+    }
+
 }
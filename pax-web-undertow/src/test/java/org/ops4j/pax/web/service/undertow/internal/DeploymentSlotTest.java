@@ -0,0 +1,135 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.undertow.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class DeploymentSlotTest {
+
+    private static final class Deployment {
+        private final AtomicInteger undeployed = new AtomicInteger();
+    }
+
+    @Test
+    public void replacedDeploymentWithoutRequestsIsUndeployedRightAway() {
+        DeploymentSlot<String> slot = new DeploymentSlot<>();
+        assertNull(slot.replace("first", 1));
+        DeploymentSlot.Entry<String> replaced = slot.replace("second", 2);
+        assertNotNull(replaced);
+        assertEquals("first", replaced.getDeployment());
+        assertEquals("second", slot.get().getDeployment());
+    }
+
+    @Test
+    public void replacedDeploymentIsUndeployedAfterItsLastRequest() {
+        DeploymentSlot<String> slot = new DeploymentSlot<>();
+        slot.replace("first", 1);
+        DeploymentSlot.Entry<String> first = slot.acquire();
+        DeploymentSlot.Entry<String> second = slot.acquire();
+
+        assertNull(slot.replace("second", 2));
+        assertEquals("second", slot.acquire().getDeployment());
+        assertFalse(slot.release(first));
+        assertTrue(slot.release(second));
+    }
+
+    @Test
+    public void clearedSlotHandsOutNothing() {
+        DeploymentSlot<String> slot = new DeploymentSlot<>();
+        slot.replace("first", 1);
+        DeploymentSlot.Entry<String> request = slot.acquire();
+
+        assertNull(slot.clear());
+        assertNull(slot.acquire());
+        assertFalse(slot.release(null));
+        assertTrue(slot.release(request));
+    }
+
+    /**
+     * Requests never get a deployment whose undeployment has started, and
+     * every replaced deployment is undeployed exactly once.
+     */
+    @Test
+    public void requestsNeverSeeUndeployedDeployment() throws Exception {
+        final DeploymentSlot<Deployment> slot = new DeploymentSlot<>();
+        final List<Deployment> deployments = new ArrayList<>();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicInteger served = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(4);
+        Deployment initial = new Deployment();
+        deployments.add(initial);
+        slot.replace(initial, 0);
+
+        ExecutorService requests = Executors.newFixedThreadPool(4);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(requests.submit(() -> {
+                started.countDown();
+                while (running.get()) {
+                    DeploymentSlot.Entry<Deployment> entry = slot.acquire();
+                    assertNotNull(entry);
+                    assertEquals(0, entry.getDeployment().undeployed.get());
+                    Thread.yield();
+                    assertEquals(0, entry.getDeployment().undeployed.get());
+                    served.incrementAndGet();
+                    if (slot.release(entry)) {
+                        entry.getDeployment().undeployed.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        for (int generation = 1; generation <= 2000; generation++) {
+            Deployment next = new Deployment();
+            deployments.add(next);
+            DeploymentSlot.Entry<Deployment> replaced = slot.replace(next, generation);
+            if (replaced != null) {
+                replaced.getDeployment().undeployed.incrementAndGet();
+            }
+        }
+        running.set(false);
+        for (Future<?> result : results) {
+            result.get(10, TimeUnit.SECONDS);
+        }
+        requests.shutdown();
+
+        assertTrue(served.get() > 0);
+        Deployment last = deployments.get(deployments.size() - 1);
+        assertSame(last, slot.get().getDeployment());
+        for (Deployment deployment : deployments) {
+            assertEquals(deployment == last ? 0 : 1, deployment.undeployed.get());
+        }
+    }
+
+}
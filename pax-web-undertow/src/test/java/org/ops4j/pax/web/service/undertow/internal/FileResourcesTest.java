@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.undertow.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.undertow.Undertow;
+import io.undertow.io.IoCallback;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.resource.FileResource;
+import io.undertow.server.handlers.resource.Resource;
+import io.undertow.util.Headers;
+
+public class FileResourcesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void filesOfOneDirectoryShareTheResourceManager() throws Exception {
+        FileResources resources = new FileResources(1024);
+        File first = write("first.txt", 10);
+        File second = write("second.txt", 10);
+
+        Resource resource = resources.getResource(first.toURI().toURL(), "/first.txt");
+        assertTrue(resource instanceof FileResource);
+        assertEquals(folder.getRoot(), resource.getResourceManagerRoot());
+        resources.getResource(second.toURI().toURL(), "/second.txt");
+        assertSame(resources.getManager(folder.getRoot()), resources.getManager(first.getParentFile()));
+
+        File other = folder.newFolder("other");
+        assertNotSame(resources.getManager(folder.getRoot()), resources.getManager(other));
+    }
+
+    @Test
+    public void onlyRegularFilesAreFileResources() throws Exception {
+        FileResources resources = new FileResources(1024);
+        assertNull(resources.getResource(folder.getRoot().toURI().toURL(), "/"));
+        assertNull(resources.getResource(new URL("jar:" + folder.getRoot().toURI() + "some.jar!/entry"), "/entry"));
+    }
+
+    @Test
+    public void fileIsTransferredFromItsChannel() throws Exception {
+        final FileResources resources = new FileResources(1024);
+        final File file = write("large.bin", 256 * 1024);
+        final Resource resource = resources.getResource(file.toURI().toURL(), "/large.bin");
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Undertow server = Undertow.builder().addHttpListener(port, "127.0.0.1").setHandler(new HttpHandler() {
+            @Override
+            public void handleRequest(HttpServerExchange exchange) throws Exception {
+                if (exchange.isInIoThread()) {
+                    exchange.dispatch(this);
+                    return;
+                }
+                exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, resource.getContentLength());
+                resource.serve(exchange.getResponseSender(), exchange, IoCallback.END_EXCHANGE);
+            }
+        }).build();
+        server.start();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/large.bin")
+                    .openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(file.length(), connection.getContentLengthLong());
+            assertArrayEquals(Files.readAllBytes(file.toPath()), read(connection.getInputStream()));
+        } finally {
+            server.stop();
+            resources.clear();
+        }
+    }
+
+    private File write(String name, int size) throws IOException {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n = stream.read(buffer); n != -1; n = stream.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.undertow.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ops4j.pax.web.service.spi.Configuration;
+
+/**
+ * Negotiates HTTP/2 with the listeners of a started server. Only h2c
+ * upgrades are tried, h2 over TLS needs alpn-boot on the boot class path of
+ * Java 8.
+ */
+public class Http2ListenerTest {
+
+    private ServerControllerImpl serverController;
+
+    @After
+    public void tearDown() {
+        if (serverController != null) {
+            serverController.stop();
+        }
+    }
+
+    @Test
+    public void plainListenerAcceptsH2cUpgrade() throws Exception {
+        List<String> response = upgrade(start(true));
+        assertEquals("HTTP/1.1 101 Switching Protocols", response.get(0));
+        // the server preface, a SETTINGS frame, follows the 101 response
+        assertEquals("SETTINGS", response.get(response.size() - 1));
+    }
+
+    @Test
+    public void plainListenerStaysOnHttp11WithoutHttp2() throws Exception {
+        List<String> response = upgrade(start(false));
+        assertEquals("HTTP/1.1 404 Not Found", response.get(0));
+    }
+
+    private int start(boolean http2Enabled) throws IOException {
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Configuration configuration = mock(Configuration.class);
+        when(configuration.getListeningAddresses()).thenReturn(new String[] {"127.0.0.1"});
+        when(configuration.isHttpEnabled()).thenReturn(true);
+        when(configuration.getHttpPort()).thenReturn(port);
+        when(configuration.isHttp2Enabled()).thenReturn(http2Enabled);
+        // the defaults of the server instead of the mock's zeros
+        when(configuration.getServerIoThreads()).thenReturn(null);
+        when(configuration.getServerMaxThreads()).thenReturn(null);
+        when(configuration.getServerMinThreads()).thenReturn(null);
+        when(configuration.getServerIdleTimeout()).thenReturn(null);
+        when(configuration.getServerBufferSize()).thenReturn(null);
+        when(configuration.getServerDirectBuffers()).thenReturn(null);
+        when(configuration.getHttp2MaxConcurrentStreams()).thenReturn(null);
+        when(configuration.getHttp2InitialWindowSize()).thenReturn(null);
+        serverController = new ServerControllerImpl();
+        serverController.configure(configuration);
+        serverController.start();
+        return port;
+    }
+
+    /**
+     * Sends an HTTP/1.1 request asking for an h2c upgrade and returns the
+     * status line and headers of the response, followed by SETTINGS once the
+     * server switched to HTTP/2.
+     */
+    private static List<String> upgrade(int port) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(10000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET / HTTP/1.1\r\n"
+                    + "Host: localhost\r\n"
+                    + "Connection: Upgrade, HTTP2-Settings\r\n"
+                    + "Upgrade: h2c\r\n"
+                    + "HTTP2-Settings: AAMAAABkAAQAAP__\r\n"
+                    + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            List<String> lines = new ArrayList<>();
+            for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+                lines.add(line);
+            }
+            if (lines.get(0).contains(" 101 ")) {
+                byte[] frameHeader = new byte[9];
+                in.readFully(frameHeader);
+                if (frameHeader[3] == 0x4) {
+                    lines.add("SETTINGS");
+                }
+            }
+            return lines;
+        }
+    }
+
+    private static String readLine(DataInputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c == -1) {
+                throw new EOFException();
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+}
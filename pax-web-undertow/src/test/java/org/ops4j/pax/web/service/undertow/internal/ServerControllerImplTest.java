@@ -0,0 +1,218 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.undertow.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ops4j.pax.web.service.spi.Configuration;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+
+import io.undertow.UndertowOptions;
+
+public class ServerControllerImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ServerControllerImpl serverController = new ServerControllerImpl();
+
+    @After
+    public void tearDown() {
+        if (serverController.isConfigured()) {
+            serverController.stop();
+        }
+    }
+
+    @Test
+    public void changedPortRebindsListenerKeepingOpenConnections() throws Exception {
+        int port = freePort();
+        serverController.configure(configuration(port, null));
+        serverController.start();
+        try (Socket connection = new Socket("127.0.0.1", port)) {
+            connection.setSoTimeout(10000);
+            assertEquals("HTTP/1.1 404 Not Found", get(connection));
+
+            int newPort = freePort();
+            assertTrue(serverController.reconfigure(configuration(newPort, null)));
+            assertEquals(newPort, serverController.getHttpPort().intValue());
+            try (Socket socket = new Socket("127.0.0.1", newPort)) {
+                socket.setSoTimeout(10000);
+                assertEquals("HTTP/1.1 404 Not Found", get(socket));
+            }
+            try {
+                new Socket("127.0.0.1", port).close();
+                fail("the old listener is still open");
+            } catch (ConnectException expected) {
+                // closed
+            }
+            // the connection accepted by the old listener is still served
+            assertEquals("HTTP/1.1 404 Not Found", get(connection));
+        }
+    }
+
+    @Test
+    public void changedThreadPoolKeepsConnectionsOpen() throws Exception {
+        int port = freePort();
+        serverController.configure(configuration(port, null));
+        serverController.start();
+        try (Socket connection = new Socket("127.0.0.1", port)) {
+            connection.setSoTimeout(10000);
+            assertEquals("HTTP/1.1 404 Not Found", get(connection));
+
+            assertTrue(serverController.reconfigure(configuration(port, 4)));
+            assertEquals("HTTP/1.1 404 Not Found", get(connection));
+        }
+    }
+
+    @Test
+    public void stoppedServerIsNotReconfigured() throws Exception {
+        serverController.configure(configuration(freePort(), null));
+        assertFalse(serverController.reconfigure(configuration(freePort(), null)));
+    }
+
+    @Test
+    public void workerIsSizedFromThreadSettings() throws Exception {
+        Configuration configuration = configuration(freePort(), 10);
+        when(configuration.getServerIoThreads()).thenReturn(3);
+        when(configuration.getServerMinThreads()).thenReturn(20);
+        when(configuration.getServerIdleTimeout()).thenReturn(30000);
+        serverController.configure(configuration);
+
+        OptionMap options = serverController.workerOptions();
+        assertEquals(3, options.get(Options.WORKER_IO_THREADS, 0));
+        assertEquals(10, options.get(Options.WORKER_TASK_MAX_THREADS, 0));
+        // never more core threads than the maximum
+        assertEquals(10, options.get(Options.WORKER_TASK_CORE_THREADS, 0));
+        assertEquals(30000, options.get(Options.WORKER_TASK_KEEPALIVE, 0));
+    }
+
+    @Test
+    public void workerDefaultsFollowUndertow() throws Exception {
+        serverController.configure(configuration(freePort(), null));
+
+        OptionMap options = serverController.workerOptions();
+        int ioThreads = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+        assertEquals(ioThreads, options.get(Options.WORKER_IO_THREADS, 0));
+        assertEquals(ioThreads * 8, options.get(Options.WORKER_TASK_MAX_THREADS, 0));
+        assertEquals(ioThreads * 8, options.get(Options.WORKER_TASK_CORE_THREADS, 0));
+        assertFalse(options.contains(Options.WORKER_TASK_KEEPALIVE));
+    }
+
+    @Test
+    public void listenerOptionsAreOverriddenPerListenerType() throws Exception {
+        File undertowProperties = folder.newFile("undertow.properties");
+        Files.write(undertowProperties.toPath(), Arrays.asList("http.BACKLOG=42", "http.MAX_HEADER_SIZE=8192",
+                "https.BACKLOG=7"), StandardCharsets.ISO_8859_1);
+        int port = freePort();
+        Configuration configuration = configuration(port, null);
+        when(configuration.getConfigurationURL()).thenReturn(undertowProperties.toURI().toURL());
+        when(configuration.isHttp2Enabled()).thenReturn(true);
+        serverController.configure(configuration);
+        serverController.start();
+
+        OptionMap http = serverController.listenerOptions("http");
+        assertEquals(42, http.get(Options.BACKLOG, 0));
+        assertEquals(8192, http.get(UndertowOptions.MAX_HEADER_SIZE, 0));
+        assertTrue(http.get(UndertowOptions.ENABLE_HTTP2, false));
+        // the defaults of io.undertow.Undertow stay in place
+        assertTrue(http.get(Options.TCP_NODELAY, false));
+        OptionMap https = serverController.listenerOptions("https");
+        assertEquals(7, https.get(Options.BACKLOG, 0));
+        assertFalse(https.contains(UndertowOptions.MAX_HEADER_SIZE));
+
+        // the listener is opened with these options
+        try (Socket connection = new Socket("127.0.0.1", port)) {
+            connection.setSoTimeout(10000);
+            assertEquals("HTTP/1.1 404 Not Found", get(connection));
+        }
+    }
+
+    private static Configuration configuration(int port, Integer maxThreads) {
+        Configuration configuration = mock(Configuration.class);
+        when(configuration.getListeningAddresses()).thenReturn(new String[] {"127.0.0.1"});
+        when(configuration.isHttpEnabled()).thenReturn(true);
+        when(configuration.getHttpPort()).thenReturn(port);
+        // the defaults of the server instead of the mock's zeros
+        when(configuration.getServerIoThreads()).thenReturn(null);
+        when(configuration.getServerMaxThreads()).thenReturn(maxThreads);
+        when(configuration.getServerMinThreads()).thenReturn(null);
+        when(configuration.getServerIdleTimeout()).thenReturn(null);
+        when(configuration.getServerBufferSize()).thenReturn(null);
+        when(configuration.getServerDirectBuffers()).thenReturn(null);
+        return configuration;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Sends a keep-alive request on the connection and returns the status
+     * line of the response, reading the empty response to its end.
+     */
+    private static String get(Socket socket) throws IOException {
+        socket.getOutputStream().write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                .getBytes(StandardCharsets.US_ASCII));
+        socket.getOutputStream().flush();
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        String status = readLine(in);
+        int contentLength = 0;
+        for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+            }
+        }
+        in.readFully(new byte[contentLength]);
+        return status;
+    }
+
+    private static String readLine(DataInputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c == -1) {
+                throw new EOFException();
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+}
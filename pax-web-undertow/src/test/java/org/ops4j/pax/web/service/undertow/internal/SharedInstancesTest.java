@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.web.service.undertow.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.EventListener;
+
+import javax.servlet.GenericServlet;
+import javax.servlet.Servlet;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.junit.Test;
+
+public class SharedInstancesTest {
+
+    public static class CountingServlet extends GenericServlet {
+        private static final long serialVersionUID = 1L;
+        private int initialized;
+        private int destroyed;
+
+        @Override
+        public void init() throws ServletException {
+            initialized++;
+        }
+
+        @Override
+        public void destroy() {
+            destroyed++;
+        }
+
+        @Override
+        public void service(ServletRequest req, ServletResponse res) {
+        }
+    }
+
+    public static class CountingListener implements ServletContextListener {
+        private int initialized;
+        private int destroyed;
+
+        @Override
+        public void contextInitialized(ServletContextEvent sce) {
+            initialized++;
+        }
+
+        @Override
+        public void contextDestroyed(ServletContextEvent sce) {
+            destroyed++;
+        }
+    }
+
+    @Test
+    public void servletIsInitializedByFirstAndDestroyedByLastDeployment() throws Exception {
+        SharedInstances instances = new SharedInstances();
+        CountingServlet servlet = new CountingServlet();
+        ServletConfig first = config("first");
+        ServletConfig second = config("second");
+
+        Servlet old = instances.servlet(servlet).createInstance().getInstance();
+        old.init(first);
+        Servlet replacement = instances.servlet(servlet).createInstance().getInstance();
+        replacement.init(second);
+        assertEquals(1, servlet.initialized);
+        // the config refers to the latest deployment
+        assertSame(second.getServletContext(), servlet.getServletContext());
+
+        old.destroy();
+        assertEquals(0, servlet.destroyed);
+        replacement.destroy();
+        assertEquals(1, servlet.destroyed);
+
+        // registered again once destroyed
+        instances.servlet(servlet).createInstance().getInstance().init(first);
+        assertEquals(2, servlet.initialized);
+    }
+
+    @Test
+    public void contextListenerIsInitializedByFirstAndDestroyedByLastDeployment() throws Exception {
+        SharedInstances instances = new SharedInstances();
+        CountingListener listener = new CountingListener();
+        ServletContextEvent event = new ServletContextEvent(mock(ServletContext.class));
+
+        EventListener old = instances.listener(listener).createInstance().getInstance();
+        ((ServletContextListener) old).contextInitialized(event);
+        EventListener replacement = instances.listener(listener).createInstance().getInstance();
+        ((ServletContextListener) replacement).contextInitialized(event);
+        assertEquals(1, listener.initialized);
+
+        ((ServletContextListener) old).contextDestroyed(event);
+        assertEquals(0, listener.destroyed);
+        ((ServletContextListener) replacement).contextDestroyed(event);
+        assertEquals(1, listener.destroyed);
+    }
+
+    private static ServletConfig config(String name) {
+        ServletConfig config = mock(ServletConfig.class);
+        when(config.getServletName()).thenReturn(name);
+        when(config.getServletContext()).thenReturn(mock(ServletContext.class));
+        return config;
+    }
+
+}